@@ -56,6 +56,8 @@ import org.uberfire.commons.services.cdi.Veto;
 import org.uberfire.io.IOService;
 import org.uberfire.io.impl.IOServiceNio2WrapperImpl;
 import org.uberfire.io.impl.cluster.IOServiceClusterImpl;
+import org.uberfire.io.impl.cluster.IOServiceReplicaImpl;
+import org.uberfire.io.impl.metrics.IOServiceMetricsImpl;
 import org.uberfire.java.nio.IOException;
 import org.uberfire.java.nio.base.FileSystemState;
 import org.uberfire.java.nio.file.FileStore;
@@ -373,10 +375,16 @@ public class SystemConfigProducer implements Extension {
 
                 if ( clusterServiceFactory == null ) {
                     result = new IOServiceNio2WrapperImpl();
+                } else if ( IOServiceReplicaImpl.isReplicaRole() ) {
+                    result = new IOServiceReplicaImpl( new IOServiceNio2WrapperImpl(), clusterServiceFactory );
                 } else {
                     result = new IOServiceClusterImpl( new IOServiceNio2WrapperImpl(), clusterServiceFactory );
                 }
 
+                if ( IOServiceMetricsImpl.isEnabled() ) {
+                    return new IOServiceMetricsImpl( "default", result );
+                }
+
                 return result;
             }
 
@@ -17,6 +17,7 @@
 package org.uberfire.backend.server.cluster;
 
 import org.uberfire.commons.cluster.ClusterServiceFactory;
+import org.uberfire.io.impl.cluster.socket.ClusterServiceSocket;
 
 public final class ClusterServiceFactorySetup {
 
@@ -26,6 +27,12 @@ public final class ClusterServiceFactorySetup {
         final String localId = System.getProperty( "org.uberfire.cluster.local.id", null );
         final String resourceName = System.getProperty( "org.uberfire.cluster.vfs.lock", null );
         final boolean autostart = Boolean.parseBoolean( System.getProperty( "org.uberfire.cluster.autostart", "true" ) );
+        final String members = System.getProperty( "org.uberfire.cluster.members", null );
+        final String localMember = System.getProperty( "org.uberfire.cluster.local.address", null );
+
+        if ( members != null && localMember != null ) {
+            return new ClusterServiceFactorySocketImpl( localMember, ClusterServiceSocket.parseMembers( members ), autostart );
+        }
 
         if ( clusterName == null || zkAddress == null || localId == null || resourceName == null ) {
             return null;
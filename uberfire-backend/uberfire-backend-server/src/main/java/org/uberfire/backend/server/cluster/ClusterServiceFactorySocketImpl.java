@@ -0,0 +1,59 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.backend.server.cluster;
+
+import java.util.List;
+
+import org.uberfire.commons.cluster.ClusterService;
+import org.uberfire.commons.cluster.ClusterServiceFactory;
+import org.uberfire.commons.message.MessageHandlerResolver;
+import org.uberfire.io.impl.cluster.socket.ClusterServiceSocket;
+
+/**
+ * Builds a {@link ClusterServiceSocket}, for clusters with a static member list and no ZooKeeper.
+ */
+public class ClusterServiceFactorySocketImpl implements ClusterServiceFactory {
+
+    private ClusterService clusterService;
+    private final String localMember;
+    private final List<String> members;
+    private final boolean autostart;
+
+    public ClusterServiceFactorySocketImpl( final String localMember,
+                                            final List<String> members,
+                                            final boolean autostart ) {
+        this.localMember = localMember;
+        this.members = members;
+        this.autostart = autostart;
+    }
+
+    @Override
+    public synchronized ClusterService build( final MessageHandlerResolver resolver ) {
+        if ( clusterService == null ) {
+            clusterService = new ClusterServiceSocket( localMember, members, resolver );
+        } else {
+            clusterService.addMessageHandlerResolver( resolver );
+        }
+        return clusterService;
+    }
+
+    @Override
+    public boolean isAutoStart() {
+        return autostart;
+    }
+
+}
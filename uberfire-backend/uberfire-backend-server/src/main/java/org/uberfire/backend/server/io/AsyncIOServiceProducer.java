@@ -0,0 +1,58 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.backend.server.io;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Produces;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.uberfire.io.AsyncIOService;
+import org.uberfire.io.IOService;
+import org.uberfire.io.impl.async.AsyncIOServiceImpl;
+
+/**
+ * Produces the asynchronous facade of the default IO service, for callers that shouldn't hold their thread while
+ * operations wait for commits and cluster locks.
+ */
+@ApplicationScoped
+public class AsyncIOServiceProducer {
+
+    @Inject
+    @Named("ioStrategy")
+    private IOService ioService;
+
+    private AsyncIOService asyncIOService;
+
+    @PostConstruct
+    public void setup() {
+        asyncIOService = new AsyncIOServiceImpl( ioService );
+    }
+
+    @PreDestroy
+    public void destroy() {
+        asyncIOService.dispose();
+    }
+
+    @Produces
+    @Named("asyncIOStrategy")
+    public AsyncIOService asyncIOService() {
+        return asyncIOService;
+    }
+}
@@ -32,6 +32,8 @@ import org.uberfire.commons.services.cdi.StartupType;
 import org.uberfire.io.IOService;
 import org.uberfire.io.impl.IOServiceNio2WrapperImpl;
 import org.uberfire.io.impl.cluster.IOServiceClusterImpl;
+import org.uberfire.io.impl.cluster.IOServiceReplicaImpl;
+import org.uberfire.io.impl.metrics.IOServiceMetricsImpl;
 import org.uberfire.java.nio.file.FileSystem;
 
 @ApplicationScoped
@@ -56,9 +58,14 @@ public class ConfigIOServiceProducer {
         instance = this;
         if ( clusterServiceFactory == null ) {
             configIOService = new IOServiceNio2WrapperImpl( "config" );
+        } else if ( IOServiceReplicaImpl.isReplicaRole() ) {
+            configIOService = new IOServiceReplicaImpl( new IOServiceNio2WrapperImpl( "config" ), clusterServiceFactory, clusterServiceFactory.isAutoStart() );
         } else {
             configIOService = new IOServiceClusterImpl( new IOServiceNio2WrapperImpl( "config" ), clusterServiceFactory, clusterServiceFactory.isAutoStart() );
         }
+        if ( IOServiceMetricsImpl.isEnabled() ) {
+            configIOService = new IOServiceMetricsImpl( "config", configIOService );
+        }
         configFileSystem = (FileSystem) PriorityDisposableRegistry.get( "systemFS" );
     }
 
@@ -29,7 +29,7 @@ abstract class BaseLockExecuteNotifyReleaseTemplate<V> {
     public V execute( final ClusterService clusterService,
                       final RunnableFuture<V> task ) {
         try {
-            clusterService.lock();
+            lock( clusterService );
 
             task.run();
 
@@ -43,8 +43,44 @@ abstract class BaseLockExecuteNotifyReleaseTemplate<V> {
         } catch ( final Exception e ) {
             throwException( e );
         } finally {
+            try {
+                beforeUnlock( clusterService );
+            } finally {
+                unlock( clusterService );
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Called once the task is done, still holding the lock; whatever peers must see before someone else can take the
+     * lock goes out here.
+     */
+    protected void beforeUnlock( final ClusterService clusterService ) {
+    }
+
+    private void lock( final ClusterService clusterService ) {
+        final String[] keys = getLockKeys();
+        if ( keys == null ) {
+            clusterService.lock();
+        } else {
+            clusterService.lock( keys );
+        }
+    }
+
+    private void unlock( final ClusterService clusterService ) {
+        final String[] keys = getLockKeys();
+        if ( keys == null ) {
             clusterService.unlock();
+        } else {
+            clusterService.unlock( keys );
         }
+    }
+
+    /**
+     * @return the keys to lock while executing, or null to take the node wide lock
+     */
+    public String[] getLockKeys() {
         return null;
     }
 
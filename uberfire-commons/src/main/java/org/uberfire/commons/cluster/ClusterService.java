@@ -30,4 +30,15 @@ public interface ClusterService extends MessageService,
     void onStart( Runnable runnable );
 
     int getHoldCount();
+
+    /**
+     * Cluster wide lock of the given keys (e.g. file system ids), leaving operations on other keys free to run
+     * concurrently. Keys are always acquired in the same order, whatever the order they're given in, so operations
+     * locking more than one key (like a move between file systems) can't deadlock each other. Locks are reentrant.
+     * <p/>
+     * {@link #lock()} is the node wide lock: it waits for, and blocks, keyed locks taken on this node.
+     */
+    void lock( final String... keys );
+
+    void unlock( final String... keys );
 }
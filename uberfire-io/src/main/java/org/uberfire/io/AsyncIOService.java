@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io;
+
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.uberfire.commons.lifecycle.Disposable;
+import org.uberfire.java.nio.file.CopyOption;
+import org.uberfire.java.nio.file.DeleteOption;
+import org.uberfire.java.nio.file.FileSystem;
+import org.uberfire.java.nio.file.OpenOption;
+import org.uberfire.java.nio.file.Path;
+
+/**
+ * Non blocking variants of the {@link IOService} operations that wait for commits, cluster locks and broadcasts:
+ * calls return right away, with a future of the result, and run on a dedicated bounded executor.
+ * <p/>
+ * Operations on the same file system run one at a time, in the order they were submitted (a read sees the writes
+ * submitted before it); operations on different file systems run concurrently. Copies and moves are ordered with the
+ * operations of both the source and the target file system. Errors the synchronous call would throw fail the future;
+ * submissions beyond the executor's capacity fail with a {@link java.util.concurrent.RejectedExecutionException}.
+ * <p/>
+ * The {@link IOService} the operations delegate to remains available for synchronous calls.
+ */
+public interface AsyncIOService extends Disposable {
+
+    IOFuture<Path> write( final Path path,
+                          final byte[] bytes,
+                          final OpenOption... options );
+
+    IOFuture<Path> write( final Path path,
+                          final byte[] bytes,
+                          final Map<String, ?> attrs,
+                          final OpenOption... options );
+
+    IOFuture<Path> write( final Path path,
+                          final String content,
+                          final OpenOption... options );
+
+    IOFuture<Path> write( final Path path,
+                          final String content,
+                          final Charset cs,
+                          final OpenOption... options );
+
+    IOFuture<Path> write( final Path path,
+                          final String content,
+                          final Map<String, ?> attrs,
+                          final OpenOption... options );
+
+    IOFuture<Void> delete( final Path path,
+                           final DeleteOption... options );
+
+    IOFuture<Boolean> deleteIfExists( final Path path,
+                                      final DeleteOption... options );
+
+    IOFuture<Path> copy( final Path source,
+                         final Path target,
+                         final CopyOption... options );
+
+    IOFuture<Path> move( final Path source,
+                         final Path target,
+                         final CopyOption... options );
+
+    IOFuture<byte[]> readAllBytes( final Path path );
+
+    IOFuture<List<String>> readAllLines( final Path path );
+
+    IOFuture<String> readAllString( final Path path );
+
+    IOFuture<String> readAllString( final Path path,
+                                    final Charset cs );
+
+    /**
+     * Runs the operations of the batch within a single batch of the file system (one commit for a versioned one).
+     */
+    IOFuture<Void> batch( final FileSystem fs,
+                          final Batch batch );
+
+    /**
+     * Runs any task, ordered with the other operations of the file system.
+     */
+    <T> IOFuture<T> submit( final FileSystem fs,
+                            final Callable<T> task );
+
+    /**
+     * @return the service the operations delegate to
+     */
+    IOService getService();
+
+    interface Batch {
+
+        /**
+         * @param ioService synchronous service to run the operations of the batch with
+         */
+        void execute( final IOService ioService );
+    }
+
+    interface Callback<T> {
+
+        void onSuccess( final T result );
+
+        void onFailure( final Throwable cause );
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io;
+
+import java.util.concurrent.Future;
+
+/**
+ * Result of an {@link AsyncIOService} operation.
+ */
+public interface IOFuture<T> extends Future<T> {
+
+    /**
+     * Notifies the callback once the operation completed, on the thread that ran it (or on the calling thread if it
+     * already had). A cancelled operation is notified as failed, with a
+     * {@link java.util.concurrent.CancellationException}.
+     */
+    void addCallback( final AsyncIOService.Callback<? super T> callback );
+}
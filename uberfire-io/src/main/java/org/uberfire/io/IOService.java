@@ -30,6 +30,7 @@ import java.util.Set;
 import org.uberfire.commons.lifecycle.Disposable;
 import org.uberfire.commons.lifecycle.PriorityDisposable;
 import org.uberfire.java.nio.IOException;
+import org.uberfire.java.nio.base.query.ResultPage;
 import org.uberfire.java.nio.channels.SeekableByteChannel;
 import org.uberfire.java.nio.file.AtomicMoveNotSupportedException;
 import org.uberfire.java.nio.file.CopyOption;
@@ -337,6 +338,41 @@ public interface IOService extends PriorityDisposable {
                 final OpenOption... options )
             throws IllegalArgumentException, IOException, UnsupportedOperationException;
 
+    /**
+     * Finds the paths, within the branch or file system of the given root, whose attribute has the given value.
+     * @param value the value to match, or null to match any value
+     * @throws UnsupportedOperationException if the provider doesn't keep an attribute index
+     */
+    ResultPage<Path> queryByAttribute( final Path root,
+                                       final String attribute,
+                                       final String value,
+                                       final int offset,
+                                       final int pageSize )
+            throws UnsupportedOperationException, IllegalArgumentException;
+
+    void rebuildAttributeIndex( final Path root )
+            throws UnsupportedOperationException, IllegalArgumentException;
+
+    /**
+     * Finds the files under the given root whose relative path matches the glob, e.g. <code>**&#47;*.drl</code>.
+     * @throws UnsupportedOperationException if the provider doesn't keep a path index
+     */
+    ResultPage<Path> queryByGlob( final Path root,
+                                  final String glob,
+                                  final int offset,
+                                  final int pageSize )
+            throws UnsupportedOperationException, IllegalArgumentException;
+
+    /**
+     * Pins the current version of a branch: every read through the returned root (and the paths resolved from it)
+     * sees the same immutable tree, whatever is committed to the branch afterwards.
+     * @return root path of a read-only view of the branch
+     * @throws UnsupportedOperationException if the file system isn't versioned
+     */
+    Path snapshot( final FileSystem fs,
+                   final String branchName )
+            throws UnsupportedOperationException, IllegalArgumentException, NoSuchFileException;
+
     public abstract static class NewFileSystemListener {
 
         public abstract void execute( final FileSystem newFileSystem,
@@ -41,6 +41,10 @@ import org.uberfire.io.lock.BatchLockControl;
 import org.uberfire.java.nio.IOException;
 import org.uberfire.java.nio.base.AbstractPath;
 import org.uberfire.java.nio.base.FileSystemState;
+import org.uberfire.java.nio.base.SnapshotProvider;
+import org.uberfire.java.nio.base.query.AttributeQueryProvider;
+import org.uberfire.java.nio.base.query.PathQueryProvider;
+import org.uberfire.java.nio.base.query.ResultPage;
 import org.uberfire.java.nio.channels.SeekableByteChannel;
 import org.uberfire.java.nio.file.CopyOption;
 import org.uberfire.java.nio.file.DirectoryNotEmptyException;
@@ -61,7 +65,9 @@ import org.uberfire.java.nio.file.ProviderNotFoundException;
 import org.uberfire.java.nio.file.StandardOpenOption;
 import org.uberfire.java.nio.file.attribute.FileAttribute;
 import org.uberfire.java.nio.file.attribute.FileTime;
+import org.uberfire.java.nio.file.spi.FileSystemProvider;
 
+import static org.uberfire.commons.validation.PortablePreconditions.*;
 import static org.uberfire.java.nio.file.StandardOpenOption.*;
 
 public abstract class AbstractIOService implements IOServiceIdentifiable,
@@ -633,6 +639,56 @@ public abstract class AbstractIOService implements IOServiceIdentifiable,
         return path;
     }
 
+    @Override
+    public ResultPage<Path> queryByAttribute( final Path root,
+                                              final String attribute,
+                                              final String value,
+                                              final int offset,
+                                              final int pageSize )
+            throws UnsupportedOperationException, IllegalArgumentException {
+        return attributeQueryProvider( root ).queryByAttribute( root, attribute, value, offset, pageSize );
+    }
+
+    @Override
+    public void rebuildAttributeIndex( final Path root )
+            throws UnsupportedOperationException, IllegalArgumentException {
+        attributeQueryProvider( root ).rebuildAttributeIndex( root );
+    }
+
+    private AttributeQueryProvider attributeQueryProvider( final Path root ) {
+        checkNotNull( "root", root );
+        final FileSystemProvider provider = root.getFileSystem().provider();
+        if ( !( provider instanceof AttributeQueryProvider ) ) {
+            throw new UnsupportedOperationException( "Provider '" + provider.getScheme() + "' doesn't support attribute queries." );
+        }
+        return (AttributeQueryProvider) provider;
+    }
+
+    @Override
+    public ResultPage<Path> queryByGlob( final Path root,
+                                         final String glob,
+                                         final int offset,
+                                         final int pageSize )
+            throws UnsupportedOperationException, IllegalArgumentException {
+        checkNotNull( "root", root );
+        final FileSystemProvider provider = root.getFileSystem().provider();
+        if ( !( provider instanceof PathQueryProvider ) ) {
+            throw new UnsupportedOperationException( "Provider '" + provider.getScheme() + "' doesn't support path queries." );
+        }
+        return ( (PathQueryProvider) provider ).queryByGlob( root, glob, offset, pageSize );
+    }
+
+    @Override
+    public Path snapshot( final FileSystem fs,
+                          final String branchName )
+            throws UnsupportedOperationException, IllegalArgumentException, NoSuchFileException {
+        checkNotNull( "fs", fs );
+        if ( !( fs.provider() instanceof SnapshotProvider ) ) {
+            throw new UnsupportedOperationException( "Provider '" + fs.provider().getScheme() + "' doesn't support snapshots." );
+        }
+        return ( (SnapshotProvider) fs.provider() ).snapshot( fs, branchName );
+    }
+
     protected abstract Set<? extends OpenOption> buildOptions( final Set<? extends OpenOption> options,
                                                                final OpenOption... other );
 
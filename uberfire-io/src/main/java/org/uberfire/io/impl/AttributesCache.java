@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.uberfire.java.nio.base.Properties;
+
+/**
+ * LRU cache of parsed attribute files. Keys identify a file version (e.g. the git blob id), so a changed file simply
+ * misses and stale entries age out. Entries are weighted by the size of the file they were parsed from and the
+ * total weight is kept under the given budget.
+ */
+public class AttributesCache {
+
+    private final long maxSize;
+
+    private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<Object, Entry>( 16, 0.75f, true );
+    private long size = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public AttributesCache( final long maxSize ) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return a copy of the cached content, or null on a miss
+     */
+    public synchronized Properties get( final Object key ) {
+        final Entry entry = entries.get( key );
+        if ( entry == null ) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return new Properties( entry.content );
+    }
+
+    /**
+     * @return the cached content itself, which callers must not modify, or null on a miss
+     */
+    public synchronized Properties getShared( final Object key ) {
+        final Entry entry = entries.get( key );
+        if ( entry == null ) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.content;
+    }
+
+    public synchronized void put( final Object key,
+                                  final Properties content,
+                                  final long weight ) {
+        if ( weight > maxSize ) {
+            return;
+        }
+        final Entry previous = entries.put( key, new Entry( new Properties( content ), weight ) );
+        if ( previous != null ) {
+            size -= previous.weight;
+        }
+        size += weight;
+
+        final Iterator<Map.Entry<Object, Entry>> iterator = entries.entrySet().iterator();
+        while ( size > maxSize && iterator.hasNext() ) {
+            size -= iterator.next().getValue().weight;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return current weight of the cached entries, in bytes of the parsed files
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "AttributesCache{entries=" + entries.size() + ", size=" + size + "/" + maxSize +
+                ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "}";
+    }
+
+    private static class Entry {
+
+        private final Properties content;
+        private final long weight;
+
+        private Entry( final Properties content,
+                       final long weight ) {
+            this.content = content;
+            this.weight = weight;
+        }
+    }
+}
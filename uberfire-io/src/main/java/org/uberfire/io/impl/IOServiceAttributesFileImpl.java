@@ -0,0 +1,222 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.uberfire.io.IOWatchService;
+import org.uberfire.java.nio.IOException;
+import org.uberfire.java.nio.base.AttrHolder;
+import org.uberfire.java.nio.base.Properties;
+import org.uberfire.java.nio.base.dotfiles.AttributesFileOption;
+import org.uberfire.java.nio.base.dotfiles.DotFileOption;
+import org.uberfire.java.nio.channels.SeekableByteChannel;
+import org.uberfire.java.nio.file.AtomicMoveNotSupportedException;
+import org.uberfire.java.nio.file.CopyOption;
+import org.uberfire.java.nio.file.DeleteOption;
+import org.uberfire.java.nio.file.DirectoryNotEmptyException;
+import org.uberfire.java.nio.file.FileAlreadyExistsException;
+import org.uberfire.java.nio.file.Files;
+import org.uberfire.java.nio.file.NoSuchFileException;
+import org.uberfire.java.nio.file.OpenOption;
+import org.uberfire.java.nio.file.Path;
+import org.uberfire.java.nio.file.attribute.FileAttribute;
+
+import static org.uberfire.commons.validation.PortablePreconditions.*;
+import static org.uberfire.java.nio.base.dotfiles.AttributesFileUtils.*;
+import static org.uberfire.java.nio.base.dotfiles.DotFileUtils.*;
+
+/**
+ * Attribute backend that keeps file attributes of git file systems in a single attributes file per directory,
+ * updated by the provider in the same commit as the content, instead of one dot file per asset. Existing dot files
+ * are still read and are removed the next time the asset is written, moved or deleted; the provider can also migrate
+ * a whole branch at once. Directory attributes and other providers keep using dot files.
+ */
+public class IOServiceAttributesFileImpl extends IOServiceDotFileImpl {
+
+    public IOServiceAttributesFileImpl() {
+        super();
+    }
+
+    public IOServiceAttributesFileImpl( final String serviceId ) {
+        super( serviceId );
+    }
+
+    public IOServiceAttributesFileImpl( final IOWatchService watchService ) {
+        super( watchService );
+    }
+
+    public IOServiceAttributesFileImpl( final String serviceId,
+                                        final IOWatchService watchService ) {
+        super( serviceId, watchService );
+    }
+
+    @Override
+    public void delete( final Path path,
+                        final DeleteOption... options )
+            throws IllegalArgumentException, NoSuchFileException, DirectoryNotEmptyException,
+            IOException, SecurityException {
+        super.delete( path, buildDeleteOptions( path, options ) );
+    }
+
+    @Override
+    public boolean deleteIfExists( final Path path,
+                                   final DeleteOption... options )
+            throws IllegalArgumentException, DirectoryNotEmptyException, IOException, SecurityException {
+        return super.deleteIfExists( path, buildDeleteOptions( path, options ) );
+    }
+
+    @Override
+    public SeekableByteChannel newByteChannel( final Path path,
+                                               final Set<? extends OpenOption> options,
+                                               final FileAttribute<?>... attrs )
+            throws IllegalArgumentException, UnsupportedOperationException,
+            FileAlreadyExistsException, IOException, SecurityException {
+        checkNotNull( "path", path );
+        if ( !isAttributesFileSupported( path ) ) {
+            return super.newByteChannel( path, options, attrs );
+        }
+
+        final Properties properties = loadAttributes( path );
+        final FileAttribute<?>[] allAttrs = consolidate( properties == null ? new Properties() : properties, attrs );
+
+        final Set<OpenOption> newOptions = new HashSet<OpenOption>( options );
+        newOptions.remove( new DotFileOption() );
+        newOptions.add( new AttributesFileOption() );
+
+        return Files.newByteChannel( path, newOptions, allAttrs );
+    }
+
+    @Override
+    public Path copy( final Path source,
+                      final Path target,
+                      final CopyOption... options )
+            throws UnsupportedOperationException, FileAlreadyExistsException,
+            DirectoryNotEmptyException, IOException, SecurityException {
+        if ( !isAttributesFileSupported( source, target ) || Files.isDirectory( source ) ) {
+            return super.copy( source, target, options );
+        }
+        return Files.copy( source, target, buildAttributesFileOptions( options ) );
+    }
+
+    @Override
+    public Path move( final Path source,
+                      final Path target,
+                      final CopyOption... options )
+            throws UnsupportedOperationException, FileAlreadyExistsException,
+            DirectoryNotEmptyException, AtomicMoveNotSupportedException, IOException, SecurityException {
+        if ( !isAttributesFileSupported( source, target ) || Files.isDirectory( source ) ) {
+            return super.move( source, target, options );
+        }
+        return Files.move( source, target, buildAttributesFileOptions( options ) );
+    }
+
+    @Override
+    public Map<String, Object> readAttributes( final Path path,
+                                               final String attributes )
+            throws UnsupportedOperationException, NoSuchFileException, IllegalArgumentException,
+            IOException, SecurityException {
+        checkNotNull( "path", path );
+        checkNotEmpty( "attributes", attributes );
+
+        if ( !attributes.equals( "*" ) || !isAttributesFileSupported( path ) ) {
+            return super.readAttributes( path, attributes );
+        }
+
+        final Properties original = new Properties( Files.readAttributes( path, attributes ) );
+        final Properties content = loadAttributes( path );
+        if ( content == null ) {
+            return original;
+        }
+
+        final boolean isAttrHolder = path instanceof AttrHolder;
+        if ( isAttrHolder && ( (AttrHolder) path ).getAttrStorage().getContent().size() > 0 ) {
+            return ( (AttrHolder) path ).getAttrStorage().getAllContent();
+        }
+        content.putAll( original );
+
+        if ( isAttrHolder ) {
+            ( (AttrHolder) path ).getAttrStorage().loadContent( content );
+        }
+        return content;
+    }
+
+    @Override
+    protected void loadDotFile( final Path path ) {
+        final Properties content = isAttributesFileSupported( path ) ? loadEntry( path ) : null;
+        if ( content == null ) {
+            super.loadDotFile( path );
+            return;
+        }
+
+        if ( path instanceof AttrHolder ) {
+            ( (AttrHolder) path ).getAttrStorage().loadContent( content );
+        }
+    }
+
+    /**
+     * @return attributes of the given path, from the attributes file or from a not yet migrated dot file
+     */
+    protected Properties loadAttributes( final Path path ) {
+        final Properties entry = loadEntry( path );
+        if ( entry != null ) {
+            return entry;
+        }
+        return loadProperties( dot( path ) );
+    }
+
+    /**
+     * The parsed attributes file is shared through the cache, keyed by its blob id, so listing a directory
+     * parses it once; only the requested entry is copied.
+     */
+    protected Properties loadEntry( final Path path ) {
+        final Properties content = loadSharedProperties( attributesFile( path ) );
+        if ( content == null ) {
+            return null;
+        }
+        return getEntry( content, entryName( path ) );
+    }
+
+    protected boolean isAttributesFileSupported( final Path... paths ) {
+        for ( final Path path : paths ) {
+            if ( !isGitScheme( path ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected DeleteOption[] buildDeleteOptions( final Path path,
+                                                 final DeleteOption... options ) {
+        if ( !isAttributesFileSupported( path ) ) {
+            return options;
+        }
+        final DeleteOption[] result = new DeleteOption[ options.length + 1 ];
+        System.arraycopy( options, 0, result, 0, options.length );
+        result[ result.length - 1 ] = new AttributesFileOption();
+        return result;
+    }
+
+    protected CopyOption[] buildAttributesFileOptions( final CopyOption... options ) {
+        final CopyOption[] result = new CopyOption[ options.length + 1 ];
+        System.arraycopy( options, 0, result, 0, options.length );
+        result[ result.length - 1 ] = new AttributesFileOption();
+        return result;
+    }
+}
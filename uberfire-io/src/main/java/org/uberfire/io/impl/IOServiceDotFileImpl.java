@@ -40,6 +40,7 @@ import org.uberfire.java.nio.file.Files;
 import org.uberfire.java.nio.file.NoSuchFileException;
 import org.uberfire.java.nio.file.OpenOption;
 import org.uberfire.java.nio.file.Path;
+import org.uberfire.java.nio.file.attribute.BasicFileAttributes;
 import org.uberfire.java.nio.file.attribute.FileAttribute;
 import org.uberfire.java.nio.file.attribute.FileAttributeView;
 
@@ -51,6 +52,10 @@ public class IOServiceDotFileImpl
         extends AbstractIOService
         implements IOService {
 
+    public static final long ATTRIBUTES_CACHE_SIZE = Long.parseLong( System.getProperty( "org.uberfire.io.attributes.cache.size", "16777216" ) );
+
+    protected final AttributesCache attributesCache = new AttributesCache( ATTRIBUTES_CACHE_SIZE );
+
     public IOServiceDotFileImpl() {
         super();
     }
@@ -105,11 +110,8 @@ public class IOServiceDotFileImpl
             throws IllegalArgumentException, UnsupportedOperationException,
             FileAlreadyExistsException, IOException, SecurityException {
         checkNotNull( "path", path );
-        final Properties properties = new Properties();
-        if ( exists( dot( path ) ) ) {
-            properties.load( newInputStream( dot( path ) ) );
-        }
-        final FileAttribute<?>[] allAttrs = consolidate( properties, attrs );
+        final Properties properties = loadProperties( dot( path ) );
+        final FileAttribute<?>[] allAttrs = consolidate( properties == null ? new Properties() : properties, attrs );
 
         final SeekableByteChannel result = Files.newByteChannel( path, buildOptions( options ), allAttrs );
 
@@ -202,13 +204,12 @@ public class IOServiceDotFileImpl
         checkNotEmpty( "attributes", attributes );
 
         final Properties original = new Properties( Files.readAttributes( path, attributes ) );
-        if ( attributes.equals( "*" ) && exists( dot( path ) ) ) {
+        final Properties content = attributes.equals( "*" ) ? loadProperties( dot( path ) ) : null;
+        if ( content != null ) {
             boolean isAttrHolder = path instanceof AttrHolder;
             if ( isAttrHolder && ( (AttrHolder) path ).getAttrStorage().getContent().size() > 0 ) {
                 return ( (AttrHolder) path ).getAttrStorage().getAllContent();
             }
-            final Properties content = new Properties();
-            content.load( newInputStream( dot( path ) ) );
             content.putAll( original );
 
             if ( isAttrHolder ) {
@@ -292,14 +293,72 @@ public class IOServiceDotFileImpl
     }
 
     protected void loadDotFile( final Path path ) {
-        final Properties content = new Properties();
-        content.load( newInputStream( dot( path ) ) );
+        final Properties content = loadProperties( dot( path ) );
+        if ( content == null ) {
+            throw new NoSuchFileException( dot( path ).toString() );
+        }
 
         if ( path instanceof AttrHolder ) {
             ( (AttrHolder) path ).getAttrStorage().loadContent( content );
         }
     }
 
+    /**
+     * Parses the given attributes file, reusing a previous parse while the file is unchanged. Git files are keyed by
+     * their blob id, other providers by path, last modified time and size.
+     * @return a copy of the parsed content, or null if the file doesn't exist
+     */
+    protected Properties loadProperties( final Path file ) {
+        final Properties content = loadSharedProperties( file );
+        if ( content == null ) {
+            return null;
+        }
+        return new Properties( content );
+    }
+
+    /**
+     * Same as {@link #loadProperties(Path)}, but a cached content is returned without copying it,
+     * so it must be treated as read only.
+     */
+    protected Properties loadSharedProperties( final Path file ) {
+        final BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes( file, BasicFileAttributes.class );
+        } catch ( final NoSuchFileException ex ) {
+            return null;
+        }
+
+        final Object key;
+        if ( isGitScheme( file ) && attrs.fileKey() != null ) {
+            key = attrs.fileKey();
+        } else {
+            key = file.toUri().toString() + "@" + attrs.lastModifiedTime().toMillis() + ":" + attrs.size();
+        }
+
+        final Properties cached = attributesCache.getShared( key );
+        if ( cached != null ) {
+            return cached;
+        }
+
+        final Properties content = new Properties();
+        content.load( newInputStream( file ) );
+        attributesCache.put( key, content, attrs.size() );
+
+        return content;
+    }
+
+    public AttributesCache getAttributesCache() {
+        return attributesCache;
+    }
+
+    protected boolean isGitScheme( final Path path ) {
+        if ( path == null || path.getFileSystem() == null || path.getFileSystem().provider() == null ) {
+            return false;
+        }
+
+        return path.getFileSystem().provider().getScheme().equals( "git" );
+    }
+
     protected <V extends AbstractBasicFileAttributeView> V newView( final AttrHolder holder,
                                                                     final Class<V> type ) {
         if ( NeedsPreloadedAttrs.class.isAssignableFrom( type ) && holder.getAttrStorage().getContent().size() == 0 ) {
@@ -326,11 +385,8 @@ public class IOServiceDotFileImpl
         try {
             Files.createDirectory( dir, attrs );
         } catch ( final FileAlreadyExistsException ex ) {
-            final Properties properties = new Properties();
-            if ( exists( dot( dir ) ) ) {
-                properties.load( newInputStream( dot( dir ) ) );
-            }
-            allAttrs = consolidate( properties, attrs );
+            final Properties properties = loadProperties( dot( dir ) );
+            allAttrs = consolidate( properties == null ? new Properties() : properties, attrs );
             if ( !skipAlreadyExistsException ) {
                 throw ex;
             }
@@ -0,0 +1,515 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.async;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.uberfire.commons.async.DescriptiveRunnable;
+import org.uberfire.commons.async.DescriptiveThreadFactory;
+import org.uberfire.io.AsyncIOService;
+import org.uberfire.io.IOFuture;
+import org.uberfire.io.IOService;
+import org.uberfire.java.nio.base.FileSystemId;
+import org.uberfire.java.nio.file.CopyOption;
+import org.uberfire.java.nio.file.DeleteOption;
+import org.uberfire.java.nio.file.FileSystem;
+import org.uberfire.java.nio.file.OpenOption;
+import org.uberfire.java.nio.file.Path;
+
+import static org.uberfire.commons.validation.PortablePreconditions.*;
+
+/**
+ * Runs the operations on a fixed pool of threads, each file system having its own queue of pending operations, drained
+ * by one thread at a time. A thread moves on to another queue after {@link #SLICE} operations, so that a busy file
+ * system doesn't hold up the others. A copy or move across file systems is put in both queues and runs once it's at the
+ * head of both, so it's ordered with the operations of the source and of the target. At most <code>maxPending</code>
+ * operations wait or run at once, the next ones are rejected.
+ */
+public class AsyncIOServiceImpl implements AsyncIOService {
+
+    private static final Logger logger = LoggerFactory.getLogger( AsyncIOServiceImpl.class );
+
+    public static final int THREADS = Integer.parseInt( System.getProperty( "org.uberfire.io.async.threads", "4" ) );
+    public static final int MAX_PENDING = Integer.parseInt( System.getProperty( "org.uberfire.io.async.max.pending", "1000" ) );
+    public static final long SHUTDOWN_TIMEOUT = Long.parseLong( System.getProperty( "org.uberfire.io.async.shutdown.timeout", "10000" ) );
+
+    static final int SLICE = 16;
+
+    private final IOService service;
+    private final ThreadPoolExecutor executor;
+    private final Semaphore pending;
+    private final long shutdownTimeout;
+    private final Map<String, OrderedQueue> queues = new HashMap<String, OrderedQueue>();
+
+    private static class OrderedQueue {
+
+        private final String key;
+        private final LinkedList<Operation> operations = new LinkedList<Operation>();
+        private boolean scheduled = false;
+
+        OrderedQueue( final String key ) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * A task and the queues it's in. It runs on the thread of the last queue reaching it, the other ones wait for it
+     * without a thread and are handed back once it's done.
+     */
+    private static class Operation {
+
+        private final IOFutureTask<?> task;
+        private final List<OrderedQueue> queues = new ArrayList<OrderedQueue>( 2 );
+        private int arrived = 0;
+        private boolean started = false;
+
+        Operation( final IOFutureTask<?> task ) {
+            this.task = task;
+        }
+    }
+
+    public AsyncIOServiceImpl( final IOService service ) {
+        this( service, THREADS, MAX_PENDING );
+    }
+
+    public AsyncIOServiceImpl( final IOService service,
+                               final int threads,
+                               final int maxPending ) {
+        this( service, threads, maxPending, SHUTDOWN_TIMEOUT );
+    }
+
+    public AsyncIOServiceImpl( final IOService service,
+                               final int threads,
+                               final int maxPending,
+                               final long shutdownTimeout ) {
+        this.service = checkNotNull( "service", service );
+        checkCondition( "threads > 0", threads > 0 );
+        checkCondition( "maxPending > 0", maxPending > 0 );
+        checkCondition( "shutdownTimeout >= 0", shutdownTimeout >= 0 );
+        this.pending = new Semaphore( maxPending );
+        this.shutdownTimeout = shutdownTimeout;
+        //a single drain per file system queue is scheduled at once, so the executor queue is bounded by maxPending too
+        this.executor = new ThreadPoolExecutor( threads, threads, 0L, TimeUnit.MILLISECONDS,
+                                                new LinkedBlockingQueue<Runnable>(),
+                                                new DescriptiveThreadFactory() );
+    }
+
+    @Override
+    public IOFuture<Path> write( final Path path,
+                                 final byte[] bytes,
+                                 final OpenOption... options ) {
+        return submit( path, new Callable<Path>() {
+            @Override
+            public Path call() {
+                return service.write( path, bytes, options );
+            }
+        } );
+    }
+
+    @Override
+    public IOFuture<Path> write( final Path path,
+                                 final byte[] bytes,
+                                 final Map<String, ?> attrs,
+                                 final OpenOption... options ) {
+        return submit( path, new Callable<Path>() {
+            @Override
+            public Path call() {
+                return service.write( path, bytes, attrs, options );
+            }
+        } );
+    }
+
+    @Override
+    public IOFuture<Path> write( final Path path,
+                                 final String content,
+                                 final OpenOption... options ) {
+        return submit( path, new Callable<Path>() {
+            @Override
+            public Path call() {
+                return service.write( path, content, options );
+            }
+        } );
+    }
+
+    @Override
+    public IOFuture<Path> write( final Path path,
+                                 final String content,
+                                 final Charset cs,
+                                 final OpenOption... options ) {
+        return submit( path, new Callable<Path>() {
+            @Override
+            public Path call() {
+                return service.write( path, content, cs, options );
+            }
+        } );
+    }
+
+    @Override
+    public IOFuture<Path> write( final Path path,
+                                 final String content,
+                                 final Map<String, ?> attrs,
+                                 final OpenOption... options ) {
+        return submit( path, new Callable<Path>() {
+            @Override
+            public Path call() {
+                return service.write( path, content, attrs, options );
+            }
+        } );
+    }
+
+    @Override
+    public IOFuture<Void> delete( final Path path,
+                                  final DeleteOption... options ) {
+        return submit( path, new Callable<Void>() {
+            @Override
+            public Void call() {
+                service.delete( path, options );
+                return null;
+            }
+        } );
+    }
+
+    @Override
+    public IOFuture<Boolean> deleteIfExists( final Path path,
+                                             final DeleteOption... options ) {
+        return submit( path, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return service.deleteIfExists( path, options );
+            }
+        } );
+    }
+
+    @Override
+    public IOFuture<Path> copy( final Path source,
+                                final Path target,
+                                final CopyOption... options ) {
+        checkNotNull( "source", source );
+        checkNotNull( "target", target );
+        return enqueue( new IOFutureTask<Path>( new Callable<Path>() {
+            @Override
+            public Path call() {
+                return service.copy( source, target, options );
+            }
+        } ), source.getFileSystem(), target.getFileSystem() );
+    }
+
+    @Override
+    public IOFuture<Path> move( final Path source,
+                                final Path target,
+                                final CopyOption... options ) {
+        checkNotNull( "source", source );
+        checkNotNull( "target", target );
+        return enqueue( new IOFutureTask<Path>( new Callable<Path>() {
+            @Override
+            public Path call() {
+                return service.move( source, target, options );
+            }
+        } ), source.getFileSystem(), target.getFileSystem() );
+    }
+
+    @Override
+    public IOFuture<byte[]> readAllBytes( final Path path ) {
+        return submit( path, new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                return service.readAllBytes( path );
+            }
+        } );
+    }
+
+    @Override
+    public IOFuture<List<String>> readAllLines( final Path path ) {
+        return submit( path, new Callable<List<String>>() {
+            @Override
+            public List<String> call() {
+                return service.readAllLines( path );
+            }
+        } );
+    }
+
+    @Override
+    public IOFuture<String> readAllString( final Path path ) {
+        return submit( path, new Callable<String>() {
+            @Override
+            public String call() {
+                return service.readAllString( path );
+            }
+        } );
+    }
+
+    @Override
+    public IOFuture<String> readAllString( final Path path,
+                                           final Charset cs ) {
+        return submit( path, new Callable<String>() {
+            @Override
+            public String call() {
+                return service.readAllString( path, cs );
+            }
+        } );
+    }
+
+    @Override
+    public IOFuture<Void> batch( final FileSystem fs,
+                                 final Batch batch ) {
+        checkNotNull( "batch", batch );
+        return submit( fs, new Callable<Void>() {
+            @Override
+            public Void call() {
+                service.startBatch( fs );
+                try {
+                    batch.execute( service );
+                } finally {
+                    service.endBatch();
+                }
+                return null;
+            }
+        } );
+    }
+
+    @Override
+    public <T> IOFuture<T> submit( final FileSystem fs,
+                                   final Callable<T> task ) {
+        checkNotNull( "fs", fs );
+        checkNotNull( "task", task );
+        return enqueue( new IOFutureTask<T>( task ), fs );
+    }
+
+    @Override
+    public IOService getService() {
+        return service;
+    }
+
+    /**
+     * @return how many operations are waiting or running
+     */
+    public int getPending() {
+        synchronized ( queues ) {
+            int result = 0;
+            for ( final OrderedQueue queue : queues.values() ) {
+                for ( final Operation operation : queue.operations ) {
+                    //counted once, in its first queue
+                    if ( operation.queues.get( 0 ) == queue ) {
+                        result++;
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Stops taking operations and waits for the pending ones to complete; the service isn't disposed, it's still
+     * available for synchronous calls. Past the shutdown timeout the running operations are interrupted and the ones
+     * that didn't start fail with a {@link RejectedExecutionException}.
+     */
+    @Override
+    public void dispose() {
+        executor.shutdown();
+        try {
+            if ( !executor.awaitTermination( shutdownTimeout, TimeUnit.MILLISECONDS ) ) {
+                logger.warn( "Asynchronous operations still running after {} ms, cancelling them", shutdownTimeout );
+                executor.shutdownNow();
+                failWaiting();
+            }
+        } catch ( final InterruptedException e ) {
+            executor.shutdownNow();
+            failWaiting();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> IOFuture<T> submit( final Path path,
+                                    final Callable<T> task ) {
+        checkNotNull( "path", path );
+        return submit( path.getFileSystem(), task );
+    }
+
+    private <T> IOFuture<T> enqueue( final IOFutureTask<T> task,
+                                     final FileSystem... fileSystems ) {
+        if ( executor.isShutdown() ) {
+            task.fail( new RejectedExecutionException( "Asynchronous IO service is disposed" ) );
+            return task;
+        }
+        if ( !pending.tryAcquire() ) {
+            task.fail( new RejectedExecutionException( "Too many pending asynchronous IO operations" ) );
+            return task;
+        }
+        final Set<String> keys = new TreeSet<String>();
+        for ( final FileSystem fs : fileSystems ) {
+            keys.add( keyOf( checkNotNull( "fs", fs ) ) );
+        }
+        final Operation operation = new Operation( task );
+        synchronized ( queues ) {
+            //queues are only appended to holding the lock: operations sharing queues are in the same order in all of them
+            for ( final String key : keys ) {
+                OrderedQueue queue = queues.get( key );
+                if ( queue == null ) {
+                    queue = new OrderedQueue( key );
+                    queues.put( key, queue );
+                }
+                queue.operations.add( operation );
+                operation.queues.add( queue );
+            }
+            for ( final OrderedQueue queue : operation.queues ) {
+                if ( !queue.scheduled && !schedule( queue ) ) {
+                    for ( final OrderedQueue added : operation.queues ) {
+                        added.operations.removeLastOccurrence( operation );
+                        if ( added.operations.isEmpty() && !added.scheduled ) {
+                            queues.remove( added.key );
+                        }
+                    }
+                    pending.release();
+                    task.fail( new RejectedExecutionException( "Asynchronous IO service is disposed" ) );
+                    break;
+                }
+            }
+        }
+        return task;
+    }
+
+    /**
+     * Hands the queue to a thread, called holding the lock on the queues.
+     * @return false if the executor is shut down
+     */
+    private boolean schedule( final OrderedQueue queue ) {
+        try {
+            executor.execute( new DescriptiveRunnable() {
+                @Override
+                public String getDescription() {
+                    return "Async IO [" + queue.key + "]";
+                }
+
+                @Override
+                public void run() {
+                    drain( queue );
+                }
+            } );
+            queue.scheduled = true;
+            return true;
+        } catch ( final RejectedExecutionException e ) {
+            return false;
+        }
+    }
+
+    /**
+     * Runs the operations of the queue in order, the one running is kept at its head. After a slice, the queue goes
+     * back to the executor (unless it's shutting down, this thread carries on then). An operation also in another
+     * queue not there yet is left to that queue's thread, which hands this queue back once it ran it.
+     */
+    private void drain( final OrderedQueue queue ) {
+        int ran = 0;
+        while ( true ) {
+            final Operation operation;
+            synchronized ( queues ) {
+                if ( queue.operations.isEmpty() ) {
+                    queue.scheduled = false;
+                    queues.remove( queue.key );
+                    return;
+                }
+                if ( ran >= SLICE && !executor.isShutdown() && schedule( queue ) ) {
+                    return;
+                }
+                operation = queue.operations.peek();
+                if ( ++operation.arrived < operation.queues.size() ) {
+                    return;
+                }
+                operation.started = true;
+            }
+            final List<OrderedQueue> resumed = new ArrayList<OrderedQueue>();
+            try {
+                operation.task.run();
+            } finally {
+                synchronized ( queues ) {
+                    for ( final OrderedQueue other : operation.queues ) {
+                        other.operations.poll();
+                        if ( other == queue ) {
+                            continue;
+                        }
+                        if ( other.operations.isEmpty() ) {
+                            other.scheduled = false;
+                            queues.remove( other.key );
+                        } else if ( !schedule( other ) ) {
+                            resumed.add( other );
+                        }
+                    }
+                }
+                pending.release();
+                ran++;
+            }
+            //shutting down, no thread to hand them to
+            for ( final OrderedQueue other : resumed ) {
+                drain( other );
+            }
+        }
+    }
+
+    /**
+     * Fails the operations that didn't start, not the running ones: the ones behind a running operation as well as
+     * the whole queues whose drain the executor dropped, or that wait for another queue.
+     */
+    private void failWaiting() {
+        final List<IOFutureTask<?>> failed = new ArrayList<IOFutureTask<?>>();
+        synchronized ( queues ) {
+            for ( final Iterator<OrderedQueue> queueIterator = queues.values().iterator(); queueIterator.hasNext(); ) {
+                final OrderedQueue queue = queueIterator.next();
+                for ( final Iterator<Operation> iterator = queue.operations.iterator(); iterator.hasNext(); ) {
+                    final Operation operation = iterator.next();
+                    if ( operation.started ) {
+                        continue;
+                    }
+                    iterator.remove();
+                    if ( operation.queues.get( 0 ) == queue ) {
+                        failed.add( operation.task );
+                        pending.release();
+                    }
+                }
+                if ( queue.operations.isEmpty() ) {
+                    queue.scheduled = false;
+                    queueIterator.remove();
+                }
+            }
+        }
+        //outside the lock, failing notifies the callbacks
+        for ( final IOFutureTask<?> task : failed ) {
+            task.fail( new RejectedExecutionException( "Asynchronous IO service disposed before the operation started" ) );
+        }
+    }
+
+    private String keyOf( final FileSystem fs ) {
+        if ( fs instanceof FileSystemId ) {
+            return ( (FileSystemId) fs ).id();
+        }
+        return fs.toString();
+    }
+}
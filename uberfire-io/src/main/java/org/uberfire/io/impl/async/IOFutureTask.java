@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.async;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.uberfire.io.AsyncIOService;
+import org.uberfire.io.IOFuture;
+
+/**
+ * A {@link FutureTask} notifying its callbacks once done.
+ */
+class IOFutureTask<T> extends FutureTask<T> implements IOFuture<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger( IOFutureTask.class );
+
+    private final List<AsyncIOService.Callback<? super T>> callbacks = new ArrayList<AsyncIOService.Callback<? super T>>();
+
+    IOFutureTask( final Callable<T> callable ) {
+        super( callable );
+    }
+
+    @Override
+    public void addCallback( final AsyncIOService.Callback<? super T> callback ) {
+        synchronized ( callbacks ) {
+            if ( !isDone() ) {
+                callbacks.add( callback );
+                return;
+            }
+        }
+        notify( callback );
+    }
+
+    /**
+     * Completes the task with the error, without running it.
+     */
+    void fail( final Throwable cause ) {
+        setException( cause );
+    }
+
+    @Override
+    protected void done() {
+        final List<AsyncIOService.Callback<? super T>> toNotify;
+        synchronized ( callbacks ) {
+            toNotify = new ArrayList<AsyncIOService.Callback<? super T>>( callbacks );
+            callbacks.clear();
+        }
+        for ( final AsyncIOService.Callback<? super T> callback : toNotify ) {
+            notify( callback );
+        }
+    }
+
+    private void notify( final AsyncIOService.Callback<? super T> callback ) {
+        final T result;
+        try {
+            result = get();
+        } catch ( final ExecutionException e ) {
+            notifyFailure( callback, e.getCause() );
+            return;
+        } catch ( final CancellationException e ) {
+            notifyFailure( callback, e );
+            return;
+        } catch ( final InterruptedException e ) {
+            //can't happen, the task is done
+            Thread.currentThread().interrupt();
+            notifyFailure( callback, e );
+            return;
+        }
+        try {
+            callback.onSuccess( result );
+        } catch ( final RuntimeException e ) {
+            logger.error( "Callback failed on success", e );
+        }
+    }
+
+    private void notifyFailure( final AsyncIOService.Callback<? super T> callback,
+                                final Throwable cause ) {
+        try {
+            callback.onFailure( cause );
+        } catch ( final RuntimeException e ) {
+            logger.error( "Callback failed on failure", e );
+        }
+    }
+}
@@ -19,5 +19,5 @@ package org.uberfire.io.impl.cluster;
 import org.uberfire.commons.message.MessageType;
 
 public enum ClusterMessageType implements MessageType {
-    NEW_FS, SYNC_FS, QUERY_FOR_FS, QUERY_FOR_FS_RESULT;
+    NEW_FS, SYNC_FS, QUERY_FOR_FS, QUERY_FOR_FS_RESULT, QUERY_FOR_WRITER, QUERY_FOR_WRITER_RESULT, FORWARD_WRITE, FORWARD_WRITE_RESULT;
 }
@@ -18,10 +18,13 @@ package org.uberfire.io.impl.cluster;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.RunnableFuture;
 
+import org.uberfire.commons.cluster.ClusterService;
 import org.uberfire.commons.cluster.LockExecuteNotifyAsyncReleaseTemplate;
 import org.uberfire.commons.message.MessageType;
 import org.uberfire.java.nio.base.FileSystemId;
+import org.uberfire.java.nio.base.FileSystemRefs;
 import org.uberfire.java.nio.file.FileSystem;
 
 import static org.uberfire.io.impl.cluster.ClusterMessageType.*;
@@ -32,14 +35,83 @@ public class FileSystemSyncLock<V> extends LockExecuteNotifyAsyncReleaseTemplate
     private final String scheme;
     private final String id;
     private final String uri;
+    private final FileSystem fileSystem;
+    private final SyncNotificationBatcher batcher;
 
     public FileSystemSyncLock( final String serviceId,
                                final FileSystem _fileSystem ) {
+        this( serviceId, _fileSystem, null );
+    }
+
+    /**
+     * @param batcher sends the notification once its window closes; null to send it right away
+     */
+    public FileSystemSyncLock( final String serviceId,
+                               final FileSystem _fileSystem,
+                               final SyncNotificationBatcher batcher ) {
         final FileSystem fileSystem = _fileSystem.getRootDirectories().iterator().next().getFileSystem();
         this.serviceId = serviceId;
         this.scheme = fileSystem.getRootDirectories().iterator().next().toUri().getScheme();
         this.id = ( (FileSystemId) fileSystem ).id();
         this.uri = fileSystem.toString();
+        this.fileSystem = fileSystem;
+        this.batcher = batcher;
+    }
+
+    /**
+     * Tips of the branches of the file system, as <code>ref:id</code> entries separated by spaces (which ref names
+     * can't hold); null if the file system doesn't expose them.
+     */
+    static String buildRefs( final FileSystem fileSystem ) {
+        if ( !( fileSystem instanceof FileSystemRefs ) ) {
+            return null;
+        }
+        final StringBuilder result = new StringBuilder();
+        for ( final Map.Entry<String, String> ref : ( (FileSystemRefs) fileSystem ).refs().entrySet() ) {
+            if ( result.length() > 0 ) {
+                result.append( ' ' );
+            }
+            result.append( ref.getKey() ).append( ':' ).append( ref.getValue() );
+        }
+        return result.toString();
+    }
+
+    @Override
+    public V execute( final ClusterService clusterService,
+                      final RunnableFuture<V> task ) {
+        if ( batcher != null ) {
+            batcher.hold( id );
+        }
+        return super.execute( clusterService, task );
+    }
+
+    @Override
+    public void sendMessage( final ClusterService clusterService ) {
+        if ( batcher == null ) {
+            super.sendMessage( clusterService );
+        } else {
+            batcher.notify( this );
+        }
+    }
+
+    /**
+     * Sends the pending notification before the outermost write on this file system releases the lock: a peer taking
+     * it next must already know about these commits.
+     */
+    @Override
+    protected void beforeUnlock( final ClusterService clusterService ) {
+        if ( batcher != null ) {
+            batcher.release( id );
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String[] getLockKeys() {
+        return new String[]{ id };
     }
 
     @Override
@@ -58,6 +130,11 @@ public class FileSystemSyncLock<V> extends LockExecuteNotifyAsyncReleaseTemplate
             put( "fs_scheme", scheme );
             put( "fs_id", id );
             put( "fs_uri", uri );
+            //read once the write is done, peers already holding these tips skip the fetch
+            final String refs = buildRefs( fileSystem );
+            if ( refs != null ) {
+                put( "fs_refs", refs );
+            }
         }};
     }
 }
@@ -34,6 +34,7 @@ public class FileSystemSyncNonLock<V> {
     private final String scheme;
     private final String id;
     private final String uri;
+    private final FileSystem fileSystem;
 
     public FileSystemSyncNonLock( final String serviceId,
                                   final FileSystem _fileSystem ) {
@@ -42,6 +43,7 @@ public class FileSystemSyncNonLock<V> {
         this.scheme = fileSystem.getRootDirectories().iterator().next().toUri().getScheme();
         this.id = ( (FileSystemId) fileSystem ).id();
         this.uri = fileSystem.toString();
+        this.fileSystem = fileSystem;
     }
 
     public MessageType getMessageType() {
@@ -57,6 +59,10 @@ public class FileSystemSyncNonLock<V> {
             put( "fs_scheme", scheme );
             put( "fs_id", id );
             put( "fs_uri", uri );
+            final String refs = FileSystemSyncLock.buildRefs( fileSystem );
+            if ( refs != null ) {
+                put( "fs_refs", refs );
+            }
         }};
     }
 
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Array;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+import org.uberfire.io.IOService;
+import org.uberfire.java.nio.IOException;
+import org.uberfire.java.nio.base.FileSystemId;
+import org.uberfire.java.nio.base.options.CommentedOption;
+import org.uberfire.java.nio.file.CopyOption;
+import org.uberfire.java.nio.file.DeleteOption;
+import org.uberfire.java.nio.file.DirectoryNotEmptyException;
+import org.uberfire.java.nio.file.FileAlreadyExistsException;
+import org.uberfire.java.nio.file.FileSystem;
+import org.uberfire.java.nio.file.NoSuchFileException;
+import org.uberfire.java.nio.file.OpenOption;
+import org.uberfire.java.nio.file.Option;
+import org.uberfire.java.nio.file.Path;
+import org.uberfire.java.nio.file.attribute.FileAttribute;
+
+import static org.uberfire.commons.validation.PortablePreconditions.checkNotNull;
+
+/**
+ * A write of a read replica, carried in a {@link ClusterMessageType#FORWARD_WRITE} message to the writer node, which
+ * runs it as a regular clustered write and replies with the outcome and the file systems to catch up with.
+ * <p>
+ * Options must be enum constants or a {@link CommentedOption}; attribute values must be strings. Content is carried
+ * in the message itself, so it's limited to <code>org.uberfire.cluster.replica.forward.max.bytes</code> (512KB by
+ * default; a ZooKeeper znode holds about 1MB, and the content grows by a third once encoded).
+ */
+public class ForwardedWrite {
+
+    public static final int MAX_BYTES = Integer.parseInt( System.getProperty( "org.uberfire.cluster.replica.forward.max.bytes", "524288" ) );
+
+    public enum Op {
+        WRITE, COPY_STREAM, CREATE_FILE, CREATE_DIRECTORY, CREATE_DIRECTORIES, DELETE, DELETE_IF_EXISTS, COPY, MOVE, SET_ATTRIBUTES
+    }
+
+    private static final String OPTION_PREFIX = "option_";
+    private static final String ATTRIBUTE_PREFIX = "attr_";
+
+    private final Map<String, String> content = new HashMap<String, String>();
+
+    public ForwardedWrite( final Op op,
+                           final Path path ) {
+        checkNotNull( "op", op );
+        checkNotNull( "path", path );
+        content.put( "op", op.name() );
+        content.put( "path", path.toUri().toString() );
+    }
+
+    public ForwardedWrite target( final Path target ) {
+        content.put( "target", target.toUri().toString() );
+        return this;
+    }
+
+    public ForwardedWrite bytes( final byte[] bytes ) {
+        if ( bytes.length > MAX_BYTES ) {
+            throw new IOException( "Content of " + bytes.length + " bytes can't be forwarded to the writer node, the limit is " + MAX_BYTES + " bytes (org.uberfire.cluster.replica.forward.max.bytes)." );
+        }
+        content.put( "bytes", Base64.getEncoder().encodeToString( bytes ) );
+        return this;
+    }
+
+    public ForwardedWrite options( final Option... options ) {
+        if ( options == null ) {
+            return this;
+        }
+        int i = 0;
+        for ( final Option option : options ) {
+            if ( option instanceof CommentedOption ) {
+                final CommentedOption comment = (CommentedOption) option;
+                putIfNotNull( "comment_session", comment.getSessionId() );
+                putIfNotNull( "comment_name", comment.getName() );
+                putIfNotNull( "comment_email", comment.getEmail() );
+                putIfNotNull( "comment_message", comment.getMessage() );
+                if ( comment.getWhen() != null ) {
+                    content.put( "comment_when", String.valueOf( comment.getWhen().getTime() ) );
+                }
+                if ( comment.getTimeZone() != null ) {
+                    content.put( "comment_tz", comment.getTimeZone().getID() );
+                }
+            } else if ( option instanceof Enum ) {
+                content.put( OPTION_PREFIX + i++, option.getClass().getName() + "#" + ( (Enum<?>) option ).name() );
+            } else {
+                throw new UnsupportedOperationException( "Option " + option + " can't be forwarded to the writer node." );
+            }
+        }
+        return this;
+    }
+
+    public ForwardedWrite attributes( final FileAttribute<?>... attrs ) {
+        if ( attrs == null ) {
+            return this;
+        }
+        for ( final FileAttribute<?> attr : attrs ) {
+            attribute( attr.name(), attr.value() );
+        }
+        return this;
+    }
+
+    public ForwardedWrite attributes( final Map<String, ?> attrs ) {
+        if ( attrs == null ) {
+            return this;
+        }
+        for ( final Map.Entry<String, ?> attr : attrs.entrySet() ) {
+            attribute( attr.getKey(), attr.getValue() );
+        }
+        return this;
+    }
+
+    private void attribute( final String name,
+                            final Object value ) {
+        if ( !( value instanceof String ) ) {
+            throw new UnsupportedOperationException( "Attribute '" + name + "' can't be forwarded to the writer node, only string values are supported." );
+        }
+        content.put( ATTRIBUTE_PREFIX + name, (String) value );
+    }
+
+    private void putIfNotNull( final String key,
+                               final String value ) {
+        if ( value != null ) {
+            content.put( key, value );
+        }
+    }
+
+    public Map<String, String> buildContent() {
+        return new HashMap<String, String>( content );
+    }
+
+    /**
+     * Runs a forwarded write on the writer node. The write goes through <code>io</code>, so peers are notified as for
+     * any other write; failures are carried back in the reply instead of being thrown.
+     */
+    static Map<String, String> execute( final IOService io,
+                                        final Map<String, String> content ) {
+        final Map<String, String> result = new HashMap<String, String>();
+        try {
+            final Path path = io.get( URI.create( content.get( "path" ) ) );
+            final Path target = content.containsKey( "target" ) ? io.get( URI.create( content.get( "target" ) ) ) : null;
+            final List<Option> options = decodeOptions( content );
+            final FileAttribute<?>[] attrs = io.convert( decodeAttributes( content ) );
+
+            switch ( Op.valueOf( content.get( "op" ) ) ) {
+                case WRITE:
+                    io.write( path, decodeBytes( content ), filter( options, OpenOption.class ), attrs );
+                    break;
+                case COPY_STREAM:
+                    result.put( "result", String.valueOf( io.copy( new ByteArrayInputStream( decodeBytes( content ) ), path, toArray( filter( options, CopyOption.class ), CopyOption.class ) ) ) );
+                    break;
+                case CREATE_FILE:
+                    io.createFile( path, attrs );
+                    break;
+                case CREATE_DIRECTORY:
+                    io.createDirectory( path, attrs );
+                    break;
+                case CREATE_DIRECTORIES:
+                    io.createDirectories( path, attrs );
+                    break;
+                case DELETE:
+                    io.delete( path, toArray( filter( options, DeleteOption.class ), DeleteOption.class ) );
+                    break;
+                case DELETE_IF_EXISTS:
+                    result.put( "result", String.valueOf( io.deleteIfExists( path, toArray( filter( options, DeleteOption.class ), DeleteOption.class ) ) ) );
+                    break;
+                case COPY:
+                    io.copy( path, target, toArray( filter( options, CopyOption.class ), CopyOption.class ) );
+                    break;
+                case MOVE:
+                    io.move( path, target, toArray( filter( options, CopyOption.class ), CopyOption.class ) );
+                    break;
+                case SET_ATTRIBUTES:
+                    io.setAttributes( path, attrs );
+                    break;
+            }
+
+            final Set<FileSystem> fileSystems = new LinkedHashSet<FileSystem>();
+            fileSystems.add( path.getFileSystem() );
+            if ( target != null ) {
+                fileSystems.add( target.getFileSystem() );
+            }
+            int i = 0;
+            for ( final FileSystem _fs : fileSystems ) {
+                final FileSystem fs = _fs.getRootDirectories().iterator().next().getFileSystem();
+                if ( !( fs instanceof FileSystemId ) ) {
+                    continue;
+                }
+                result.put( "fs_scheme_" + i, fs.getRootDirectories().iterator().next().toUri().getScheme() );
+                result.put( "fs_id_" + i, ( (FileSystemId) fs ).id() );
+                result.put( "fs_uri_" + i, fs.toString() );
+                final String refs = FileSystemSyncLock.buildRefs( fs );
+                if ( refs != null ) {
+                    result.put( "fs_refs_" + i, refs );
+                }
+                i++;
+            }
+        } catch ( final Exception e ) {
+            result.put( "error_type", e.getClass().getName() );
+            if ( e.getMessage() != null ) {
+                result.put( "error", e.getMessage() );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Throws the failure carried by the reply of the writer node, if any, as the closest exception type.
+     */
+    static void rethrow( final Map<String, String> result ) {
+        final String type = result.get( "error_type" );
+        if ( type == null ) {
+            return;
+        }
+        final String message = result.get( "error" );
+        if ( type.equals( NoSuchFileException.class.getName() ) ) {
+            throw new NoSuchFileException( message );
+        } else if ( type.equals( FileAlreadyExistsException.class.getName() ) ) {
+            throw new FileAlreadyExistsException( message );
+        } else if ( type.equals( DirectoryNotEmptyException.class.getName() ) ) {
+            throw new DirectoryNotEmptyException( message );
+        } else if ( type.equals( UnsupportedOperationException.class.getName() ) ) {
+            throw new UnsupportedOperationException( message );
+        } else if ( type.equals( IllegalArgumentException.class.getName() ) ) {
+            throw new IllegalArgumentException( message );
+        }
+        throw new IOException( "Forwarded write failed on the writer node with " + type + ": " + message );
+    }
+
+    /**
+     * @return the sync content, as carried by {@link ClusterMessageType#SYNC_FS}, of each file system the write touched
+     */
+    static List<Map<String, String>> fileSystems( final Map<String, String> result ) {
+        final List<Map<String, String>> fileSystems = new ArrayList<Map<String, String>>();
+        for ( int i = 0; result.containsKey( "fs_id_" + i ); i++ ) {
+            final Map<String, String> fs = new HashMap<String, String>();
+            fs.put( "fs_scheme", result.get( "fs_scheme_" + i ) );
+            fs.put( "fs_id", result.get( "fs_id_" + i ) );
+            fs.put( "fs_uri", result.get( "fs_uri_" + i ) );
+            if ( result.containsKey( "fs_refs_" + i ) ) {
+                fs.put( "fs_refs", result.get( "fs_refs_" + i ) );
+            }
+            fileSystems.add( fs );
+        }
+        return fileSystems;
+    }
+
+    private static byte[] decodeBytes( final Map<String, String> content ) {
+        final String bytes = content.get( "bytes" );
+        return bytes == null ? new byte[ 0 ] : Base64.getDecoder().decode( bytes );
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Option> decodeOptions( final Map<String, String> content ) throws ClassNotFoundException {
+        final List<Option> options = new ArrayList<Option>();
+        for ( int i = 0; content.containsKey( OPTION_PREFIX + i ); i++ ) {
+            final String option = content.get( OPTION_PREFIX + i );
+            final int index = option.indexOf( '#' );
+            final Class enumType = Class.forName( option.substring( 0, index ) );
+            options.add( (Option) Enum.valueOf( enumType, option.substring( index + 1 ) ) );
+        }
+        if ( content.containsKey( "comment_name" ) ) {
+            options.add( new CommentedOption( content.get( "comment_session" ),
+                                              content.get( "comment_name" ),
+                                              content.get( "comment_email" ),
+                                              content.get( "comment_message" ),
+                                              content.containsKey( "comment_when" ) ? new Date( Long.parseLong( content.get( "comment_when" ) ) ) : null,
+                                              content.containsKey( "comment_tz" ) ? TimeZone.getTimeZone( content.get( "comment_tz" ) ) : null ) );
+        }
+        return options;
+    }
+
+    private static Map<String, Object> decodeAttributes( final Map<String, String> content ) {
+        final Map<String, Object> attrs = new HashMap<String, Object>();
+        for ( final Map.Entry<String, String> entry : content.entrySet() ) {
+            if ( entry.getKey().startsWith( ATTRIBUTE_PREFIX ) ) {
+                attrs.put( entry.getKey().substring( ATTRIBUTE_PREFIX.length() ), entry.getValue() );
+            }
+        }
+        return attrs;
+    }
+
+    private static <T> Set<T> filter( final List<Option> options,
+                                      final Class<T> type ) {
+        final Set<T> result = new HashSet<T>();
+        for ( final Option option : options ) {
+            if ( type.isInstance( option ) ) {
+                result.add( type.cast( option ) );
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T[] toArray( final Set<T> options,
+                                    final Class<T> type ) {
+        return options.toArray( (T[]) Array.newInstance( type, options.size() ) );
+    }
+}
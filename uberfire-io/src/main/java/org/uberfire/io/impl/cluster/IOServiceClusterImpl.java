@@ -24,29 +24,39 @@ import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.uberfire.commons.async.DescriptiveRunnable;
-import org.uberfire.commons.async.SimpleAsyncExecutorService;
+import org.uberfire.commons.async.DescriptiveThreadFactory;
 import org.uberfire.commons.cluster.ClusterService;
 import org.uberfire.commons.cluster.ClusterServiceFactory;
 import org.uberfire.commons.cluster.LockExecuteNotifySyncReleaseTemplate;
 import org.uberfire.commons.data.Pair;
 import org.uberfire.commons.lifecycle.PriorityDisposableRegistry;
-import org.uberfire.commons.lock.LockExecuteReleaseTemplate;
 import org.uberfire.commons.message.AsyncCallback;
 import org.uberfire.commons.message.MessageHandler;
 import org.uberfire.commons.message.MessageHandlerResolver;
@@ -55,9 +65,11 @@ import org.uberfire.io.IOService;
 import org.uberfire.io.impl.IOServiceLockable;
 import org.uberfire.java.nio.IOException;
 import org.uberfire.java.nio.base.FileSystemId;
+import org.uberfire.java.nio.base.FileSystemRefs;
 import org.uberfire.java.nio.base.FileSystemState;
 import org.uberfire.java.nio.base.FileSystemStateAware;
 import org.uberfire.java.nio.base.SeekableByteChannelWrapperImpl;
+import org.uberfire.java.nio.base.query.ResultPage;
 import org.uberfire.java.nio.channels.SeekableByteChannel;
 import org.uberfire.java.nio.file.AtomicMoveNotSupportedException;
 import org.uberfire.java.nio.file.CopyOption;
@@ -86,10 +98,27 @@ public class IOServiceClusterImpl implements IOService {
 
     private static final Logger logger = LoggerFactory.getLogger( IOServiceClusterImpl.class );
 
+    public static final int BOOTSTRAP_THREADS = Integer.parseInt( System.getProperty( "org.uberfire.cluster.bootstrap.threads", "4" ) );
+
     protected IOServiceLockable service;
     protected ClusterService clusterService;
+    protected SyncNotificationBatcher notificationBatcher;
+    final SyncFileSystemMessageHandler syncFs = new SyncFileSystemMessageHandler();
+
+    //identifies the node in forwarded writes, the instance name of the cluster service isn't exposed
+    protected final String nodeId = UUID.randomUUID().toString();
+
+    private final AtomicInteger bootstrapTotal = new AtomicInteger();
+    private final AtomicInteger bootstrapDone = new AtomicInteger();
 
-    protected final Set<String> batchFileSystems = Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
+    //file systems of each (nested) startBatch of the thread: their keys are released by the matching endBatch, and
+    //they are synced once the outermost batch ends
+    private final ThreadLocal<Deque<BatchFrame>> batchFrames = new ThreadLocal<Deque<BatchFrame>>() {
+        @Override
+        protected Deque<BatchFrame> initialValue() {
+            return new ArrayDeque<BatchFrame>();
+        }
+    };
 
     private NewFileSystemListener newFileSystemListener = null;
 
@@ -111,8 +140,8 @@ public class IOServiceClusterImpl implements IOService {
         this.clusterService = clusterServiceFactory.build( new MessageHandlerResolver() {
 
             final MessageHandler newFs = new NewFileSystemMessageHandler();
-            final MessageHandler syncFs = new SyncFileSystemMessageHandler();
             final MessageHandler queryFs = new QueryFileSystemMessageHandler();
+            final MessageHandler writer = new WriterMessageHandler();
 
             @Override
             public String getServiceId() {
@@ -130,99 +159,152 @@ public class IOServiceClusterImpl implements IOService {
                         return syncFs;
                     } else if ( QUERY_FOR_FS.equals( type ) ) {
                         return queryFs;
+                    } else if ( QUERY_FOR_WRITER.equals( type ) || FORWARD_WRITE.equals( type ) ) {
+                        return writer;
                     }
                 }
 
                 return null;
             }
         } );
+        this.notificationBatcher = new SyncNotificationBatcher( clusterService );
 
         PriorityDisposableRegistry.register( this );
 
         start();
     }
 
+    /**
+     * Joins the cluster: asks a member for the file systems it holds, without any lock, and then creates and syncs
+     * them on a bounded pool (<code>org.uberfire.cluster.bootstrap.threads</code>), each one under its own cluster
+     * lock, so writes on other file systems go on meanwhile.
+     */
     private void start() {
         logger.debug( "Starting IO Cluster service {}", this );
-        //New cluster members are executed within locked
-        new LockExecuteReleaseTemplate<Void>().execute( clusterService, new FutureTask<Void>( new Callable<Void>() {
-            @Override
-            public Void call() throws Exception {
 
-                // 10 seconds
-                int timeout = 10000;
-                final AtomicBoolean msgAnsweredOrTimedout = new AtomicBoolean( false );
-                final AtomicBoolean onSync = new AtomicBoolean( false );
-
-                final Map<Integer, FileSystemInfo> fileSystems = new HashMap<Integer, FileSystemInfo>();
+        final List<FileSystemInfo> fileSystems = queryFileSystems();
+        if ( fileSystems.isEmpty() ) {
+            return;
+        }
 
-                clusterService.broadcastAndWait( service.getId(), QUERY_FOR_FS, Collections.<String, String>emptyMap(), timeout, new AsyncCallback() {
+        bootstrapTotal.set( fileSystems.size() );
+        final ExecutorService executor = Executors.newFixedThreadPool( Math.min( BOOTSTRAP_THREADS, fileSystems.size() ), new DescriptiveThreadFactory() );
+        try {
+            final List<Future<?>> futures = new ArrayList<Future<?>>( fileSystems.size() );
+            for ( final FileSystemInfo fileSystemInfo : fileSystems ) {
+                futures.add( executor.submit( new DescriptiveRunnable() {
                     @Override
-                    public void onTimeOut() {
-                        msgAnsweredOrTimedout.set( true );
+                    public String getDescription() {
+                        return "Cluster Bootstrap [" + service.getId() + "/" + fileSystemInfo.getId() + "]";
                     }
 
                     @Override
-                    public void onReply( final MessageType type,
-                                         final Map<String, String> content ) {
-                        if ( msgAnsweredOrTimedout.get() || onSync.get() ) {
-                            return;
-                        }
+                    public void run() {
+                        bootstrap( fileSystemInfo );
+                    }
+                } ) );
+            }
+            for ( final Future<?> future : futures ) {
+                try {
+                    future.get();
+                } catch ( final InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch ( final ExecutionException e ) {
+                    logger.error( "Cluster bootstrap error", e.getCause() );
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-                        onSync.set( true );
+    private List<FileSystemInfo> queryFileSystems() {
+        // 10 seconds
+        final int timeout = 10000;
+        final CountDownLatch answeredOrTimedOut = new CountDownLatch( 1 );
+        final List<FileSystemInfo> result = new ArrayList<FileSystemInfo>();
 
-                        SimpleAsyncExecutorService.getUnmanagedInstance().execute( new DescriptiveRunnable() {
-                            @Override
-                            public String getDescription() {
-                                return "Cluster Messaging Reply [" + service.getId() + "/QUERY_FOR_FS]";
-                            }
+        clusterService.broadcastAndWait( service.getId(), QUERY_FOR_FS, Collections.<String, String>emptyMap(), timeout, new AsyncCallback() {
+            @Override
+            public void onTimeOut() {
+                answeredOrTimedOut.countDown();
+            }
 
-                            @Override
-                            public void run() {
-                                for ( final Map.Entry<String, String> entry : content.entrySet() ) {
-                                    if ( entry.getKey().startsWith( "fs_" ) ) {
-                                        int index = Integer.valueOf( entry.getKey().substring( entry.getKey().lastIndexOf( "_" ) + 1 ) );
-                                        if ( !fileSystems.containsKey( index ) ) {
-                                            fileSystems.put( index, new FileSystemInfo() );
-                                        }
-                                        final FileSystemInfo fsInfo = fileSystems.get( index );
-                                        if ( entry.getKey().startsWith( "fs_id_" ) ) {
-                                            fsInfo.setId( entry.getValue() );
-                                        } else if ( entry.getKey().startsWith( "fs_scheme_" ) ) {
-                                            fsInfo.setScheme( entry.getValue() );
-                                        } else if ( entry.getKey().startsWith( "fs_uri_" ) ) {
-                                            fsInfo.setUri( entry.getValue() );
-                                        }
-                                    }
-                                }
-
-                                for ( final FileSystemInfo fileSystemInfo : new HashSet<FileSystemInfo>( fileSystems.values() ) ) {
-                                    try {
-                                        final URI newFS = URI.create( fileSystemInfo.getScheme() + "://" + fileSystemInfo.getId() );
-                                        service.newFileSystem( newFS, Collections.<String, Object>emptyMap() );
-                                    } catch ( FileSystemAlreadyExistsException ex ) {
-                                    }
-
-                                    final URI fs = URI.create( fileSystemInfo.getScheme() + "://" + fileSystemInfo.getId() + "?sync=" + fileSystemInfo.getUri().split( "\n" )[ 0 ] + "&force" );
-                                    service.getFileSystem( fs );
-                                }
-
-                                msgAnsweredOrTimedout.set( true );
-                            }
-                        } );
+            @Override
+            public void onReply( final MessageType type,
+                                 final Map<String, String> content ) {
+                synchronized ( result ) {
+                    if ( answeredOrTimedOut.getCount() == 0 ) {
+                        return;
                     }
-                } );
-
-                while ( !msgAnsweredOrTimedout.get() ) {
-                    try {
-                        Thread.sleep( 100 );
-                    } catch ( InterruptedException ignored ) {
+                    final Map<Integer, FileSystemInfo> fileSystems = new HashMap<Integer, FileSystemInfo>();
+                    for ( final Map.Entry<String, String> entry : content.entrySet() ) {
+                        if ( entry.getKey().startsWith( "fs_" ) ) {
+                            int index = Integer.valueOf( entry.getKey().substring( entry.getKey().lastIndexOf( "_" ) + 1 ) );
+                            if ( !fileSystems.containsKey( index ) ) {
+                                fileSystems.put( index, new FileSystemInfo() );
+                            }
+                            final FileSystemInfo fsInfo = fileSystems.get( index );
+                            if ( entry.getKey().startsWith( "fs_id_" ) ) {
+                                fsInfo.setId( entry.getValue() );
+                            } else if ( entry.getKey().startsWith( "fs_scheme_" ) ) {
+                                fsInfo.setScheme( entry.getValue() );
+                            } else if ( entry.getKey().startsWith( "fs_uri_" ) ) {
+                                fsInfo.setUri( entry.getValue() );
+                            }
+                        }
                     }
+                    result.addAll( fileSystems.values() );
+                    answeredOrTimedOut.countDown();
                 }
+            }
+        } );
 
-                return null;
+        try {
+            answeredOrTimedOut.await( timeout, TimeUnit.MILLISECONDS );
+        } catch ( final InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized ( result ) {
+            //late replies are ignored from now on
+            answeredOrTimedOut.countDown();
+            return new ArrayList<FileSystemInfo>( result );
+        }
+    }
+
+    private void bootstrap( final FileSystemInfo fileSystemInfo ) {
+        final long start = System.currentTimeMillis();
+        clusterService.lock( fileSystemInfo.getId() );
+        try {
+            try {
+                final URI newFS = URI.create( fileSystemInfo.getScheme() + "://" + fileSystemInfo.getId() );
+                service.newFileSystem( newFS, Collections.<String, Object>emptyMap() );
+            } catch ( FileSystemAlreadyExistsException ex ) {
             }
-        } ) );
+
+            final URI fs = URI.create( fileSystemInfo.getScheme() + "://" + fileSystemInfo.getId() + "?sync=" + fileSystemInfo.getUri().split( "\n" )[ 0 ] + "&force" );
+            service.getFileSystem( fs );
+        } finally {
+            clusterService.unlock( fileSystemInfo.getId() );
+        }
+        logger.info( "Cluster bootstrap: file system '{}' synced in {}ms, {} of {} done.",
+                     fileSystemInfo.getId(), System.currentTimeMillis() - start, bootstrapDone.incrementAndGet(), bootstrapTotal.get() );
+    }
+
+    /**
+     * @return how many file systems the node had to sync when joining the cluster
+     */
+    public int getBootstrapTotal() {
+        return bootstrapTotal.get();
+    }
+
+    /**
+     * @return how many of them are synced already
+     */
+    public int getBootstrapDone() {
+        return bootstrapDone.get();
     }
 
     @Override
@@ -233,71 +315,87 @@ public class IOServiceClusterImpl implements IOService {
     @Override
     public void startBatch( FileSystem[] fs,
                             final Option... options ) {
-        clusterService.lock();
-        for ( final FileSystem _f : fs ) {
-            final FileSystem f = _f.getRootDirectories().iterator().next().getFileSystem();
-            if ( f instanceof FileSystemId ) {
-                batchFileSystems.add( ( (FileSystemId) f ).id() );
-            }
-        }
         service.startBatch( fs, options );
+        lockBatch( fs );
     }
 
     @Override
     public void startBatch( final FileSystem _fs,
                             final Option... options ) {
-        clusterService.lock();
         final FileSystem fs = _fs.getRootDirectories().iterator().next().getFileSystem();
-        if ( fs instanceof FileSystemId ) {
-            batchFileSystems.add( ( (FileSystemId) fs ).id() );
-        }
-
         service.startBatch( fs, options );
+        lockBatch( fs );
     }
 
     @Override
     public void startBatch( final FileSystem... fs ) {
-        clusterService.lock();
+        service.startBatch( fs );
+        lockBatch( fs );
+    }
+
+    /**
+     * Locks only the file systems of the batch, so batches (and writes) on other file systems go on meanwhile. The
+     * cluster keys are taken once the service batch lock is held, the order every batch takes them in.
+     */
+    private void lockBatch( final FileSystem... fs ) {
+        final List<String> ids = new ArrayList<String>();
         for ( final FileSystem _f : fs ) {
             final FileSystem f = _f.getRootDirectories().iterator().next().getFileSystem();
             if ( f instanceof FileSystemId ) {
-                batchFileSystems.add( ( (FileSystemId) f ).id() );
+                ids.add( ( (FileSystemId) f ).id() );
             }
         }
-        service.startBatch( fs );
+        final String[] keys = ids.toArray( new String[ ids.size() ] );
+        try {
+            clusterService.lock( keys );
+        } catch ( final RuntimeException ex ) {
+            service.endBatch();
+            throw ex;
+        }
+        batchFrames.get().push( new BatchFrame( keys ) );
+    }
+
+    /**
+     * @return ids of the file systems in the batch of the current thread
+     */
+    Set<String> batchFileSystems() {
+        final Set<String> result = new HashSet<String>();
+        for ( final BatchFrame frame : batchFrames.get() ) {
+            result.addAll( frame.fileSystems );
+        }
+        return result;
     }
 
     @Override
     public void endBatch() {
         service.endBatch();
-        if ( service.getLockControl().getHoldCount() == 0 ) {
-            final AtomicInteger process = new AtomicInteger( batchFileSystems.size() );
+        final Deque<BatchFrame> frames = batchFrames.get();
+        final BatchFrame frame = frames.pop();
+        if ( service.getLockControl().getHoldCount() > 0 && !frames.isEmpty() ) {
+            //nested batch, its file systems are synced with the outermost one
+            frames.peek().fileSystems.addAll( frame.fileSystems );
+            clusterService.unlock( frame.keys );
+            return;
+        }
 
+        try {
             for ( final FileSystem _fs : service.getFileSystems() ) {
                 final FileSystem fs = _fs.getRootDirectories().iterator().next().getFileSystem();
                 if ( fs instanceof FileSystemId &&
-                        batchFileSystems.contains( ( (FileSystemId) fs ).id() ) ) {
+                        frame.fileSystems.contains( ( (FileSystemId) fs ).id() ) ) {
+                    //the end of batch message below carries every change already
+                    if ( notificationBatcher != null ) {
+                        notificationBatcher.discard( ( (FileSystemId) fs ).id() );
+                    }
                     try {
-                        new FileSystemSyncNonLock<Void>( service.getId(), fs ).execute( clusterService, new FutureTask<Void>( new Callable<Void>() {
-                            @Override
-                            public Void call() throws Exception {
-                                if ( process.decrementAndGet() == 0 ) {
-                                    clusterService.unlock();
-                                }
-                                return null;
-                            }
-                        } ) );
+                        new FileSystemSyncNonLock<Void>( service.getId(), fs ).sendMessage( clusterService );
                     } catch ( Exception ex ) {
                         logger.error( "End batch error", ex );
-                        if ( process.decrementAndGet() == 0 ) {
-                            clusterService.unlock();
-                        }
                     }
                 }
             }
-            batchFileSystems.clear();
-        } else {
-            clusterService.unlock();
+        } finally {
+            clusterService.unlock( frame.keys );
         }
     }
 
@@ -399,7 +497,7 @@ public class IOServiceClusterImpl implements IOService {
             return service.createFile( path, attrs );
         }
 
-        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem(), notificationBatcher ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.createFile( path, attrs );
@@ -414,7 +512,7 @@ public class IOServiceClusterImpl implements IOService {
             return service.createDirectory( dir, attrs );
         }
 
-        return new FileSystemSyncLock<Path>( service.getId(), dir.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( service.getId(), dir.getFileSystem(), notificationBatcher ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.createDirectory( dir, attrs );
@@ -429,7 +527,7 @@ public class IOServiceClusterImpl implements IOService {
             return service.createDirectories( dir, attrs );
         }
 
-        return new FileSystemSyncLock<Path>( service.getId(), dir.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( service.getId(), dir.getFileSystem(), notificationBatcher ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.createDirectories( dir, attrs );
@@ -444,7 +542,7 @@ public class IOServiceClusterImpl implements IOService {
             return service.createDirectory( dir, attrs );
         }
 
-        return new FileSystemSyncLock<Path>( service.getId(), dir.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( service.getId(), dir.getFileSystem(), notificationBatcher ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.createDirectory( dir, attrs );
@@ -459,7 +557,7 @@ public class IOServiceClusterImpl implements IOService {
             return service.createDirectories( dir, attrs );
         }
 
-        return new FileSystemSyncLock<Path>( service.getId(), dir.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( service.getId(), dir.getFileSystem(), notificationBatcher ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.createDirectories( dir, attrs );
@@ -473,7 +571,7 @@ public class IOServiceClusterImpl implements IOService {
         if ( isBatch( path.getFileSystem() ) ) {
             service.delete( path, options );
         } else {
-            new FileSystemSyncLock<Void>( service.getId(), path.getFileSystem() ).execute( clusterService, new FutureTask<Void>( new Callable<Void>() {
+            new FileSystemSyncLock<Void>( service.getId(), path.getFileSystem(), notificationBatcher ).execute( clusterService, new FutureTask<Void>( new Callable<Void>() {
                 @Override
                 public Void call() throws Exception {
                     service.delete( path, options );
@@ -489,7 +587,7 @@ public class IOServiceClusterImpl implements IOService {
         if ( isBatch( path.getFileSystem() ) ) {
             return service.deleteIfExists( path, options );
         }
-        return new FileSystemSyncLock<Boolean>( service.getId(), path.getFileSystem() ).execute( clusterService, new FutureTask<Boolean>( new Callable<Boolean>() {
+        return new FileSystemSyncLock<Boolean>( service.getId(), path.getFileSystem(), notificationBatcher ).execute( clusterService, new FutureTask<Boolean>( new Callable<Boolean>() {
             @Override
             public Boolean call() throws Exception {
                 return service.deleteIfExists( path, options );
@@ -533,7 +631,7 @@ public class IOServiceClusterImpl implements IOService {
             return service.copy( source, target, options );
         }
 
-        return new FileSystemSyncLock<Path>( service.getId(), target.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( service.getId(), target.getFileSystem(), notificationBatcher ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.copy( source, target, options );
@@ -549,7 +647,7 @@ public class IOServiceClusterImpl implements IOService {
             return service.copy( in, target, options );
         }
 
-        return new FileSystemSyncLock<Long>( service.getId(), target.getFileSystem() ).execute( clusterService, new FutureTask<Long>( new Callable<Long>() {
+        return new FileSystemSyncLock<Long>( service.getId(), target.getFileSystem(), notificationBatcher ).execute( clusterService, new FutureTask<Long>( new Callable<Long>() {
             @Override
             public Long call() throws Exception {
                 return service.copy( in, target, options );
@@ -571,17 +669,27 @@ public class IOServiceClusterImpl implements IOService {
             return service.move( source, target, options );
         }
 
-        return new FileSystemSyncLock<Path>( service.getId(), source.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
-            @Override
-            public Path call() throws Exception {
-                return new FileSystemSyncLock<Path>( service.getId(), target.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
-                    @Override
-                    public Path call() throws Exception {
-                        return service.move( source, target, options );
-                    }
-                } ) );
-            }
-        } ) );
+        final FileSystemSyncLock<Path> sourceLock = new FileSystemSyncLock<Path>( service.getId(), source.getFileSystem(), notificationBatcher );
+        final FileSystemSyncLock<Path> targetLock = new FileSystemSyncLock<Path>( service.getId(), target.getFileSystem(), notificationBatcher );
+
+        //both file systems are locked upfront, in the cluster service order, so crossed moves can't deadlock
+        final String[] keys = { sourceLock.getLockKeys()[ 0 ], targetLock.getLockKeys()[ 0 ] };
+        clusterService.lock( keys );
+        try {
+            return sourceLock.execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+                @Override
+                public Path call() throws Exception {
+                    return targetLock.execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+                        @Override
+                        public Path call() throws Exception {
+                            return service.move( source, target, options );
+                        }
+                    } ) );
+                }
+            } ) );
+        } finally {
+            clusterService.unlock( keys );
+        }
     }
 
     @Override
@@ -608,7 +716,7 @@ public class IOServiceClusterImpl implements IOService {
             return service.setAttributes( path, attrs );
         }
 
-        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem(), notificationBatcher ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.setAttributes( path, attrs );
@@ -623,7 +731,7 @@ public class IOServiceClusterImpl implements IOService {
             return service.setAttributes( path, attrs );
         }
 
-        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem(), notificationBatcher ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.setAttributes( path, attrs );
@@ -639,7 +747,7 @@ public class IOServiceClusterImpl implements IOService {
             return service.setAttribute( path, attribute, value );
         }
 
-        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem(), notificationBatcher ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.setAttribute( path, attribute, value );
@@ -720,7 +828,7 @@ public class IOServiceClusterImpl implements IOService {
             return service.write( path, bytes, options );
         }
 
-        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem(), notificationBatcher ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.write( path, bytes, options );
@@ -737,7 +845,7 @@ public class IOServiceClusterImpl implements IOService {
             return service.write( path, bytes, attrs, options );
         }
 
-        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem(), notificationBatcher ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.write( path, bytes, attrs, options );
@@ -754,7 +862,7 @@ public class IOServiceClusterImpl implements IOService {
             return service.write( path, bytes, options, attrs );
         }
 
-        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem(), notificationBatcher ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.write( path, bytes, options, attrs );
@@ -771,7 +879,7 @@ public class IOServiceClusterImpl implements IOService {
             return service.write( path, lines, cs, options );
         }
 
-        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem(), notificationBatcher ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.write( path, lines, cs, options );
@@ -787,7 +895,7 @@ public class IOServiceClusterImpl implements IOService {
             return service.write( path, content, options );
         }
 
-        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem(), notificationBatcher ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.write( path, content, options );
@@ -804,7 +912,7 @@ public class IOServiceClusterImpl implements IOService {
             return service.write( path, content, cs, options );
         }
 
-        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem(), notificationBatcher ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.write( path, content, cs, options );
@@ -821,7 +929,7 @@ public class IOServiceClusterImpl implements IOService {
             return service.write( path, content, options, attrs );
         }
 
-        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem(), notificationBatcher ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.write( path, content, options, attrs );
@@ -839,7 +947,7 @@ public class IOServiceClusterImpl implements IOService {
             return service.write( path, content, cs, options, attrs );
         }
 
-        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem(), notificationBatcher ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.write( path, content, cs, options, attrs );
@@ -856,7 +964,7 @@ public class IOServiceClusterImpl implements IOService {
             return service.write( path, content, attrs, options );
         }
 
-        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem(), notificationBatcher ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.write( path, content, attrs, options );
@@ -874,7 +982,7 @@ public class IOServiceClusterImpl implements IOService {
             return service.write( path, content, cs, attrs, options );
         }
 
-        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( service.getId(), path.getFileSystem(), notificationBatcher ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.write( path, content, cs, attrs, options );
@@ -897,7 +1005,7 @@ public class IOServiceClusterImpl implements IOService {
                 if ( isBatch( path.getFileSystem() ) ) {
                     out.close();
                 } else {
-                    new FileSystemSyncLock<Void>( service.getId(), path.getFileSystem() ).execute( clusterService, new FutureTask<Void>( new Callable<Void>() {
+                    new FileSystemSyncLock<Void>( service.getId(), path.getFileSystem(), notificationBatcher ).execute( clusterService, new FutureTask<Void>( new Callable<Void>() {
                         @Override
                         public Void call() throws Exception {
                             out.close();
@@ -920,7 +1028,7 @@ public class IOServiceClusterImpl implements IOService {
                 if ( isBatch( path.getFileSystem() ) ) {
                     sbc.close();
                 } else {
-                    new FileSystemSyncLock<Void>( service.getId(), path.getFileSystem() ).execute( clusterService, new FutureTask<Void>( new Callable<Void>() {
+                    new FileSystemSyncLock<Void>( service.getId(), path.getFileSystem(), notificationBatcher ).execute( clusterService, new FutureTask<Void>( new Callable<Void>() {
                         @Override
                         public Void call() throws Exception {
                             sbc.close();
@@ -944,7 +1052,7 @@ public class IOServiceClusterImpl implements IOService {
                 if ( isBatch( path.getFileSystem() ) ) {
                     sbc.close();
                 } else {
-                    new FileSystemSyncLock<Void>( service.getId(), path.getFileSystem() ).execute( clusterService, new FutureTask<Void>( new Callable<Void>() {
+                    new FileSystemSyncLock<Void>( service.getId(), path.getFileSystem(), notificationBatcher ).execute( clusterService, new FutureTask<Void>( new Callable<Void>() {
                         @Override
                         public Void call() throws Exception {
                             sbc.close();
@@ -966,7 +1074,7 @@ public class IOServiceClusterImpl implements IOService {
                 if ( isBatch( path.getFileSystem() ) ) {
                     superClose();
                 } else {
-                    new FileSystemSyncLock<Void>( service.getId(), path.getFileSystem() ).execute( clusterService, new FutureTask<Void>( new Callable<Void>() {
+                    new FileSystemSyncLock<Void>( service.getId(), path.getFileSystem(), notificationBatcher ).execute( clusterService, new FutureTask<Void>( new Callable<Void>() {
                         @Override
                         public Void call() throws Exception {
                             superClose();
@@ -986,20 +1094,92 @@ public class IOServiceClusterImpl implements IOService {
         };
     }
 
+    @Override
+    public ResultPage<Path> queryByAttribute( final Path root,
+                                              final String attribute,
+                                              final String value,
+                                              final int offset,
+                                              final int pageSize ) throws UnsupportedOperationException, IllegalArgumentException {
+        return service.queryByAttribute( root, attribute, value, offset, pageSize );
+    }
+
+    @Override
+    public void rebuildAttributeIndex( final Path root ) throws UnsupportedOperationException, IllegalArgumentException {
+        service.rebuildAttributeIndex( root );
+    }
+
+    @Override
+    public ResultPage<Path> queryByGlob( final Path root,
+                                         final String glob,
+                                         final int offset,
+                                         final int pageSize ) throws UnsupportedOperationException, IllegalArgumentException {
+        return service.queryByGlob( root, glob, offset, pageSize );
+    }
+
+    @Override
+    public Path snapshot( final FileSystem fs,
+                          final String branchName ) throws UnsupportedOperationException, IllegalArgumentException, NoSuchFileException {
+        return service.snapshot( fs, branchName );
+    }
+
     private boolean isBatch( final FileSystem fs ) {
         return fs instanceof FileSystemStateAware && ( (FileSystemStateAware) ( fs ) ).getState().equals( FileSystemState.BATCH );
     }
 
     @Override
     public void dispose() {
+        if ( notificationBatcher != null ) {
+            notificationBatcher.dispose();
+        }
         service.dispose();
     }
 
+    /**
+     * @return the batcher of sync notifications, mostly to expose its metrics
+     */
+    public SyncNotificationBatcher getNotificationBatcher() {
+        return notificationBatcher;
+    }
+
     @Override
     public int priority() {
         return service.priority() - 1;
     }
 
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return whether this node runs the writes forwarded by read replicas
+     */
+    protected boolean isWriter() {
+        return true;
+    }
+
+    /**
+     * Runs the sync of a file system notified by a peer; syncs run on the messaging thread unless overridden.
+     */
+    protected void dispatchSync( final String fsId,
+                                 final Runnable sync ) {
+        sync.run();
+    }
+
+    /**
+     * @return for how long, in milliseconds, changes of the file system notified by peers have been waiting to be
+     * synced; zero when it's up to date
+     */
+    public long getReplicationLag( final String fsId ) {
+        return syncFs.getLag( fsId );
+    }
+
+    /**
+     * @return the replication lag of every file system with changes waiting to be synced
+     */
+    public Map<String, Long> getReplicationLags() {
+        return syncFs.getLags();
+    }
+
     class NewFileSystemMessageHandler implements MessageHandler {
 
         @Override
@@ -1025,38 +1205,170 @@ public class IOServiceClusterImpl implements IOService {
         }
     }
 
+    /**
+     * Syncs run one at a time per file system: messages arriving while a sync of the same file system is running
+     * replace each other, and only the last one is synced once the running one is done. How long the oldest change
+     * notified has been waiting is the replication lag of the file system.
+     */
     class SyncFileSystemMessageHandler implements MessageHandler {
 
+        private final ConcurrentMap<String, AtomicReference<Map<String, String>>> pendingSyncs = new ConcurrentHashMap<String, AtomicReference<Map<String, String>>>();
+
+        //when the oldest change not synced yet was notified, per file system
+        private final ConcurrentMap<String, Long> pendingSince = new ConcurrentHashMap<String, Long>();
+
         @Override
         public Pair<MessageType, Map<String, String>> handleMessage( final MessageType type,
                                                                      final Map<String, String> content ) {
             if ( SYNC_FS.equals( type ) ) {
-                final String scheme = content.get( "fs_scheme" );
                 final String id = content.get( "fs_id" );
-                final String[] supportedUris = cleanup( content.get( "fs_uri" ).split( "\n" ) );
+                if ( !enqueue( id, content ) ) {
+                    //coalesced into the running sync
+                    return null;
+                }
+                dispatchSync( id, new Runnable() {
+                    @Override
+                    public void run() {
+                        drain( id );
+                    }
+                } );
+            }
 
-                for ( final String supportedUri : supportedUris ) {
+            return null;
+        }
+
+        /**
+         * Syncs the file system on the calling thread, or waits for the sync already running (or dispatched) to
+         * catch up with the given content.
+         * @return false if it timed out waiting
+         */
+        boolean syncAndWait( final Map<String, String> content,
+                             final long timeout ) {
+            final String id = content.get( "fs_id" );
+            if ( enqueue( id, content ) ) {
+                drain( id );
+                return true;
+            }
+            return awaitSynced( id, timeout );
+        }
+
+        boolean awaitSynced( final String id,
+                             final long timeout ) {
+            final long deadline = System.currentTimeMillis() + timeout;
+            synchronized ( pendingSince ) {
+                while ( pendingSyncs.containsKey( id ) ) {
+                    final long remaining = deadline - System.currentTimeMillis();
+                    if ( remaining <= 0 ) {
+                        return false;
+                    }
                     try {
-                        String origin;
-                        try {
-                            origin = URLEncoder.encode( supportedUri, "UTF-8" );
-                        } catch ( UnsupportedEncodingException e ) {
-                            origin = supportedUri;
-                        }
+                        pendingSince.wait( remaining );
+                    } catch ( final InterruptedException e ) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
 
-                        final URI fs = URI.create( scheme + "://" + id + "?sync=" + origin + "&force" );
+        /**
+         * @return true if the caller has to run (or dispatch) the sync, false if one is running or dispatched already
+         */
+        private boolean enqueue( final String id,
+                                 final Map<String, String> content ) {
+            synchronized ( pendingSince ) {
+                if ( !pendingSince.containsKey( id ) ) {
+                    pendingSince.put( id, System.currentTimeMillis() );
+                }
+                return pendingSyncs.put( id, new AtomicReference<Map<String, String>>( content ) ) == null;
+            }
+        }
 
-                        service.getFileSystem( fs );
+        private void drain( final String id ) {
+            while ( true ) {
+                final AtomicReference<Map<String, String>> latest = pendingSyncs.get( id );
+                try {
+                    sync( latest.get() );
+                } catch ( final RuntimeException e ) {
+                    logger.error( "File system synchronization error", e );
+                }
+                synchronized ( pendingSince ) {
+                    if ( pendingSyncs.remove( id, latest ) ) {
+                        pendingSince.remove( id );
+                        pendingSince.notifyAll();
                         break;
-                    } catch ( Exception e ) {
-                        // try the other supported uri in case of failure
-                        logger.warn( "File system synchronization for origin {} failed with error {}, trying another if available",
-                                     supportedUri, e.getMessage() );
                     }
                 }
             }
+        }
 
-            return null;
+        long getLag( final String id ) {
+            final Long since = pendingSince.get( id );
+            return since == null ? 0 : System.currentTimeMillis() - since;
+        }
+
+        Map<String, Long> getLags() {
+            final long now = System.currentTimeMillis();
+            final Map<String, Long> result = new HashMap<String, Long>();
+            for ( final Map.Entry<String, Long> entry : pendingSince.entrySet() ) {
+                result.put( entry.getKey(), now - entry.getValue() );
+            }
+            return result;
+        }
+
+        private void sync( final Map<String, String> content ) {
+            final String scheme = content.get( "fs_scheme" );
+            final String id = content.get( "fs_id" );
+            final String refs = content.get( "fs_refs" );
+            final String[] supportedUris = cleanup( content.get( "fs_uri" ).split( "\n" ) );
+
+            if ( refs != null && isUpToDate( scheme, id, refs ) ) {
+                logger.debug( "File system {} already up to date, skipping sync", id );
+                return;
+            }
+
+            for ( final String supportedUri : supportedUris ) {
+                try {
+                    final URI fs = URI.create( scheme + "://" + id + "?sync=" + encode( supportedUri ) + "&force" + ( refs != null ? "&refs=" + encode( refs ) : "" ) );
+
+                    service.getFileSystem( fs );
+                    break;
+                } catch ( Exception e ) {
+                    // try the other supported uri in case of failure
+                    logger.warn( "File system synchronization for origin {} failed with error {}, trying another if available",
+                                 supportedUri, e.getMessage() );
+                }
+            }
+        }
+
+        private boolean isUpToDate( final String scheme,
+                                    final String id,
+                                    final String refs ) {
+            try {
+                final FileSystem fs = service.getFileSystem( URI.create( scheme + "://" + id ) ).getRootDirectories().iterator().next().getFileSystem();
+                if ( !( fs instanceof FileSystemRefs ) ) {
+                    return false;
+                }
+                final Map<String, String> localRefs = ( (FileSystemRefs) fs ).refs();
+                for ( final String ref : refs.split( " " ) ) {
+                    final int index = ref.lastIndexOf( ':' );
+                    if ( index == -1 || !ref.substring( index + 1 ).equals( localRefs.get( ref.substring( 0, index ) ) ) ) {
+                        return false;
+                    }
+                }
+                return true;
+            } catch ( final Exception e ) {
+                return false;
+            }
+        }
+
+        private String encode( final String value ) {
+            try {
+                return URLEncoder.encode( value, "UTF-8" );
+            } catch ( UnsupportedEncodingException e ) {
+                return value;
+            }
         }
 
         private String[] cleanup( final String... split ) {
@@ -1071,6 +1383,28 @@ public class IOServiceClusterImpl implements IOService {
         }
     }
 
+    /**
+     * Answers the read replicas looking for a writer node, and runs the writes they forward to this node.
+     */
+    class WriterMessageHandler implements MessageHandler {
+
+        @Override
+        public Pair<MessageType, Map<String, String>> handleMessage( final MessageType type,
+                                                                     final Map<String, String> content ) {
+            if ( !isWriter() ) {
+                return null;
+            }
+            if ( QUERY_FOR_WRITER.equals( type ) ) {
+                final Map<String, String> replyContent = new HashMap<String, String>();
+                replyContent.put( "writer", nodeId );
+                return new Pair<MessageType, Map<String, String>>( QUERY_FOR_WRITER_RESULT, replyContent );
+            } else if ( FORWARD_WRITE.equals( type ) && nodeId.equals( content.get( "writer" ) ) ) {
+                return new Pair<MessageType, Map<String, String>>( FORWARD_WRITE_RESULT, ForwardedWrite.execute( IOServiceClusterImpl.this, content ) );
+            }
+            return null;
+        }
+    }
+
     class QueryFileSystemMessageHandler implements MessageHandler {
 
         @Override
@@ -1139,4 +1473,15 @@ public class IOServiceClusterImpl implements IOService {
             this.uri = uri;
         }
     }
+
+    private static class BatchFrame {
+
+        private final String[] keys;
+        private final Set<String> fileSystems;
+
+        BatchFrame( final String[] keys ) {
+            this.keys = keys;
+            this.fileSystems = new HashSet<String>( Arrays.asList( keys ) );
+        }
+    }
 }
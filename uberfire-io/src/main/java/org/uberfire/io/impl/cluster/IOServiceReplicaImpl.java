@@ -0,0 +1,608 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.cluster;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.uberfire.commons.async.DescriptiveRunnable;
+import org.uberfire.commons.async.DescriptiveThreadFactory;
+import org.uberfire.commons.cluster.ClusterServiceFactory;
+import org.uberfire.commons.message.AsyncCallback;
+import org.uberfire.commons.message.MessageType;
+import org.uberfire.io.IOService;
+import org.uberfire.io.impl.cluster.ForwardedWrite.Op;
+import org.uberfire.java.nio.IOException;
+import org.uberfire.java.nio.base.FileSystemId;
+import org.uberfire.java.nio.channels.SeekableByteChannel;
+import org.uberfire.java.nio.file.AtomicMoveNotSupportedException;
+import org.uberfire.java.nio.file.CopyOption;
+import org.uberfire.java.nio.file.DeleteOption;
+import org.uberfire.java.nio.file.DirectoryNotEmptyException;
+import org.uberfire.java.nio.file.DirectoryStream;
+import org.uberfire.java.nio.file.FileAlreadyExistsException;
+import org.uberfire.java.nio.file.FileSystem;
+import org.uberfire.java.nio.file.NoSuchFileException;
+import org.uberfire.java.nio.file.NotDirectoryException;
+import org.uberfire.java.nio.file.OpenOption;
+import org.uberfire.java.nio.file.Option;
+import org.uberfire.java.nio.file.Path;
+import org.uberfire.java.nio.file.StandardOpenOption;
+import org.uberfire.java.nio.file.attribute.FileAttribute;
+
+import static org.uberfire.io.impl.cluster.ClusterMessageType.*;
+
+/**
+ * Read replica node of the cluster, picked with <code>org.uberfire.cluster.role=replica</code>: reads are served from
+ * the local copy, writes are forwarded to a writer node, which runs them as clustered writes.
+ * <ul>
+ * <li>changes notified by peers are synced asynchronously on a bounded pool
+ * (<code>org.uberfire.cluster.replica.threads</code>); when its queue is full the sync runs on the messaging thread,
+ * which slows notifications down instead of letting the replica fall further behind</li>
+ * <li>a read of a file system lagging more than <code>org.uberfire.cluster.replica.max.lag</code> milliseconds waits
+ * (as long again at most) for it to catch up</li>
+ * <li>once a forwarded write is done the replica syncs the file systems it touched before returning, so a client reads
+ * its own writes</li>
+ * </ul>
+ * Forwarded writes carry their content whole: streams and writers are buffered until closed, channels open for reading
+ * only, and batches aren't supported (each write is forwarded on its own).
+ */
+public class IOServiceReplicaImpl extends IOServiceClusterImpl {
+
+    private static final Logger logger = LoggerFactory.getLogger( IOServiceReplicaImpl.class );
+
+    public static final String ROLE = System.getProperty( "org.uberfire.cluster.role", "writer" );
+    public static final int SYNC_THREADS = Integer.parseInt( System.getProperty( "org.uberfire.cluster.replica.threads", "2" ) );
+    public static final long MAX_LAG = Long.parseLong( System.getProperty( "org.uberfire.cluster.replica.max.lag", "5000" ) );
+    public static final int FORWARD_TIMEOUT = Integer.parseInt( System.getProperty( "org.uberfire.cluster.replica.forward.timeout", "60000" ) );
+
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+    private static final int SYNC_QUEUE = 100;
+    private static final int QUERY_TIMEOUT = 10000;
+
+    //not final: peers may notify changes while the super constructor joins the cluster, those are synced in place
+    private ThreadPoolExecutor syncExecutor;
+    private long maxLag;
+
+    private final AtomicReference<String> writer = new AtomicReference<String>();
+    private final AtomicLong forwardedWrites = new AtomicLong();
+
+    public IOServiceReplicaImpl( final IOService service,
+                                 final ClusterServiceFactory clusterServiceFactory ) {
+        this( service, clusterServiceFactory, true );
+    }
+
+    public IOServiceReplicaImpl( final IOService service,
+                                 final ClusterServiceFactory clusterServiceFactory,
+                                 final boolean autoStart ) {
+        this( service, clusterServiceFactory, autoStart, MAX_LAG );
+    }
+
+    public IOServiceReplicaImpl( final IOService service,
+                                 final ClusterServiceFactory clusterServiceFactory,
+                                 final boolean autoStart,
+                                 final long maxLag ) {
+        super( service, clusterServiceFactory, autoStart );
+        this.maxLag = maxLag;
+        this.syncExecutor = new ThreadPoolExecutor( SYNC_THREADS, SYNC_THREADS, 0L, TimeUnit.MILLISECONDS,
+                                                    new LinkedBlockingQueue<Runnable>( SYNC_QUEUE ),
+                                                    new DescriptiveThreadFactory(),
+                                                    new ThreadPoolExecutor.CallerRunsPolicy() );
+    }
+
+    /**
+     * @return whether the node is configured as a read replica
+     */
+    public static boolean isReplicaRole() {
+        return "replica".equalsIgnoreCase( ROLE );
+    }
+
+    @Override
+    protected boolean isWriter() {
+        return false;
+    }
+
+    @Override
+    protected void dispatchSync( final String fsId,
+                                 final Runnable sync ) {
+        final ThreadPoolExecutor executor = syncExecutor;
+        if ( executor == null || executor.isShutdown() ) {
+            sync.run();
+            return;
+        }
+        executor.execute( new DescriptiveRunnable() {
+            @Override
+            public String getDescription() {
+                return "Replica Sync [" + service.getId() + "/" + fsId + "]";
+            }
+
+            @Override
+            public void run() {
+                sync.run();
+            }
+        } );
+    }
+
+    /**
+     * @return how many writes this node forwarded to the writer node
+     */
+    public long getForwardedWrites() {
+        return forwardedWrites.get();
+    }
+
+    /**
+     * @return the node id of the writer node writes are forwarded to, null if none was found yet
+     */
+    public String getWriter() {
+        return writer.get();
+    }
+
+    private String writer() {
+        final String current = writer.get();
+        if ( current != null ) {
+            return current;
+        }
+        final String found = queryWriter();
+        if ( found == null ) {
+            throw new IOException( "No writer node available to forward the write to." );
+        }
+        writer.compareAndSet( null, found );
+        return writer.get();
+    }
+
+    private String queryWriter() {
+        final CountDownLatch answeredOrTimedOut = new CountDownLatch( 1 );
+        final AtomicReference<String> result = new AtomicReference<String>();
+
+        clusterService.broadcastAndWait( service.getId(), QUERY_FOR_WRITER, Collections.<String, String>emptyMap(), QUERY_TIMEOUT, new AsyncCallback() {
+            @Override
+            public void onTimeOut() {
+                answeredOrTimedOut.countDown();
+            }
+
+            @Override
+            public void onReply( final MessageType type,
+                                 final Map<String, String> content ) {
+                if ( QUERY_FOR_WRITER_RESULT.equals( type ) && content.get( "writer" ) != null ) {
+                    result.compareAndSet( null, content.get( "writer" ) );
+                    answeredOrTimedOut.countDown();
+                }
+            }
+        } );
+
+        await( answeredOrTimedOut, QUERY_TIMEOUT );
+        return result.get();
+    }
+
+    private Map<String, String> forward( final ForwardedWrite write ) {
+        final String writerId = writer();
+        final Map<String, String> content = write.buildContent();
+        content.put( "writer", writerId );
+
+        final CountDownLatch answeredOrTimedOut = new CountDownLatch( 1 );
+        final AtomicReference<Map<String, String>> result = new AtomicReference<Map<String, String>>();
+
+        clusterService.broadcastAndWait( service.getId(), FORWARD_WRITE, content, FORWARD_TIMEOUT, new AsyncCallback() {
+            @Override
+            public void onTimeOut() {
+                answeredOrTimedOut.countDown();
+            }
+
+            @Override
+            public void onReply( final MessageType type,
+                                 final Map<String, String> content ) {
+                if ( FORWARD_WRITE_RESULT.equals( type ) ) {
+                    result.compareAndSet( null, content );
+                    answeredOrTimedOut.countDown();
+                }
+            }
+        } );
+
+        await( answeredOrTimedOut, FORWARD_TIMEOUT );
+        if ( result.get() == null ) {
+            //look for a writer again next time, this one may be gone
+            writer.compareAndSet( writerId, null );
+            throw new IOException( "Writer node " + writerId + " didn't reply to the forwarded write, it may or may not have been applied." );
+        }
+        forwardedWrites.incrementAndGet();
+        ForwardedWrite.rethrow( result.get() );
+
+        for ( final Map<String, String> fileSystem : ForwardedWrite.fileSystems( result.get() ) ) {
+            if ( !syncFs.syncAndWait( fileSystem, FORWARD_TIMEOUT ) ) {
+                logger.warn( "File system {} didn't catch up with the forwarded write in {}ms", fileSystem.get( "fs_id" ), FORWARD_TIMEOUT );
+            }
+        }
+        return result.get();
+    }
+
+    private void await( final CountDownLatch latch,
+                        final long timeout ) {
+        try {
+            latch.await( timeout, TimeUnit.MILLISECONDS );
+        } catch ( final InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Bounds the staleness of reads: waits for the file system of the path to catch up if it lags too far behind.
+     */
+    private void checkLag( final Path path ) {
+        final FileSystem fs = path.getFileSystem().getRootDirectories().iterator().next().getFileSystem();
+        if ( !( fs instanceof FileSystemId ) ) {
+            return;
+        }
+        final String id = ( (FileSystemId) fs ).id();
+        final long lag = getReplicationLag( id );
+        if ( lag > maxLag && !syncFs.awaitSynced( id, maxLag ) ) {
+            logger.warn( "Reading file system {} lagging {}ms behind", id, getReplicationLag( id ) );
+        }
+    }
+
+    private Path forwardWrite( final Path path,
+                               final byte[] bytes,
+                               final Map<String, ?> attrs,
+                               final FileAttribute<?>[] fileAttrs,
+                               final Option... options ) {
+        forward( new ForwardedWrite( Op.WRITE, path ).bytes( bytes ).attributes( attrs ).attributes( fileAttrs ).options( options ) );
+        return path;
+    }
+
+    private Option[] toArray( final Set<? extends OpenOption> options ) {
+        return options == null ? new Option[ 0 ] : options.toArray( new Option[ options.size() ] );
+    }
+
+    @Override
+    public void startBatch( final FileSystem fs ) {
+    }
+
+    @Override
+    public void startBatch( final FileSystem[] fs,
+                            final Option... options ) {
+    }
+
+    @Override
+    public void startBatch( final FileSystem fs,
+                            final Option... options ) {
+    }
+
+    @Override
+    public void startBatch( final FileSystem... fs ) {
+    }
+
+    @Override
+    public void endBatch() {
+    }
+
+    @Override
+    public InputStream newInputStream( final Path path,
+                                       final OpenOption... options ) throws IllegalArgumentException, NoSuchFileException, UnsupportedOperationException, IOException, SecurityException {
+        checkLag( path );
+        return super.newInputStream( path, options );
+    }
+
+    @Override
+    public DirectoryStream<Path> newDirectoryStream( final Path dir ) throws IllegalArgumentException, NotDirectoryException, IOException, SecurityException {
+        checkLag( dir );
+        return super.newDirectoryStream( dir );
+    }
+
+    @Override
+    public DirectoryStream<Path> newDirectoryStream( final Path dir,
+                                                     final DirectoryStream.Filter<Path> filter ) throws IllegalArgumentException, NotDirectoryException, IOException, SecurityException {
+        checkLag( dir );
+        return super.newDirectoryStream( dir, filter );
+    }
+
+    @Override
+    public boolean exists( final Path path ) throws IllegalArgumentException, SecurityException {
+        checkLag( path );
+        return super.exists( path );
+    }
+
+    @Override
+    public byte[] readAllBytes( final Path path ) throws IOException, OutOfMemoryError, SecurityException {
+        checkLag( path );
+        return super.readAllBytes( path );
+    }
+
+    @Override
+    public List<String> readAllLines( final Path path ) throws IllegalArgumentException, NoSuchFileException, IOException, SecurityException {
+        checkLag( path );
+        return super.readAllLines( path );
+    }
+
+    @Override
+    public List<String> readAllLines( final Path path,
+                                      final Charset cs ) throws IllegalArgumentException, NoSuchFileException, IOException, SecurityException {
+        checkLag( path );
+        return super.readAllLines( path, cs );
+    }
+
+    @Override
+    public String readAllString( final Path path,
+                                 final Charset cs ) throws IllegalArgumentException, NoSuchFileException, IOException {
+        checkLag( path );
+        return super.readAllString( path, cs );
+    }
+
+    @Override
+    public String readAllString( final Path path ) throws IllegalArgumentException, NoSuchFileException, IOException {
+        checkLag( path );
+        return super.readAllString( path );
+    }
+
+    @Override
+    public Path createFile( final Path path,
+                            final FileAttribute<?>... attrs ) throws IllegalArgumentException, UnsupportedOperationException, FileAlreadyExistsException, IOException, SecurityException {
+        forward( new ForwardedWrite( Op.CREATE_FILE, path ).attributes( attrs ) );
+        return path;
+    }
+
+    @Override
+    public Path createDirectory( final Path dir,
+                                 final FileAttribute<?>... attrs ) throws IllegalArgumentException, UnsupportedOperationException, FileAlreadyExistsException, IOException, SecurityException {
+        forward( new ForwardedWrite( Op.CREATE_DIRECTORY, dir ).attributes( attrs ) );
+        return dir;
+    }
+
+    @Override
+    public Path createDirectories( final Path dir,
+                                   final FileAttribute<?>... attrs ) throws UnsupportedOperationException, FileAlreadyExistsException, IOException, SecurityException {
+        forward( new ForwardedWrite( Op.CREATE_DIRECTORIES, dir ).attributes( attrs ) );
+        return dir;
+    }
+
+    @Override
+    public Path createDirectory( final Path dir,
+                                 final Map<String, ?> attrs ) throws IllegalArgumentException, UnsupportedOperationException, FileAlreadyExistsException, IOException, SecurityException {
+        forward( new ForwardedWrite( Op.CREATE_DIRECTORY, dir ).attributes( attrs ) );
+        return dir;
+    }
+
+    @Override
+    public Path createDirectories( final Path dir,
+                                   final Map<String, ?> attrs ) throws UnsupportedOperationException, FileAlreadyExistsException, IOException, SecurityException {
+        forward( new ForwardedWrite( Op.CREATE_DIRECTORIES, dir ).attributes( attrs ) );
+        return dir;
+    }
+
+    @Override
+    public void delete( final Path path,
+                        final DeleteOption... options ) throws IllegalArgumentException, NoSuchFileException, DirectoryNotEmptyException, IOException, SecurityException {
+        forward( new ForwardedWrite( Op.DELETE, path ).options( options ) );
+    }
+
+    @Override
+    public boolean deleteIfExists( final Path path,
+                                   final DeleteOption... options ) throws IllegalArgumentException, DirectoryNotEmptyException, IOException, SecurityException {
+        return Boolean.parseBoolean( forward( new ForwardedWrite( Op.DELETE_IF_EXISTS, path ).options( options ) ).get( "result" ) );
+    }
+
+    @Override
+    public Path copy( final Path source,
+                      final Path target,
+                      final CopyOption... options ) throws UnsupportedOperationException, FileAlreadyExistsException, DirectoryNotEmptyException, IOException, SecurityException {
+        forward( new ForwardedWrite( Op.COPY, source ).target( target ).options( options ) );
+        return target;
+    }
+
+    @Override
+    public long copy( final InputStream in,
+                      final Path target,
+                      final CopyOption... options ) throws IOException, FileAlreadyExistsException, DirectoryNotEmptyException, UnsupportedOperationException, SecurityException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            final byte[] buffer = new byte[ 8192 ];
+            int read;
+            while ( ( read = in.read( buffer ) ) != -1 ) {
+                bytes.write( buffer, 0, read );
+            }
+        } catch ( final java.io.IOException e ) {
+            throw new IOException( e );
+        }
+        return Long.parseLong( forward( new ForwardedWrite( Op.COPY_STREAM, target ).bytes( bytes.toByteArray() ).options( options ) ).get( "result" ) );
+    }
+
+    @Override
+    public Path move( final Path source,
+                      final Path target,
+                      final CopyOption... options ) throws UnsupportedOperationException, FileAlreadyExistsException, DirectoryNotEmptyException, AtomicMoveNotSupportedException, IOException, SecurityException {
+        forward( new ForwardedWrite( Op.MOVE, source ).target( target ).options( options ) );
+        return target;
+    }
+
+    @Override
+    public Path setAttributes( final Path path,
+                               final FileAttribute<?>... attrs ) throws UnsupportedOperationException, IllegalArgumentException, ClassCastException, IOException, SecurityException {
+        forward( new ForwardedWrite( Op.SET_ATTRIBUTES, path ).attributes( attrs ) );
+        return path;
+    }
+
+    @Override
+    public Path setAttributes( final Path path,
+                               final Map<String, Object> attrs ) throws UnsupportedOperationException, IllegalArgumentException, ClassCastException, IOException, SecurityException {
+        forward( new ForwardedWrite( Op.SET_ATTRIBUTES, path ).attributes( attrs ) );
+        return path;
+    }
+
+    @Override
+    public Path setAttribute( final Path path,
+                              final String attribute,
+                              final Object value ) throws UnsupportedOperationException, IllegalArgumentException, ClassCastException, IOException, SecurityException {
+        forward( new ForwardedWrite( Op.SET_ATTRIBUTES, path ).attributes( Collections.singletonMap( attribute, value ) ) );
+        return path;
+    }
+
+    @Override
+    public Path write( final Path path,
+                       final byte[] bytes,
+                       final OpenOption... options ) throws IOException, UnsupportedOperationException, SecurityException {
+        return forwardWrite( path, bytes, null, null, options );
+    }
+
+    @Override
+    public Path write( final Path path,
+                       final byte[] bytes,
+                       final Map<String, ?> attrs,
+                       final OpenOption... options ) throws IOException, UnsupportedOperationException, SecurityException {
+        return forwardWrite( path, bytes, attrs, null, options );
+    }
+
+    @Override
+    public Path write( final Path path,
+                       final byte[] bytes,
+                       final Set<? extends OpenOption> options,
+                       final FileAttribute<?>... attrs ) throws IllegalArgumentException, IOException, UnsupportedOperationException {
+        return forwardWrite( path, bytes, null, attrs, toArray( options ) );
+    }
+
+    @Override
+    public Path write( final Path path,
+                       final Iterable<? extends CharSequence> lines,
+                       final Charset cs,
+                       final OpenOption... options ) throws IllegalArgumentException, IOException, UnsupportedOperationException, SecurityException {
+        final StringBuilder sb = new StringBuilder();
+        final String lineSeparator = System.getProperty( "line.separator" );
+        for ( final CharSequence line : lines ) {
+            sb.append( line ).append( lineSeparator );
+        }
+        return forwardWrite( path, sb.toString().getBytes( cs ), null, null, options );
+    }
+
+    @Override
+    public Path write( final Path path,
+                       final String content,
+                       final OpenOption... options ) throws IllegalArgumentException, IOException, UnsupportedOperationException {
+        return write( path, content, UTF_8, options );
+    }
+
+    @Override
+    public Path write( final Path path,
+                       final String content,
+                       final Charset cs,
+                       final OpenOption... options ) throws IllegalArgumentException, IOException, UnsupportedOperationException {
+        return forwardWrite( path, content.getBytes( cs ), null, null, options );
+    }
+
+    @Override
+    public Path write( final Path path,
+                       final String content,
+                       final Set<? extends OpenOption> options,
+                       final FileAttribute<?>... attrs ) throws IllegalArgumentException, IOException, UnsupportedOperationException {
+        return write( path, content, UTF_8, options, attrs );
+    }
+
+    @Override
+    public Path write( final Path path,
+                       final String content,
+                       final Charset cs,
+                       final Set<? extends OpenOption> options,
+                       final FileAttribute<?>... attrs ) throws IllegalArgumentException, IOException, UnsupportedOperationException {
+        return forwardWrite( path, content.getBytes( cs ), null, attrs, toArray( options ) );
+    }
+
+    @Override
+    public Path write( final Path path,
+                       final String content,
+                       final Map<String, ?> attrs,
+                       final OpenOption... options ) throws IllegalArgumentException, IOException, UnsupportedOperationException {
+        return write( path, content, UTF_8, attrs, options );
+    }
+
+    @Override
+    public Path write( final Path path,
+                       final String content,
+                       final Charset cs,
+                       final Map<String, ?> attrs,
+                       final OpenOption... options ) throws IllegalArgumentException, IOException, UnsupportedOperationException {
+        return forwardWrite( path, content.getBytes( cs ), attrs, null, options );
+    }
+
+    @Override
+    public OutputStream newOutputStream( final Path path,
+                                         final OpenOption... options ) throws IllegalArgumentException, UnsupportedOperationException, IOException, SecurityException {
+        return new ByteArrayOutputStream() {
+            private boolean closed = false;
+
+            @Override
+            public void close() throws java.io.IOException {
+                if ( closed ) {
+                    return;
+                }
+                closed = true;
+                forwardWrite( path, toByteArray(), null, null, options );
+            }
+        };
+    }
+
+    @Override
+    public BufferedWriter newBufferedWriter( final Path path,
+                                             final Charset cs,
+                                             final OpenOption... options ) throws IllegalArgumentException, IOException, UnsupportedOperationException, SecurityException {
+        return new BufferedWriter( new OutputStreamWriter( newOutputStream( path, options ), cs ) );
+    }
+
+    @Override
+    public SeekableByteChannel newByteChannel( final Path path,
+                                               final OpenOption... options ) throws IllegalArgumentException, UnsupportedOperationException, FileAlreadyExistsException, IOException, SecurityException {
+        checkReadOnly( options );
+        checkLag( path );
+        return service.newByteChannel( path, options );
+    }
+
+    @Override
+    public SeekableByteChannel newByteChannel( final Path path,
+                                               final Set<? extends OpenOption> options,
+                                               final FileAttribute<?>... attrs ) throws IllegalArgumentException, UnsupportedOperationException, FileAlreadyExistsException, IOException, SecurityException {
+        checkReadOnly( options.toArray( new OpenOption[ options.size() ] ) );
+        checkLag( path );
+        return service.newByteChannel( path, options, attrs );
+    }
+
+    private void checkReadOnly( final OpenOption... options ) {
+        for ( final OpenOption option : options ) {
+            if ( option instanceof StandardOpenOption && option != StandardOpenOption.READ ) {
+                throw new UnsupportedOperationException( "Read replicas open channels for reading only, use write or newOutputStream instead." );
+            }
+        }
+    }
+
+    @Override
+    public void dispose() {
+        if ( syncExecutor != null ) {
+            syncExecutor.shutdown();
+        }
+        super.dispose();
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.uberfire.io.impl.cluster;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.uberfire.commons.async.DescriptiveRunnable;
+import org.uberfire.commons.async.DescriptiveThreadFactory;
+import org.uberfire.commons.cluster.ClusterService;
+
+/**
+ * Holds the sync notifications of clustered writes for a short window
+ * (<code>org.uberfire.cluster.notification.window</code>, in milliseconds) and then sends a single message per file
+ * system. The content of a message is built when it's sent, so it covers every write of the window. A window of 0
+ * sends each notification right away.
+ * <p/>
+ * A notification never outlives the cluster lock of its file system: writes {@link #hold(String)} the file system
+ * while they run, and the pending notification is sent when the outermost one {@link #release(String)}s it, before
+ * the lock is handed over. Only the writes of a thread that keeps holding the lock are merged then.
+ */
+public class SyncNotificationBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger( SyncNotificationBatcher.class );
+
+    // default window 50 ms
+    public static final long WINDOW = Long.parseLong( System.getProperty( "org.uberfire.cluster.notification.window", "50" ) );
+
+    private final ClusterService clusterService;
+    private final long window;
+
+    //file system id to its last notification, in arrival order
+    private final Map<String, FileSystemSyncLock<?>> pending = new LinkedHashMap<String, FileSystemSyncLock<?>>();
+    //file system id to the writes of the thread running on it
+    private final ThreadLocal<Map<String, Integer>> holds = new ThreadLocal<Map<String, Integer>>() {
+        @Override
+        protected Map<String, Integer> initialValue() {
+            return new HashMap<String, Integer>();
+        }
+    };
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicLong notifications = new AtomicLong();
+    private final AtomicLong messages = new AtomicLong();
+    private long currentSecond;
+    private long currentSecondMessages;
+    private long lastSecondMessages;
+
+    public SyncNotificationBatcher( final ClusterService clusterService ) {
+        this( clusterService, WINDOW );
+    }
+
+    public SyncNotificationBatcher( final ClusterService clusterService,
+                                    final long window ) {
+        this.clusterService = clusterService;
+        this.window = window;
+    }
+
+    public void notify( final FileSystemSyncLock<?> notification ) {
+        notifications.incrementAndGet();
+        if ( window <= 0 ) {
+            send( notification );
+            return;
+        }
+        synchronized ( pending ) {
+            final boolean schedule = pending.isEmpty();
+            pending.remove( notification.getId() );
+            pending.put( notification.getId(), notification );
+            if ( schedule ) {
+                getScheduler().schedule( new DescriptiveRunnable() {
+                    @Override
+                    public String getDescription() {
+                        return "Cluster sync notifications";
+                    }
+
+                    @Override
+                    public void run() {
+                        flush();
+                    }
+                }, window, TimeUnit.MILLISECONDS );
+            }
+        }
+    }
+
+    /**
+     * Sends every pending notification now.
+     */
+    public void flush() {
+        final List<FileSystemSyncLock<?>> toSend;
+        synchronized ( pending ) {
+            toSend = new ArrayList<FileSystemSyncLock<?>>( pending.values() );
+            pending.clear();
+        }
+        for ( final FileSystemSyncLock<?> notification : toSend ) {
+            try {
+                send( notification );
+            } catch ( final Exception ex ) {
+                logger.error( "Failed to notify cluster about file system '" + notification.getId() + "'.", ex );
+            }
+        }
+    }
+
+    /**
+     * A write on the file system starts, holding its lock.
+     */
+    public void hold( final String fileSystemId ) {
+        final Map<String, Integer> threadHolds = holds.get();
+        final Integer count = threadHolds.get( fileSystemId );
+        threadHolds.put( fileSystemId, count == null ? 1 : count + 1 );
+    }
+
+    /**
+     * A write on the file system is done, about to release its lock: the outermost one sends the pending notification.
+     */
+    public void release( final String fileSystemId ) {
+        final Map<String, Integer> threadHolds = holds.get();
+        final Integer count = threadHolds.get( fileSystemId );
+        if ( count != null && count > 1 ) {
+            threadHolds.put( fileSystemId, count - 1 );
+            return;
+        }
+        threadHolds.remove( fileSystemId );
+        flush( fileSystemId );
+    }
+
+    /**
+     * Sends the pending notification of a file system now.
+     */
+    public void flush( final String fileSystemId ) {
+        final FileSystemSyncLock<?> notification;
+        synchronized ( pending ) {
+            notification = pending.remove( fileSystemId );
+        }
+        if ( notification != null ) {
+            send( notification );
+        }
+    }
+
+    /**
+     * Drops the pending notification of a file system, about to be notified by other means.
+     */
+    public void discard( final String fileSystemId ) {
+        synchronized ( pending ) {
+            pending.remove( fileSystemId );
+        }
+    }
+
+    private void send( final FileSystemSyncLock<?> notification ) {
+        clusterService.broadcast( notification.getServiceId(), notification.getMessageType(), notification.buildContent() );
+        messages.incrementAndGet();
+        countMessage();
+    }
+
+    private synchronized void countMessage() {
+        final long second = System.currentTimeMillis() / 1000;
+        if ( second != currentSecond ) {
+            lastSecondMessages = second == currentSecond + 1 ? currentSecondMessages : 0;
+            currentSecond = second;
+            currentSecondMessages = 0;
+        }
+        currentSecondMessages++;
+    }
+
+    private synchronized ScheduledExecutorService getScheduler() {
+        if ( scheduler == null ) {
+            scheduler = Executors.newSingleThreadScheduledExecutor( new DescriptiveThreadFactory() );
+        }
+        return scheduler;
+    }
+
+    public void dispose() {
+        flush();
+        synchronized ( this ) {
+            if ( scheduler != null ) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+    }
+
+    /**
+     * @return notifications waiting for the window to close
+     */
+    public int getQueueDepth() {
+        synchronized ( pending ) {
+            return pending.size();
+        }
+    }
+
+    public long getNotificationCount() {
+        return notifications.get();
+    }
+
+    public long getMessageCount() {
+        return messages.get();
+    }
+
+    /**
+     * @return messages sent during the last whole second
+     */
+    public synchronized long getMessagesPerSecond() {
+        final long second = System.currentTimeMillis() / 1000;
+        if ( second == currentSecond ) {
+            return lastSecondMessages;
+        }
+        return second == currentSecond + 1 ? currentSecondMessages : 0;
+    }
+}
@@ -16,13 +16,26 @@
 
 package org.uberfire.io.impl.cluster.helix;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.helix.Criteria;
+import org.apache.helix.ExternalViewChangeListener;
+import org.apache.helix.HelixAdmin;
+import org.apache.helix.HelixDataAccessor;
+import org.apache.helix.HelixException;
 import org.apache.helix.HelixManager;
 import org.apache.helix.InstanceType;
 import org.apache.helix.NotificationContext;
@@ -30,6 +43,7 @@ import org.apache.helix.messaging.handling.HelixTaskResult;
 import org.apache.helix.messaging.handling.MessageHandler;
 import org.apache.helix.messaging.handling.MessageHandlerFactory;
 import org.apache.helix.model.ExternalView;
+import org.apache.helix.model.IdealState;
 import org.apache.helix.model.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,13 +64,35 @@ public class ClusterServiceHelix implements ClusterService {
     private static final AtomicInteger counter = new AtomicInteger( 0 );
     private static final Logger logger = LoggerFactory.getLogger( ClusterServiceHelix.class );
 
+    // default lock timeout 5 min
+    public static final long LOCK_TIMEOUT = Long.parseLong( System.getProperty( "org.uberfire.cluster.lock.timeout", "300000" ) );
+
+    //partitions the lock resource is created with, or spread over when it has a single one
+    public static final int PARTITIONS = Integer.parseInt( System.getProperty( "org.uberfire.cluster.lock.partitions", "16" ) );
+
+    //how long a waiter trusts the notifications before reading the external view again, in case one got lost
+    private static final long VIEW_REFRESH_INTERVAL = 1000;
+
     private final String clusterName;
     private final String instanceName;
     private final HelixManager participantManager;
     private final String resourceName;
     private final Map<String, MessageHandlerResolver> messageHandlerResolver = new ConcurrentHashMap<String, MessageHandlerResolver>();
 
-    private final ReentrantLock lock = new ReentrantLock( true );
+    //node wide lock: exclusive for lock(), shared by keyed locks
+    private final ReentrantReadWriteLock nodeLock = new ReentrantReadWriteLock( true );
+    private final ConcurrentMap<String, ReentrantLock> partitionLocks = new ConcurrentHashMap<String, ReentrantLock>();
+    private volatile int partitions = 0;
+
+    //last external view notified by helix, waiters of a partition state are woken up on every change
+    private volatile ExternalView externalView;
+    private final AtomicLong viewVersion = new AtomicLong();
+    private final ReentrantLock viewLock = new ReentrantLock();
+    private final Condition viewChanged = viewLock.newCondition();
+
+    private final AtomicLong lockCount = new AtomicLong();
+    private final AtomicLong lockTime = new AtomicLong();
+    private final AtomicLong maxLockTime = new AtomicLong();
 
     public ClusterServiceHelix( final String clusterName,
                                 final String zkAddress,
@@ -91,15 +127,42 @@ public class ClusterServiceHelix implements ClusterService {
             participantManager.getMessagingService().registerMessageHandlerFactory( Message.MessageType.USER_DEFINE_MSG.toString(), new MessageHandlerResolverWrapper().convert() );
             participantManager.getStateMachineEngine().registerStateModelFactory( "LeaderStandby", new LockTransitionalFactory() );
             participantManager.connect();
-            offlinePartition();
+            participantManager.addExternalViewChangeListener( new ExternalViewChangeListener() {
+                @Override
+                public void onExternalViewChange( final List<ExternalView> externalViewList,
+                                                  final NotificationContext changeContext ) {
+                    for ( final ExternalView view : externalViewList ) {
+                        if ( resourceName.equals( view.getResourceName() ) ) {
+                            viewChanged( view );
+                        }
+                    }
+                }
+            } );
+            ensurePartitions();
+            offlinePartitions();
         } catch ( final Exception ex ) {
             throw new RuntimeException( ex );
         }
     }
 
     String getNodeStatus() {
-        final String partition = resourceName + "_0";
-        final ExternalView view = getResourceExternalView();
+        return getNodeStatus( resourceName + "_0" );
+    }
+
+    String getNodeStatus( final String partition ) {
+        return nodeStatus( getResourceExternalView(), partition );
+    }
+
+    /**
+     * Same as {@link #getNodeStatus(String)}, read from the Helix admin instead of the last notified external view,
+     * which may be stale.
+     */
+    String readNodeStatus( final String partition ) {
+        return nodeStatus( readResourceExternalView(), partition );
+    }
+
+    private String nodeStatus( final ExternalView view,
+                               final String partition ) {
         if ( clusterIsNotSetYet( view, partition ) ) {
             return "OFFLINE";
         }
@@ -108,9 +171,130 @@ public class ClusterServiceHelix implements ClusterService {
     }
 
     ExternalView getResourceExternalView() {
+        final ExternalView view = externalView;
+        if ( view != null ) {
+            return view;
+        }
+        return readResourceExternalView();
+    }
+
+    ExternalView readResourceExternalView() {
         return participantManager.getClusterManagmentTool().getResourceExternalView( clusterName, resourceName );
     }
 
+    void viewChanged( final ExternalView view ) {
+        viewLock.lock();
+        try {
+            externalView = view;
+            viewVersion.incrementAndGet();
+            viewChanged.signalAll();
+        } finally {
+            viewLock.unlock();
+        }
+    }
+
+    /**
+     * Waits, on external view notifications, for the partition of this node to reach one of the given states.
+     * @return false if it didn't in time
+     */
+    boolean awaitNodeStatus( final String partition,
+                             final long timeout,
+                             final String... states ) {
+        final long deadline = System.currentTimeMillis() + timeout;
+        while ( true ) {
+            final long version = viewVersion.get();
+            if ( asList( states ).contains( getNodeStatus( partition ) ) ) {
+                return true;
+            }
+            final long remaining = deadline - System.currentTimeMillis();
+            if ( remaining <= 0 ) {
+                return false;
+            }
+            viewLock.lock();
+            try {
+                if ( version == viewVersion.get() &&
+                        !viewChanged.await( Math.min( remaining, VIEW_REFRESH_INTERVAL ), TimeUnit.MILLISECONDS ) ) {
+                    final ExternalView view = readResourceExternalView();
+                    if ( view != null ) {
+                        externalView = view;
+                    }
+                }
+            } catch ( final InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                viewLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Creates the lock resource with {@link #PARTITIONS} partitions, or spreads a single partition resource over them.
+     * The latter only happens on a node starting alone: nodes already running keep hashing keys over the count they read,
+     * so a resource in use stays as is until the whole cluster restarts.
+     */
+    void ensurePartitions() {
+        if ( PARTITIONS <= 1 ) {
+            return;
+        }
+        final HelixAdmin admin = participantManager.getClusterManagmentTool();
+        final IdealState idealState = admin.getResourceIdealState( clusterName, resourceName );
+        if ( idealState == null ) {
+            try {
+                admin.addResource( clusterName, resourceName, PARTITIONS, "LeaderStandby", IdealState.RebalanceMode.FULL_AUTO.toString() );
+                admin.rebalance( clusterName, resourceName, Math.max( 1, admin.getInstancesInCluster( clusterName ).size() ) );
+            } catch ( final HelixException ex ) {
+                logger.debug( "Cluster lock resource '" + resourceName + "' created by another node meanwhile.", ex );
+            }
+            return;
+        }
+        if ( idealState.getNumPartitions() != 1 ) {
+            return;
+        }
+        final List<String> others = new ArrayList<String>( getLiveInstances() );
+        others.remove( instanceName );
+        if ( !others.isEmpty() ) {
+            logger.warn( "Cluster lock resource '" + resourceName + "' has a single partition, every key is locked together; it's spread over " + PARTITIONS + " partitions by the next node starting alone." );
+            return;
+        }
+        idealState.setNumPartitions( PARTITIONS );
+        admin.setResourceIdealState( clusterName, resourceName, idealState );
+        admin.rebalance( clusterName, resourceName, replicas( admin, idealState ) );
+    }
+
+    private int replicas( final HelixAdmin admin,
+                          final IdealState idealState ) {
+        try {
+            return Integer.parseInt( idealState.getReplicas() );
+        } catch ( final NumberFormatException ex ) {
+            return Math.max( 1, admin.getInstancesInCluster( clusterName ).size() );
+        }
+    }
+
+    List<String> getLiveInstances() {
+        final HelixDataAccessor accessor = participantManager.getHelixDataAccessor();
+        return accessor.getChildNames( accessor.keyBuilder().liveInstances() );
+    }
+
+    int getPartitionCount() {
+        final IdealState idealState = participantManager.getClusterManagmentTool().getResourceIdealState( clusterName, resourceName );
+        if ( idealState == null || idealState.getNumPartitions() < 1 ) {
+            return 1;
+        }
+        return idealState.getNumPartitions();
+    }
+
+    /**
+     * Keys are spread over the partitions of the resource, so the lock granularity is set by the number of partitions
+     * the resource has (see {@link #ensurePartitions()}); a single partition gives the old cluster wide lock.
+     */
+    String getPartition( final String key ) {
+        if ( partitions == 0 ) {
+            partitions = getPartitionCount();
+        }
+        return resourceName + "_" + ( ( key.hashCode() & Integer.MAX_VALUE ) % partitions );
+    }
+
     private boolean clusterIsNotSetYet( ExternalView view,
                                         String partition ) {
         //first start with fresh setup
@@ -136,63 +320,191 @@ public class ClusterServiceHelix implements ClusterService {
 
     @Override
     public int getHoldCount() {
-        return lock.getHoldCount();
+        return nodeLock.getWriteHoldCount();
     }
 
-    private void offlinePartition() {
-        if ( "OFFLINE".equals( getNodeStatus() ) ) {
+    private void offlinePartitions() {
+        if ( partitions == 0 ) {
+            partitions = getPartitionCount();
+        }
+        for ( int i = 0; i < partitions; i++ ) {
+            offlinePartition( resourceName + "_" + i );
+        }
+    }
+
+    private void offlinePartition( final String partition ) {
+        if ( "OFFLINE".equals( getNodeStatus( partition ) ) ) {
             return;
         }
-        participantManager.getClusterManagmentTool().enablePartition( false, clusterName, instanceName, resourceName, asList( resourceName + "_0" ) );
-        while ( !"OFFLINE".equals( getNodeStatus() ) ) {
-            try {
-                Thread.sleep( 10 );
-            } catch ( InterruptedException e ) {
-            }
+        participantManager.getClusterManagmentTool().enablePartition( false, clusterName, instanceName, resourceName, asList( partition ) );
+        if ( !awaitNodeStatus( partition, LOCK_TIMEOUT, "OFFLINE" ) ) {
+            logger.warn( "Partition '" + partition + "' didn't go offline in " + LOCK_TIMEOUT + "ms." );
         }
     }
 
-    private void enablePartition() {
-        if ( "LEADER".equals( getNodeStatus() ) ) {
+    private void enablePartition( final String partition ) {
+        if ( "LEADER".equals( readNodeStatus( partition ) ) ) {
             return;
         }
-        participantManager.getClusterManagmentTool().enablePartition( true, clusterName, instanceName, resourceName, asList( resourceName + "_0" ) );
-        while ( !"LEADER".equals( getNodeStatus() ) ) {
-            try {
-                Thread.sleep( 10 );
-            } catch ( InterruptedException e ) {
-            }
+        participantManager.getClusterManagmentTool().enablePartition( true, clusterName, instanceName, resourceName, asList( partition ) );
+        if ( !awaitNodeStatus( partition, LOCK_TIMEOUT, "LEADER" ) ) {
+            //don't become leader later on, with nobody left to release it
+            participantManager.getClusterManagmentTool().enablePartition( false, clusterName, instanceName, resourceName, asList( partition ) );
+            throw new RuntimeException( "Couldn't acquire cluster lock '" + partition + "' in " + LOCK_TIMEOUT + "ms." );
         }
     }
 
-    private void disablePartition() {
-        String nodeStatus = getNodeStatus();
+    private void disablePartition( final String partition ) {
+        final String nodeStatus = readNodeStatus( partition );
         if ( "STANDBY".equals( nodeStatus ) || "OFFLINE".equals( nodeStatus ) ) {
             return;
         }
-        participantManager.getClusterManagmentTool().enablePartition( false, clusterName, instanceName, resourceName, asList( resourceName + "_0" ) );
+        participantManager.getClusterManagmentTool().enablePartition( false, clusterName, instanceName, resourceName, asList( partition ) );
+        if ( !awaitNodeStatus( partition, LOCK_TIMEOUT, "STANDBY", "OFFLINE" ) ) {
+            logger.warn( "Cluster lock '" + partition + "' wasn't released in " + LOCK_TIMEOUT + "ms." );
+        }
+    }
 
-        while ( !( "STANDBY".equals( nodeStatus ) || "OFFLINE".equals( nodeStatus ) ) ) {
+    private ReentrantLock partitionLock( final String partition ) {
+        final ReentrantLock lock = partitionLocks.get( partition );
+        if ( lock != null ) {
+            return lock;
+        }
+        final ReentrantLock newLock = new ReentrantLock( true );
+        final ReentrantLock existingLock = partitionLocks.putIfAbsent( partition, newLock );
+        return existingLock != null ? existingLock : newLock;
+    }
+
+    private void lockPartition( final String partition ) {
+        final long start = System.currentTimeMillis();
+        final ReentrantLock lock = partitionLock( partition );
+        lock.lock();
+        if ( lock.getHoldCount() == 1 ) {
             try {
-                Thread.sleep( 10 );
-                nodeStatus = getNodeStatus();
-            } catch ( InterruptedException e ) {
+                enablePartition( partition );
+            } catch ( final RuntimeException ex ) {
+                lock.unlock();
+                throw ex;
             }
+            recordLockTime( partition, System.currentTimeMillis() - start );
         }
     }
 
+    private void recordLockTime( final String partition,
+                                 final long elapsed ) {
+        lockCount.incrementAndGet();
+        lockTime.addAndGet( elapsed );
+        long max = maxLockTime.get();
+        while ( elapsed > max && !maxLockTime.compareAndSet( max, elapsed ) ) {
+            max = maxLockTime.get();
+        }
+        if ( logger.isDebugEnabled() ) {
+            logger.debug( "Cluster lock '" + partition + "' acquired in " + elapsed + "ms." );
+        }
+    }
+
+    /**
+     * @return how many times a cluster lock was acquired (reentrant acquisitions aren't counted)
+     */
+    public long getLockCount() {
+        return lockCount.get();
+    }
+
+    /**
+     * @return total time spent acquiring cluster locks, local wait included, in milliseconds
+     */
+    public long getLockTime() {
+        return lockTime.get();
+    }
+
+    /**
+     * @return longest time spent acquiring a cluster lock, in milliseconds
+     */
+    public long getMaxLockTime() {
+        return maxLockTime.get();
+    }
+
+    private void unlockPartition( final String partition ) {
+        final ReentrantLock lock = partitionLock( partition );
+        try {
+            if ( lock.getHoldCount() == 1 ) {
+                disablePartition( partition );
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Partitions are sorted by name, the same order on every node.
+     */
+    private List<String> partitionsOf( final String... keys ) {
+        final Set<String> result = new TreeSet<String>();
+        for ( final String key : keys ) {
+            result.add( getPartition( key ) );
+        }
+        return new ArrayList<String>( result );
+    }
+
+    /**
+     * A thread already holding keyed locks can't wait for the node wide lock (it would wait for itself), it only takes
+     * the cluster wide partition.
+     */
     @Override
     public void lock() {
-        lock.lock();
-
-        enablePartition();
+        final boolean exclusive = nodeLock.isWriteLockedByCurrentThread() || nodeLock.getReadHoldCount() == 0;
+        if ( exclusive ) {
+            nodeLock.writeLock().lock();
+        }
+        try {
+            lockPartition( resourceName + "_0" );
+        } catch ( final RuntimeException ex ) {
+            if ( exclusive ) {
+                nodeLock.writeLock().unlock();
+            }
+            throw ex;
+        }
     }
 
     @Override
     public void unlock() {
-        disablePartition();
+        try {
+            unlockPartition( resourceName + "_0" );
+        } finally {
+            if ( nodeLock.isWriteLockedByCurrentThread() ) {
+                nodeLock.writeLock().unlock();
+            }
+        }
+    }
 
-        lock.unlock();
+    @Override
+    public void lock( final String... keys ) {
+        nodeLock.readLock().lock();
+        final List<String> locked = new ArrayList<String>();
+        try {
+            for ( final String partition : partitionsOf( keys ) ) {
+                lockPartition( partition );
+                locked.add( partition );
+            }
+        } catch ( final RuntimeException ex ) {
+            for ( int i = locked.size() - 1; i >= 0; i-- ) {
+                unlockPartition( locked.get( i ) );
+            }
+            nodeLock.readLock().unlock();
+            throw ex;
+        }
+    }
+
+    @Override
+    public void unlock( final String... keys ) {
+        try {
+            final List<String> partitions = partitionsOf( keys );
+            for ( int i = partitions.size() - 1; i >= 0; i-- ) {
+                unlockPartition( partitions.get( i ) );
+            }
+        } finally {
+            nodeLock.readLock().unlock();
+        }
     }
 
     @Override
@@ -0,0 +1,902 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.cluster.socket;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.uberfire.commons.async.DescriptiveRunnable;
+import org.uberfire.commons.async.DescriptiveThreadFactory;
+import org.uberfire.commons.cluster.ClusterService;
+import org.uberfire.commons.data.Pair;
+import org.uberfire.commons.lifecycle.PriorityDisposableRegistry;
+import org.uberfire.commons.message.AsyncCallback;
+import org.uberfire.commons.message.MessageHandler;
+import org.uberfire.commons.message.MessageHandlerResolver;
+import org.uberfire.commons.message.MessageType;
+import org.uberfire.io.impl.cluster.ClusterMessageType;
+
+import static org.uberfire.commons.validation.PortablePreconditions.*;
+
+/**
+ * Cluster service over plain TCP between a static list of members (<code>host:port</code>), no ZooKeeper needed.
+ * <ul>
+ * <li>every member connects to the others and pings them each heartbeat; a member that misses three pings in a row
+ * is dropped, and counts again once it answers. The leader is the first member of the list among the ones
+ * reachable, provided they're a majority of the members: in a partition only the majority side has a leader, the
+ * other side can't take any lock until it's back</li>
+ * <li>locks are granted by the leader, with a lease the holder renews while it holds them: the locks of a member that
+ * went away are released once their lease runs out. A new leader asks the members what they hold before granting
+ * anything; if some of them don't answer it waits a lease first, the locks they may hold run out meanwhile</li>
+ * <li>a member that loses the majority gives up the locks it holds: it stops renewing them and doesn't claim them
+ * from the next leader. The operations running under them aren't stopped though, they have to be shorter than the
+ * lease</li>
+ * <li>messages are sent to every reachable member; {@link #broadcastAndWait} waits for all of them to reply, or the
+ * timeout</li>
+ * </ul>
+ * As with any lease, a member cut off from the leader for longer than the lease may still believe it holds a lock
+ * granted meanwhile to someone else; the lease has to be well above the longest expected pause. The majority is
+ * counted on what each member reaches, a partition where reachability isn't symmetric (A reaches B and C, B doesn't
+ * reach A) can still end up with two leaders for a while.
+ * <p>
+ * Members aren't authenticated and frames aren't encrypted: anyone who can reach the port can take locks and send
+ * messages to the services. The member ports must stay on a trusted network, firewalled from everything else.
+ */
+public class ClusterServiceSocket implements ClusterService {
+
+    private static final Logger logger = LoggerFactory.getLogger( ClusterServiceSocket.class );
+
+    // default lock timeout 5 min
+    public static final long LOCK_TIMEOUT = Long.parseLong( System.getProperty( "org.uberfire.cluster.lock.timeout", "300000" ) );
+    public static final long LEASE = Long.parseLong( System.getProperty( "org.uberfire.cluster.lease", "15000" ) );
+    public static final long HEARTBEAT = Long.parseLong( System.getProperty( "org.uberfire.cluster.heartbeat", "1000" ) );
+    static final int MISSED_HEARTBEATS = 3;
+
+    //key of the node wide lock
+    static final String GLOBAL_KEY = "*";
+
+    private final String localMember;
+    private final List<String> members;
+    private final int quorum;
+    private final long lease;
+    private final long heartbeat;
+    private final Map<String, MessageHandlerResolver> messageHandlerResolver = new ConcurrentHashMap<String, MessageHandlerResolver>();
+
+    private final ConcurrentMap<String, Connection> peers = new ConcurrentHashMap<String, Connection>();
+    private final Set<Connection> accepted = Collections.newSetFromMap( new ConcurrentHashMap<Connection, Boolean>() );
+    //members dropped for missing heartbeats, not alive again until they answer
+    private final Set<String> silent = Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
+    private final Connection.Listener listener = new FrameListener();
+    private ServerSocket server;
+    private final ExecutorService handlers = Executors.newCachedThreadPool( new DescriptiveThreadFactory() );
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor( new DescriptiveThreadFactory() );
+    private volatile boolean disposed = false;
+
+    private final AtomicLong ids = new AtomicLong();
+    private final ConcurrentMap<Long, PendingReplies> pendingReplies = new ConcurrentHashMap<Long, PendingReplies>();
+    private final ConcurrentMap<Long, CountDownLatch> pendingLocks = new ConcurrentHashMap<Long, CountDownLatch>();
+
+    private volatile String leader;
+    private final LockTable lockTable;
+    private long lastRenew = 0;
+
+    //node wide lock: exclusive for lock(), shared by keyed locks
+    private final ReentrantReadWriteLock nodeLock = new ReentrantReadWriteLock( true );
+    private final ConcurrentMap<String, ReentrantLock> keyLocks = new ConcurrentHashMap<String, ReentrantLock>();
+    //keys this member holds cluster wide
+    private final Set<String> heldKeys = Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
+
+    public ClusterServiceSocket( final String localMember,
+                                 final List<String> members,
+                                 final MessageHandlerResolver messageHandlerResolver ) {
+        this( localMember, members, LEASE, HEARTBEAT, messageHandlerResolver );
+    }
+
+    public ClusterServiceSocket( final String localMember,
+                                 final List<String> members,
+                                 final long lease,
+                                 final long heartbeat,
+                                 final MessageHandlerResolver messageHandlerResolver ) {
+        checkNotEmpty( "localMember", localMember );
+        checkNotEmpty( "members", members );
+        checkCondition( "local member must be one of the members", members.contains( localMember ) );
+        checkCondition( "lease must be longer than three heartbeats", lease > heartbeat * 3 );
+        this.localMember = localMember;
+        this.members = new ArrayList<String>( members );
+        this.quorum = members.size() / 2 + 1;
+        this.lease = lease;
+        this.heartbeat = heartbeat;
+        this.lockTable = new LockTable( lease );
+        addMessageHandlerResolver( messageHandlerResolver );
+        PriorityDisposableRegistry.register( this );
+        start();
+    }
+
+    /**
+     * Parses a member list in the form <code>host:port,host:port</code>.
+     */
+    public static List<String> parseMembers( final String value ) {
+        final List<String> result = new ArrayList<String>();
+        for ( final String member : value.split( "," ) ) {
+            if ( !member.trim().isEmpty() ) {
+                result.add( member.trim() );
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void addMessageHandlerResolver( final MessageHandlerResolver resolver ) {
+        if ( resolver != null ) {
+            this.messageHandlerResolver.put( resolver.getServiceId(), resolver );
+        }
+    }
+
+    void start() {
+        try {
+            server = new ServerSocket();
+            server.setReuseAddress( true );
+            server.bind( address( localMember ) );
+        } catch ( final IOException ex ) {
+            throw new RuntimeException( "Can't listen on " + localMember, ex );
+        }
+        final Thread acceptor = new DescriptiveThreadFactory().newThread( new DescriptiveRunnable() {
+            @Override
+            public String getDescription() {
+                return "Cluster Acceptor [" + localMember + "]";
+            }
+
+            @Override
+            public void run() {
+                accept();
+            }
+        } );
+        acceptor.setDaemon( true );
+        acceptor.start();
+
+        connectPeers();
+        elect();
+        scheduler.scheduleWithFixedDelay( new DescriptiveRunnable() {
+            @Override
+            public String getDescription() {
+                return "Cluster Heartbeat [" + localMember + "]";
+            }
+
+            @Override
+            public void run() {
+                try {
+                    heartbeat();
+                } catch ( final Exception ex ) {
+                    logger.error( "Cluster heartbeat error", ex );
+                }
+            }
+        }, heartbeat, heartbeat, TimeUnit.MILLISECONDS );
+    }
+
+    private void accept() {
+        while ( !disposed ) {
+            try {
+                final Socket socket = server.accept();
+                final Connection connection = new Connection( localMember + "<-" + socket.getRemoteSocketAddress(), socket, listener );
+                accepted.add( connection );
+                connection.start();
+            } catch ( final IOException ex ) {
+                if ( !disposed ) {
+                    logger.warn( "Cluster member {} failed to accept a connection: {}", localMember, ex.getMessage() );
+                }
+            }
+        }
+    }
+
+    private void connectPeers() {
+        for ( final String member : members ) {
+            if ( member.equals( localMember ) ) {
+                continue;
+            }
+            final Connection connection = peers.get( member );
+            if ( !reachable( member ) ) {
+                if ( connection != null ) {
+                    connection.close();
+                }
+                continue;
+            }
+            if ( connection != null && !connection.isClosed() ) {
+                if ( connection.getLastFrame() > 0 ) {
+                    silent.remove( member );
+                }
+                if ( connection.getMissedPings() < MISSED_HEARTBEATS ) {
+                    connection.ping( localMember );
+                    continue;
+                }
+                //connected but not answering (hung, or a half open connection): drop it so the election moves on
+                if ( silent.add( member ) ) {
+                    logger.warn( "Cluster member {} drops {}, it missed {} heartbeats", localMember, member, connection.getMissedPings() );
+                }
+                connection.close();
+            }
+            try {
+                final Socket socket = new Socket();
+                socket.connect( address( member ), (int) heartbeat );
+                final Connection newConnection = new Connection( localMember + "->" + member, socket, listener );
+                newConnection.start();
+                peers.put( member, newConnection );
+            } catch ( final IOException ex ) {
+                logger.debug( "Cluster member {} can't reach {}: {}", localMember, member, ex.getMessage() );
+            }
+        }
+    }
+
+    private void heartbeat() {
+        connectPeers();
+        elect();
+        final long now = System.currentTimeMillis();
+        if ( isLeader() ) {
+            grant( lockTable.expire( now ) );
+        }
+        if ( now - lastRenew >= lease / 3 ) {
+            lastRenew = now;
+            renew();
+        }
+    }
+
+    /**
+     * Lets tests partition the members, a member not reachable is neither connected to nor kept connected.
+     */
+    boolean reachable( final String member ) {
+        return true;
+    }
+
+    private InetSocketAddress address( final String member ) {
+        final int index = member.lastIndexOf( ':' );
+        checkCondition( "member '" + member + "' must be host:port", index > 0 );
+        return new InetSocketAddress( member.substring( 0, index ), Integer.parseInt( member.substring( index + 1 ) ) );
+    }
+
+    /**
+     * @return the members reachable from this one, this one included, in the order of the member list
+     */
+    public List<String> getAliveMembers() {
+        final List<String> result = new ArrayList<String>();
+        for ( final String member : members ) {
+            if ( member.equals( localMember ) ) {
+                result.add( member );
+            } else {
+                final Connection connection = peers.get( member );
+                if ( connection != null && !connection.isClosed() && ( !silent.contains( member ) || connection.getLastFrame() > 0 ) ) {
+                    result.add( member );
+                }
+            }
+        }
+        return result;
+    }
+
+    public String getLocalMember() {
+        return localMember;
+    }
+
+    /**
+     * @return the leader, null while this member doesn't reach a majority of the members
+     */
+    public String getLeader() {
+        return leader;
+    }
+
+    public boolean isLeader() {
+        return localMember.equals( leader );
+    }
+
+    private synchronized void elect() {
+        final List<String> alive = getAliveMembers();
+        //without a majority the other side of a partition may have one, and grant the same keys
+        final String elected = alive.size() >= quorum ? alive.get( 0 ) : null;
+        if ( elected == null ? leader == null : elected.equals( leader ) ) {
+            return;
+        }
+        final String previous = leader;
+        leader = elected;
+        if ( elected == null ) {
+            logger.warn( "Cluster member {} reaches {} of {} members, no leader until a majority is back", localMember, alive.size(), members.size() );
+            lockTable.reset();
+            if ( !heldKeys.isEmpty() ) {
+                logger.error( "Cluster member {} gives up locks {}, they may be granted on the other side", localMember, heldKeys );
+                heldKeys.clear();
+            }
+        } else if ( isLeader() ) {
+            logger.info( "Cluster member {} is the leader", localMember );
+            takeOver( alive.size() == members.size() );
+        } else {
+            logger.info( "Cluster member {} follows leader {} (was {})", localMember, elected, previous );
+            lockTable.reset();
+        }
+    }
+
+    /**
+     * Asks the members what they hold before granting any lock, they may have got them from a previous leader. The
+     * ones not reachable may hold locks too: unless all of them are there, nothing is granted for a lease.
+     */
+    private void takeOver( final boolean allMembers ) {
+        lockTable.reset();
+        final Map<String, String> held = new HashMap<String, String>();
+        for ( final String key : heldKeys ) {
+            held.put( key, localMember );
+        }
+        request( Frame.Kind.HELD_LOCKS, null, null, Collections.<String, String>emptyMap(), heartbeat * 2, new AsyncCallback() {
+            @Override
+            public void onTimeOut() {
+            }
+
+            @Override
+            public void onReply( final MessageType type,
+                                 final Map<String, String> content ) {
+                synchronized ( held ) {
+                    held.putAll( content );
+                }
+            }
+        } );
+        synchronized ( held ) {
+            grant( lockTable.ready( held, System.currentTimeMillis(), allMembers ? 0 : lease ) );
+        }
+    }
+
+    private void renew() {
+        final String currentLeader = leader;
+        if ( heldKeys.isEmpty() || localMember.equals( currentLeader ) ) {
+            if ( !heldKeys.isEmpty() ) {
+                lockTable.renew( localMember, new ArrayList<String>( heldKeys ), System.currentTimeMillis() );
+            }
+            return;
+        }
+        final Map<String, String> keys = new HashMap<String, String>();
+        for ( final String key : heldKeys ) {
+            keys.put( key, "" );
+        }
+        sendToMember( currentLeader, new Frame( Frame.Kind.RENEW, 0, localMember, new HashMap<String, String>(), keys ) );
+    }
+
+    private void grant( final List<LockTable.Request> granted ) {
+        for ( final LockTable.Request request : granted ) {
+            final boolean delivered;
+            if ( request.getConnection() == null ) {
+                final CountDownLatch latch = pendingLocks.get( request.getId() );
+                delivered = latch != null;
+                if ( delivered ) {
+                    latch.countDown();
+                }
+            } else {
+                delivered = request.getConnection().send( new Frame( Frame.Kind.LOCK_GRANTED, request.getId(), localMember ) );
+            }
+            if ( !delivered ) {
+                //the requester gave up or went away, it asks again if it's still waiting
+                grant( lockTable.unlock( request.getKey(), request.getMember(), System.currentTimeMillis() ) );
+            }
+        }
+    }
+
+    /**
+     * Acquires the key cluster wide. The request is sent again every heartbeat, to whoever the leader is then: the
+     * leader keeps its place in the queue, and a grant lost with a connection (or a leader) is given again.
+     */
+    private void acquire( final String key ) {
+        final long start = System.currentTimeMillis();
+        final long deadline = start + LOCK_TIMEOUT;
+        final long id = ids.incrementAndGet();
+        final CountDownLatch granted = new CountDownLatch( 1 );
+        pendingLocks.put( id, granted );
+        try {
+            while ( true ) {
+                final String currentLeader = leader;
+                if ( localMember.equals( currentLeader ) ) {
+                    if ( lockTable.lock( new LockTable.Request( key, localMember, id, null ), System.currentTimeMillis() ) ) {
+                        granted.countDown();
+                    }
+                } else {
+                    sendToMember( currentLeader, new Frame( Frame.Kind.LOCK, id, localMember ).field( "key", key ) );
+                }
+                final long remaining = deadline - System.currentTimeMillis();
+                if ( remaining <= 0 ) {
+                    pendingLocks.remove( id );
+                    release( key );
+                    throw new RuntimeException( "Couldn't acquire cluster lock '" + key + "' in " + LOCK_TIMEOUT + "ms." );
+                }
+                if ( granted.await( Math.min( remaining, heartbeat ), TimeUnit.MILLISECONDS ) ) {
+                    break;
+                }
+            }
+        } catch ( final InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            pendingLocks.remove( id );
+            release( key );
+            throw new RuntimeException( "Interrupted acquiring cluster lock '" + key + "'", e );
+        } finally {
+            pendingLocks.remove( id );
+        }
+        heldKeys.add( key );
+        if ( logger.isDebugEnabled() ) {
+            logger.debug( "Cluster lock '" + key + "' acquired in " + ( System.currentTimeMillis() - start ) + "ms." );
+        }
+    }
+
+    private void release( final String key ) {
+        heldKeys.remove( key );
+        final String currentLeader = leader;
+        if ( localMember.equals( currentLeader ) ) {
+            grant( lockTable.unlock( key, localMember, System.currentTimeMillis() ) );
+        } else {
+            sendToMember( currentLeader, new Frame( Frame.Kind.UNLOCK, 0, localMember ).field( "key", key ) );
+        }
+    }
+
+    private ReentrantLock keyLock( final String key ) {
+        final ReentrantLock lock = keyLocks.get( key );
+        if ( lock != null ) {
+            return lock;
+        }
+        final ReentrantLock newLock = new ReentrantLock( true );
+        final ReentrantLock existingLock = keyLocks.putIfAbsent( key, newLock );
+        return existingLock != null ? existingLock : newLock;
+    }
+
+    private void lockKey( final String key ) {
+        final ReentrantLock lock = keyLock( key );
+        lock.lock();
+        if ( lock.getHoldCount() == 1 ) {
+            try {
+                acquire( key );
+            } catch ( final RuntimeException ex ) {
+                lock.unlock();
+                throw ex;
+            }
+        }
+    }
+
+    private void unlockKey( final String key ) {
+        final ReentrantLock lock = keyLock( key );
+        try {
+            if ( lock.getHoldCount() == 1 ) {
+                release( key );
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A thread already holding keyed locks can't wait for the node wide lock (it would wait for itself), it only takes
+     * the cluster wide key.
+     */
+    @Override
+    public void lock() {
+        final boolean exclusive = nodeLock.isWriteLockedByCurrentThread() || nodeLock.getReadHoldCount() == 0;
+        if ( exclusive ) {
+            nodeLock.writeLock().lock();
+        }
+        try {
+            lockKey( GLOBAL_KEY );
+        } catch ( final RuntimeException ex ) {
+            if ( exclusive ) {
+                nodeLock.writeLock().unlock();
+            }
+            throw ex;
+        }
+    }
+
+    @Override
+    public void unlock() {
+        try {
+            unlockKey( GLOBAL_KEY );
+        } finally {
+            if ( nodeLock.isWriteLockedByCurrentThread() ) {
+                nodeLock.writeLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public void lock( final String... keys ) {
+        nodeLock.readLock().lock();
+        final List<String> locked = new ArrayList<String>();
+        try {
+            for ( final String key : new TreeSet<String>( asList( keys ) ) ) {
+                lockKey( key );
+                locked.add( key );
+            }
+        } catch ( final RuntimeException ex ) {
+            for ( int i = locked.size() - 1; i >= 0; i-- ) {
+                unlockKey( locked.get( i ) );
+            }
+            nodeLock.readLock().unlock();
+            throw ex;
+        }
+    }
+
+    @Override
+    public void unlock( final String... keys ) {
+        try {
+            final List<String> sorted = new ArrayList<String>( new TreeSet<String>( asList( keys ) ) );
+            for ( int i = sorted.size() - 1; i >= 0; i-- ) {
+                unlockKey( sorted.get( i ) );
+            }
+        } finally {
+            nodeLock.readLock().unlock();
+        }
+    }
+
+    private List<String> asList( final String... keys ) {
+        final List<String> result = new ArrayList<String>( keys.length );
+        Collections.addAll( result, keys );
+        return result;
+    }
+
+    @Override
+    public int getHoldCount() {
+        return nodeLock.getWriteHoldCount();
+    }
+
+    /**
+     * @return the member holding the key cluster wide, as known by this member if it's the leader; null otherwise
+     */
+    String getOwner( final String key ) {
+        return isLeader() ? lockTable.getOwner( key ) : null;
+    }
+
+    @Override
+    public void broadcastAndWait( final String serviceId,
+                                  final MessageType type,
+                                  final Map<String, String> content,
+                                  final int timeOut ) {
+        broadcastAndWait( serviceId, type, content, timeOut, new AsyncCallback() {
+            @Override
+            public void onTimeOut() {
+            }
+
+            @Override
+            public void onReply( final MessageType type,
+                                 final Map<String, String> content ) {
+            }
+        } );
+    }
+
+    @Override
+    public void broadcastAndWait( final String serviceId,
+                                  final MessageType type,
+                                  final Map<String, String> content,
+                                  final int timeOut,
+                                  final AsyncCallback callback ) {
+        request( Frame.Kind.MESSAGE, serviceId, type, content, timeOut, callback );
+    }
+
+    @Override
+    public void broadcast( final String serviceId,
+                           final MessageType type,
+                           final Map<String, String> content ) {
+        for ( final Connection connection : connectedPeers() ) {
+            connection.send( messageFrame( 0, serviceId, type, content ) );
+        }
+    }
+
+    @Override
+    public void broadcast( final String serviceId,
+                           final MessageType type,
+                           final Map<String, String> content,
+                           final int timeOut,
+                           final AsyncCallback callback ) {
+        handlers.execute( new DescriptiveRunnable() {
+            @Override
+            public String getDescription() {
+                return "Cluster Broadcast [" + serviceId + "/" + type + "]";
+            }
+
+            @Override
+            public void run() {
+                request( Frame.Kind.MESSAGE, serviceId, type, content, timeOut, callback );
+            }
+        } );
+    }
+
+    @Override
+    public void sendTo( final String serviceId,
+                        final String resourceId,
+                        final MessageType type,
+                        final Map<String, String> content ) {
+        sendToMember( resourceId, messageFrame( 0, serviceId, type, content ) );
+    }
+
+    private Frame messageFrame( final long id,
+                                final String serviceId,
+                                final MessageType type,
+                                final Map<String, String> content ) {
+        return new Frame( Frame.Kind.MESSAGE, id, localMember, new HashMap<String, String>(), new HashMap<String, String>( content ) )
+                .field( "serviceId", serviceId )
+                .field( "type", type.toString() );
+    }
+
+    /**
+     * Sends the request to every reachable member and waits for all of them to reply, or the timeout.
+     */
+    private void request( final Frame.Kind kind,
+                          final String serviceId,
+                          final MessageType type,
+                          final Map<String, String> content,
+                          final long timeOut,
+                          final AsyncCallback callback ) {
+        final List<Connection> connections = connectedPeers();
+        if ( connections.isEmpty() ) {
+            callback.onTimeOut();
+            return;
+        }
+        final long id = ids.incrementAndGet();
+        final PendingReplies pending = new PendingReplies( connections.size(), callback );
+        pendingReplies.put( id, pending );
+        try {
+            for ( final Connection connection : connections ) {
+                final Frame frame = kind == Frame.Kind.MESSAGE ? messageFrame( id, serviceId, type, content ) : new Frame( kind, id, localMember );
+                if ( !connection.send( frame.field( "reply", "true" ) ) ) {
+                    pending.skip();
+                }
+            }
+            if ( !pending.await( timeOut ) ) {
+                callback.onTimeOut();
+            }
+        } finally {
+            pendingReplies.remove( id );
+        }
+    }
+
+    private List<Connection> connectedPeers() {
+        final List<Connection> result = new ArrayList<Connection>();
+        for ( final Connection connection : peers.values() ) {
+            if ( !connection.isClosed() ) {
+                result.add( connection );
+            }
+        }
+        return result;
+    }
+
+    private void sendToMember( final String member,
+                               final Frame frame ) {
+        if ( member == null ) {
+            logger.debug( "Cluster member {} has no leader to send {} to", localMember, frame );
+            return;
+        }
+        final Connection connection = peers.get( member );
+        if ( connection == null || !connection.send( frame ) ) {
+            logger.debug( "Cluster member {} can't send {} to {}", localMember, frame, member );
+        }
+    }
+
+    private Pair<MessageType, Map<String, String>> handle( final String serviceId,
+                                                           final MessageType type,
+                                                           final Map<String, String> content ) {
+        final MessageHandlerResolver resolver = messageHandlerResolver.get( serviceId );
+        if ( resolver == null ) {
+            logger.debug( "No resolver for service {}", serviceId );
+            return null;
+        }
+        final MessageHandler handler = resolver.resolveHandler( serviceId, type );
+        if ( handler == null ) {
+            logger.debug( "No handler for message {} of service {}", type, serviceId );
+            return null;
+        }
+        return handler.handleMessage( type, content );
+    }
+
+    private MessageType buildMessageType( final String _type ) {
+        if ( _type == null ) {
+            return null;
+        }
+
+        MessageType type;
+        try {
+            type = ClusterMessageType.valueOf( _type );
+        } catch ( Exception ex ) {
+            type = new MessageType() {
+                @Override
+                public String toString() {
+                    return _type;
+                }
+
+                @Override
+                public int hashCode() {
+                    return _type.hashCode();
+                }
+            };
+        }
+
+        return type;
+    }
+
+    @Override
+    public void onStart( final Runnable runnable ) {
+        runnable.run();
+    }
+
+    @Override
+    public void dispose() {
+        if ( disposed ) {
+            return;
+        }
+        for ( final String key : new ArrayList<String>( heldKeys ) ) {
+            release( key );
+        }
+        disposed = true;
+        scheduler.shutdownNow();
+        handlers.shutdownNow();
+        try {
+            server.close();
+        } catch ( final IOException ignored ) {
+        }
+        for ( final Connection connection : peers.values() ) {
+            connection.close();
+        }
+        for ( final Connection connection : accepted ) {
+            connection.close();
+        }
+    }
+
+    @Override
+    public int priority() {
+        return Integer.MIN_VALUE + 200;
+    }
+
+    private static class PendingReplies {
+
+        private final CountDownLatch latch;
+        private final AsyncCallback callback;
+
+        PendingReplies( final int expected,
+                        final AsyncCallback callback ) {
+            this.latch = new CountDownLatch( expected );
+            this.callback = callback;
+        }
+
+        void reply( final MessageType type,
+                    final Map<String, String> content ) {
+            try {
+                callback.onReply( type, content );
+            } finally {
+                latch.countDown();
+            }
+        }
+
+        void skip() {
+            latch.countDown();
+        }
+
+        boolean await( final long timeOut ) {
+            try {
+                return latch.await( timeOut, TimeUnit.MILLISECONDS );
+            } catch ( final InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    private class FrameListener implements Connection.Listener {
+
+        @Override
+        public void onFrame( final Connection connection,
+                             final Frame frame ) {
+            switch ( frame.getKind() ) {
+                case REPLY:
+                    final PendingReplies pending = pendingReplies.get( frame.getId() );
+                    if ( pending != null ) {
+                        pending.reply( buildMessageType( frame.getField( "type" ) ), frame.getContent() );
+                    }
+                    break;
+                case LOCK_GRANTED:
+                    final CountDownLatch latch = pendingLocks.get( frame.getId() );
+                    if ( latch != null ) {
+                        latch.countDown();
+                    } else {
+                        //gave up meanwhile, the release sent on timeout frees it
+                        logger.debug( "Late grant {}", frame );
+                    }
+                    break;
+                case LOCK:
+                    if ( isLeader() && lockTable.lock( new LockTable.Request( frame.getField( "key" ), frame.getOrigin(), frame.getId(), connection ), System.currentTimeMillis() ) ) {
+                        connection.send( new Frame( Frame.Kind.LOCK_GRANTED, frame.getId(), localMember ) );
+                    }
+                    break;
+                case UNLOCK:
+                    if ( isLeader() ) {
+                        grant( lockTable.unlock( frame.getField( "key" ), frame.getOrigin(), System.currentTimeMillis() ) );
+                    }
+                    break;
+                case RENEW:
+                    if ( isLeader() ) {
+                        lockTable.renew( frame.getOrigin(), frame.getContent().keySet(), System.currentTimeMillis() );
+                    }
+                    break;
+                case HELD_LOCKS:
+                    final Map<String, String> held = new HashMap<String, String>();
+                    for ( final String key : heldKeys ) {
+                        held.put( key, localMember );
+                    }
+                    connection.send( new Frame( Frame.Kind.REPLY, frame.getId(), localMember, new HashMap<String, String>(), held ) );
+                    break;
+                case MESSAGE:
+                    handleMessage( connection, frame );
+                    break;
+                case PING:
+                    connection.send( new Frame( Frame.Kind.PONG, 0, localMember ) );
+                    break;
+                case PONG:
+                    break;
+            }
+        }
+
+        @Override
+        public void onClose( final Connection connection ) {
+            accepted.remove( connection );
+        }
+
+        private void handleMessage( final Connection connection,
+                                    final Frame frame ) {
+            if ( disposed ) {
+                return;
+            }
+            handlers.execute( new DescriptiveRunnable() {
+                @Override
+                public String getDescription() {
+                    return "Cluster Message [" + frame + "]";
+                }
+
+                @Override
+                public void run() {
+                    Pair<MessageType, Map<String, String>> result = null;
+                    try {
+                        final String serviceId = frame.getField( "serviceId" );
+                        result = handle( serviceId, buildMessageType( frame.getField( "type" ) ), frame.getContent() );
+                    } catch ( final Exception ex ) {
+                        logger.error( "Cluster message " + frame + " failed", ex );
+                    }
+                    if ( "true".equals( frame.getField( "reply" ) ) ) {
+                        final Frame reply = new Frame( Frame.Kind.REPLY, frame.getId(), localMember,
+                                                       new HashMap<String, String>(),
+                                                       result == null ? new HashMap<String, String>() : result.getK2() );
+                        if ( result != null ) {
+                            reply.field( "type", result.getK1().toString() );
+                        }
+                        connection.send( reply );
+                    }
+                }
+            } );
+        }
+    }
+}
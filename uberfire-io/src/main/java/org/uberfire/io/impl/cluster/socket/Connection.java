@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.cluster.socket;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.uberfire.commons.async.DescriptiveRunnable;
+import org.uberfire.commons.async.DescriptiveThreadFactory;
+
+/**
+ * A TCP connection between two members. Frames go both ways: the member that connected sends its requests and gets
+ * the replies on it, the other one answers on it. Every frame read is handed to the listener on the reading thread.
+ */
+class Connection {
+
+    private static final Logger logger = LoggerFactory.getLogger( Connection.class );
+
+    interface Listener {
+
+        void onFrame( Connection connection,
+                      Frame frame );
+
+        void onClose( Connection connection );
+    }
+
+    private final String description;
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final Listener listener;
+    private volatile boolean closed = false;
+    //time the last frame was read, 0 until the first one
+    private volatile long lastFrame = 0;
+    private final AtomicInteger missedPings = new AtomicInteger();
+
+    Connection( final String description,
+                final Socket socket,
+                final Listener listener ) throws IOException {
+        this.description = description;
+        this.socket = socket;
+        this.listener = listener;
+        socket.setTcpNoDelay( true );
+        this.in = new DataInputStream( new BufferedInputStream( socket.getInputStream() ) );
+        this.out = new DataOutputStream( new BufferedOutputStream( socket.getOutputStream() ) );
+    }
+
+    void start() {
+        final Thread reader = new DescriptiveThreadFactory().newThread( new DescriptiveRunnable() {
+            @Override
+            public String getDescription() {
+                return "Cluster Connection [" + description + "]";
+            }
+
+            @Override
+            public void run() {
+                read();
+            }
+        } );
+        reader.setDaemon( true );
+        reader.start();
+    }
+
+    private void read() {
+        try {
+            while ( !closed ) {
+                final Frame frame = Frame.read( in );
+                lastFrame = System.currentTimeMillis();
+                missedPings.set( 0 );
+                listener.onFrame( this, frame );
+            }
+        } catch ( final EOFException e ) {
+            logger.debug( "Connection {} closed by peer", description );
+        } catch ( final SocketException e ) {
+            logger.debug( "Connection {} closed: {}", description, e.getMessage() );
+        } catch ( final Exception e ) {
+            logger.warn( "Connection " + description + " failed", e );
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * @return false if the frame couldn't be sent, the connection is closed then
+     */
+    boolean send( final Frame frame ) {
+        if ( closed ) {
+            return false;
+        }
+        try {
+            synchronized ( out ) {
+                frame.write( out );
+                out.flush();
+            }
+            return true;
+        } catch ( final IOException e ) {
+            logger.debug( "Sending {} on connection {} failed: {}", frame, description, e.getMessage() );
+            close();
+            return false;
+        }
+    }
+
+    /**
+     * Pings the other end, any frame it sends back counts as the answer.
+     */
+    boolean ping( final String origin ) {
+        missedPings.incrementAndGet();
+        return send( new Frame( Frame.Kind.PING, 0, origin ) );
+    }
+
+    /**
+     * @return the pings sent since the last frame read
+     */
+    int getMissedPings() {
+        return missedPings.get();
+    }
+
+    long getLastFrame() {
+        return lastFrame;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    void close() {
+        synchronized ( this ) {
+            if ( closed ) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            socket.close();
+        } catch ( final IOException ignored ) {
+        }
+        listener.onClose( this );
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.cluster.socket;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Unit of the wire protocol between cluster members: a kind, the id of the request it is (or answers), the member it
+ * comes from and two string maps, the protocol fields and the content of the message. Strings are written as length
+ * prefixed UTF-8; a length over {@link #MAX_BYTES} is rejected before anything is allocated for it, the connection
+ * it came on is closed then.
+ */
+class Frame {
+
+    enum Kind {
+        MESSAGE,
+        REPLY,
+        LOCK,
+        LOCK_GRANTED,
+        UNLOCK,
+        RENEW,
+        HELD_LOCKS,
+        PING,
+        PONG
+    }
+
+    // default max string size 16MB
+    static final int MAX_BYTES = Integer.parseInt( System.getProperty( "org.uberfire.cluster.frame.max.bytes", "16777216" ) );
+
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+    private final Kind kind;
+    private final long id;
+    private final String origin;
+    private final Map<String, String> fields;
+    private final Map<String, String> content;
+
+    Frame( final Kind kind,
+           final long id,
+           final String origin ) {
+        this( kind, id, origin, new HashMap<String, String>(), new HashMap<String, String>() );
+    }
+
+    Frame( final Kind kind,
+           final long id,
+           final String origin,
+           final Map<String, String> fields,
+           final Map<String, String> content ) {
+        this.kind = kind;
+        this.id = id;
+        this.origin = origin;
+        this.fields = fields;
+        this.content = content;
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    String getOrigin() {
+        return origin;
+    }
+
+    String getField( final String name ) {
+        return fields.get( name );
+    }
+
+    Frame field( final String name,
+                 final String value ) {
+        if ( value != null ) {
+            fields.put( name, value );
+        }
+        return this;
+    }
+
+    Map<String, String> getContent() {
+        return content;
+    }
+
+    void write( final DataOutputStream out ) throws IOException {
+        out.writeByte( kind.ordinal() );
+        out.writeLong( id );
+        writeString( out, origin );
+        writeMap( out, fields );
+        writeMap( out, content );
+    }
+
+    static Frame read( final DataInputStream in ) throws IOException {
+        final int ordinal = in.readByte();
+        if ( ordinal < 0 || ordinal >= Kind.values().length ) {
+            throw new IOException( "Unknown frame kind " + ordinal );
+        }
+        final Kind kind = Kind.values()[ ordinal ];
+        final long id = in.readLong();
+        final String origin = readString( in );
+        final Map<String, String> fields = readMap( in );
+        final Map<String, String> content = readMap( in );
+        return new Frame( kind, id, origin, fields, content );
+    }
+
+    private static void writeMap( final DataOutputStream out,
+                                  final Map<String, String> map ) throws IOException {
+        if ( map == null ) {
+            out.writeInt( 0 );
+            return;
+        }
+        out.writeInt( map.size() );
+        for ( final Map.Entry<String, String> entry : map.entrySet() ) {
+            writeString( out, entry.getKey() );
+            writeString( out, entry.getValue() );
+        }
+    }
+
+    private static Map<String, String> readMap( final DataInputStream in ) throws IOException {
+        final int size = in.readInt();
+        if ( size < 0 ) {
+            throw new IOException( "Invalid frame map size " + size );
+        }
+        //the size isn't trusted either, a bogus one fails on the strings that aren't there
+        final Map<String, String> result = new HashMap<String, String>( Math.min( size, 64 ) * 2 );
+        for ( int i = 0; i < size; i++ ) {
+            result.put( readString( in ), readString( in ) );
+        }
+        return result;
+    }
+
+    private static void writeString( final DataOutputStream out,
+                                     final String value ) throws IOException {
+        if ( value == null ) {
+            out.writeInt( -1 );
+            return;
+        }
+        final byte[] bytes = value.getBytes( UTF_8 );
+        out.writeInt( bytes.length );
+        out.write( bytes );
+    }
+
+    private static String readString( final DataInputStream in ) throws IOException {
+        final int length = in.readInt();
+        if ( length == -1 ) {
+            return null;
+        }
+        if ( length < -1 || length > MAX_BYTES ) {
+            throw new IOException( "Frame string of " + length + " bytes rejected, the limit is " + MAX_BYTES + " bytes (org.uberfire.cluster.frame.max.bytes)" );
+        }
+        final byte[] bytes = new byte[ length ];
+        in.readFully( bytes );
+        return new String( bytes, UTF_8 );
+    }
+
+    @Override
+    public String toString() {
+        return kind + "#" + id + " from " + origin;
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.cluster.socket;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cluster locks as kept by the leader: the owner of each key, with a lease its member has to renew, and the members
+ * waiting for it, granted in request order. Owners are members, not threads: each member lets a single thread ask for
+ * a key at a time. Until {@link #ready(Map, long, long)} (what the members still hold once a new leader takes over)
+ * locks are queued, not granted.
+ */
+class LockTable {
+
+    private static final Logger logger = LoggerFactory.getLogger( LockTable.class );
+
+    static class Request {
+
+        private final String key;
+        private final String member;
+        private final long id;
+        private final Connection connection;
+
+        /**
+         * @param connection where to send the grant, null for the leader's own requests
+         */
+        Request( final String key,
+                 final String member,
+                 final long id,
+                 final Connection connection ) {
+            this.key = key;
+            this.member = member;
+            this.id = id;
+            this.connection = connection;
+        }
+
+        String getKey() {
+            return key;
+        }
+
+        String getMember() {
+            return member;
+        }
+
+        long getId() {
+            return id;
+        }
+
+        Connection getConnection() {
+            return connection;
+        }
+    }
+
+    private static class Owner {
+
+        private final String member;
+        private long expiry;
+
+        Owner( final String member,
+               final long expiry ) {
+            this.member = member;
+            this.expiry = expiry;
+        }
+    }
+
+    private final long lease;
+    private final Map<String, Owner> owners = new HashMap<String, Owner>();
+    private final Map<String, LinkedList<Request>> waiters = new HashMap<String, LinkedList<Request>>();
+    private boolean ready = false;
+    private long grantFrom = 0;
+
+    LockTable( final long lease ) {
+        this.lease = lease;
+    }
+
+    /**
+     * @return true if granted right away, the request is queued otherwise
+     */
+    synchronized boolean lock( final Request request,
+                               final long now ) {
+        final String key = request.getKey();
+        final Owner owner = owners.get( key );
+        if ( granting( now ) && ( owner == null || owner.member.equals( request.getMember() ) ) ) {
+            owners.put( key, new Owner( request.getMember(), now + lease ) );
+            return true;
+        }
+        //a request sent again replaces the previous one of the member, keeping its place
+        final ListIterator<Request> iterator = waitersOf( key ).listIterator();
+        while ( iterator.hasNext() ) {
+            if ( iterator.next().getMember().equals( request.getMember() ) ) {
+                iterator.set( request );
+                return false;
+            }
+        }
+        iterator.add( request );
+        return false;
+    }
+
+    /**
+     * Releases the key if the member owns it, otherwise drops the request the member may have queued for it.
+     * @return the requests granted meanwhile
+     */
+    synchronized List<Request> unlock( final String key,
+                                       final String member,
+                                       final long now ) {
+        final Owner owner = owners.get( key );
+        if ( owner != null && owner.member.equals( member ) ) {
+            owners.remove( key );
+        } else {
+            final LinkedList<Request> queue = waiters.get( key );
+            if ( queue != null ) {
+                removeRequestOf( queue, member );
+            }
+        }
+        return grant( now );
+    }
+
+    /**
+     * Extends the leases of the keys the member holds; keys nobody owns are taken over by the member (the lock was
+     * granted by a previous leader).
+     */
+    synchronized void renew( final String member,
+                             final Collection<String> keys,
+                             final long now ) {
+        for ( final String key : keys ) {
+            final Owner owner = owners.get( key );
+            if ( owner == null ) {
+                owners.put( key, new Owner( member, now + lease ) );
+            } else if ( owner.member.equals( member ) ) {
+                owner.expiry = now + lease;
+            } else {
+                logger.warn( "Member {} renews lock '{}' owned by {}", member, key, owner.member );
+            }
+        }
+    }
+
+    /**
+     * Drops the locks whose lease ran out.
+     * @return the requests granted meanwhile
+     */
+    synchronized List<Request> expire( final long now ) {
+        final Iterator<Map.Entry<String, Owner>> iterator = owners.entrySet().iterator();
+        while ( iterator.hasNext() ) {
+            final Map.Entry<String, Owner> entry = iterator.next();
+            if ( entry.getValue().expiry < now ) {
+                logger.warn( "Lease of lock '{}' held by {} expired", entry.getKey(), entry.getValue().member );
+                iterator.remove();
+            }
+        }
+        return grant( now );
+    }
+
+    /**
+     * Starts granting locks, once the new leader knows what the members hold.
+     * @param held key to member holding it
+     * @param delay how long to wait before granting anything: a lease when some members didn't answer, the locks they
+     * may hold run out meanwhile
+     * @return the requests granted
+     */
+    synchronized List<Request> ready( final Map<String, String> held,
+                                      final long now,
+                                      final long delay ) {
+        for ( final Map.Entry<String, String> entry : held.entrySet() ) {
+            owners.put( entry.getKey(), new Owner( entry.getValue(), now + lease ) );
+        }
+        ready = true;
+        grantFrom = now + delay;
+        return grant( now );
+    }
+
+    /**
+     * Forgets everything, when leadership is lost (or about to be taken over); members send their requests again to
+     * the new leader.
+     */
+    synchronized void reset() {
+        owners.clear();
+        waiters.clear();
+        ready = false;
+        grantFrom = 0;
+    }
+
+    synchronized String getOwner( final String key ) {
+        final Owner owner = owners.get( key );
+        return owner == null ? null : owner.member;
+    }
+
+    synchronized int getWaiting( final String key ) {
+        final LinkedList<Request> queue = waiters.get( key );
+        return queue == null ? 0 : queue.size();
+    }
+
+    private List<Request> grant( final long now ) {
+        final List<Request> granted = new ArrayList<Request>();
+        if ( !granting( now ) ) {
+            return granted;
+        }
+        final Iterator<Map.Entry<String, LinkedList<Request>>> iterator = waiters.entrySet().iterator();
+        while ( iterator.hasNext() ) {
+            final Map.Entry<String, LinkedList<Request>> entry = iterator.next();
+            if ( !owners.containsKey( entry.getKey() ) ) {
+                final Request next = entry.getValue().poll();
+                if ( next != null ) {
+                    owners.put( entry.getKey(), new Owner( next.getMember(), now + lease ) );
+                    granted.add( next );
+                }
+            }
+            if ( entry.getValue().isEmpty() ) {
+                iterator.remove();
+            }
+        }
+        return granted;
+    }
+
+    private boolean granting( final long now ) {
+        return ready && now >= grantFrom;
+    }
+
+    private LinkedList<Request> waitersOf( final String key ) {
+        LinkedList<Request> queue = waiters.get( key );
+        if ( queue == null ) {
+            queue = new LinkedList<Request>();
+            waiters.put( key, queue );
+        }
+        return queue;
+    }
+
+    private void removeRequestOf( final LinkedList<Request> queue,
+                                  final String member ) {
+        final Iterator<Request> iterator = queue.iterator();
+        while ( iterator.hasNext() ) {
+            if ( iterator.next().getMember().equals( member ) ) {
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.metrics;
+
+/**
+ * Receives the calls timed by {@link IOServiceMetricsImpl}, to keep them or hand them to a metrics library. Called on
+ * the thread that made the call, so it has to be thread safe and cheap.
+ */
+public interface IOMetricsRegistry {
+
+    /**
+     * @param operation name of the {@link org.uberfire.io.IOService} method called, overloads share it
+     * @param fileSystem id of the file system the call worked on, null if none
+     * @param nanos how long the call took
+     * @param failed whether the call threw
+     */
+    void record( final String operation,
+                 final String fileSystem,
+                 final long nanos,
+                 final boolean failed );
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Default {@link IOMetricsRegistry}: a latency histogram per operation, and per operation and file system, exported
+ * through JMX once {@link #register(String)} is called.
+ */
+public class IOServiceMetrics implements IOMetricsRegistry,
+                                         IOServiceMetricsMXBean {
+
+    private static final Logger logger = LoggerFactory.getLogger( IOServiceMetrics.class );
+
+    private final ConcurrentMap<String, LatencyHistogram> operations = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ConcurrentMap<String, ConcurrentMap<String, LatencyHistogram>> fileSystems = new ConcurrentHashMap<String, ConcurrentMap<String, LatencyHistogram>>();
+    private volatile long since = System.currentTimeMillis();
+    private ObjectName objectName;
+
+    @Override
+    public void record( final String operation,
+                        final String fileSystem,
+                        final long nanos,
+                        final boolean failed ) {
+        histogram( operations, operation ).record( nanos, failed );
+        if ( fileSystem != null ) {
+            ConcurrentMap<String, LatencyHistogram> fsOperations = fileSystems.get( fileSystem );
+            if ( fsOperations == null ) {
+                final ConcurrentMap<String, LatencyHistogram> newOperations = new ConcurrentHashMap<String, LatencyHistogram>();
+                fsOperations = fileSystems.putIfAbsent( fileSystem, newOperations );
+                if ( fsOperations == null ) {
+                    fsOperations = newOperations;
+                }
+            }
+            histogram( fsOperations, operation ).record( nanos, failed );
+        }
+    }
+
+    private LatencyHistogram histogram( final ConcurrentMap<String, LatencyHistogram> histograms,
+                                        final String operation ) {
+        final LatencyHistogram histogram = histograms.get( operation );
+        if ( histogram != null ) {
+            return histogram;
+        }
+        final LatencyHistogram newHistogram = new LatencyHistogram();
+        final LatencyHistogram existing = histograms.putIfAbsent( operation, newHistogram );
+        return existing != null ? existing : newHistogram;
+    }
+
+    /**
+     * @return the statistics of the operation on every file system, null if it wasn't called
+     */
+    public OperationStatistics getOperation( final String operation ) {
+        final LatencyHistogram histogram = operations.get( operation );
+        return histogram == null ? null : new OperationStatistics( operation, null, histogram, elapsed() );
+    }
+
+    /**
+     * @return the statistics of the operation on the file system, null if it wasn't called on it
+     */
+    public OperationStatistics getOperation( final String operation,
+                                             final String fileSystem ) {
+        final Map<String, LatencyHistogram> fsOperations = fileSystems.get( fileSystem );
+        final LatencyHistogram histogram = fsOperations == null ? null : fsOperations.get( operation );
+        return histogram == null ? null : new OperationStatistics( operation, fileSystem, histogram, elapsed() );
+    }
+
+    @Override
+    public List<OperationStatistics> getOperations() {
+        final long elapsed = elapsed();
+        final List<OperationStatistics> result = new ArrayList<OperationStatistics>();
+        for ( final Map.Entry<String, LatencyHistogram> entry : operations.entrySet() ) {
+            result.add( new OperationStatistics( entry.getKey(), null, entry.getValue(), elapsed ) );
+        }
+        return result;
+    }
+
+    @Override
+    public List<OperationStatistics> getFileSystemOperations() {
+        final long elapsed = elapsed();
+        final List<OperationStatistics> result = new ArrayList<OperationStatistics>();
+        for ( final Map.Entry<String, ConcurrentMap<String, LatencyHistogram>> fs : fileSystems.entrySet() ) {
+            for ( final Map.Entry<String, LatencyHistogram> entry : fs.getValue().entrySet() ) {
+                result.add( new OperationStatistics( entry.getKey(), fs.getKey(), entry.getValue(), elapsed ) );
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public long getCallCount() {
+        long result = 0;
+        for ( final LatencyHistogram histogram : operations.values() ) {
+            result += histogram.getCount();
+        }
+        return result;
+    }
+
+    @Override
+    public long getErrorCount() {
+        long result = 0;
+        for ( final LatencyHistogram histogram : operations.values() ) {
+            result += histogram.getErrors();
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        operations.clear();
+        fileSystems.clear();
+        since = System.currentTimeMillis();
+    }
+
+    private long elapsed() {
+        return System.currentTimeMillis() - since;
+    }
+
+    /**
+     * Exports the statistics through the platform MBean server; a failure is logged, metrics are still recorded.
+     */
+    public synchronized void register( final String name ) {
+        if ( objectName != null ) {
+            return;
+        }
+        try {
+            final ObjectName newName = new ObjectName( "org.uberfire.io:type=IOServiceMetrics,name=" + ObjectName.quote( name ) );
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if ( server.isRegistered( newName ) ) {
+                server.unregisterMBean( newName );
+            }
+            server.registerMBean( this, newName );
+            objectName = newName;
+        } catch ( final Exception ex ) {
+            logger.warn( "Can't export IO service metrics '" + name + "' through JMX", ex );
+        }
+    }
+
+    public synchronized void unregister() {
+        if ( objectName == null ) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean( objectName );
+        } catch ( final Exception ex ) {
+            logger.debug( "Can't unregister IO service metrics " + objectName, ex );
+        }
+        objectName = null;
+    }
+
+    ObjectName getObjectName() {
+        return objectName;
+    }
+}
@@ -0,0 +1,1060 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.metrics;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.uberfire.io.IOService;
+import org.uberfire.java.nio.IOException;
+import org.uberfire.java.nio.base.FileSystemId;
+import org.uberfire.java.nio.base.query.ResultPage;
+import org.uberfire.java.nio.channels.SeekableByteChannel;
+import org.uberfire.java.nio.file.AtomicMoveNotSupportedException;
+import org.uberfire.java.nio.file.CopyOption;
+import org.uberfire.java.nio.file.DeleteOption;
+import org.uberfire.java.nio.file.DirectoryNotEmptyException;
+import org.uberfire.java.nio.file.DirectoryStream;
+import org.uberfire.java.nio.file.FileAlreadyExistsException;
+import org.uberfire.java.nio.file.FileSystem;
+import org.uberfire.java.nio.file.FileSystemAlreadyExistsException;
+import org.uberfire.java.nio.file.FileSystemNotFoundException;
+import org.uberfire.java.nio.file.NoSuchFileException;
+import org.uberfire.java.nio.file.NotDirectoryException;
+import org.uberfire.java.nio.file.OpenOption;
+import org.uberfire.java.nio.file.Option;
+import org.uberfire.java.nio.file.Path;
+import org.uberfire.java.nio.file.ProviderNotFoundException;
+import org.uberfire.java.nio.file.attribute.FileAttribute;
+import org.uberfire.java.nio.file.attribute.FileAttributeView;
+import org.uberfire.java.nio.file.attribute.FileTime;
+
+import static org.uberfire.commons.validation.PortablePreconditions.*;
+
+/**
+ * Times every call made to the decorated service, and whether it failed, per operation (the method called) and per
+ * file system, into an {@link IOMetricsRegistry}. Calls returning a stream or a channel are timed up to the opening,
+ * not while it's read or written. Path resolution (<code>get</code>) isn't timed.
+ * <p/>
+ * Enabled in the CDI producers with <code>org.uberfire.io.metrics.enabled</code>; the registry is a JMX exported
+ * {@link IOServiceMetrics} unless <code>org.uberfire.io.metrics.registry</code> names another implementation (with
+ * a public no-arg constructor).
+ */
+public class IOServiceMetricsImpl implements IOService {
+
+    private static final Logger logger = LoggerFactory.getLogger( IOServiceMetricsImpl.class );
+
+    private final IOService service;
+    private final IOMetricsRegistry registry;
+
+    /**
+     * Records into the registry configured by <code>org.uberfire.io.metrics.registry</code>, a JMX exported
+     * {@link IOServiceMetrics} named after the service by default.
+     */
+    public IOServiceMetricsImpl( final String name,
+                                 final IOService service ) {
+        this( service, buildRegistry( name ) );
+    }
+
+    public IOServiceMetricsImpl( final IOService service,
+                                 final IOMetricsRegistry registry ) {
+        this.service = checkNotNull( "service", service );
+        this.registry = checkNotNull( "registry", registry );
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean( System.getProperty( "org.uberfire.io.metrics.enabled", "false" ) );
+    }
+
+    private static IOMetricsRegistry buildRegistry( final String name ) {
+        final String registryClass = System.getProperty( "org.uberfire.io.metrics.registry" );
+        if ( registryClass != null ) {
+            try {
+                return (IOMetricsRegistry) Class.forName( registryClass ).newInstance();
+            } catch ( final Exception ex ) {
+                logger.error( "Can't build IO metrics registry '" + registryClass + "', using the default one", ex );
+            }
+        }
+        final IOServiceMetrics metrics = new IOServiceMetrics();
+        metrics.register( name );
+        return metrics;
+    }
+
+    public IOMetricsRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * @return the decorated service
+     */
+    public IOService getService() {
+        return service;
+    }
+
+    private void record( final String operation,
+                         final String fileSystem,
+                         final long start,
+                         final boolean failed ) {
+        try {
+            registry.record( operation, fileSystem, System.nanoTime() - start, failed );
+        } catch ( final RuntimeException ex ) {
+            logger.debug( "IO metrics registry error", ex );
+        }
+    }
+
+    private String fileSystemOf( final Path path ) {
+        return path == null ? null : fileSystemOf( path.getFileSystem() );
+    }
+
+    private String fileSystemOf( final FileSystem... fs ) {
+        return fs == null || fs.length == 0 ? null : fileSystemOf( fs[ 0 ] );
+    }
+
+    private String fileSystemOf( final FileSystem fs ) {
+        if ( fs == null ) {
+            return null;
+        }
+        if ( fs instanceof FileSystemId ) {
+            return ( (FileSystemId) fs ).id();
+        }
+        //proxied file systems expose their id through their root
+        try {
+            final FileSystem root = fs.getRootDirectories().iterator().next().getFileSystem();
+            if ( root instanceof FileSystemId ) {
+                return ( (FileSystemId) root ).id();
+            }
+        } catch ( final RuntimeException ignored ) {
+        }
+        return fs.toString();
+    }
+
+    @Override
+    public void startBatch( final FileSystem fs ) {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            service.startBatch( fs );
+            failed = false;
+        } finally {
+            record( "startBatch", fileSystemOf( fs ), start, failed );
+        }
+    }
+
+    @Override
+    public void startBatch( final FileSystem[] fs,
+                            final Option... options ) {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            service.startBatch( fs, options );
+            failed = false;
+        } finally {
+            record( "startBatch", fileSystemOf( fs ), start, failed );
+        }
+    }
+
+    @Override
+    public void startBatch( final FileSystem fs,
+                            final Option... options ) {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            service.startBatch( fs, options );
+            failed = false;
+        } finally {
+            record( "startBatch", fileSystemOf( fs ), start, failed );
+        }
+    }
+
+    @Override
+    public void startBatch( final FileSystem... fs ) {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            service.startBatch( fs );
+            failed = false;
+        } finally {
+            record( "startBatch", fileSystemOf( fs ), start, failed );
+        }
+    }
+
+    @Override
+    public void endBatch() {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            service.endBatch();
+            failed = false;
+        } finally {
+            record( "endBatch", null, start, failed );
+        }
+    }
+
+    @Override
+    public FileAttribute<?>[] convert( final Map<String, ?> attrs ) {
+        return service.convert( attrs );
+    }
+
+    @Override
+    public Path get( final String first,
+                     final String... more ) throws IllegalArgumentException {
+        return service.get( first, more );
+    }
+
+    @Override
+    public Path get( final URI uri ) throws IllegalArgumentException, FileSystemNotFoundException, SecurityException {
+        return service.get( uri );
+    }
+
+    @Override
+    public Iterable<FileSystem> getFileSystems() {
+        return service.getFileSystems();
+    }
+
+    @Override
+    public FileSystem getFileSystem( final URI uri ) throws IllegalArgumentException, FileSystemNotFoundException, ProviderNotFoundException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final FileSystem result = service.getFileSystem( uri );
+            failed = false;
+            return result;
+        } finally {
+            record( "getFileSystem", null, start, failed );
+        }
+    }
+
+    @Override
+    public FileSystem newFileSystem( final URI uri,
+                                     final Map<String, ?> env ) throws IllegalArgumentException, FileSystemAlreadyExistsException, ProviderNotFoundException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final FileSystem result = service.newFileSystem( uri, env );
+            failed = false;
+            return result;
+        } finally {
+            record( "newFileSystem", null, start, failed );
+        }
+    }
+
+    @Override
+    public void onNewFileSystem( final NewFileSystemListener listener ) {
+        service.onNewFileSystem( listener );
+    }
+
+    @Override
+    public InputStream newInputStream( final Path path,
+                                       final OpenOption... options ) throws IllegalArgumentException, NoSuchFileException, UnsupportedOperationException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final InputStream result = service.newInputStream( path, options );
+            failed = false;
+            return result;
+        } finally {
+            record( "newInputStream", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public OutputStream newOutputStream( final Path path,
+                                         final OpenOption... options ) throws IllegalArgumentException, UnsupportedOperationException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final OutputStream result = service.newOutputStream( path, options );
+            failed = false;
+            return result;
+        } finally {
+            record( "newOutputStream", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public SeekableByteChannel newByteChannel( final Path path,
+                                               final OpenOption... options ) throws IllegalArgumentException, UnsupportedOperationException, FileAlreadyExistsException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final SeekableByteChannel result = service.newByteChannel( path, options );
+            failed = false;
+            return result;
+        } finally {
+            record( "newByteChannel", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public SeekableByteChannel newByteChannel( final Path path,
+                                               final Set<? extends OpenOption> options,
+                                               final FileAttribute<?>... attrs ) throws IllegalArgumentException, UnsupportedOperationException, FileAlreadyExistsException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final SeekableByteChannel result = service.newByteChannel( path, options, attrs );
+            failed = false;
+            return result;
+        } finally {
+            record( "newByteChannel", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public DirectoryStream<Path> newDirectoryStream( final Path dir ) throws IllegalArgumentException, NotDirectoryException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final DirectoryStream<Path> result = service.newDirectoryStream( dir );
+            failed = false;
+            return result;
+        } finally {
+            record( "newDirectoryStream", fileSystemOf( dir ), start, failed );
+        }
+    }
+
+    @Override
+    public DirectoryStream<Path> newDirectoryStream( final Path dir,
+                                                     final DirectoryStream.Filter<Path> filter ) throws IllegalArgumentException, NotDirectoryException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final DirectoryStream<Path> result = service.newDirectoryStream( dir, filter );
+            failed = false;
+            return result;
+        } finally {
+            record( "newDirectoryStream", fileSystemOf( dir ), start, failed );
+        }
+    }
+
+    @Override
+    public Path createFile( final Path path,
+                            final FileAttribute<?>... attrs ) throws IllegalArgumentException, UnsupportedOperationException, FileAlreadyExistsException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Path result = service.createFile( path, attrs );
+            failed = false;
+            return result;
+        } finally {
+            record( "createFile", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public Path createDirectory( final Path dir,
+                                 final FileAttribute<?>... attrs ) throws IllegalArgumentException, UnsupportedOperationException, FileAlreadyExistsException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Path result = service.createDirectory( dir, attrs );
+            failed = false;
+            return result;
+        } finally {
+            record( "createDirectory", fileSystemOf( dir ), start, failed );
+        }
+    }
+
+    @Override
+    public Path createDirectories( final Path dir,
+                                   final FileAttribute<?>... attrs ) throws UnsupportedOperationException, FileAlreadyExistsException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Path result = service.createDirectories( dir, attrs );
+            failed = false;
+            return result;
+        } finally {
+            record( "createDirectories", fileSystemOf( dir ), start, failed );
+        }
+    }
+
+    @Override
+    public Path createDirectory( final Path dir,
+                                 final Map<String, ?> attrs ) throws IllegalArgumentException, UnsupportedOperationException, FileAlreadyExistsException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Path result = service.createDirectory( dir, attrs );
+            failed = false;
+            return result;
+        } finally {
+            record( "createDirectory", fileSystemOf( dir ), start, failed );
+        }
+    }
+
+    @Override
+    public Path createDirectories( final Path dir,
+                                   final Map<String, ?> attrs ) throws UnsupportedOperationException, FileAlreadyExistsException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Path result = service.createDirectories( dir, attrs );
+            failed = false;
+            return result;
+        } finally {
+            record( "createDirectories", fileSystemOf( dir ), start, failed );
+        }
+    }
+
+    @Override
+    public void delete( final Path path,
+                        final DeleteOption... options ) throws IllegalArgumentException, NoSuchFileException, DirectoryNotEmptyException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            service.delete( path, options );
+            failed = false;
+        } finally {
+            record( "delete", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public boolean deleteIfExists( final Path path,
+                                   final DeleteOption... options ) throws IllegalArgumentException, DirectoryNotEmptyException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final boolean result = service.deleteIfExists( path, options );
+            failed = false;
+            return result;
+        } finally {
+            record( "deleteIfExists", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public Path createTempFile( final String prefix,
+                                final String suffix,
+                                final FileAttribute<?>... attrs ) throws IllegalArgumentException, UnsupportedOperationException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Path result = service.createTempFile( prefix, suffix, attrs );
+            failed = false;
+            return result;
+        } finally {
+            record( "createTempFile", null, start, failed );
+        }
+    }
+
+    @Override
+    public Path createTempFile( final Path dir,
+                                final String prefix,
+                                final String suffix,
+                                final FileAttribute<?>... attrs ) throws IllegalArgumentException, UnsupportedOperationException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Path result = service.createTempFile( dir, prefix, suffix, attrs );
+            failed = false;
+            return result;
+        } finally {
+            record( "createTempFile", fileSystemOf( dir ), start, failed );
+        }
+    }
+
+    @Override
+    public Path createTempDirectory( final String prefix,
+                                     final FileAttribute<?>... attrs ) throws IllegalArgumentException, UnsupportedOperationException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Path result = service.createTempDirectory( prefix, attrs );
+            failed = false;
+            return result;
+        } finally {
+            record( "createTempDirectory", null, start, failed );
+        }
+    }
+
+    @Override
+    public Path createTempDirectory( final Path dir,
+                                     final String prefix,
+                                     final FileAttribute<?>... attrs ) throws IllegalArgumentException, UnsupportedOperationException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Path result = service.createTempDirectory( dir, prefix, attrs );
+            failed = false;
+            return result;
+        } finally {
+            record( "createTempDirectory", fileSystemOf( dir ), start, failed );
+        }
+    }
+
+    @Override
+    public Path copy( final Path source,
+                      final Path target,
+                      final CopyOption... options ) throws UnsupportedOperationException, FileAlreadyExistsException, DirectoryNotEmptyException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Path result = service.copy( source, target, options );
+            failed = false;
+            return result;
+        } finally {
+            record( "copy", fileSystemOf( source ), start, failed );
+        }
+    }
+
+    @Override
+    public Path move( final Path source,
+                      final Path target,
+                      final CopyOption... options ) throws UnsupportedOperationException, FileAlreadyExistsException, DirectoryNotEmptyException, AtomicMoveNotSupportedException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Path result = service.move( source, target, options );
+            failed = false;
+            return result;
+        } finally {
+            record( "move", fileSystemOf( source ), start, failed );
+        }
+    }
+
+    @Override
+    public <V extends FileAttributeView> V getFileAttributeView( final Path path,
+                                                                 final Class<V> type ) throws IllegalArgumentException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final V result = service.getFileAttributeView( path, type );
+            failed = false;
+            return result;
+        } finally {
+            record( "getFileAttributeView", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public Map<String, Object> readAttributes( final Path path ) throws UnsupportedOperationException, NoSuchFileException, IllegalArgumentException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Map<String, Object> result = service.readAttributes( path );
+            failed = false;
+            return result;
+        } finally {
+            record( "readAttributes", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public Map<String, Object> readAttributes( final Path path,
+                                               final String attributes ) throws UnsupportedOperationException, NoSuchFileException, IllegalArgumentException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Map<String, Object> result = service.readAttributes( path, attributes );
+            failed = false;
+            return result;
+        } finally {
+            record( "readAttributes", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public Path setAttributes( final Path path,
+                               final FileAttribute<?>... attrs ) throws UnsupportedOperationException, IllegalArgumentException, ClassCastException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Path result = service.setAttributes( path, attrs );
+            failed = false;
+            return result;
+        } finally {
+            record( "setAttributes", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public Path setAttributes( final Path path,
+                               final Map<String, Object> attrs ) throws UnsupportedOperationException, IllegalArgumentException, ClassCastException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Path result = service.setAttributes( path, attrs );
+            failed = false;
+            return result;
+        } finally {
+            record( "setAttributes", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public Path setAttribute( final Path path,
+                              final String attribute,
+                              final Object value ) throws UnsupportedOperationException, IllegalArgumentException, ClassCastException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Path result = service.setAttribute( path, attribute, value );
+            failed = false;
+            return result;
+        } finally {
+            record( "setAttribute", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public Object getAttribute( final Path path,
+                                final String attribute ) throws UnsupportedOperationException, IllegalArgumentException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Object result = service.getAttribute( path, attribute );
+            failed = false;
+            return result;
+        } finally {
+            record( "getAttribute", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public FileTime getLastModifiedTime( final Path path ) throws IllegalArgumentException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final FileTime result = service.getLastModifiedTime( path );
+            failed = false;
+            return result;
+        } finally {
+            record( "getLastModifiedTime", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public long size( final Path path ) throws IllegalArgumentException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final long result = service.size( path );
+            failed = false;
+            return result;
+        } finally {
+            record( "size", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public boolean exists( final Path path ) throws IllegalArgumentException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final boolean result = service.exists( path );
+            failed = false;
+            return result;
+        } finally {
+            record( "exists", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public boolean notExists( final Path path ) throws IllegalArgumentException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final boolean result = service.notExists( path );
+            failed = false;
+            return result;
+        } finally {
+            record( "notExists", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public boolean isSameFile( final Path path,
+                               final Path path2 ) throws IllegalArgumentException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final boolean result = service.isSameFile( path, path2 );
+            failed = false;
+            return result;
+        } finally {
+            record( "isSameFile", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public BufferedReader newBufferedReader( final Path path,
+                                             final Charset cs ) throws IllegalArgumentException, NoSuchFileException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final BufferedReader result = service.newBufferedReader( path, cs );
+            failed = false;
+            return result;
+        } finally {
+            record( "newBufferedReader", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public BufferedWriter newBufferedWriter( final Path path,
+                                             final Charset cs,
+                                             final OpenOption... options ) throws IllegalArgumentException, IOException, UnsupportedOperationException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final BufferedWriter result = service.newBufferedWriter( path, cs, options );
+            failed = false;
+            return result;
+        } finally {
+            record( "newBufferedWriter", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public long copy( final InputStream in,
+                      final Path target,
+                      final CopyOption... options ) throws IOException, FileAlreadyExistsException, DirectoryNotEmptyException, UnsupportedOperationException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final long result = service.copy( in, target, options );
+            failed = false;
+            return result;
+        } finally {
+            record( "copy", fileSystemOf( target ), start, failed );
+        }
+    }
+
+    @Override
+    public long copy( final Path source,
+                      final OutputStream out ) throws IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final long result = service.copy( source, out );
+            failed = false;
+            return result;
+        } finally {
+            record( "copy", fileSystemOf( source ), start, failed );
+        }
+    }
+
+    @Override
+    public byte[] readAllBytes( final Path path ) throws IOException, OutOfMemoryError, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final byte[] result = service.readAllBytes( path );
+            failed = false;
+            return result;
+        } finally {
+            record( "readAllBytes", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public List<String> readAllLines( final Path path ) throws IllegalArgumentException, NoSuchFileException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final List<String> result = service.readAllLines( path );
+            failed = false;
+            return result;
+        } finally {
+            record( "readAllLines", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public List<String> readAllLines( final Path path,
+                                      final Charset cs ) throws IllegalArgumentException, NoSuchFileException, IOException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final List<String> result = service.readAllLines( path, cs );
+            failed = false;
+            return result;
+        } finally {
+            record( "readAllLines", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public String readAllString( final Path path,
+                                 final Charset cs ) throws IllegalArgumentException, NoSuchFileException, IOException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final String result = service.readAllString( path, cs );
+            failed = false;
+            return result;
+        } finally {
+            record( "readAllString", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public String readAllString( final Path path ) throws IllegalArgumentException, NoSuchFileException, IOException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final String result = service.readAllString( path );
+            failed = false;
+            return result;
+        } finally {
+            record( "readAllString", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public Path write( final Path path,
+                       final byte[] bytes,
+                       final OpenOption... options ) throws IOException, UnsupportedOperationException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Path result = service.write( path, bytes, options );
+            failed = false;
+            return result;
+        } finally {
+            record( "write", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public Path write( final Path path,
+                       final byte[] bytes,
+                       final Map<String, ?> attrs,
+                       final OpenOption... options ) throws IOException, UnsupportedOperationException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Path result = service.write( path, bytes, attrs, options );
+            failed = false;
+            return result;
+        } finally {
+            record( "write", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public Path write( final Path path,
+                       final byte[] bytes,
+                       final Set<? extends OpenOption> options,
+                       final FileAttribute<?>... attrs ) throws IllegalArgumentException, IOException, UnsupportedOperationException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Path result = service.write( path, bytes, options, attrs );
+            failed = false;
+            return result;
+        } finally {
+            record( "write", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public Path write( final Path path,
+                       final Iterable<? extends CharSequence> lines,
+                       final Charset cs,
+                       final OpenOption... options ) throws IllegalArgumentException, IOException, UnsupportedOperationException, SecurityException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Path result = service.write( path, lines, cs, options );
+            failed = false;
+            return result;
+        } finally {
+            record( "write", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public Path write( final Path path,
+                       final String content,
+                       final OpenOption... options ) throws IllegalArgumentException, IOException, UnsupportedOperationException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Path result = service.write( path, content, options );
+            failed = false;
+            return result;
+        } finally {
+            record( "write", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public Path write( final Path path,
+                       final String content,
+                       final Charset cs,
+                       final OpenOption... options ) throws IllegalArgumentException, IOException, UnsupportedOperationException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Path result = service.write( path, content, cs, options );
+            failed = false;
+            return result;
+        } finally {
+            record( "write", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public Path write( final Path path,
+                       final String content,
+                       final Set<? extends OpenOption> options,
+                       final FileAttribute<?>... attrs ) throws IllegalArgumentException, IOException, UnsupportedOperationException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Path result = service.write( path, content, options, attrs );
+            failed = false;
+            return result;
+        } finally {
+            record( "write", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public Path write( final Path path,
+                       final String content,
+                       final Charset cs,
+                       final Set<? extends OpenOption> options,
+                       final FileAttribute<?>... attrs ) throws IllegalArgumentException, IOException, UnsupportedOperationException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Path result = service.write( path, content, cs, options, attrs );
+            failed = false;
+            return result;
+        } finally {
+            record( "write", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public Path write( final Path path,
+                       final String content,
+                       final Map<String, ?> attrs,
+                       final OpenOption... options ) throws IllegalArgumentException, IOException, UnsupportedOperationException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Path result = service.write( path, content, attrs, options );
+            failed = false;
+            return result;
+        } finally {
+            record( "write", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public Path write( final Path path,
+                       final String content,
+                       final Charset cs,
+                       final Map<String, ?> attrs,
+                       final OpenOption... options ) throws IllegalArgumentException, IOException, UnsupportedOperationException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Path result = service.write( path, content, cs, attrs, options );
+            failed = false;
+            return result;
+        } finally {
+            record( "write", fileSystemOf( path ), start, failed );
+        }
+    }
+
+    @Override
+    public ResultPage<Path> queryByAttribute( final Path root,
+                                              final String attribute,
+                                              final String value,
+                                              final int offset,
+                                              final int pageSize ) throws UnsupportedOperationException, IllegalArgumentException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final ResultPage<Path> result = service.queryByAttribute( root, attribute, value, offset, pageSize );
+            failed = false;
+            return result;
+        } finally {
+            record( "queryByAttribute", fileSystemOf( root ), start, failed );
+        }
+    }
+
+    @Override
+    public void rebuildAttributeIndex( final Path root ) throws UnsupportedOperationException, IllegalArgumentException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            service.rebuildAttributeIndex( root );
+            failed = false;
+        } finally {
+            record( "rebuildAttributeIndex", fileSystemOf( root ), start, failed );
+        }
+    }
+
+    @Override
+    public ResultPage<Path> queryByGlob( final Path root,
+                                         final String glob,
+                                         final int offset,
+                                         final int pageSize ) throws UnsupportedOperationException, IllegalArgumentException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final ResultPage<Path> result = service.queryByGlob( root, glob, offset, pageSize );
+            failed = false;
+            return result;
+        } finally {
+            record( "queryByGlob", fileSystemOf( root ), start, failed );
+        }
+    }
+
+    @Override
+    public Path snapshot( final FileSystem fs,
+                          final String branchName ) throws UnsupportedOperationException, IllegalArgumentException, NoSuchFileException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Path result = service.snapshot( fs, branchName );
+            failed = false;
+            return result;
+        } finally {
+            record( "snapshot", fileSystemOf( fs ), start, failed );
+        }
+    }
+
+    @Override
+    public void dispose() {
+        if ( registry instanceof IOServiceMetrics ) {
+            ( (IOServiceMetrics) registry ).unregister();
+        }
+        service.dispose();
+    }
+
+    @Override
+    public int priority() {
+        return service.priority();
+    }
+}
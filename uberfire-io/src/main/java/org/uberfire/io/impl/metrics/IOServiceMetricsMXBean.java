@@ -0,0 +1,41 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.metrics;
+
+import java.util.List;
+
+/**
+ * JMX view of {@link IOServiceMetrics}, registered as <code>org.uberfire.io:type=IOServiceMetrics,name=&lt;service&gt;</code>.
+ */
+public interface IOServiceMetricsMXBean {
+
+    /**
+     * @return every operation called, on all file systems
+     */
+    List<OperationStatistics> getOperations();
+
+    /**
+     * @return every operation called, per file system
+     */
+    List<OperationStatistics> getFileSystemOperations();
+
+    long getCallCount();
+
+    long getErrorCount();
+
+    void reset();
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Calls, errors and latencies of an operation. Latencies are counted in buckets growing by powers of two from one
+ * microsecond, so recording is a couple of atomic increments and percentiles are known within a factor of two.
+ */
+class LatencyHistogram {
+
+    //last bucket holds everything above 2^30us (~18 min)
+    private static final int BUCKETS = 32;
+
+    private final AtomicLongArray buckets = new AtomicLongArray( BUCKETS );
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    void record( final long nanos,
+                 final boolean failed ) {
+        buckets.incrementAndGet( bucketOf( nanos ) );
+        count.incrementAndGet();
+        if ( failed ) {
+            errors.incrementAndGet();
+        }
+        totalNanos.addAndGet( nanos );
+        long max = maxNanos.get();
+        while ( nanos > max && !maxNanos.compareAndSet( max, nanos ) ) {
+            max = maxNanos.get();
+        }
+    }
+
+    static int bucketOf( final long nanos ) {
+        final long micros = TimeUnit.NANOSECONDS.toMicros( nanos );
+        if ( micros <= 1 ) {
+            return 0;
+        }
+        return Math.min( BUCKETS - 1, 64 - Long.numberOfLeadingZeros( micros - 1 ) );
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    long getErrors() {
+        return errors.get();
+    }
+
+    long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * @param percentile between 0 and 1
+     * @return upper bound of the bucket holding the percentile, in nanoseconds; the max if that's lower
+     */
+    long getPercentileNanos( final double percentile ) {
+        final long total = count.get();
+        if ( total == 0 ) {
+            return 0;
+        }
+        final long rank = Math.max( 1, (long) Math.ceil( total * percentile ) );
+        long seen = 0;
+        for ( int i = 0; i < BUCKETS; i++ ) {
+            seen += buckets.get( i );
+            if ( seen >= rank ) {
+                return Math.min( maxNanos.get(), TimeUnit.MICROSECONDS.toNanos( 1L << i ) );
+            }
+        }
+        return maxNanos.get();
+    }
+}
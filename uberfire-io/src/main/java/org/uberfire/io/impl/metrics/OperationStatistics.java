@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.metrics;
+
+/**
+ * Snapshot of the calls of an operation, on every file system or on a single one.
+ */
+public class OperationStatistics {
+
+    private final String operation;
+    private final String fileSystem;
+    private final long count;
+    private final long errors;
+    private final double throughput;
+    private final double meanMillis;
+    private final double p50Millis;
+    private final double p95Millis;
+    private final double p99Millis;
+    private final double maxMillis;
+
+    OperationStatistics( final String operation,
+                         final String fileSystem,
+                         final LatencyHistogram histogram,
+                         final long elapsedMillis ) {
+        this.operation = operation;
+        this.fileSystem = fileSystem;
+        this.count = histogram.getCount();
+        this.errors = histogram.getErrors();
+        this.throughput = elapsedMillis <= 0 ? 0 : count * 1000d / elapsedMillis;
+        this.meanMillis = count == 0 ? 0 : millis( histogram.getTotalNanos() ) / count;
+        this.p50Millis = millis( histogram.getPercentileNanos( 0.50 ) );
+        this.p95Millis = millis( histogram.getPercentileNanos( 0.95 ) );
+        this.p99Millis = millis( histogram.getPercentileNanos( 0.99 ) );
+        this.maxMillis = millis( histogram.getMaxNanos() );
+    }
+
+    private static double millis( final long nanos ) {
+        return nanos / 1000000d;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return the file system, null for the totals of the operation
+     */
+    public String getFileSystem() {
+        return fileSystem;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return calls per second, since the statistics were started or reset
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    public double getMeanMillis() {
+        return meanMillis;
+    }
+
+    public double getP50Millis() {
+        return p50Millis;
+    }
+
+    public double getP95Millis() {
+        return p95Millis;
+    }
+
+    public double getP99Millis() {
+        return p99Millis;
+    }
+
+    public double getMaxMillis() {
+        return maxMillis;
+    }
+
+    @Override
+    public String toString() {
+        return operation + ( fileSystem == null ? "" : "@" + fileSystem ) + "{count=" + count + ", errors=" + errors +
+                ", throughput=" + throughput + "/s, mean=" + meanMillis + "ms, p50=" + p50Millis + "ms, p95=" + p95Millis +
+                "ms, p99=" + p99Millis + "ms, max=" + maxMillis + "ms}";
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.attribute;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.uberfire.io.IOService;
+import org.uberfire.io.impl.AttributesCache;
+import org.uberfire.io.impl.IOServiceAttributesFileImpl;
+import org.uberfire.java.nio.base.Properties;
+import org.uberfire.java.nio.file.OpenOption;
+import org.uberfire.java.nio.file.Path;
+import org.uberfire.java.nio.file.attribute.FileAttribute;
+
+import static org.junit.Assert.*;
+import static org.uberfire.java.nio.base.dotfiles.DotFileUtils.*;
+
+public class AttributesFileAttrViewTest {
+
+    protected static final List<File> tempFiles = new ArrayList<File>();
+
+    @BeforeClass
+    public static void setup() throws IOException {
+        System.setProperty( "org.uberfire.nio.git.dir", createTempDirectory().getAbsolutePath() );
+    }
+
+    @Test
+    public void testAttributesFileAccess() throws IOException {
+        final URI newRepo = URI.create( "git://" + System.nanoTime() + "-attrs-repo-test" );
+        ioService().newFileSystem( newRepo, new HashMap<String, Object>() );
+
+        final Path file = ioService().get( newRepo ).resolve( "myFile.txt" );
+
+        ioService().write( file, "mycontent", Collections.<OpenOption>emptySet(), attr( "dcore.creator", "some user name here" ), attr( "dcore.language[0]", "en" ) );
+
+        final DublinCoreView view = ioService().getFileAttributeView( file, DublinCoreView.class );
+        assertEquals( 1, view.readAttributes().languages().size() );
+        assertTrue( view.readAttributes().creators().contains( "some user name here" ) );
+
+        assertFalse( ioService().exists( dot( file ) ) );
+        assertTrue( ioService().exists( file.resolveSibling( ".uf-attributes" ) ) );
+
+        //new attributes are merged with the existing ones
+        ioService().setAttributes( file, attr( "custom", "value" ) );
+        final Map<String, Object> attrs = ioService().readAttributes( ioService().get( file.toUri() ) );
+        assertEquals( "value", attrs.get( "custom" ) );
+        assertEquals( "en", attrs.get( "dcore.language[0]" ) );
+
+        final Path target = file.resolveSibling( "moved.txt" );
+        ioService().move( file, target );
+        assertEquals( "value", ioService().getAttribute( ioService().get( target.toUri() ), "custom" ) );
+
+        ioService().delete( target );
+        assertFalse( ioService().exists( file.resolveSibling( ".uf-attributes" ) ) );
+    }
+
+    @Test
+    public void testDotFileIsMigratedOnWrite() throws IOException {
+        final URI newRepo = URI.create( "git://" + System.nanoTime() + "-attrs-migration-repo-test" );
+        ioService().newFileSystem( newRepo, new HashMap<String, Object>() );
+
+        final Path file = ioService().get( newRepo ).resolve( "myFile.txt" );
+        ioService().write( file, "mycontent" );
+
+        final Properties legacy = new Properties();
+        legacy.put( "dcore.creator", "legacy user" );
+        legacy.store( ioService().newOutputStream( dot( file ) ) );
+
+        assertEquals( "legacy user", ioService().readAttributes( ioService().get( file.toUri() ) ).get( "dcore.creator" ) );
+
+        ioService().write( file, "newcontent", Collections.<OpenOption>emptySet(), attr( "custom", "value" ) );
+
+        assertFalse( ioService().exists( dot( file ) ) );
+        final Map<String, Object> attrs = ioService().readAttributes( ioService().get( file.toUri() ) );
+        assertEquals( "legacy user", attrs.get( "dcore.creator" ) );
+        assertEquals( "value", attrs.get( "custom" ) );
+    }
+
+    @Test
+    public void testAttributesFileIsParsedOncePerListing() throws IOException {
+        final URI newRepo = URI.create( "git://" + System.nanoTime() + "-attrs-listing-repo-test" );
+        ioService().newFileSystem( newRepo, new HashMap<String, Object>() );
+
+        final Path root = ioService().get( newRepo );
+        final int total = 10;
+        for ( int i = 0; i < total; i++ ) {
+            ioService().write( root.resolve( "file" + i + ".txt" ), "content" + i, Collections.<OpenOption>emptySet(), attr( "custom", "value" + i ) );
+        }
+
+        final AttributesCache cache = ( (IOServiceAttributesFileImpl) ioService() ).getAttributesCache();
+        final long misses = cache.getMisses();
+        final long hits = cache.getHits();
+
+        for ( int i = 0; i < total; i++ ) {
+            final Map<String, Object> attrs = ioService().readAttributes( ioService().get( root.resolve( "file" + i + ".txt" ).toUri() ) );
+            assertEquals( "value" + i, attrs.get( "custom" ) );
+        }
+
+        //the attributes file is parsed once and no dot file lookup happens for the found entries
+        assertEquals( misses + 1, cache.getMisses() );
+        assertEquals( hits + total - 1, cache.getHits() );
+    }
+
+    private FileAttribute<Object> attr( final String name,
+                                        final Object value ) {
+        return new FileAttribute<Object>() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public Object value() {
+                return value;
+            }
+        };
+    }
+
+    protected static IOService ioService = null;
+
+    public IOService ioService() {
+        if ( ioService == null ) {
+            ioService = new IOServiceAttributesFileImpl();
+        }
+        return ioService;
+    }
+
+    @After
+    public void tearDown() {
+        // dispose the IOService or it will badly influence the tests executed after
+        ioService.dispose();
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        for ( final File tempFile : tempFiles ) {
+            FileUtils.deleteQuietly( tempFile );
+        }
+    }
+
+    public static File createTempDirectory()
+            throws IOException {
+        final File temp = File.createTempFile( "temp", Long.toString( System.nanoTime() ) );
+        if ( !( temp.delete() ) ) {
+            throw new IOException( "Could not delete temp file: " + temp.getAbsolutePath() );
+        }
+
+        if ( !( temp.mkdir() ) ) {
+            throw new IOException( "Could not create temp directory: " + temp.getAbsolutePath() );
+        }
+
+        tempFiles.add( temp );
+
+        return temp;
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl;
+
+import org.junit.Test;
+import org.uberfire.java.nio.base.Properties;
+
+import static org.junit.Assert.*;
+
+public class AttributesCacheTest {
+
+    @Test
+    public void testHitsReturnCopies() {
+        final AttributesCache cache = new AttributesCache( 1000 );
+
+        assertNull( cache.get( "blob1" ) );
+
+        cache.put( "blob1", properties( "dcore.creator", "someone" ), 100 );
+
+        final Properties cached = cache.get( "blob1" );
+        assertEquals( "someone", cached.get( "dcore.creator" ) );
+
+        cached.put( "dcore.creator", "changed" );
+        assertEquals( "someone", cache.get( "blob1" ).get( "dcore.creator" ) );
+
+        assertEquals( 2, cache.getHits() );
+        assertEquals( 1, cache.getMisses() );
+        assertEquals( 100, cache.getSize() );
+    }
+
+    @Test
+    public void testByteBudgetEvictsLeastRecentlyUsed() {
+        final AttributesCache cache = new AttributesCache( 250 );
+
+        cache.put( "blob1", properties( "key", "1" ), 100 );
+        cache.put( "blob2", properties( "key", "2" ), 100 );
+        //touch blob1, so blob2 becomes the eldest entry
+        cache.get( "blob1" );
+        cache.put( "blob3", properties( "key", "3" ), 100 );
+
+        assertEquals( 2, cache.getEntryCount() );
+        assertEquals( 200, cache.getSize() );
+        assertEquals( 1, cache.getEvictions() );
+        assertNotNull( cache.get( "blob1" ) );
+        assertNull( cache.get( "blob2" ) );
+        assertNotNull( cache.get( "blob3" ) );
+
+        //entries bigger than the budget are never cached
+        cache.put( "huge", properties( "key", "huge" ), 1000 );
+        assertNull( cache.get( "huge" ) );
+        assertEquals( 200, cache.getSize() );
+    }
+
+    private Properties properties( final String key,
+                                   final String value ) {
+        final Properties properties = new Properties();
+        properties.put( key, value );
+        return properties;
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.async;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.uberfire.io.AsyncIOService;
+import org.uberfire.io.IOFuture;
+import org.uberfire.io.IOService;
+import org.uberfire.java.nio.base.FileSystemId;
+import org.uberfire.java.nio.file.FileSystem;
+import org.uberfire.java.nio.file.NoSuchFileException;
+import org.uberfire.java.nio.file.Path;
+
+import static java.util.Arrays.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class AsyncIOServiceImplTest {
+
+    private IOService service;
+    private AsyncIOServiceImpl asyncService;
+    private FileSystem fs1;
+    private FileSystem fs2;
+
+    @Before
+    public void setup() {
+        service = mock( IOService.class );
+        asyncService = new AsyncIOServiceImpl( service, 4, 100 );
+        fs1 = mockFileSystem( "repo1" );
+        fs2 = mockFileSystem( "repo2" );
+    }
+
+    @After
+    public void tearDown() {
+        asyncService.dispose();
+    }
+
+    @Test
+    public void operationsOfAFileSystemRunInOrderTest() throws Exception {
+        final List<String> written = Collections.synchronizedList( new ArrayList<String>() );
+        when( service.write( any( Path.class ), anyString() ) ).thenAnswer( new Answer<Path>() {
+            @Override
+            public Path answer( final InvocationOnMock invocation ) throws Exception {
+                Thread.sleep( 1 );
+                written.add( (String) invocation.getArguments()[ 1 ] );
+                return (Path) invocation.getArguments()[ 0 ];
+            }
+        } );
+
+        final Path path = mockPath( fs1 );
+        final List<String> expected = new ArrayList<String>();
+        IOFuture<Path> last = null;
+        for ( int i = 0; i < 50; i++ ) {
+            expected.add( "content" + i );
+            last = asyncService.write( path, "content" + i );
+        }
+
+        assertEquals( path, last.get( 10, TimeUnit.SECONDS ) );
+        assertEquals( expected, written );
+        assertEquals( 0, asyncService.getPending() );
+    }
+
+    @Test
+    public void fileSystemsRunConcurrentlyTest() throws Exception {
+        final Path path1 = mockPath( fs1 );
+        final Path path2 = mockPath( fs2 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        when( service.readAllString( path1 ) ).thenAnswer( new Answer<String>() {
+            @Override
+            public String answer( final InvocationOnMock invocation ) throws Exception {
+                release.await();
+                return "slow";
+            }
+        } );
+        when( service.readAllString( path2 ) ).thenReturn( "fast" );
+
+        final IOFuture<String> slow = asyncService.readAllString( path1 );
+        final IOFuture<String> queued = asyncService.readAllString( path1 );
+
+        //repo2 doesn't wait for repo1, whose second read waits for the first
+        assertEquals( "fast", asyncService.readAllString( path2 ).get( 10, TimeUnit.SECONDS ) );
+        assertFalse( slow.isDone() );
+        assertFalse( queued.isDone() );
+        assertEquals( 2, asyncService.getPending() );
+
+        release.countDown();
+        assertEquals( "slow", slow.get( 10, TimeUnit.SECONDS ) );
+        assertEquals( "slow", queued.get( 10, TimeUnit.SECONDS ) );
+    }
+
+    @Test
+    public void errorsFailTheFutureTest() throws Exception {
+        final Path path = mockPath( fs1 );
+        when( service.readAllBytes( path ) ).thenThrow( new NoSuchFileException( "file.txt" ) );
+
+        final IOFuture<byte[]> future = asyncService.readAllBytes( path );
+        try {
+            future.get( 10, TimeUnit.SECONDS );
+            fail( "the read failed" );
+        } catch ( final ExecutionException e ) {
+            assertTrue( e.getCause() instanceof NoSuchFileException );
+        }
+
+        //a callback added once done is notified right away
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        future.addCallback( new AsyncIOService.Callback<byte[]>() {
+            @Override
+            public void onSuccess( final byte[] result ) {
+                fail( "the read failed" );
+            }
+
+            @Override
+            public void onFailure( final Throwable cause ) {
+                failure.set( cause );
+            }
+        } );
+        assertTrue( failure.get() instanceof NoSuchFileException );
+    }
+
+    @Test
+    public void callbacksAreNotifiedTest() throws Exception {
+        final Path path = mockPath( fs1 );
+        when( service.deleteIfExists( path ) ).thenReturn( true );
+        final CountDownLatch notified = new CountDownLatch( 1 );
+        final AtomicReference<Boolean> deleted = new AtomicReference<Boolean>();
+
+        asyncService.deleteIfExists( path ).addCallback( new AsyncIOService.Callback<Boolean>() {
+            @Override
+            public void onSuccess( final Boolean result ) {
+                deleted.set( result );
+                notified.countDown();
+            }
+
+            @Override
+            public void onFailure( final Throwable cause ) {
+                fail( "the delete succeeded" );
+            }
+        } );
+
+        assertTrue( notified.await( 10, TimeUnit.SECONDS ) );
+        assertTrue( deleted.get() );
+    }
+
+    @Test
+    public void batchRunsWithinABatchTest() throws Exception {
+        final Path path = mockPath( fs1 );
+        asyncService.batch( fs1, new AsyncIOService.Batch() {
+            @Override
+            public void execute( final IOService ioService ) {
+                ioService.write( path, "content" );
+                ioService.delete( path );
+            }
+        } ).get( 10, TimeUnit.SECONDS );
+
+        final InOrder inOrder = inOrder( service );
+        inOrder.verify( service ).startBatch( fs1 );
+        inOrder.verify( service ).write( path, "content" );
+        inOrder.verify( service ).delete( path );
+        inOrder.verify( service ).endBatch();
+    }
+
+    @Test
+    public void tooManyPendingOperationsAreRejectedTest() throws Exception {
+        asyncService.dispose();
+        asyncService = new AsyncIOServiceImpl( service, 1, 2 );
+        final Path path = mockPath( fs1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        when( service.write( any( Path.class ), any( byte[].class ) ) ).thenAnswer( new Answer<Path>() {
+            @Override
+            public Path answer( final InvocationOnMock invocation ) throws Exception {
+                release.await();
+                return null;
+            }
+        } );
+
+        final IOFuture<Path> first = asyncService.write( path, new byte[ 0 ] );
+        final IOFuture<Path> second = asyncService.write( path, new byte[ 0 ] );
+        assertRejected( asyncService.write( path, new byte[ 0 ] ) );
+
+        release.countDown();
+        first.get( 10, TimeUnit.SECONDS );
+        second.get( 10, TimeUnit.SECONDS );
+        assertNull( asyncService.write( path, new byte[ 0 ] ).get( 10, TimeUnit.SECONDS ) );
+    }
+
+    @Test
+    public void disposeCompletesPendingOperationsTest() throws Exception {
+        final Path path = mockPath( fs1 );
+        when( service.move( any( Path.class ), eq( path ) ) ).thenAnswer( new Answer<Path>() {
+            @Override
+            public Path answer( final InvocationOnMock invocation ) throws Exception {
+                Thread.sleep( 5 );
+                return path;
+            }
+        } );
+        final List<IOFuture<Path>> moves = new ArrayList<IOFuture<Path>>();
+        for ( int i = 0; i < 20; i++ ) {
+            moves.add( asyncService.move( mockPath( fs2 ), path ) );
+        }
+
+        asyncService.dispose();
+
+        for ( final IOFuture<Path> move : moves ) {
+            assertTrue( move.isDone() );
+            assertEquals( path, move.get() );
+        }
+        verify( service, times( 20 ) ).move( any( Path.class ), eq( path ) );
+        verify( service, never() ).dispose();
+        assertRejected( asyncService.write( path, "content" ) );
+    }
+
+    @Test
+    public void copyAcrossFileSystemsIsOrderedWithBothTest() throws Exception {
+        final Path source = mockPath( fs1 );
+        final Path target = mockPath( fs2 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final List<String> ran = Collections.synchronizedList( new ArrayList<String>() );
+        when( service.readAllString( source ) ).thenAnswer( new Answer<String>() {
+            @Override
+            public String answer( final InvocationOnMock invocation ) throws Exception {
+                release.await();
+                ran.add( "read source" );
+                return "source";
+            }
+        } );
+        when( service.copy( source, target ) ).thenAnswer( new Answer<Path>() {
+            @Override
+            public Path answer( final InvocationOnMock invocation ) throws Exception {
+                ran.add( "copy" );
+                return target;
+            }
+        } );
+        when( service.readAllString( target ) ).thenAnswer( new Answer<String>() {
+            @Override
+            public String answer( final InvocationOnMock invocation ) throws Exception {
+                ran.add( "read target" );
+                return "target";
+            }
+        } );
+
+        final IOFuture<String> readSource = asyncService.readAllString( source );
+        final IOFuture<Path> copy = asyncService.copy( source, target );
+        final IOFuture<String> readTarget = asyncService.readAllString( target );
+
+        //the copy waits for the read of the source, the read of the target for the copy
+        Thread.sleep( 100 );
+        assertFalse( copy.isDone() );
+        assertFalse( readTarget.isDone() );
+        assertEquals( 3, asyncService.getPending() );
+
+        release.countDown();
+        assertEquals( "target", readTarget.get( 10, TimeUnit.SECONDS ) );
+        assertEquals( target, copy.get( 10, TimeUnit.SECONDS ) );
+        assertEquals( "source", readSource.get( 10, TimeUnit.SECONDS ) );
+        assertEquals( asList( "read source", "copy", "read target" ), ran );
+    }
+
+    @Test
+    public void movesBothWaysAcrossFileSystemsCompleteTest() throws Exception {
+        final Path path1 = mockPath( fs1 );
+        final Path path2 = mockPath( fs2 );
+        final List<IOFuture<Path>> moves = new ArrayList<IOFuture<Path>>();
+        for ( int i = 0; i < 100; i++ ) {
+            moves.add( asyncService.move( path1, path2 ) );
+            moves.add( asyncService.move( path2, path1 ) );
+            asyncService.write( path1, "content" );
+            asyncService.write( path2, "content" );
+        }
+
+        for ( final IOFuture<Path> move : moves ) {
+            move.get( 10, TimeUnit.SECONDS );
+        }
+        verify( service, times( 100 ) ).move( path1, path2 );
+        verify( service, times( 100 ) ).move( path2, path1 );
+    }
+
+    @Test
+    public void disposeFailsTheOperationsThatDidNotStartTest() throws Exception {
+        asyncService.dispose();
+        asyncService = new AsyncIOServiceImpl( service, 1, 100, 100 );
+        final Path path1 = mockPath( fs1 );
+        final Path path2 = mockPath( fs2 );
+        final CountDownLatch started = new CountDownLatch( 1 );
+        when( service.readAllString( path1 ) ).thenAnswer( new Answer<String>() {
+            @Override
+            public String answer( final InvocationOnMock invocation ) throws Exception {
+                started.countDown();
+                //until interrupted
+                new CountDownLatch( 1 ).await();
+                return null;
+            }
+        } );
+
+        final IOFuture<String> running = asyncService.readAllString( path1 );
+        assertTrue( started.await( 10, TimeUnit.SECONDS ) );
+        //behind the running one
+        final IOFuture<Path> queued = asyncService.write( path1, "content" );
+        //the only thread is busy, repo2's drain never starts
+        final IOFuture<String> neverDrained = asyncService.readAllString( path2 );
+        final IOFuture<Path> copy = asyncService.copy( path2, path1 );
+
+        asyncService.dispose();
+
+        assertRejected( queued );
+        assertRejected( neverDrained );
+        assertRejected( copy );
+        try {
+            running.get( 10, TimeUnit.SECONDS );
+            fail( "the running operation was interrupted" );
+        } catch ( final ExecutionException e ) {
+            assertTrue( e.getCause() instanceof InterruptedException );
+        }
+        verify( service, never() ).write( path1, "content" );
+        verify( service, never() ).readAllString( path2 );
+        verify( service, never() ).copy( path2, path1 );
+    }
+
+    private void assertRejected( final IOFuture<?> future ) throws Exception {
+        assertTrue( future.isDone() );
+        try {
+            future.get();
+            fail( "the operation was rejected" );
+        } catch ( final ExecutionException e ) {
+            assertTrue( e.getCause() instanceof RejectedExecutionException );
+        }
+    }
+
+    private FileSystem mockFileSystem( final String id ) {
+        final FileSystem fs = mock( FileSystem.class, withSettings().extraInterfaces( FileSystemId.class ) );
+        when( ( (FileSystemId) fs ).id() ).thenReturn( id );
+        return fs;
+    }
+
+    private Path mockPath( final FileSystem fs ) {
+        final Path path = mock( Path.class );
+        when( path.getFileSystem() ).thenReturn( fs );
+        return path;
+    }
+}
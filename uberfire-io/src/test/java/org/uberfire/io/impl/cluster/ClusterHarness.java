@@ -0,0 +1,230 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.cluster;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.uberfire.commons.cluster.ClusterService;
+import org.uberfire.commons.cluster.ClusterServiceFactory;
+import org.uberfire.commons.message.MessageHandlerResolver;
+import org.uberfire.io.impl.IOServiceDotFileImpl;
+import org.uberfire.io.impl.cluster.socket.ClusterServiceSocket;
+import org.uberfire.java.nio.file.FileSystem;
+import org.uberfire.java.nio.file.FileSystemAlreadyExistsException;
+import org.uberfire.java.nio.file.Path;
+import org.uberfire.java.nio.fs.jgit.JGitFileSystemProvider;
+
+/**
+ * Starts clustered IO services in one JVM, to test and measure the clustered write path without real servers. Each
+ * node has a git provider of its own (its own <code>.niogit</code> and git daemon, so peers fetch from it as they would
+ * from another server) and talks to the others through a {@link ClusterServiceSocket} on loopback. What each node asks
+ * of the cluster service is counted by a {@link CountingClusterService}.
+ */
+public class ClusterHarness {
+
+    private static final Logger logger = LoggerFactory.getLogger( ClusterHarness.class );
+
+    public static final String SERVICE_ID = "harness";
+
+    private static final long LEASE = 3000;
+    private static final long HEARTBEAT = 200;
+
+    private final File baseDir;
+    private final List<Node> nodes = new ArrayList<Node>();
+
+    public ClusterHarness( final int size ) throws Exception {
+        baseDir = File.createTempFile( "cluster-harness", "" );
+        baseDir.delete();
+        baseDir.mkdirs();
+
+        final List<String> members = new ArrayList<String>( size );
+        for ( int i = 0; i < size; i++ ) {
+            members.add( "127.0.0.1:" + freePort() );
+        }
+        try {
+            //one at a time, each node joins the ones already up
+            for ( int i = 0; i < size; i++ ) {
+                nodes.add( new Node( "node" + i, new File( baseDir, "node" + i ), members.get( i ), members ) );
+            }
+            awaitMembers( size );
+        } catch ( final Exception ex ) {
+            dispose();
+            throw ex;
+        }
+    }
+
+    /**
+     * The members connect to a new one on their next heartbeat: waits for everyone to see everyone.
+     */
+    private void awaitMembers( final int size ) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + LEASE * 3;
+        for ( final Node node : nodes ) {
+            while ( node.getSocket().getAliveMembers().size() < size ) {
+                if ( System.currentTimeMillis() > deadline ) {
+                    throw new IllegalStateException( "Cluster member " + node.getName() + " didn't see every other member" );
+                }
+                Thread.sleep( HEARTBEAT );
+            }
+        }
+    }
+
+    public List<Node> getNodes() {
+        return Collections.unmodifiableList( nodes );
+    }
+
+    public Node getNode( final int index ) {
+        return nodes.get( index );
+    }
+
+    public void dispose() {
+        for ( int i = nodes.size() - 1; i >= 0; i-- ) {
+            nodes.get( i ).dispose();
+        }
+        nodes.clear();
+        FileUtils.deleteQuietly( baseDir );
+    }
+
+    static int freePort() throws IOException {
+        final ServerSocket socket = new ServerSocket( 0 );
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    public static class Node {
+
+        private final String name;
+        private final JGitFileSystemProvider provider;
+        private final IOServiceClusterImpl ioService;
+        private CountingClusterService clusterService;
+
+        Node( final String name,
+              final File dir,
+              final String member,
+              final List<String> members ) throws Exception {
+            this.name = name;
+            final String daemonPort = String.valueOf( freePort() );
+            final Map<String, String> gitPrefs = new HashMap<String, String>();
+            gitPrefs.put( "org.uberfire.nio.git.dir", dir.getAbsolutePath() );
+            gitPrefs.put( "org.uberfire.nio.git.daemon.enabled", "true" );
+            gitPrefs.put( "org.uberfire.nio.git.daemon.host", "127.0.0.1" );
+            gitPrefs.put( "org.uberfire.nio.git.daemon.hostname", "127.0.0.1" );
+            gitPrefs.put( "org.uberfire.nio.git.daemon.port", daemonPort );
+            gitPrefs.put( "org.uberfire.nio.git.daemon.hostport", daemonPort );
+            gitPrefs.put( "org.uberfire.nio.git.ssh.enabled", "false" );
+            this.provider = new JGitFileSystemProvider( gitPrefs );
+
+            this.ioService = new IOServiceClusterImpl( new NodeIOService( provider ), new ClusterServiceFactory() {
+                @Override
+                public synchronized ClusterService build( final MessageHandlerResolver resolver ) {
+                    if ( clusterService == null ) {
+                        clusterService = new CountingClusterService( new ClusterServiceSocket( member, members, LEASE, HEARTBEAT, resolver ) );
+                    } else {
+                        clusterService.addMessageHandlerResolver( resolver );
+                    }
+                    return clusterService;
+                }
+
+                @Override
+                public boolean isAutoStart() {
+                    return true;
+                }
+            } );
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public IOServiceClusterImpl getIOService() {
+            return ioService;
+        }
+
+        public CountingClusterService getClusterService() {
+            return clusterService;
+        }
+
+        ClusterServiceSocket getSocket() {
+            return (ClusterServiceSocket) clusterService.getDelegate();
+        }
+
+        void dispose() {
+            ioService.dispose();
+            clusterService.dispose();
+            provider.dispose();
+        }
+    }
+
+    /**
+     * Resolves uris through the node's own provider, instead of the one registered for the JVM.
+     */
+    private static class NodeIOService extends IOServiceDotFileImpl {
+
+        private final JGitFileSystemProvider provider;
+
+        NodeIOService( final JGitFileSystemProvider provider ) {
+            super( SERVICE_ID );
+            this.provider = provider;
+        }
+
+        @Override
+        public Path get( final URI uri ) {
+            return provider.getPath( uri );
+        }
+
+        @Override
+        public FileSystem getFileSystem( final URI uri ) {
+            try {
+                return register( provider.getFileSystem( uri ) );
+            } catch ( final Exception ex ) {
+                logger.error( "Failed to get filesystem " + uri + ". Returning null.", ex );
+                return null;
+            }
+        }
+
+        @Override
+        public FileSystem newFileSystem( final URI uri,
+                                         final Map<String, ?> env ) {
+            try {
+                return register( provider.newFileSystem( uri, env ) );
+            } catch ( final FileSystemAlreadyExistsException ex ) {
+                register( provider.getFileSystem( uri ) );
+                throw ex;
+            }
+        }
+
+        private FileSystem register( final FileSystem fs ) {
+            if ( fs != null ) {
+                fileSystems.add( fs );
+            }
+            return fs;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.cluster;
+
+import java.net.URI;
+import java.util.HashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.uberfire.io.IOService;
+
+import static org.junit.Assert.*;
+
+public class ClusterHarnessTest {
+
+    private ClusterHarness harness;
+
+    @Before
+    public void setup() throws Exception {
+        harness = new ClusterHarness( 2 );
+    }
+
+    @After
+    public void tearDown() {
+        harness.dispose();
+    }
+
+    @Test(timeout = 60000)
+    public void writesAreSyncedToTheOtherNodeTest() throws Exception {
+        final IOService node0 = harness.getNode( 0 ).getIOService();
+        final IOService node1 = harness.getNode( 1 ).getIOService();
+
+        node0.newFileSystem( URI.create( "git://harness-repo" ), new HashMap<String, Object>() {{
+            put( "init", Boolean.TRUE );
+        }} );
+        //created on the other node as well, by its own provider
+        assertNotNull( node1.getFileSystem( URI.create( "git://harness-repo" ) ) );
+
+        node0.write( node0.get( URI.create( "git://harness-repo/file.txt" ) ), "content" );
+        assertTrue( harness.getNode( 0 ).getClusterService().getLockCount() > 0 );
+
+        final long deadline = System.currentTimeMillis() + 30000;
+        while ( !node1.exists( node1.get( URI.create( "git://harness-repo/file.txt" ) ) ) ) {
+            assertTrue( "write not synced", System.currentTimeMillis() < deadline );
+            Thread.sleep( 10 );
+        }
+        assertEquals( "content", node1.readAllLines( node1.get( URI.create( "git://harness-repo/file.txt" ) ) ).get( 0 ) );
+    }
+
+    @Test(timeout = 120000)
+    public void benchmarkReportsTest() throws Exception {
+        final ClusteredWriteBenchmark.Report report = new ClusteredWriteBenchmark( 2, 1, 4, 2000, 0.5, 64 ).run( harness );
+
+        assertTrue( report.getWriteCount() > 0 );
+        assertTrue( report.getReadCount() > 0 );
+        assertEquals( 0, report.getErrorCount() );
+        assertTrue( report.getSyncLagCount() > 0 );
+        assertEquals( 0, report.getSyncTimeoutCount() );
+        assertTrue( report.getLockCount() >= report.getWriteCount() );
+        assertTrue( report.getMessageCount() > 0 );
+    }
+}
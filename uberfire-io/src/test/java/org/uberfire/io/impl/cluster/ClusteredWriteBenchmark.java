@@ -0,0 +1,328 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.cluster;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.uberfire.io.IOService;
+import org.uberfire.java.nio.file.NoSuchFileException;
+import org.uberfire.java.nio.file.Path;
+
+/**
+ * Concurrent writes and reads on every node of a {@link ClusterHarness}, reporting throughput and latency per
+ * operation, how long nodes waited for cluster locks, how many messages they sent and how long a write takes to be
+ * visible on the other nodes (sync lag, sampled by a probe writing on a node and polling the others). Run
+ * {@link #main(String[])}; the workload is set with system properties:
+ * <ul>
+ * <li><code>nodes</code> (3), <code>threads</code> per node (4), <code>fileSystems</code> (2), <code>files</code> per
+ * thread (16)</li>
+ * <li><code>seconds</code> (30), <code>reads</code> ratio (0.5), <code>payload</code> size in bytes (256)</li>
+ * </ul>
+ */
+public class ClusteredWriteBenchmark {
+
+    private static final long SYNC_LAG_TIMEOUT = 30000;
+
+    private final int threads;
+    private final int fileSystems;
+    private final int files;
+    private final long duration;
+    private final double readRatio;
+    private final int payloadSize;
+
+    public ClusteredWriteBenchmark( final int threads,
+                                    final int fileSystems,
+                                    final int files,
+                                    final long duration,
+                                    final double readRatio,
+                                    final int payloadSize ) {
+        this.threads = threads;
+        this.fileSystems = fileSystems;
+        this.files = files;
+        this.duration = duration;
+        this.readRatio = readRatio;
+        this.payloadSize = payloadSize;
+    }
+
+    public Report run( final ClusterHarness harness ) throws Exception {
+        final String prefix = "bench" + System.currentTimeMillis();
+        for ( int i = 0; i < fileSystems; i++ ) {
+            harness.getNode( 0 ).getIOService().newFileSystem( URI.create( "git://" + prefix + "-" + i ), new HashMap<String, Object>() {{
+                put( "init", Boolean.TRUE );
+            }} );
+        }
+
+        final long deadline = System.currentTimeMillis() + duration;
+        final List<Worker> workers = new ArrayList<Worker>();
+        for ( final ClusterHarness.Node node : harness.getNodes() ) {
+            for ( int i = 0; i < threads; i++ ) {
+                workers.add( new Worker( node.getIOService(), prefix, node.getName() + "/thread" + i, deadline ) );
+            }
+        }
+        final Probe probe = new Probe( harness, prefix, deadline );
+        for ( final Worker worker : workers ) {
+            worker.start();
+        }
+        probe.start();
+        for ( final Worker worker : workers ) {
+            worker.join();
+        }
+        probe.join();
+
+        final Report report = new Report( duration );
+        for ( final Worker worker : workers ) {
+            report.writes.addAll( worker.writes );
+            report.reads.addAll( worker.reads );
+            report.errors += worker.errors;
+        }
+        report.syncLags.addAll( probe.lags );
+        report.syncTimeouts = probe.timeouts;
+        for ( final ClusterHarness.Node node : harness.getNodes() ) {
+            final CountingClusterService clusterService = node.getClusterService();
+            report.lockCount += clusterService.getLockCount();
+            report.lockWaitMillis += clusterService.getLockWaitMillis();
+            report.maxLockWaitMillis = Math.max( report.maxLockWaitMillis, clusterService.getMaxLockWaitMillis() );
+            report.messages.put( node.getName(), clusterService.getMessageCount() );
+        }
+        return report;
+    }
+
+    private byte[] payload( final Random random ) {
+        final byte[] result = new byte[ payloadSize ];
+        for ( int i = 0; i < result.length; i++ ) {
+            result[ i ] = (byte) ( 'a' + random.nextInt( 26 ) );
+        }
+        return result;
+    }
+
+    private class Worker extends Thread {
+
+        private final IOService ioService;
+        private final String prefix;
+        private final String dir;
+        private final long deadline;
+        private final Random random = new Random();
+        private final List<Long> writes = new ArrayList<Long>();
+        private final List<Long> reads = new ArrayList<Long>();
+        private int errors = 0;
+
+        Worker( final IOService ioService,
+                final String prefix,
+                final String dir,
+                final long deadline ) {
+            this.ioService = ioService;
+            this.prefix = prefix;
+            this.dir = dir;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void run() {
+            while ( System.currentTimeMillis() < deadline ) {
+                final Path path = ioService.get( URI.create( "git://" + prefix + "-" + random.nextInt( fileSystems ) + "/" + dir + "/file" + random.nextInt( files ) + ".txt" ) );
+                final boolean read = random.nextDouble() < readRatio;
+                final long start = System.nanoTime();
+                try {
+                    if ( read ) {
+                        ioService.readAllBytes( path );
+                        reads.add( System.nanoTime() - start );
+                    } else {
+                        ioService.write( path, payload( random ) );
+                        writes.add( System.nanoTime() - start );
+                    }
+                } catch ( final NoSuchFileException e ) {
+                    //not written yet
+                    reads.add( System.nanoTime() - start );
+                } catch ( final RuntimeException e ) {
+                    errors++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes on one node and times how long the others take to read what was written.
+     */
+    private class Probe extends Thread {
+
+        private final ClusterHarness harness;
+        private final String prefix;
+        private final long deadline;
+        private final List<Long> lags = new ArrayList<Long>();
+        private int timeouts = 0;
+
+        Probe( final ClusterHarness harness,
+               final String prefix,
+               final long deadline ) {
+            this.harness = harness;
+            this.prefix = prefix;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void run() {
+            final List<ClusterHarness.Node> nodes = harness.getNodes();
+            int round = 0;
+            while ( System.currentTimeMillis() < deadline && nodes.size() > 1 ) {
+                final ClusterHarness.Node writer = nodes.get( round % nodes.size() );
+                final String uri = "git://" + prefix + "-" + ( round % fileSystems ) + "/probe.txt";
+                final String content = writer.getName() + "-" + round;
+                writer.getIOService().write( writer.getIOService().get( URI.create( uri ) ), content );
+                final long written = System.nanoTime();
+                for ( final ClusterHarness.Node node : nodes ) {
+                    if ( node != writer ) {
+                        awaitContent( node.getIOService(), URI.create( uri ), content, written );
+                    }
+                }
+                round++;
+                sleepQuietly( 100 );
+            }
+        }
+
+        private void awaitContent( final IOService ioService,
+                                   final URI uri,
+                                   final String content,
+                                   final long written ) {
+            final long timeout = written + TimeUnit.MILLISECONDS.toNanos( SYNC_LAG_TIMEOUT );
+            while ( System.nanoTime() < timeout ) {
+                try {
+                    if ( content.equals( ioService.readAllLines( ioService.get( uri ) ).get( 0 ) ) ) {
+                        lags.add( System.nanoTime() - written );
+                        return;
+                    }
+                } catch ( final RuntimeException e ) {
+                    //not there yet
+                }
+                sleepQuietly( 1 );
+            }
+            timeouts++;
+        }
+
+        private void sleepQuietly( final long millis ) {
+            try {
+                Thread.sleep( millis );
+            } catch ( final InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public static class Report {
+
+        private final long duration;
+        final List<Long> writes = new ArrayList<Long>();
+        final List<Long> reads = new ArrayList<Long>();
+        final List<Long> syncLags = new ArrayList<Long>();
+        int errors = 0;
+        int syncTimeouts = 0;
+        long lockCount = 0;
+        long lockWaitMillis = 0;
+        long maxLockWaitMillis = 0;
+        final Map<String, Long> messages = new HashMap<String, Long>();
+
+        Report( final long duration ) {
+            this.duration = duration;
+        }
+
+        public int getWriteCount() {
+            return writes.size();
+        }
+
+        public int getReadCount() {
+            return reads.size();
+        }
+
+        public int getErrorCount() {
+            return errors;
+        }
+
+        public int getSyncLagCount() {
+            return syncLags.size();
+        }
+
+        public int getSyncTimeoutCount() {
+            return syncTimeouts;
+        }
+
+        public long getLockCount() {
+            return lockCount;
+        }
+
+        public long getMessageCount() {
+            long result = 0;
+            for ( final Long count : messages.values() ) {
+                result += count;
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder();
+            sb.append( line( "writes", writes ) ).append( '\n' );
+            sb.append( line( "reads", reads ) ).append( '\n' );
+            sb.append( line( "sync lag", syncLags ) ).append( ", timeouts=" ).append( syncTimeouts ).append( '\n' );
+            sb.append( "errors=" ).append( errors ).append( '\n' );
+            sb.append( "locks=" ).append( lockCount )
+                    .append( ", avg wait=" ).append( lockCount == 0 ? 0 : lockWaitMillis / (double) lockCount ).append( "ms" )
+                    .append( ", max wait=" ).append( maxLockWaitMillis ).append( "ms" ).append( '\n' );
+            sb.append( "messages=" ).append( getMessageCount() ).append( ' ' ).append( messages );
+            return sb.toString();
+        }
+
+        private String line( final String name,
+                             final List<Long> nanos ) {
+            if ( nanos.isEmpty() ) {
+                return name + ": none";
+            }
+            final Long[] sorted = nanos.toArray( new Long[ nanos.size() ] );
+            Arrays.sort( sorted );
+            return String.format( "%s: %d ops, %.1f ops/s, p50=%.2fms p99=%.2fms max=%.2fms",
+                                  name, sorted.length, sorted.length * 1000d / duration,
+                                  millis( sorted[ sorted.length / 2 ] ),
+                                  millis( sorted[ Math.min( sorted.length - 1, (int) ( sorted.length * 0.99 ) ) ] ),
+                                  millis( sorted[ sorted.length - 1 ] ) );
+        }
+
+        private static double millis( final long nanos ) {
+            return nanos / 1000000d;
+        }
+    }
+
+    public static void main( final String[] args ) throws Exception {
+        final ClusteredWriteBenchmark benchmark = new ClusteredWriteBenchmark( Integer.getInteger( "threads", 4 ),
+                                                                               Integer.getInteger( "fileSystems", 2 ),
+                                                                               Integer.getInteger( "files", 16 ),
+                                                                               TimeUnit.SECONDS.toMillis( Integer.getInteger( "seconds", 30 ) ),
+                                                                               Double.parseDouble( System.getProperty( "reads", "0.5" ) ),
+                                                                               Integer.getInteger( "payload", 256 ) );
+        final ClusterHarness harness = new ClusterHarness( Integer.getInteger( "nodes", 3 ) );
+        try {
+            System.out.println( benchmark.run( harness ) );
+        } finally {
+            harness.dispose();
+        }
+        System.exit( 0 );
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.cluster;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.uberfire.commons.cluster.ClusterService;
+import org.uberfire.commons.message.AsyncCallback;
+import org.uberfire.commons.message.MessageHandlerResolver;
+import org.uberfire.commons.message.MessageType;
+
+/**
+ * Counts the messages a node sends and times how long it waits for cluster locks, delegating everything else.
+ */
+public class CountingClusterService implements ClusterService {
+
+    private final ClusterService delegate;
+
+    private final AtomicLong locks = new AtomicLong();
+    private final AtomicLong lockWaitNanos = new AtomicLong();
+    private final AtomicLong maxLockWaitNanos = new AtomicLong();
+    private final AtomicLong broadcasts = new AtomicLong();
+    private final AtomicLong broadcastsAndWait = new AtomicLong();
+    private final AtomicLong sends = new AtomicLong();
+
+    public CountingClusterService( final ClusterService delegate ) {
+        this.delegate = delegate;
+    }
+
+    public ClusterService getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void addMessageHandlerResolver( final MessageHandlerResolver resolver ) {
+        delegate.addMessageHandlerResolver( resolver );
+    }
+
+    @Override
+    public void onStart( final Runnable runnable ) {
+        delegate.onStart( runnable );
+    }
+
+    @Override
+    public int getHoldCount() {
+        return delegate.getHoldCount();
+    }
+
+    @Override
+    public void lock() {
+        final long start = System.nanoTime();
+        delegate.lock();
+        lockAcquired( System.nanoTime() - start );
+    }
+
+    @Override
+    public void unlock() {
+        delegate.unlock();
+    }
+
+    @Override
+    public void lock( final String... keys ) {
+        final long start = System.nanoTime();
+        delegate.lock( keys );
+        lockAcquired( System.nanoTime() - start );
+    }
+
+    @Override
+    public void unlock( final String... keys ) {
+        delegate.unlock( keys );
+    }
+
+    private void lockAcquired( final long waitNanos ) {
+        locks.incrementAndGet();
+        lockWaitNanos.addAndGet( waitNanos );
+        long max = maxLockWaitNanos.get();
+        while ( waitNanos > max && !maxLockWaitNanos.compareAndSet( max, waitNanos ) ) {
+            max = maxLockWaitNanos.get();
+        }
+    }
+
+    @Override
+    public void broadcastAndWait( final String serviceId,
+                                  final MessageType type,
+                                  final Map<String, String> content,
+                                  final int timeOut ) {
+        broadcastsAndWait.incrementAndGet();
+        delegate.broadcastAndWait( serviceId, type, content, timeOut );
+    }
+
+    @Override
+    public void broadcastAndWait( final String serviceId,
+                                  final MessageType type,
+                                  final Map<String, String> content,
+                                  final int timeOut,
+                                  final AsyncCallback callback ) {
+        broadcastsAndWait.incrementAndGet();
+        delegate.broadcastAndWait( serviceId, type, content, timeOut, callback );
+    }
+
+    @Override
+    public void broadcast( final String serviceId,
+                           final MessageType type,
+                           final Map<String, String> content ) {
+        broadcasts.incrementAndGet();
+        delegate.broadcast( serviceId, type, content );
+    }
+
+    @Override
+    public void broadcast( final String serviceId,
+                           final MessageType type,
+                           final Map<String, String> content,
+                           final int timeOut,
+                           final AsyncCallback callback ) {
+        broadcasts.incrementAndGet();
+        delegate.broadcast( serviceId, type, content, timeOut, callback );
+    }
+
+    @Override
+    public void sendTo( final String resourceId,
+                        final String serviceId,
+                        final MessageType type,
+                        final Map<String, String> content ) {
+        sends.incrementAndGet();
+        delegate.sendTo( resourceId, serviceId, type, content );
+    }
+
+    @Override
+    public void dispose() {
+        delegate.dispose();
+    }
+
+    @Override
+    public int priority() {
+        return delegate.priority();
+    }
+
+    public long getLockCount() {
+        return locks.get();
+    }
+
+    public long getLockWaitMillis() {
+        return lockWaitNanos.get() / 1000000;
+    }
+
+    public long getMaxLockWaitMillis() {
+        return maxLockWaitNanos.get() / 1000000;
+    }
+
+    public long getBroadcastCount() {
+        return broadcasts.get();
+    }
+
+    public long getBroadcastAndWaitCount() {
+        return broadcastsAndWait.get();
+    }
+
+    public long getSendCount() {
+        return sends.get();
+    }
+
+    /**
+     * @return every message sent, whether waiting for replies or not
+     */
+    public long getMessageCount() {
+        return broadcasts.get() + broadcastsAndWait.get() + sends.get();
+    }
+}
@@ -18,9 +18,20 @@ package org.uberfire.io.impl.cluster;
 
 import java.net.URI;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.uberfire.commons.cluster.ClusterService;
+import org.uberfire.commons.cluster.ClusterServiceFactory;
+import org.uberfire.commons.message.AsyncCallback;
+import org.uberfire.commons.message.MessageHandlerResolver;
 import org.uberfire.io.impl.IOServiceLockable;
 import org.uberfire.io.lock.BatchLockControl;
 import org.uberfire.java.nio.base.FileSystemId;
@@ -29,6 +40,7 @@ import org.uberfire.java.nio.file.Option;
 import org.uberfire.java.nio.file.Path;
 
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
 public class IOServiceClusterImplTest {
@@ -59,64 +71,176 @@ public class IOServiceClusterImplTest {
         {
             final IOServiceClusterImpl ioServiceCluster = new TestWrapper( clusterService, serviceLockable );
 
-            assertEquals( 0, ioServiceCluster.batchFileSystems.size() );
+            assertEquals( 0, ioServiceCluster.batchFileSystems().size() );
 
             ioServiceCluster.startBatch( mockedFS );
 
-            assertEquals( 1, ioServiceCluster.batchFileSystems.size() );
+            assertEquals( 1, ioServiceCluster.batchFileSystems().size() );
 
-            assertTrue( ioServiceCluster.batchFileSystems.contains( ( (FileSystemId) mockedFSId ).id() ) );
+            assertTrue( ioServiceCluster.batchFileSystems().contains( ( (FileSystemId) mockedFSId ).id() ) );
 
             ioServiceCluster.endBatch();
 
             verify( serviceLockable, times( 1 ) ).endBatch();
 
-            assertEquals( 0, ioServiceCluster.batchFileSystems.size() );
+            assertEquals( 0, ioServiceCluster.batchFileSystems().size() );
 
-            verify( clusterService, times( 1 ) ).unlock();
+            verify( clusterService, times( 1 ) ).unlock( "my-fsid" );
         }
 
         {
             final IOServiceClusterImpl ioServiceCluster = new TestWrapper( clusterService, serviceLockable );
 
-            assertEquals( 0, ioServiceCluster.batchFileSystems.size() );
+            assertEquals( 0, ioServiceCluster.batchFileSystems().size() );
 
             ioServiceCluster.startBatch( new FileSystem[]{ mockedFS }, mock( Option.class ) );
 
-            assertEquals( 1, ioServiceCluster.batchFileSystems.size() );
+            assertEquals( 1, ioServiceCluster.batchFileSystems().size() );
 
-            assertTrue( ioServiceCluster.batchFileSystems.contains( ( (FileSystemId) mockedFSId ).id() ) );
+            assertTrue( ioServiceCluster.batchFileSystems().contains( ( (FileSystemId) mockedFSId ).id() ) );
 
             ioServiceCluster.endBatch();
 
             verify( serviceLockable, times( 2 ) ).endBatch();
 
-            assertEquals( 0, ioServiceCluster.batchFileSystems.size() );
+            assertEquals( 0, ioServiceCluster.batchFileSystems().size() );
 
-            verify( clusterService, times( 2 ) ).unlock();
+            verify( clusterService, times( 2 ) ).unlock( "my-fsid" );
         }
 
         {
             final IOServiceClusterImpl ioServiceCluster = new TestWrapper( clusterService, serviceLockable );
 
-            assertEquals( 0, ioServiceCluster.batchFileSystems.size() );
+            assertEquals( 0, ioServiceCluster.batchFileSystems().size() );
 
             ioServiceCluster.startBatch( mockedFS, mock( Option.class ) );
 
-            assertEquals( 1, ioServiceCluster.batchFileSystems.size() );
+            assertEquals( 1, ioServiceCluster.batchFileSystems().size() );
 
-            assertTrue( ioServiceCluster.batchFileSystems.contains( ( (FileSystemId) mockedFSId ).id() ) );
+            assertTrue( ioServiceCluster.batchFileSystems().contains( ( (FileSystemId) mockedFSId ).id() ) );
 
             ioServiceCluster.endBatch();
 
             verify( serviceLockable, times( 3 ) ).endBatch();
 
-            assertEquals( 0, ioServiceCluster.batchFileSystems.size() );
+            assertEquals( 0, ioServiceCluster.batchFileSystems().size() );
 
-            verify( clusterService, times( 3 ) ).unlock();
+            verify( clusterService, times( 3 ) ).unlock( "my-fsid" );
         }
     }
 
+    @Test
+    public void testBootstrapLocksEachFileSystem() {
+        final ClusterService clusterService = mock( ClusterService.class );
+        final IOServiceLockable serviceLockable = mock( IOServiceLockable.class );
+        when( serviceLockable.getId() ).thenReturn( "service" );
+
+        doAnswer( new Answer<Void>() {
+            @Override
+            public Void answer( final InvocationOnMock invocation ) {
+                ( (AsyncCallback) invocation.getArguments()[ 4 ] ).onReply( ClusterMessageType.QUERY_FOR_FS, new HashMap<String, String>() {{
+                    put( "fs_id_0", "repo1" );
+                    put( "fs_scheme_0", "git" );
+                    put( "fs_uri_0", "git://node1/repo1" );
+                    put( "fs_id_1", "repo2" );
+                    put( "fs_scheme_1", "git" );
+                    put( "fs_uri_1", "git://node1/repo2" );
+                }} );
+                return null;
+            }
+        } ).when( clusterService ).broadcastAndWait( eq( "service" ), eq( ClusterMessageType.QUERY_FOR_FS ), anyMapOf( String.class, String.class ), anyInt(), any( AsyncCallback.class ) );
+
+        final IOServiceClusterImpl ioServiceCluster = new IOServiceClusterImpl( serviceLockable, new ClusterServiceFactory() {
+            @Override
+            public ClusterService build( final MessageHandlerResolver resolver ) {
+                return clusterService;
+            }
+
+            @Override
+            public boolean isAutoStart() {
+                return true;
+            }
+        } );
+
+        assertEquals( 2, ioServiceCluster.getBootstrapTotal() );
+        assertEquals( 2, ioServiceCluster.getBootstrapDone() );
+
+        verify( serviceLockable ).newFileSystem( eq( URI.create( "git://repo1" ) ), anyMapOf( String.class, Object.class ) );
+        verify( serviceLockable ).newFileSystem( eq( URI.create( "git://repo2" ) ), anyMapOf( String.class, Object.class ) );
+        verify( serviceLockable ).getFileSystem( URI.create( "git://repo1?sync=git://node1/repo1&force" ) );
+        verify( serviceLockable ).getFileSystem( URI.create( "git://repo2?sync=git://node1/repo2&force" ) );
+
+        verify( clusterService ).lock( "repo1" );
+        verify( clusterService ).unlock( "repo1" );
+        verify( clusterService ).lock( "repo2" );
+        verify( clusterService ).unlock( "repo2" );
+        verify( clusterService, never() ).lock();
+    }
+
+    @Test
+    public void testConcurrentBatchesKeepTheirOwnFileSystems() throws Exception {
+        final FileSystem fsA = mockFileSystem( "fs-a" );
+        final FileSystem fsB = mockFileSystem( "fs-b" );
+
+        final ClusterService clusterService = mock( ClusterService.class );
+        final IOServiceLockable serviceLockable = mock( IOServiceLockable.class );
+        final BatchLockControl batchLockControl = mock( BatchLockControl.class );
+
+        when( serviceLockable.getId() ).thenReturn( "service" );
+        when( serviceLockable.getFileSystems() ).thenReturn( Arrays.asList( fsA, fsB ) );
+        when( batchLockControl.getHoldCount() ).thenReturn( 0 );
+        when( serviceLockable.getLockControl() ).thenReturn( batchLockControl );
+
+        final IOServiceClusterImpl ioServiceCluster = new TestWrapper( clusterService, serviceLockable );
+
+        final CountDownLatch started = new CountDownLatch( 1 );
+        final CountDownLatch otherEnded = new CountDownLatch( 1 );
+        final AtomicReference<Set<String>> seenByA = new AtomicReference<Set<String>>();
+
+        final Thread threadA = new Thread() {
+            @Override
+            public void run() {
+                ioServiceCluster.startBatch( fsA );
+                started.countDown();
+                try {
+                    otherEnded.await( 10, TimeUnit.SECONDS );
+                } catch ( final InterruptedException ignored ) {
+                }
+                seenByA.set( ioServiceCluster.batchFileSystems() );
+                ioServiceCluster.endBatch();
+            }
+        };
+        threadA.start();
+        assertTrue( started.await( 10, TimeUnit.SECONDS ) );
+
+        ioServiceCluster.startBatch( fsB );
+        assertEquals( Collections.singleton( "fs-b" ), ioServiceCluster.batchFileSystems() );
+        ioServiceCluster.endBatch();
+
+        //ending this thread's batch syncs and releases only its own file system
+        verify( clusterService ).unlock( "fs-b" );
+        verify( clusterService, never() ).unlock( "fs-a" );
+        verify( clusterService, times( 1 ) ).broadcast( eq( "service" ), eq( ClusterMessageType.SYNC_FS ), anyMapOf( String.class, String.class ) );
+
+        otherEnded.countDown();
+        threadA.join( 10000 );
+
+        assertEquals( Collections.singleton( "fs-a" ), seenByA.get() );
+        verify( clusterService ).unlock( "fs-a" );
+        verify( clusterService, times( 2 ) ).broadcast( eq( "service" ), eq( ClusterMessageType.SYNC_FS ), anyMapOf( String.class, String.class ) );
+        assertTrue( ioServiceCluster.batchFileSystems().isEmpty() );
+    }
+
+    private FileSystem mockFileSystem( final String id ) {
+        final FileSystem fs = mock( FileSystem.class, withSettings().extraInterfaces( FileSystemId.class ) );
+        final Path root = mock( Path.class );
+        when( fs.getRootDirectories() ).thenReturn( Arrays.asList( root ) );
+        when( root.getFileSystem() ).thenReturn( fs );
+        when( root.toUri() ).thenReturn( URI.create( "git://" + id ) );
+        when( ( (FileSystemId) fs ).id() ).thenReturn( id );
+        return fs;
+    }
+
     private class TestWrapper extends IOServiceClusterImpl {
 
         public TestWrapper( final ClusterService clusterService,
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.cluster;
+
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.uberfire.commons.cluster.ClusterService;
+import org.uberfire.commons.cluster.ClusterServiceFactory;
+import org.uberfire.commons.data.Pair;
+import org.uberfire.commons.message.AsyncCallback;
+import org.uberfire.commons.message.MessageHandler;
+import org.uberfire.commons.message.MessageHandlerResolver;
+import org.uberfire.commons.message.MessageType;
+import org.uberfire.io.impl.IOServiceLockable;
+import org.uberfire.java.nio.IOException;
+import org.uberfire.java.nio.base.FileSystemId;
+import org.uberfire.java.nio.file.FileAlreadyExistsException;
+import org.uberfire.java.nio.file.FileSystem;
+import org.uberfire.java.nio.file.OpenOption;
+import org.uberfire.java.nio.file.Path;
+import org.uberfire.java.nio.file.attribute.FileAttribute;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+public class IOServiceReplicaImplTest {
+
+    private IOServiceLockable writerIO;
+    private IOServiceLockable replicaIO;
+    private IOServiceClusterImpl writer;
+    private IOServiceReplicaImpl replica;
+    private Path path;
+
+    @Before
+    public void setup() {
+        final FileSystem fs = mock( FileSystem.class, withSettings().extraInterfaces( FileSystemId.class ) );
+        final Path root = mock( Path.class );
+        when( fs.getRootDirectories() ).thenReturn( Arrays.asList( root ) );
+        when( fs.toString() ).thenReturn( "git://node1/repo" );
+        when( ( (FileSystemId) fs ).id() ).thenReturn( "repo" );
+        when( root.getFileSystem() ).thenReturn( fs );
+        when( root.toUri() ).thenReturn( URI.create( "git://repo" ) );
+
+        path = mock( Path.class );
+        when( path.getFileSystem() ).thenReturn( fs );
+        when( path.toUri() ).thenReturn( URI.create( "git://repo/file.txt" ) );
+
+        writerIO = mockIO();
+        replicaIO = mockIO();
+
+        //both nodes are in process: the replica's messages are handled by the writer's handlers
+        final MessageHandlerResolver[] writerResolver = new MessageHandlerResolver[ 1 ];
+        final ClusterService writerCluster = mockClusterService( null );
+        writer = new IOServiceClusterImpl( writerIO, new ClusterServiceFactory() {
+            @Override
+            public ClusterService build( final MessageHandlerResolver resolver ) {
+                writerResolver[ 0 ] = resolver;
+                return writerCluster;
+            }
+
+            @Override
+            public boolean isAutoStart() {
+                return true;
+            }
+        } );
+
+        final ClusterService replicaCluster = mockClusterService( writerResolver[ 0 ] );
+        replica = new IOServiceReplicaImpl( replicaIO, new ClusterServiceFactory() {
+            @Override
+            public ClusterService build( final MessageHandlerResolver resolver ) {
+                return replicaCluster;
+            }
+
+            @Override
+            public boolean isAutoStart() {
+                return true;
+            }
+        } );
+    }
+
+    @After
+    public void tearDown() {
+        replica.dispose();
+        writer.dispose();
+    }
+
+    @Test
+    public void writesAreForwardedToTheWriterTest() {
+        when( writerIO.write( any( Path.class ), any( byte[].class ), anySetOf( OpenOption.class ) ) ).thenReturn( path );
+
+        assertEquals( path, replica.write( path, "content" ) );
+
+        verify( writerIO ).write( eq( path ), aryEq( "content".getBytes() ), anySetOf( OpenOption.class ) );
+        verify( replicaIO, never() ).write( any( Path.class ), any( byte[].class ), anySetOf( OpenOption.class ) );
+        assertEquals( writer.getNodeId(), replica.getWriter() );
+        assertEquals( 1, replica.getForwardedWrites() );
+
+        //read your writes: the replica synced the file system before returning
+        verify( replicaIO ).getFileSystem( URI.create( "git://repo?sync=git%3A%2F%2Fnode1%2Frepo&force" ) );
+        assertEquals( 0, replica.getReplicationLag( "repo" ) );
+    }
+
+    @Test
+    public void linesAreForwardedWithLineSeparatorsTest() {
+        final String separator = System.getProperty( "line.separator" );
+
+        replica.write( path, Arrays.asList( "first", "second" ), Charset.forName( "UTF-8" ) );
+
+        verify( writerIO ).write( eq( path ), aryEq( ( "first" + separator + "second" + separator ).getBytes() ), anySetOf( OpenOption.class ) );
+    }
+
+    @Test
+    public void resultsAndErrorsAreForwardedBackTest() {
+        when( writerIO.deleteIfExists( path ) ).thenReturn( true );
+        assertTrue( replica.deleteIfExists( path ) );
+
+        when( writerIO.createFile( path ) ).thenThrow( new FileAlreadyExistsException( "file.txt" ) );
+        try {
+            replica.createFile( path );
+            fail( "the writer failed" );
+        } catch ( final FileAlreadyExistsException e ) {
+            assertEquals( "file.txt", e.getMessage() );
+        }
+        verify( replicaIO, never() ).createFile( any( Path.class ) );
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void nonStringAttributesAreNotForwardedTest() {
+        replica.setAttribute( path, "dcore.size", 10 );
+    }
+
+    @Test
+    public void oversizedContentIsNotForwardedTest() {
+        when( writerIO.write( any( Path.class ), any( byte[].class ), anySetOf( OpenOption.class ) ) ).thenReturn( path );
+
+        replica.write( path, new byte[ ForwardedWrite.MAX_BYTES ] );
+        verify( writerIO ).write( eq( path ), any( byte[].class ), anySetOf( OpenOption.class ) );
+
+        try {
+            replica.write( path, new byte[ ForwardedWrite.MAX_BYTES + 1 ] );
+            fail( "content is over the limit" );
+        } catch ( final IOException e ) {
+            assertTrue( e.getMessage().contains( String.valueOf( ForwardedWrite.MAX_BYTES ) ) );
+        }
+        verify( writerIO, times( 1 ) ).write( any( Path.class ), any( byte[].class ), anySetOf( OpenOption.class ) );
+        assertEquals( 1, replica.getForwardedWrites() );
+    }
+
+    @Test
+    public void replicationLagTest() throws Exception {
+        //a notified change waits for the running sync of the same file system
+        final Map<String, String> content = new HashMap<String, String>() {{
+            put( "fs_scheme", "git" );
+            put( "fs_id", "repo" );
+            put( "fs_uri", "git://node1/repo" );
+        }};
+        final Object syncing = new Object();
+        synchronized ( syncing ) {
+            when( replicaIO.getFileSystem( any( URI.class ) ) ).thenAnswer( new Answer<FileSystem>() {
+                @Override
+                public FileSystem answer( final InvocationOnMock invocation ) {
+                    synchronized ( syncing ) {
+                        return null;
+                    }
+                }
+            } );
+            replica.syncFs.handleMessage( ClusterMessageType.SYNC_FS, content );
+            Thread.sleep( 20 );
+            assertTrue( replica.getReplicationLag( "repo" ) >= 20 );
+            assertTrue( replica.getReplicationLags().containsKey( "repo" ) );
+        }
+        assertTrue( replica.syncFs.awaitSynced( "repo", 5000 ) );
+        assertEquals( 0, replica.getReplicationLag( "repo" ) );
+        assertTrue( replica.getReplicationLags().isEmpty() );
+    }
+
+    private IOServiceLockable mockIO() {
+        final IOServiceLockable io = mock( IOServiceLockable.class );
+        when( io.getId() ).thenReturn( "service" );
+        when( io.get( URI.create( "git://repo/file.txt" ) ) ).thenReturn( path );
+        when( io.convert( anyMapOf( String.class, Object.class ) ) ).thenReturn( new FileAttribute<?>[ 0 ] );
+        return io;
+    }
+
+    /**
+     * Messages sent and waited for are handled by the given resolver, if any; nobody answers otherwise.
+     */
+    private ClusterService mockClusterService( final MessageHandlerResolver peer ) {
+        final ClusterService clusterService = mock( ClusterService.class );
+        doAnswer( new Answer<Void>() {
+            @Override
+            public Void answer( final InvocationOnMock invocation ) {
+                final String serviceId = (String) invocation.getArguments()[ 0 ];
+                final MessageType type = (MessageType) invocation.getArguments()[ 1 ];
+                final Map<String, String> content = (Map<String, String>) invocation.getArguments()[ 2 ];
+                final AsyncCallback callback = (AsyncCallback) invocation.getArguments()[ 4 ];
+                final MessageHandler handler = peer == null ? null : peer.resolveHandler( serviceId, type );
+                final Pair<MessageType, Map<String, String>> reply = handler == null ? null : handler.handleMessage( type, content );
+                if ( reply == null ) {
+                    callback.onTimeOut();
+                } else {
+                    callback.onReply( reply.getK1(), reply.getK2() );
+                }
+                return null;
+            }
+        } ).when( clusterService ).broadcastAndWait( anyString(), any( MessageType.class ), anyMapOf( String.class, String.class ), anyInt(), any( AsyncCallback.class ) );
+        return clusterService;
+    }
+}
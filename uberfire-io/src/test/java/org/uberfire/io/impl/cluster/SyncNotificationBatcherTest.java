@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.uberfire.io.impl.cluster;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.FutureTask;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.uberfire.commons.cluster.ClusterService;
+import org.uberfire.commons.message.MessageType;
+import org.uberfire.java.nio.base.FileSystemId;
+import org.uberfire.java.nio.file.FileSystem;
+import org.uberfire.java.nio.file.Path;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+public class SyncNotificationBatcherTest {
+
+    @Test
+    public void testNotificationsAreMergedPerFileSystem() {
+        final ClusterService clusterService = mock( ClusterService.class );
+        final SyncNotificationBatcher batcher = new SyncNotificationBatcher( clusterService, 60000 );
+
+        final FileSystem fs1 = mockFileSystem( "fs1" );
+        final FileSystem fs2 = mockFileSystem( "fs2" );
+
+        for ( int i = 0; i < 3; i++ ) {
+            new FileSystemSyncLock<Void>( "service", fs1, batcher ).sendMessage( clusterService );
+        }
+        new FileSystemSyncLock<Void>( "service", fs2, batcher ).sendMessage( clusterService );
+
+        assertEquals( 2, batcher.getQueueDepth() );
+        assertEquals( 4, batcher.getNotificationCount() );
+        verify( clusterService, never() ).broadcast( anyString(), any( MessageType.class ), anyMapOf( String.class, String.class ) );
+
+        batcher.flush();
+
+        assertEquals( 0, batcher.getQueueDepth() );
+        assertEquals( 2, batcher.getMessageCount() );
+        assertTrue( batcher.getMessagesPerSecond() <= 2 );
+        verify( clusterService, times( 2 ) ).broadcast( eq( "service" ), eq( ClusterMessageType.SYNC_FS ), anyMapOf( String.class, String.class ) );
+
+        batcher.dispose();
+    }
+
+    @Test
+    public void testWindowCloses() {
+        final ClusterService clusterService = mock( ClusterService.class );
+        final SyncNotificationBatcher batcher = new SyncNotificationBatcher( clusterService, 10 );
+
+        new FileSystemSyncLock<Void>( "service", mockFileSystem( "fs1" ), batcher ).sendMessage( clusterService );
+
+        verify( clusterService, timeout( 5000 ).times( 1 ) ).broadcast( eq( "service" ), eq( ClusterMessageType.SYNC_FS ), anyMapOf( String.class, String.class ) );
+        assertEquals( 0, batcher.getQueueDepth() );
+
+        batcher.dispose();
+    }
+
+    @Test
+    public void testNoWindow() {
+        final ClusterService clusterService = mock( ClusterService.class );
+        final SyncNotificationBatcher batcher = new SyncNotificationBatcher( clusterService, 0 );
+
+        new FileSystemSyncLock<Void>( "service", mockFileSystem( "fs1" ), batcher ).sendMessage( clusterService );
+
+        verify( clusterService, times( 1 ) ).broadcast( eq( "service" ), eq( ClusterMessageType.SYNC_FS ), anyMapOf( String.class, String.class ) );
+        assertEquals( 0, batcher.getQueueDepth() );
+    }
+
+    @Test
+    public void testDiscard() {
+        final ClusterService clusterService = mock( ClusterService.class );
+        final SyncNotificationBatcher batcher = new SyncNotificationBatcher( clusterService, 60000 );
+
+        new FileSystemSyncLock<Void>( "service", mockFileSystem( "fs1" ), batcher ).sendMessage( clusterService );
+        batcher.discard( "fs1" );
+        batcher.dispose();
+
+        verify( clusterService, never() ).broadcast( anyString(), any( MessageType.class ), anyMapOf( String.class, String.class ) );
+    }
+
+    @Test
+    public void testNotificationIsSentBeforeTheLockIsHandedOver() {
+        final ClusterService clusterService = mock( ClusterService.class );
+        final SyncNotificationBatcher batcher = new SyncNotificationBatcher( clusterService, 60000 );
+        final FileSystem fs = mockFileSystem( "fs1" );
+
+        new FileSystemSyncLock<Void>( "service", fs, batcher ).execute( clusterService, new FutureTask<Void>( new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, null ) );
+
+        //whoever takes the lock next already knows about the write, the window doesn't matter
+        final InOrder inOrder = inOrder( clusterService );
+        inOrder.verify( clusterService ).lock( "fs1" );
+        inOrder.verify( clusterService ).broadcast( eq( "service" ), eq( ClusterMessageType.SYNC_FS ), anyMapOf( String.class, String.class ) );
+        inOrder.verify( clusterService ).unlock( "fs1" );
+        assertEquals( 0, batcher.getQueueDepth() );
+
+        batcher.dispose();
+    }
+
+    @Test
+    public void testNestedWritesAreMergedUntilTheLockIsReleased() {
+        final ClusterService clusterService = mock( ClusterService.class );
+        final SyncNotificationBatcher batcher = new SyncNotificationBatcher( clusterService, 60000 );
+        final FileSystem fs = mockFileSystem( "fs1" );
+
+        new FileSystemSyncLock<Void>( "service", fs, batcher ).execute( clusterService, new FutureTask<Void>( new Runnable() {
+            @Override
+            public void run() {
+                for ( int i = 0; i < 2; i++ ) {
+                    new FileSystemSyncLock<Void>( "service", fs, batcher ).execute( clusterService, new FutureTask<Void>( new Runnable() {
+                        @Override
+                        public void run() {
+                        }
+                    }, null ) );
+                }
+                //still holding the lock
+                verify( clusterService, never() ).broadcast( anyString(), any( MessageType.class ), anyMapOf( String.class, String.class ) );
+                assertEquals( 1, batcher.getQueueDepth() );
+            }
+        }, null ) );
+
+        verify( clusterService, times( 1 ) ).broadcast( eq( "service" ), eq( ClusterMessageType.SYNC_FS ), anyMapOf( String.class, String.class ) );
+        assertEquals( 3, batcher.getNotificationCount() );
+        assertEquals( 0, batcher.getQueueDepth() );
+
+        batcher.dispose();
+    }
+
+    private FileSystem mockFileSystem( final String id ) {
+        final FileSystem fs = mock( FileSystem.class, withSettings().extraInterfaces( FileSystemId.class ) );
+        final Path rootPath = mock( Path.class );
+
+        when( fs.getRootDirectories() ).thenReturn( Arrays.asList( rootPath ) );
+        when( rootPath.getFileSystem() ).thenReturn( fs );
+        when( rootPath.toUri() ).thenReturn( URI.create( "jgit://" + id ) );
+        when( ( (FileSystemId) fs ).id() ).thenReturn( id );
+
+        return fs;
+    }
+}
@@ -16,23 +16,35 @@
 
 package org.uberfire.io.impl.cluster.helix;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.helix.HelixAdmin;
 import org.apache.helix.HelixManager;
 import org.apache.helix.model.ExternalView;
+import org.apache.helix.model.IdealState;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.uberfire.commons.lifecycle.PriorityDisposableRegistry;
 import org.uberfire.commons.message.MessageHandlerResolver;
 
+import static java.util.Arrays.*;
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
 public class ClusterServiceHelixTest {
 
     ClusterServiceHelix clusterServiceHelix;
     ExternalView externalView;
+    ExternalView adminView;
+    HelixAdmin helixAdmin;
+    List<String> liveInstances;
 
     @Test
     public void getNodeStatusEmptyOrNullShouldReturnOfflineTest() {
@@ -62,36 +74,248 @@ public class ClusterServiceHelixTest {
         assertEquals( "OFFLINE", clusterServiceHelix.getNodeStatus() );
     }
 
-    @Before
-    public void setup() {
-        externalView = mock( ExternalView.class );
+    @Test
+    public void singlePartitionLocksEveryKeyTogetherTest() {
+        assertEquals( "resourceName_0", clusterServiceHelix.getPartition( "my-fsid" ) );
+        assertEquals( "resourceName_0", clusterServiceHelix.getPartition( "other-fsid" ) );
+    }
 
-        clusterServiceHelix = new ClusterServiceHelix( "clusterName",
-                                                       "zkAddress",
-                                                       "instanceName",
-                                                       "resourceName",
-                                                       mock( MessageHandlerResolver.class ) ) {
-            @Override
-            HelixManager getZkHelixManager( String clusterName,
-                                            String zkAddress,
-                                            String instanceName ) {
-                return mock( HelixManager.class );
-            }
+    @Test
+    public void keysSpreadOverPartitionsTest() {
+        final ClusterServiceHelix partitioned = new TestClusterServiceHelix( 4 );
+
+        for ( final String key : new String[]{ "my-fsid", "other-fsid", "", "repo" } ) {
+            assertEquals( "resourceName_" + ( ( key.hashCode() & Integer.MAX_VALUE ) % 4 ), partitioned.getPartition( key ) );
+        }
+    }
+
+    @Test
+    public void keyedLocksTest() {
+        Map<String, String> valueMap = new HashMap<String, String>();
+        valueMap.put( "instanceName", "LEADER" );
+        when( externalView.getStateMap( "resourceName_0" ) ).thenReturn( valueMap );
+
+        clusterServiceHelix.lock( "my-fsid", "other-fsid" );
+        clusterServiceHelix.lock( "my-fsid" );
+        assertEquals( 0, clusterServiceHelix.getHoldCount() );
+
+        valueMap.put( "instanceName", "STANDBY" );
+        clusterServiceHelix.unlock( "my-fsid" );
+        clusterServiceHelix.unlock( "other-fsid", "my-fsid" );
+
+        //node wide lock is free again
+        valueMap.put( "instanceName", "LEADER" );
+        clusterServiceHelix.lock();
+        assertEquals( 1, clusterServiceHelix.getHoldCount() );
+        valueMap.put( "instanceName", "STANDBY" );
+        clusterServiceHelix.unlock();
+        assertEquals( 0, clusterServiceHelix.getHoldCount() );
+    }
 
+    @Test(timeout = 10000)
+    public void awaitNodeStatusOnNotificationTest() throws Exception {
+        final Map<String, String> valueMap = new HashMap<String, String>();
+        valueMap.put( "instanceName", "STANDBY" );
+        when( externalView.getStateMap( "resourceName_0" ) ).thenReturn( valueMap );
+
+        assertFalse( clusterServiceHelix.awaitNodeStatus( "resourceName_0", 50, "LEADER" ) );
+
+        final Thread controller = new Thread() {
             @Override
-            void start() {
+            public void run() {
+                valueMap.put( "instanceName", "LEADER" );
+                clusterServiceHelix.viewChanged( externalView );
             }
+        };
+        controller.start();
+
+        assertTrue( clusterServiceHelix.awaitNodeStatus( "resourceName_0", 5000, "LEADER" ) );
+        controller.join();
+    }
+
+    @Test
+    public void lockTimeMetricTest() {
+        Map<String, String> valueMap = new HashMap<String, String>();
+        valueMap.put( "instanceName", "LEADER" );
+        when( externalView.getStateMap( "resourceName_0" ) ).thenReturn( valueMap );
+
+        clusterServiceHelix.lock( "my-fsid" );
+        clusterServiceHelix.lock( "my-fsid" );
+        valueMap.put( "instanceName", "STANDBY" );
+        clusterServiceHelix.unlock( "my-fsid" );
+        clusterServiceHelix.unlock( "my-fsid" );
+
+        assertEquals( 1, clusterServiceHelix.getLockCount() );
+        assertTrue( clusterServiceHelix.getLockTime() >= 0 );
+        assertTrue( clusterServiceHelix.getMaxLockTime() <= clusterServiceHelix.getLockTime() );
+    }
+
+    @Test
+    public void lockChecksReadTheAdminViewTest() {
+        //the notified view still shows a state the partition already left
+        final Map<String, String> notified = new HashMap<String, String>();
+        notified.put( "instanceName", "LEADER" );
+        when( externalView.getStateMap( "resourceName_0" ) ).thenReturn( notified );
+
+        final Map<String, String> current = new HashMap<String, String>();
+        current.put( "instanceName", "STANDBY" );
+        adminView = mock( ExternalView.class );
+        when( adminView.getStateMap( "resourceName_0" ) ).thenReturn( current );
+
+        clusterServiceHelix.lock( "my-fsid" );
+        verify( helixAdmin ).enablePartition( true, "clusterName", "instanceName", "resourceName", asList( "resourceName_0" ) );
+
+        notified.put( "instanceName", "STANDBY" );
+        current.put( "instanceName", "LEADER" );
+        clusterServiceHelix.unlock( "my-fsid" );
+        verify( helixAdmin ).enablePartition( false, "clusterName", "instanceName", "resourceName", asList( "resourceName_0" ) );
+    }
 
+    @Test
+    public void missingResourceIsCreatedPartitionedTest() {
+        when( helixAdmin.getInstancesInCluster( "clusterName" ) ).thenReturn( asList( "instanceName", "other" ) );
+
+        clusterServiceHelix.ensurePartitions();
+
+        verify( helixAdmin ).addResource( "clusterName", "resourceName", ClusterServiceHelix.PARTITIONS, "LeaderStandby", IdealState.RebalanceMode.FULL_AUTO.toString() );
+        verify( helixAdmin ).rebalance( "clusterName", "resourceName", 2 );
+    }
+
+    @Test
+    public void singlePartitionIsSpreadByANodeStartingAloneTest() {
+        final IdealState idealState = mock( IdealState.class );
+        when( idealState.getNumPartitions() ).thenReturn( 1 );
+        when( idealState.getReplicas() ).thenReturn( "3" );
+        when( helixAdmin.getResourceIdealState( "clusterName", "resourceName" ) ).thenReturn( idealState );
+
+        clusterServiceHelix.ensurePartitions();
+
+        verify( idealState ).setNumPartitions( ClusterServiceHelix.PARTITIONS );
+        verify( helixAdmin ).setResourceIdealState( "clusterName", "resourceName", idealState );
+        verify( helixAdmin ).rebalance( "clusterName", "resourceName", 3 );
+    }
+
+    @Test
+    public void singlePartitionInUseIsKeptTest() {
+        final IdealState idealState = mock( IdealState.class );
+        when( idealState.getNumPartitions() ).thenReturn( 1 );
+        when( helixAdmin.getResourceIdealState( "clusterName", "resourceName" ) ).thenReturn( idealState );
+        //the running node hashes every key to the single partition
+        liveInstances = asList( "instanceName", "other" );
+
+        clusterServiceHelix.ensurePartitions();
+
+        verify( idealState, never() ).setNumPartitions( anyInt() );
+        verify( helixAdmin, never() ).setResourceIdealState( anyString(), anyString(), any( IdealState.class ) );
+    }
+
+    @Test(timeout = 10000)
+    public void fileSystemsAreHeldFromDifferentNodesTest() {
+        //partition -> instance leading it, the controller grants a partition to the first instance enabling it
+        final Map<String, String> leaders = new ConcurrentHashMap<String, String>();
+        doAnswer( new Answer<Void>() {
             @Override
-            public void addMessageHandlerResolver( MessageHandlerResolver resolver ) {
+            public Void answer( final InvocationOnMock invocation ) {
+                final boolean enabled = (Boolean) invocation.getArguments()[ 0 ];
+                final String instance = (String) invocation.getArguments()[ 2 ];
+                for ( final Object partition : (List<?>) invocation.getArguments()[ 4 ] ) {
+                    if ( enabled && !leaders.containsKey( partition ) ) {
+                        leaders.put( (String) partition, instance );
+                    } else if ( !enabled && instance.equals( leaders.get( partition ) ) ) {
+                        leaders.remove( partition );
+                    }
+                }
+                return null;
             }
-
+        } ).when( helixAdmin ).enablePartition( anyBoolean(), anyString(), anyString(), anyString(), anyListOf( String.class ) );
+        when( externalView.getStateMap( anyString() ) ).thenAnswer( new Answer<Map<String, String>>() {
             @Override
-            ExternalView getResourceExternalView() {
-                return externalView;
+            public Map<String, String> answer( final InvocationOnMock invocation ) {
+                final String leader = leaders.get( invocation.getArguments()[ 0 ] );
+                return leader == null ? Collections.<String, String>emptyMap() : Collections.singletonMap( leader, "LEADER" );
             }
-        };
+        } );
+
+        final ClusterServiceHelix node1 = new TestClusterServiceHelix( "node1", 4 );
+        final ClusterServiceHelix node2 = new TestClusterServiceHelix( "node2", 4 );
+        assertFalse( node1.getPartition( "fs-a" ).equals( node2.getPartition( "fs-b" ) ) );
+
+        node1.lock( "fs-a" );
+        node2.lock( "fs-b" );
+
+        assertEquals( "node1", leaders.get( node1.getPartition( "fs-a" ) ) );
+        assertEquals( "node2", leaders.get( node2.getPartition( "fs-b" ) ) );
+
+        node2.unlock( "fs-b" );
+        node1.unlock( "fs-a" );
+        assertTrue( leaders.isEmpty() );
+    }
+
+    @Before
+    public void setup() {
+        externalView = mock( ExternalView.class );
+        adminView = null;
+        helixAdmin = mock( HelixAdmin.class );
+        liveInstances = asList( "instanceName" );
+
+        clusterServiceHelix = new TestClusterServiceHelix( 1 );
 
         assertTrue( PriorityDisposableRegistry.getDisposables().contains( clusterServiceHelix ) );
     }
-}
\ No newline at end of file
+
+    private class TestClusterServiceHelix extends ClusterServiceHelix {
+
+        private final int partitionCount;
+
+        TestClusterServiceHelix( final int partitionCount ) {
+            this( "instanceName", partitionCount );
+        }
+
+        TestClusterServiceHelix( final String instanceName,
+                                 final int partitionCount ) {
+            super( "clusterName",
+                   "zkAddress",
+                   instanceName,
+                   "resourceName",
+                   mock( MessageHandlerResolver.class ) );
+            this.partitionCount = partitionCount;
+        }
+
+        @Override
+        void start() {
+        }
+
+        @Override
+        public void addMessageHandlerResolver( MessageHandlerResolver resolver ) {
+        }
+
+        @Override
+        HelixManager getZkHelixManager( String clusterName,
+                                        String zkAddress,
+                                        String instanceName ) {
+            final HelixManager manager = mock( HelixManager.class );
+            when( manager.getClusterManagmentTool() ).thenReturn( helixAdmin );
+            return manager;
+        }
+
+        @Override
+        ExternalView getResourceExternalView() {
+            return externalView;
+        }
+
+        @Override
+        ExternalView readResourceExternalView() {
+            return adminView != null ? adminView : externalView;
+        }
+
+        @Override
+        int getPartitionCount() {
+            return partitionCount;
+        }
+
+        @Override
+        List<String> getLiveInstances() {
+            return liveInstances;
+        }
+    }
+}
@@ -0,0 +1,402 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.cluster.socket;
+
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.uberfire.commons.data.Pair;
+import org.uberfire.commons.message.AsyncCallback;
+import org.uberfire.commons.message.MessageHandler;
+import org.uberfire.commons.message.MessageHandlerResolver;
+import org.uberfire.commons.message.MessageType;
+import org.uberfire.io.impl.cluster.ClusterMessageType;
+
+import static org.junit.Assert.*;
+
+public class ClusterServiceSocketTest {
+
+    private static final long LEASE = 1000;
+    private static final long HEARTBEAT = 100;
+
+    private final List<String> members = new ArrayList<String>();
+    private final List<ClusterServiceSocket> nodes = new ArrayList<ClusterServiceSocket>();
+    //members cut off from all the others
+    private final Set<String> isolated = Collections.synchronizedSet( new HashSet<String>() );
+
+    @Before
+    public void setup() throws Exception {
+        for ( int i = 0; i < 3; i++ ) {
+            final ServerSocket socket = new ServerSocket( 0 );
+            members.add( "127.0.0.1:" + socket.getLocalPort() );
+            socket.close();
+        }
+        for ( final String member : members ) {
+            nodes.add( newNode( member, members ) );
+        }
+        for ( final ClusterServiceSocket node : nodes ) {
+            awaitAlive( node, 3 );
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for ( final ClusterServiceSocket node : nodes ) {
+            node.dispose();
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void firstAliveMemberLeadsTest() throws Exception {
+        for ( final ClusterServiceSocket node : nodes ) {
+            assertEquals( members.get( 0 ), node.getLeader() );
+        }
+        assertTrue( nodes.get( 0 ).isLeader() );
+
+        nodes.get( 0 ).dispose();
+        awaitAlive( nodes.get( 1 ), 2 );
+        awaitAlive( nodes.get( 2 ), 2 );
+        assertEquals( members.get( 1 ), nodes.get( 1 ).getLeader() );
+        assertEquals( members.get( 1 ), nodes.get( 2 ).getLeader() );
+        assertTrue( nodes.get( 1 ).isLeader() );
+    }
+
+    @Test(timeout = 20000)
+    public void broadcastAndWaitTest() {
+        final Map<String, String> replies = Collections.synchronizedMap( new HashMap<String, String>() );
+        final boolean[] timedOut = { false };
+
+        nodes.get( 1 ).broadcastAndWait( "service", ClusterMessageType.QUERY_FOR_FS, Collections.singletonMap( "value", "hello" ), 5000, new AsyncCallback() {
+            @Override
+            public void onTimeOut() {
+                timedOut[ 0 ] = true;
+            }
+
+            @Override
+            public void onReply( final MessageType type,
+                                 final Map<String, String> content ) {
+                assertEquals( ClusterMessageType.QUERY_FOR_FS_RESULT, type );
+                replies.put( content.get( "member" ), content.get( "value" ) );
+            }
+        } );
+
+        assertFalse( timedOut[ 0 ] );
+        //every member but the sender replied
+        assertEquals( 2, replies.size() );
+        assertEquals( "hello", replies.get( members.get( 0 ) ) );
+        assertEquals( "hello", replies.get( members.get( 2 ) ) );
+    }
+
+    @Test(timeout = 20000)
+    public void broadcastAndWaitTimesOutTest() {
+        final boolean[] timedOut = { false };
+        final List<MessageType> replies = Collections.synchronizedList( new ArrayList<MessageType>() );
+        final AsyncCallback callback = new AsyncCallback() {
+            @Override
+            public void onTimeOut() {
+                timedOut[ 0 ] = true;
+            }
+
+            @Override
+            public void onReply( final MessageType type,
+                                 final Map<String, String> content ) {
+                replies.add( type );
+            }
+        };
+
+        //messages nobody handles are answered with an empty reply
+        nodes.get( 0 ).broadcastAndWait( "service", ClusterMessageType.NEW_FS, Collections.<String, String>emptyMap(), 5000, callback );
+        assertFalse( timedOut[ 0 ] );
+        assertEquals( Arrays.<MessageType>asList( null, null ), replies );
+
+        replies.clear();
+        nodes.get( 0 ).broadcastAndWait( "service", ClusterMessageType.SYNC_FS, Collections.<String, String>emptyMap(), 200, callback );
+        assertTrue( timedOut[ 0 ] );
+        assertTrue( replies.isEmpty() );
+    }
+
+    @Test(timeout = 20000)
+    public void locksAreExclusiveAcrossMembersTest() throws Exception {
+        nodes.get( 1 ).lock( "repo" );
+        assertEquals( members.get( 1 ), nodes.get( 0 ).getOwner( "repo" ) );
+
+        final CountDownLatch locked = new CountDownLatch( 1 );
+        final Thread other = new Thread() {
+            @Override
+            public void run() {
+                nodes.get( 2 ).lock( "repo" );
+                locked.countDown();
+                nodes.get( 2 ).unlock( "repo" );
+            }
+        };
+        other.start();
+
+        //other keys are free
+        nodes.get( 2 ).lock( "other-repo" );
+        nodes.get( 2 ).unlock( "other-repo" );
+
+        assertFalse( locked.await( 500, TimeUnit.MILLISECONDS ) );
+        nodes.get( 1 ).unlock( "repo" );
+        assertTrue( locked.await( 5000, TimeUnit.MILLISECONDS ) );
+        other.join();
+    }
+
+    @Test(timeout = 20000)
+    public void nodeWideLockTest() throws Exception {
+        nodes.get( 2 ).lock();
+        assertEquals( 1, nodes.get( 2 ).getHoldCount() );
+        assertEquals( members.get( 2 ), nodes.get( 0 ).getOwner( ClusterServiceSocket.GLOBAL_KEY ) );
+
+        //held longer than the lease: renewed meanwhile
+        Thread.sleep( LEASE * 2 );
+        assertEquals( members.get( 2 ), nodes.get( 0 ).getOwner( ClusterServiceSocket.GLOBAL_KEY ) );
+
+        nodes.get( 2 ).unlock();
+        assertEquals( 0, nodes.get( 2 ).getHoldCount() );
+
+        nodes.get( 1 ).lock();
+        nodes.get( 1 ).unlock();
+    }
+
+    @Test(timeout = 20000)
+    public void newLeaderKeepsHeldLocksTest() throws Exception {
+        nodes.get( 2 ).lock( "repo" );
+
+        nodes.get( 0 ).dispose();
+        awaitAlive( nodes.get( 1 ), 2 );
+        assertTrue( nodes.get( 1 ).isLeader() );
+        //once the new leader asked the members what they hold
+        final long deadline = System.currentTimeMillis() + 5000;
+        while ( nodes.get( 1 ).getOwner( "repo" ) == null && System.currentTimeMillis() < deadline ) {
+            Thread.sleep( HEARTBEAT );
+        }
+        assertEquals( members.get( 2 ), nodes.get( 1 ).getOwner( "repo" ) );
+
+        nodes.get( 2 ).unlock( "repo" );
+        nodes.get( 1 ).lock( "repo" );
+        nodes.get( 1 ).unlock( "repo" );
+    }
+
+    @Test(timeout = 20000)
+    public void hungMemberIsDroppedTest() throws Exception {
+        //first of the list, accepts connections and reads them but never answers
+        final ServerSocket hung = new ServerSocket( 0 );
+        final List<Socket> sockets = Collections.synchronizedList( new ArrayList<Socket>() );
+        final Thread acceptor = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while ( true ) {
+                        final Socket socket = hung.accept();
+                        sockets.add( socket );
+                        new Thread() {
+                            @Override
+                            public void run() {
+                                try {
+                                    final InputStream in = socket.getInputStream();
+                                    while ( in.read() != -1 ) {
+                                    }
+                                } catch ( final Exception ignored ) {
+                                }
+                            }
+                        }.start();
+                    }
+                } catch ( final Exception ignored ) {
+                }
+            }
+        };
+        acceptor.setDaemon( true );
+        acceptor.start();
+
+        final List<String> otherMembers = new ArrayList<String>();
+        otherMembers.add( "127.0.0.1:" + hung.getLocalPort() );
+        for ( int i = 0; i < 2; i++ ) {
+            final ServerSocket socket = new ServerSocket( 0 );
+            otherMembers.add( "127.0.0.1:" + socket.getLocalPort() );
+            socket.close();
+        }
+        try {
+            final List<ClusterServiceSocket> others = new ArrayList<ClusterServiceSocket>();
+            for ( final String member : otherMembers.subList( 1, 3 ) ) {
+                final ClusterServiceSocket node = newNode( member, otherMembers );
+                nodes.add( node );
+                others.add( node );
+            }
+            for ( final ClusterServiceSocket node : others ) {
+                awaitAlive( node, 2 );
+                assertEquals( otherMembers.get( 1 ), node.getLeader() );
+            }
+
+            //reconnecting to it doesn't make it alive again until it answers
+            Thread.sleep( HEARTBEAT * ClusterServiceSocket.MISSED_HEARTBEATS * 3 );
+            for ( final ClusterServiceSocket node : others ) {
+                assertEquals( otherMembers.subList( 1, 3 ), node.getAliveMembers() );
+                assertEquals( otherMembers.get( 1 ), node.getLeader() );
+            }
+        } finally {
+            hung.close();
+            for ( final Socket socket : new ArrayList<Socket>( sockets ) ) {
+                socket.close();
+            }
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void onlyTheMajorityLeadsInAPartitionTest() throws Exception {
+        nodes.get( 0 ).lock( "repo" );
+
+        isolated.add( members.get( 0 ) );
+        awaitLeader( nodes.get( 0 ), null );
+        awaitLeader( nodes.get( 1 ), members.get( 1 ) );
+        awaitLeader( nodes.get( 2 ), members.get( 1 ) );
+
+        //the minority can't lock anything
+        final CountDownLatch minorityLocked = new CountDownLatch( 1 );
+        final Thread minority = new Thread() {
+            @Override
+            public void run() {
+                nodes.get( 0 ).lock( "other-repo" );
+                minorityLocked.countDown();
+                nodes.get( 0 ).unlock( "other-repo" );
+            }
+        };
+        minority.start();
+
+        //the majority waits for the lease of what the minority may hold before granting it
+        final CountDownLatch majorityLocked = new CountDownLatch( 1 );
+        final CountDownLatch majorityRelease = new CountDownLatch( 1 );
+        final Thread majority = new Thread() {
+            @Override
+            public void run() {
+                nodes.get( 2 ).lock( "repo" );
+                majorityLocked.countDown();
+                try {
+                    majorityRelease.await();
+                } catch ( final InterruptedException ignored ) {
+                }
+                nodes.get( 2 ).unlock( "repo" );
+            }
+        };
+        majority.start();
+        assertFalse( majorityLocked.await( LEASE / 2, TimeUnit.MILLISECONDS ) );
+        assertTrue( majorityLocked.await( 5000, TimeUnit.MILLISECONDS ) );
+        assertEquals( members.get( 2 ), nodes.get( 1 ).getOwner( "repo" ) );
+        assertFalse( minorityLocked.await( HEARTBEAT * 5, TimeUnit.MILLISECONDS ) );
+
+        //back in the majority, the first member leads again without claiming the lock it gave up
+        isolated.clear();
+        awaitAlive( nodes.get( 0 ), 3 );
+        assertTrue( nodes.get( 0 ).isLeader() );
+        assertTrue( minorityLocked.await( 5000, TimeUnit.MILLISECONDS ) );
+        minority.join();
+        assertEquals( members.get( 2 ), nodes.get( 0 ).getOwner( "repo" ) );
+
+        majorityRelease.countDown();
+        majority.join();
+        nodes.get( 0 ).unlock( "repo" );
+    }
+
+    private ClusterServiceSocket newNode( final String member,
+                                          final List<String> nodeMembers ) {
+        return new ClusterServiceSocket( member, nodeMembers, LEASE, HEARTBEAT, new EchoResolver( member ) ) {
+            @Override
+            boolean reachable( final String other ) {
+                return !isolated.contains( member ) && !isolated.contains( other );
+            }
+        };
+    }
+
+    private void awaitLeader( final ClusterServiceSocket node,
+                              final String expected ) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while ( expected == null ? node.getLeader() != null : !expected.equals( node.getLeader() ) ) {
+            assertTrue( "leader didn't change", System.currentTimeMillis() < deadline );
+            Thread.sleep( HEARTBEAT );
+        }
+    }
+
+    private void awaitAlive( final ClusterServiceSocket node,
+                             final int expected ) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while ( node.getAliveMembers().size() != expected || !node.getAliveMembers().get( 0 ).equals( node.getLeader() ) ) {
+            assertTrue( "members didn't show up", System.currentTimeMillis() < deadline );
+            Thread.sleep( HEARTBEAT );
+        }
+    }
+
+    /**
+     * Answers QUERY_FOR_FS with the content it got and the member answering, takes a while to handle SYNC_FS and
+     * ignores everything else.
+     */
+    private static class EchoResolver implements MessageHandlerResolver {
+
+        private final String member;
+
+        EchoResolver( final String member ) {
+            this.member = member;
+        }
+
+        @Override
+        public String getServiceId() {
+            return "service";
+        }
+
+        @Override
+        public MessageHandler resolveHandler( final String serviceId,
+                                              final MessageType type ) {
+            if ( type == ClusterMessageType.SYNC_FS ) {
+                return new MessageHandler() {
+                    @Override
+                    public Pair<MessageType, Map<String, String>> handleMessage( final MessageType type,
+                                                                                 final Map<String, String> content ) {
+                        try {
+                            Thread.sleep( 1000 );
+                        } catch ( final InterruptedException ignored ) {
+                        }
+                        return null;
+                    }
+                };
+            }
+            if ( type != ClusterMessageType.QUERY_FOR_FS ) {
+                return null;
+            }
+            return new MessageHandler() {
+                @Override
+                public Pair<MessageType, Map<String, String>> handleMessage( final MessageType type,
+                                                                             final Map<String, String> content ) {
+                    final Map<String, String> result = new HashMap<String, String>( content );
+                    result.put( "member", member );
+                    return new Pair<MessageType, Map<String, String>>( ClusterMessageType.QUERY_FOR_FS_RESULT, result );
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.cluster.socket;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameTest {
+
+    @Test
+    public void roundTripTest() throws Exception {
+        final Frame frame = new Frame( Frame.Kind.MESSAGE, 42, "127.0.0.1:9000", new HashMap<String, String>(), Collections.singletonMap( "key", "value" ) ).field( "type", "NEW_FS" );
+
+        final Frame read = Frame.read( new DataInputStream( new ByteArrayInputStream( write( frame ) ) ) );
+
+        assertEquals( Frame.Kind.MESSAGE, read.getKind() );
+        assertEquals( 42, read.getId() );
+        assertEquals( "127.0.0.1:9000", read.getOrigin() );
+        assertEquals( "NEW_FS", read.getField( "type" ) );
+        assertEquals( Collections.singletonMap( "key", "value" ), read.getContent() );
+    }
+
+    @Test
+    public void oversizedStringIsRejectedTest() throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream( bytes );
+        out.writeByte( Frame.Kind.PING.ordinal() );
+        out.writeLong( 0 );
+        //origin claims more than the limit, nothing follows
+        out.writeInt( Frame.MAX_BYTES + 1 );
+        out.flush();
+
+        try {
+            Frame.read( new DataInputStream( new ByteArrayInputStream( bytes.toByteArray() ) ) );
+            fail( "oversized string must be rejected" );
+        } catch ( final IOException e ) {
+            assertTrue( e.getMessage().contains( String.valueOf( Frame.MAX_BYTES ) ) );
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownKindIsRejectedTest() throws Exception {
+        Frame.read( new DataInputStream( new ByteArrayInputStream( new byte[]{ 100, 0, 0, 0, 0, 0, 0, 0, 0 } ) ) );
+    }
+
+    private byte[] write( final Frame frame ) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream( bytes );
+        frame.write( out );
+        out.flush();
+        return bytes.toByteArray();
+    }
+}
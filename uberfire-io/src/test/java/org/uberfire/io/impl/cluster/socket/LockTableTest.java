@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.cluster.socket;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LockTableTest {
+
+    private LockTable lockTable;
+
+    @Before
+    public void setup() {
+        lockTable = new LockTable( 100 );
+        assertTrue( lockTable.ready( Collections.<String, String>emptyMap(), 0, 0 ).isEmpty() );
+    }
+
+    @Test
+    public void grantsInRequestOrderTest() {
+        assertTrue( lockTable.lock( new LockTable.Request( "repo", "a", 1, null ), 0 ) );
+        assertFalse( lockTable.lock( new LockTable.Request( "repo", "b", 2, null ), 0 ) );
+        assertFalse( lockTable.lock( new LockTable.Request( "repo", "c", 3, null ), 0 ) );
+        //sent again, keeps its place
+        assertFalse( lockTable.lock( new LockTable.Request( "repo", "b", 2, null ), 0 ) );
+        assertEquals( 2, lockTable.getWaiting( "repo" ) );
+
+        //other keys are free
+        assertTrue( lockTable.lock( new LockTable.Request( "other", "b", 4, null ), 0 ) );
+
+        final List<LockTable.Request> granted = lockTable.unlock( "repo", "a", 10 );
+        assertEquals( 1, granted.size() );
+        assertEquals( "b", granted.get( 0 ).getMember() );
+        assertEquals( "b", lockTable.getOwner( "repo" ) );
+
+        //the owner asking again is granted again
+        assertTrue( lockTable.lock( new LockTable.Request( "repo", "b", 2, null ), 10 ) );
+    }
+
+    @Test
+    public void unlockDropsQueuedRequestTest() {
+        lockTable.lock( new LockTable.Request( "repo", "a", 1, null ), 0 );
+        lockTable.lock( new LockTable.Request( "repo", "b", 2, null ), 0 );
+
+        assertTrue( lockTable.unlock( "repo", "b", 0 ).isEmpty() );
+        assertEquals( 0, lockTable.getWaiting( "repo" ) );
+        assertTrue( lockTable.unlock( "repo", "a", 0 ).isEmpty() );
+        assertNull( lockTable.getOwner( "repo" ) );
+    }
+
+    @Test
+    public void expiredLeaseIsReleasedTest() {
+        lockTable.lock( new LockTable.Request( "repo", "a", 1, null ), 0 );
+        lockTable.lock( new LockTable.Request( "repo", "b", 2, null ), 0 );
+
+        lockTable.renew( "a", Arrays.asList( "repo" ), 80 );
+        assertTrue( lockTable.expire( 150 ).isEmpty() );
+        assertEquals( "a", lockTable.getOwner( "repo" ) );
+
+        final List<LockTable.Request> granted = lockTable.expire( 200 );
+        assertEquals( 1, granted.size() );
+        assertEquals( "b", lockTable.getOwner( "repo" ) );
+    }
+
+    @Test
+    public void nothingIsGrantedUntilReadyTest() {
+        lockTable.reset();
+
+        assertFalse( lockTable.lock( new LockTable.Request( "repo", "a", 1, null ), 0 ) );
+        assertFalse( lockTable.lock( new LockTable.Request( "other", "a", 2, null ), 0 ) );
+
+        //"b" got "repo" from the previous leader
+        final List<LockTable.Request> granted = lockTable.ready( Collections.singletonMap( "repo", "b" ), 0, 0 );
+        assertEquals( 1, granted.size() );
+        assertEquals( "other", granted.get( 0 ).getKey() );
+        assertEquals( "b", lockTable.getOwner( "repo" ) );
+        assertEquals( 1, lockTable.getWaiting( "repo" ) );
+    }
+
+    @Test
+    public void nothingIsGrantedDuringTheDelayTest() {
+        lockTable.reset();
+
+        assertFalse( lockTable.lock( new LockTable.Request( "repo", "a", 1, null ), 0 ) );
+        //some members didn't answer, what they may hold runs out first
+        assertTrue( lockTable.ready( Collections.<String, String>emptyMap(), 0, 100 ).isEmpty() );
+        assertFalse( lockTable.lock( new LockTable.Request( "other", "b", 2, null ), 50 ) );
+        assertTrue( lockTable.expire( 99 ).isEmpty() );
+
+        assertEquals( 2, lockTable.expire( 100 ).size() );
+        assertEquals( "a", lockTable.getOwner( "repo" ) );
+        assertEquals( "b", lockTable.getOwner( "other" ) );
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.uberfire.io.IOService;
+import org.uberfire.java.nio.base.FileSystemId;
+import org.uberfire.java.nio.file.FileSystem;
+import org.uberfire.java.nio.file.NoSuchFileException;
+import org.uberfire.java.nio.file.Path;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class IOServiceMetricsImplTest {
+
+    private IOService service;
+    private IOServiceMetrics metrics;
+    private IOServiceMetricsImpl ioService;
+    private Path path;
+
+    @Before
+    public void setup() {
+        service = mock( IOService.class );
+        metrics = new IOServiceMetrics();
+        ioService = new IOServiceMetricsImpl( service, metrics );
+
+        final FileSystem fs = mock( FileSystem.class, withSettings().extraInterfaces( FileSystemId.class ) );
+        when( ( (FileSystemId) fs ).id() ).thenReturn( "repo" );
+        path = mock( Path.class );
+        when( path.getFileSystem() ).thenReturn( fs );
+    }
+
+    @Test
+    public void callsAreRecordedPerOperationAndFileSystemTest() {
+        when( service.write( path, "content" ) ).thenReturn( path );
+        when( service.readAllString( path ) ).thenReturn( "content" );
+
+        assertEquals( path, ioService.write( path, "content" ) );
+        assertEquals( path, ioService.write( path, "content" ) );
+        assertEquals( "content", ioService.readAllString( path ) );
+        ioService.endBatch();
+
+        assertEquals( 2, metrics.getOperation( "write" ).getCount() );
+        assertEquals( 2, metrics.getOperation( "write", "repo" ).getCount() );
+        assertEquals( 1, metrics.getOperation( "readAllString", "repo" ).getCount() );
+        //no file system involved
+        assertEquals( 1, metrics.getOperation( "endBatch" ).getCount() );
+        assertEquals( 2, metrics.getFileSystemOperations().size() );
+        assertEquals( 4, metrics.getCallCount() );
+        assertEquals( 0, metrics.getErrorCount() );
+    }
+
+    @Test
+    public void errorsAreRecordedAndThrownTest() {
+        when( service.readAllString( path ) ).thenThrow( new NoSuchFileException( "file.txt" ) );
+
+        try {
+            ioService.readAllString( path );
+            fail( "the call failed" );
+        } catch ( final NoSuchFileException e ) {
+            assertEquals( "file.txt", e.getMessage() );
+        }
+
+        assertEquals( 1, metrics.getOperation( "readAllString" ).getErrors() );
+        assertEquals( 1, metrics.getErrorCount() );
+
+        metrics.reset();
+        assertNull( metrics.getOperation( "readAllString" ) );
+        assertEquals( 0, metrics.getCallCount() );
+    }
+
+    @Test
+    public void pathResolutionIsntTimedTest() {
+        ioService.get( "file.txt" );
+        ioService.getFileSystems();
+
+        verify( service ).get( "file.txt" );
+        assertTrue( metrics.getOperations().isEmpty() );
+    }
+
+    @Test
+    public void histogramPercentilesTest() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for ( int i = 0; i < 98; i++ ) {
+            histogram.record( TimeUnit.MICROSECONDS.toNanos( 100 ), false );
+        }
+        histogram.record( TimeUnit.MILLISECONDS.toNanos( 10 ), false );
+        histogram.record( TimeUnit.MILLISECONDS.toNanos( 50 ), true );
+
+        assertEquals( 100, histogram.getCount() );
+        assertEquals( 1, histogram.getErrors() );
+        //upper bound of the power of two bucket
+        assertEquals( TimeUnit.MICROSECONDS.toNanos( 128 ), histogram.getPercentileNanos( 0.5 ) );
+        assertEquals( TimeUnit.MICROSECONDS.toNanos( 16384 ), histogram.getPercentileNanos( 0.99 ) );
+        assertEquals( TimeUnit.MILLISECONDS.toNanos( 50 ), histogram.getPercentileNanos( 1 ) );
+        assertEquals( TimeUnit.MILLISECONDS.toNanos( 50 ), histogram.getMaxNanos() );
+
+        assertEquals( 0, LatencyHistogram.bucketOf( 500 ) );
+        assertEquals( 1, LatencyHistogram.bucketOf( TimeUnit.MICROSECONDS.toNanos( 2 ) ) );
+        assertEquals( 2, LatencyHistogram.bucketOf( TimeUnit.MICROSECONDS.toNanos( 3 ) ) );
+        assertEquals( 31, LatencyHistogram.bucketOf( Long.MAX_VALUE ) );
+    }
+
+    @Test
+    public void metricsAreExportedThroughJmxTest() throws Exception {
+        when( service.exists( path ) ).thenReturn( true );
+        final IOServiceMetricsImpl exported = new IOServiceMetricsImpl( "metrics-test", service );
+        final ObjectName name = ( (IOServiceMetrics) exported.getRegistry() ).getObjectName();
+        assertNotNull( name );
+
+        assertTrue( exported.exists( path ) );
+        assertEquals( 1L, ManagementFactory.getPlatformMBeanServer().getAttribute( name, "CallCount" ) );
+
+        exported.dispose();
+        assertFalse( ManagementFactory.getPlatformMBeanServer().isRegistered( name ) );
+        verify( service ).dispose();
+    }
+}
@@ -36,6 +36,7 @@ import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
 import org.uberfire.java.nio.IOException;
+import org.uberfire.java.nio.base.PathTypeProvider;
 import org.uberfire.java.nio.channels.SeekableByteChannel;
 import org.uberfire.java.nio.file.attribute.BasicFileAttributeView;
 import org.uberfire.java.nio.file.attribute.BasicFileAttributes;
@@ -78,6 +79,14 @@ public final class Files {
         return path.getFileSystem().provider();
     }
 
+    private static PathTypeProvider pathTypeProviderOf( final Path path ) {
+        final FileSystem fileSystem = path.getFileSystem();
+        if ( fileSystem != null && fileSystem.provider() instanceof PathTypeProvider ) {
+            return (PathTypeProvider) fileSystem.provider();
+        }
+        return null;
+    }
+
     //contents
 
     /**
@@ -744,6 +753,11 @@ public final class Files {
             throws IllegalArgumentException, SecurityException {
         checkNotNull( "path", path );
 
+        final PathTypeProvider pathTypeProvider = pathTypeProviderOf( path );
+        if ( pathTypeProvider != null ) {
+            return pathTypeProvider.exists( path );
+        }
+
         try {
             readAttributes( path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS );
             return true;
@@ -762,6 +776,11 @@ public final class Files {
             throws IllegalArgumentException, SecurityException {
         checkNotNull( "path", path );
 
+        final PathTypeProvider pathTypeProvider = pathTypeProviderOf( path );
+        if ( pathTypeProvider != null ) {
+            return !pathTypeProvider.exists( path );
+        }
+
         try {
             readAttributes( path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS );
             return false;
@@ -877,6 +896,11 @@ public final class Files {
             throws IllegalArgumentException, SecurityException {
         checkNotNull( "path", path );
 
+        final PathTypeProvider pathTypeProvider = pathTypeProviderOf( path );
+        if ( pathTypeProvider != null ) {
+            return pathTypeProvider.isDirectory( path );
+        }
+
         try {
             return readAttributes( path, BasicFileAttributes.class, options ).isDirectory();
         } catch ( IOException ioe ) {
@@ -894,6 +918,11 @@ public final class Files {
             throws IllegalAccessError, SecurityException {
         checkNotNull( "path", path );
 
+        final PathTypeProvider pathTypeProvider = pathTypeProviderOf( path );
+        if ( pathTypeProvider != null ) {
+            return pathTypeProvider.isRegularFile( path );
+        }
+
         try {
             return readAttributes( path, BasicFileAttributes.class, options ).isRegularFile();
         } catch ( IOException ioe ) {
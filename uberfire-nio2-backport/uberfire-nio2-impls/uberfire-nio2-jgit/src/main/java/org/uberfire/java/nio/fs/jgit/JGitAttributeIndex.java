@@ -0,0 +1,512 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.uberfire.commons.data.Pair;
+import org.uberfire.java.nio.base.Properties;
+import org.uberfire.java.nio.fs.jgit.util.JGitUtil;
+
+import static org.eclipse.jgit.lib.Constants.*;
+import static org.uberfire.java.nio.base.dotfiles.AttributesFileUtils.*;
+
+/**
+ * Secondary index of file attributes (dot files and consolidated attribute files) of a repository, kept per branch.
+ * Each branch index remembers the tree it was built from and catches up with the branch head on query by applying
+ * only the attribute files changed in between. The index is persisted in the git directory, so a restart only has to
+ * apply the commits made since it was last saved; in-memory repositories keep it in memory only.
+ * <p/>
+ * The file holds, per branch, the id of the indexed tree and the attributes of each path as plain length prefixed
+ * strings. A file that can't be read is discarded and the index rebuilt from the trees.
+ */
+public class JGitAttributeIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger( JGitAttributeIndex.class );
+
+    static final String INDEX_FILE = "uf-attributes.idx";
+    private static final int FORMAT_VERSION = 2;
+
+    private final Repository repository;
+    private final File indexFile;
+    private final Map<String, BranchIndex> branches = new HashMap<String, BranchIndex>();
+    private boolean loaded = false;
+    private boolean dirty = false;
+
+    public JGitAttributeIndex( final Repository repository ) {
+        this.repository = repository;
+        this.indexFile = repository.getDirectory() == null ? null : new File( repository.getDirectory(), INDEX_FILE );
+    }
+
+    /**
+     * @param value value to match, or null for any value
+     * @return the requested page of matching paths (git paths, without leading slash) and the total of matches
+     */
+    public synchronized Pair<List<String>, Integer> query( final String branchName,
+                                                           final String attribute,
+                                                           final String value,
+                                                           final int offset,
+                                                           final int pageSize ) {
+        final Collection<String> matches = update( branchName ).find( normalize( attribute ), value );
+
+        final List<String> page = new ArrayList<String>( Math.max( 0, Math.min( pageSize, matches.size() - offset ) ) );
+        int i = 0;
+        for ( final String path : matches ) {
+            if ( page.size() >= pageSize ) {
+                break;
+            }
+            if ( i++ >= offset ) {
+                page.add( path );
+            }
+        }
+
+        return Pair.newPair( page, matches.size() );
+    }
+
+    public synchronized void rebuild( final String branchName ) {
+        load();
+        branches.remove( branchName );
+        dirty = true;
+        update( branchName );
+        persist();
+    }
+
+    /**
+     * Writes the index next to the repository, if anything changed since it was loaded.
+     */
+    public synchronized void persist() {
+        if ( !dirty || indexFile == null ) {
+            return;
+        }
+        final File temp = new File( indexFile.getParentFile(), INDEX_FILE + ".tmp" );
+        try {
+            final DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( temp ) ) );
+            try {
+                out.writeInt( FORMAT_VERSION );
+                out.writeInt( branches.size() );
+                for ( final Map.Entry<String, BranchIndex> entry : branches.entrySet() ) {
+                    writeString( out, entry.getKey() );
+                    writeString( out, entry.getValue().treeId == null ? "" : entry.getValue().treeId.name() );
+                    out.writeInt( entry.getValue().attributesByPath.size() );
+                    for ( final Map.Entry<String, HashMap<String, HashSet<String>>> path : entry.getValue().attributesByPath.entrySet() ) {
+                        writeString( out, path.getKey() );
+                        out.writeInt( path.getValue().size() );
+                        for ( final Map.Entry<String, HashSet<String>> attribute : path.getValue().entrySet() ) {
+                            writeString( out, attribute.getKey() );
+                            out.writeInt( attribute.getValue().size() );
+                            for ( final String value : attribute.getValue() ) {
+                                writeString( out, value );
+                            }
+                        }
+                    }
+                }
+            } finally {
+                out.close();
+            }
+            if ( !temp.renameTo( indexFile ) ) {
+                indexFile.delete();
+                if ( !temp.renameTo( indexFile ) ) {
+                    throw new java.io.IOException( "Can't rename " + temp );
+                }
+            }
+            dirty = false;
+        } catch ( final Exception ex ) {
+            LOG.warn( "Failed to persist attribute index of '" + repository.getDirectory() + "'.", ex );
+            temp.delete();
+        }
+    }
+
+    private void load() {
+        if ( loaded ) {
+            return;
+        }
+        loaded = true;
+        if ( indexFile == null || !indexFile.exists() ) {
+            return;
+        }
+        try {
+            final long limit = indexFile.length();
+            final DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( indexFile ) ) );
+            try {
+                if ( in.readInt() != FORMAT_VERSION ) {
+                    return;
+                }
+                final int size = readCount( in, limit );
+                for ( int i = 0; i < size; i++ ) {
+                    final String branchName = readString( in, limit );
+                    final String treeId = readString( in, limit );
+                    final BranchIndex index = new BranchIndex();
+                    //a stale tree is caught up, or the branch reindexed if it's gone, on the next query
+                    index.treeId = treeId.isEmpty() ? null : ObjectId.fromString( treeId );
+                    final int paths = readCount( in, limit );
+                    for ( int j = 0; j < paths; j++ ) {
+                        final String path = readString( in, limit );
+                        final HashMap<String, HashSet<String>> attributes = new HashMap<String, HashSet<String>>();
+                        final int attributeCount = readCount( in, limit );
+                        for ( int k = 0; k < attributeCount; k++ ) {
+                            final String attribute = readString( in, limit );
+                            final HashSet<String> values = new HashSet<String>();
+                            final int valueCount = readCount( in, limit );
+                            for ( int l = 0; l < valueCount; l++ ) {
+                                values.add( readString( in, limit ) );
+                            }
+                            attributes.put( attribute, values );
+                        }
+                        index.put( path, attributes );
+                    }
+                    branches.put( branchName, index );
+                }
+            } finally {
+                in.close();
+            }
+        } catch ( final Exception ex ) {
+            LOG.warn( "Discarding unreadable attribute index of '" + repository.getDirectory() + "'.", ex );
+            branches.clear();
+        }
+    }
+
+    private static void writeString( final DataOutputStream out,
+                                     final String value ) throws java.io.IOException {
+        final byte[] bytes = value.getBytes( "UTF-8" );
+        out.writeInt( bytes.length );
+        out.write( bytes );
+    }
+
+    /**
+     * @param limit size of the file: no count or string of a well formed file exceeds it
+     */
+    private static String readString( final DataInputStream in,
+                                      final long limit ) throws java.io.IOException {
+        final byte[] bytes = new byte[ readCount( in, limit ) ];
+        in.readFully( bytes );
+        return new String( bytes, "UTF-8" );
+    }
+
+    private static int readCount( final DataInputStream in,
+                                  final long limit ) throws java.io.IOException {
+        final int count = in.readInt();
+        if ( count < 0 || count > limit ) {
+            throw new java.io.IOException( "Corrupted attribute index: " + count + " entries in a " + limit + " bytes file." );
+        }
+        return count;
+    }
+
+    private BranchIndex update( final String branchName ) {
+        load();
+
+        BranchIndex index = branches.get( branchName );
+        if ( index == null ) {
+            index = new BranchIndex();
+            branches.put( branchName, index );
+        }
+
+        final ObjectId head = JGitUtil.getTreeRefObjectId( repository, branchName );
+        if ( head == null ) {
+            index.clear();
+            return index;
+        }
+        if ( head.equals( index.treeId ) ) {
+            return index;
+        }
+
+        try {
+            if ( index.treeId == null || !repository.hasObject( index.treeId ) ) {
+                index.clear();
+                indexTree( index, head );
+            } else {
+                indexDiff( index, index.treeId, head );
+            }
+        } catch ( final java.io.IOException ex ) {
+            throw new RuntimeException( ex );
+        }
+        index.treeId = head;
+        dirty = true;
+
+        return index;
+    }
+
+    private void indexTree( final BranchIndex index,
+                            final ObjectId treeId ) throws java.io.IOException {
+        final Map<String, Properties> legacy = new HashMap<String, Properties>();
+        final Map<String, Properties> consolidated = new HashMap<String, Properties>();
+
+        final TreeWalk tw = new TreeWalk( repository );
+        try {
+            tw.reset( treeId );
+            tw.setRecursive( true );
+            while ( tw.next() ) {
+                final String path = tw.getPathString();
+                if ( !isAttributesSource( path ) ) {
+                    continue;
+                }
+                final Properties content = parse( tw.getObjectId( 0 ) );
+                if ( content == null ) {
+                    continue;
+                }
+                if ( isAttributesFilePath( path ) ) {
+                    final String dir = parentOf( path );
+                    for ( final String entry : content.keySet() ) {
+                        final Properties attributes = getEntry( content, entry );
+                        if ( attributes != null ) {
+                            consolidated.put( childOf( dir, entry ), attributes );
+                        }
+                    }
+                } else {
+                    legacy.put( assetOf( path ), content );
+                }
+            }
+        } finally {
+            tw.release();
+        }
+
+        legacy.putAll( consolidated );
+        for ( final Map.Entry<String, Properties> entry : legacy.entrySet() ) {
+            index.put( entry.getKey(), toIndexEntry( entry.getValue() ) );
+        }
+    }
+
+    private void indexDiff( final BranchIndex index,
+                            final ObjectId oldTreeId,
+                            final ObjectId newTreeId ) throws java.io.IOException {
+        final Set<String> affected = new HashSet<String>();
+        for ( final DiffEntry diff : JGitUtil.getDiff( repository, oldTreeId, newTreeId ) ) {
+            for ( final String path : new String[]{ diff.getOldPath(), diff.getNewPath() } ) {
+                if ( path == null || path.equals( DiffEntry.DEV_NULL ) || !isAttributesSource( path ) ) {
+                    continue;
+                }
+                if ( isAttributesFilePath( path ) ) {
+                    final String dir = parentOf( path );
+                    for ( final ObjectId blobId : new ObjectId[]{ diff.getOldId().toObjectId(), diff.getNewId().toObjectId() } ) {
+                        final Properties content = blobId == null || ObjectId.zeroId().equals( blobId ) ? null : parse( blobId );
+                        if ( content != null ) {
+                            for ( final String entry : content.keySet() ) {
+                                affected.add( childOf( dir, entry ) );
+                            }
+                        }
+                    }
+                } else {
+                    affected.add( assetOf( path ) );
+                }
+            }
+        }
+
+        final Map<String, Properties> attributesFiles = new HashMap<String, Properties>();
+        for ( final String asset : affected ) {
+            final String attributesFilePath = childOf( parentOf( asset ), ATTRIBUTES_FILE );
+            if ( !attributesFiles.containsKey( attributesFilePath ) ) {
+                attributesFiles.put( attributesFilePath, parse( newTreeId, attributesFilePath ) );
+            }
+            final Properties content = attributesFiles.get( attributesFilePath );
+            Properties attributes = content == null ? null : getEntry( content, asset.isEmpty() ? ROOT_ENTRY : nameOf( asset ) );
+            if ( attributes == null ) {
+                attributes = parse( newTreeId, dotOf( asset ) );
+            }
+            if ( attributes == null ) {
+                index.remove( asset );
+            } else {
+                index.put( asset, toIndexEntry( attributes ) );
+            }
+        }
+    }
+
+    private Properties parse( final ObjectId treeId,
+                              final String path ) throws java.io.IOException {
+        final TreeWalk tw = TreeWalk.forPath( repository, path, treeId );
+        if ( tw == null ) {
+            return null;
+        }
+        try {
+            return parse( tw.getObjectId( 0 ) );
+        } finally {
+            tw.release();
+        }
+    }
+
+    private Properties parse( final ObjectId blobId ) {
+        try {
+            final Properties properties = new Properties();
+            properties.load( new ByteArrayInputStream( repository.open( blobId, OBJ_BLOB ).getBytes() ) );
+            return properties;
+        } catch ( final Exception ex ) {
+            //not an attributes file (e.g. .gitignore)
+            return null;
+        }
+    }
+
+    static boolean isAttributesSource( final String path ) {
+        final String name = nameOf( path );
+        return name.length() > 1 && name.charAt( 0 ) == '.' && !name.equals( ".gitignore" ) && !name.equals( ".gitkeep" );
+    }
+
+    private static boolean isAttributesFilePath( final String path ) {
+        return nameOf( path ).equals( ATTRIBUTES_FILE );
+    }
+
+    private static String assetOf( final String dotPath ) {
+        if ( dotPath.equals( ".root" ) ) {
+            return "";
+        }
+        return childOf( parentOf( dotPath ), nameOf( dotPath ).substring( 1 ) );
+    }
+
+    private static String dotOf( final String asset ) {
+        if ( asset.isEmpty() ) {
+            return ".root";
+        }
+        return childOf( parentOf( asset ), "." + nameOf( asset ) );
+    }
+
+    private static String nameOf( final String path ) {
+        return path.substring( path.lastIndexOf( '/' ) + 1 );
+    }
+
+    private static String parentOf( final String path ) {
+        final int index = path.lastIndexOf( '/' );
+        return index == -1 ? "" : path.substring( 0, index );
+    }
+
+    private static String childOf( final String dir,
+                                   final String name ) {
+        if ( name.equals( ROOT_ENTRY ) ) {
+            return dir;
+        }
+        return dir.isEmpty() ? name : dir + "/" + name;
+    }
+
+    /**
+     * Drops the position suffix of multi-valued attributes: <code>dcore.creator[1]</code> -> <code>dcore.creator</code>
+     */
+    static String normalize( final String attribute ) {
+        final int index = attribute.lastIndexOf( '[' );
+        if ( index > 0 && attribute.endsWith( "]" ) ) {
+            return attribute.substring( 0, index );
+        }
+        return attribute;
+    }
+
+    private static HashMap<String, HashSet<String>> toIndexEntry( final Properties attributes ) {
+        final HashMap<String, HashSet<String>> result = new HashMap<String, HashSet<String>>();
+        for ( final Map.Entry<String, Object> entry : attributes.entrySet() ) {
+            if ( entry.getValue() == null ) {
+                continue;
+            }
+            final String key = normalize( entry.getKey() );
+            HashSet<String> values = result.get( key );
+            if ( values == null ) {
+                values = new HashSet<String>();
+                result.put( key, values );
+            }
+            values.add( entry.getValue().toString() );
+        }
+        return result;
+    }
+
+    private static class BranchIndex {
+
+        private ObjectId treeId;
+        private final HashMap<String, HashMap<String, HashSet<String>>> attributesByPath = new HashMap<String, HashMap<String, HashSet<String>>>();
+        private final Map<String, Map<String, TreeSet<String>>> pathsByAttribute = new HashMap<String, Map<String, TreeSet<String>>>();
+
+        void put( final String path,
+                  final HashMap<String, HashSet<String>> attributes ) {
+            remove( path );
+            if ( attributes.isEmpty() ) {
+                return;
+            }
+            attributesByPath.put( path, attributes );
+            for ( final Map.Entry<String, HashSet<String>> attribute : attributes.entrySet() ) {
+                Map<String, TreeSet<String>> byValue = pathsByAttribute.get( attribute.getKey() );
+                if ( byValue == null ) {
+                    byValue = new HashMap<String, TreeSet<String>>();
+                    pathsByAttribute.put( attribute.getKey(), byValue );
+                }
+                for ( final String value : attribute.getValue() ) {
+                    TreeSet<String> paths = byValue.get( value );
+                    if ( paths == null ) {
+                        paths = new TreeSet<String>();
+                        byValue.put( value, paths );
+                    }
+                    paths.add( path );
+                }
+            }
+        }
+
+        void remove( final String path ) {
+            final Map<String, HashSet<String>> attributes = attributesByPath.remove( path );
+            if ( attributes == null ) {
+                return;
+            }
+            for ( final Map.Entry<String, HashSet<String>> attribute : attributes.entrySet() ) {
+                final Map<String, TreeSet<String>> byValue = pathsByAttribute.get( attribute.getKey() );
+                for ( final String value : attribute.getValue() ) {
+                    final TreeSet<String> paths = byValue.get( value );
+                    paths.remove( path );
+                    if ( paths.isEmpty() ) {
+                        byValue.remove( value );
+                    }
+                }
+                if ( byValue.isEmpty() ) {
+                    pathsByAttribute.remove( attribute.getKey() );
+                }
+            }
+        }
+
+        Collection<String> find( final String attribute,
+                                 final String value ) {
+            final Map<String, TreeSet<String>> byValue = pathsByAttribute.get( attribute );
+            if ( byValue == null ) {
+                return new TreeSet<String>();
+            }
+            if ( value != null ) {
+                final TreeSet<String> paths = byValue.get( value );
+                return paths == null ? new TreeSet<String>() : paths;
+            }
+            final TreeSet<String> result = new TreeSet<String>();
+            for ( final TreeSet<String> paths : byValue.values() ) {
+                result.addAll( paths );
+            }
+            return result;
+        }
+
+        void clear() {
+            treeId = null;
+            attributesByPath.clear();
+            pathsByAttribute.clear();
+        }
+    }
+}
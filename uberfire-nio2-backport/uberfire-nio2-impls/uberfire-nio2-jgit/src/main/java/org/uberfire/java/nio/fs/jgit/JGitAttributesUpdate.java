@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.uberfire.commons.data.Pair;
+import org.uberfire.java.nio.IOException;
+import org.uberfire.java.nio.base.Properties;
+import org.uberfire.java.nio.fs.jgit.util.JGitUtil;
+
+import static org.eclipse.jgit.lib.Constants.*;
+import static org.uberfire.java.nio.base.dotfiles.AttributesFileUtils.*;
+import static org.uberfire.java.nio.base.dotfiles.DotFileUtils.*;
+
+/**
+ * Pending changes to the consolidated attribute files of a branch. The changes are only resolved against the
+ * repository by {@link #build()}, which runs while the file system lock is held, so concurrent writers of the same
+ * directory never lose each other's entries. Legacy dot files of every updated path are removed by the same commit.
+ */
+class JGitAttributesUpdate {
+
+    private final Map<JGitPathImpl, Properties> updates = new LinkedHashMap<JGitPathImpl, Properties>();
+    private final Map<JGitPathImpl, JGitPathImpl> copies = new LinkedHashMap<JGitPathImpl, JGitPathImpl>();
+
+    JGitAttributesUpdate put( final JGitPathImpl path,
+                              final Properties attributes ) {
+        updates.put( path, attributes );
+        return this;
+    }
+
+    JGitAttributesUpdate remove( final JGitPathImpl path ) {
+        updates.put( path, null );
+        return this;
+    }
+
+    JGitAttributesUpdate copy( final JGitPathImpl source,
+                               final JGitPathImpl target ) {
+        copies.put( target, source );
+        return this;
+    }
+
+    /**
+     * @return commit content (path -> new file, or null to delete) for every touched attributes and legacy dot file
+     */
+    Map<String, File> build() throws java.io.IOException {
+        for ( final Map.Entry<JGitPathImpl, JGitPathImpl> copy : copies.entrySet() ) {
+            updates.put( copy.getKey(), readAttributes( copy.getValue() ) );
+        }
+
+        final Map<String, Properties> attributesFiles = new HashMap<String, Properties>();
+        final Map<String, File> content = new HashMap<String, File>();
+
+        for ( final Map.Entry<JGitPathImpl, Properties> update : updates.entrySet() ) {
+            final JGitPathImpl path = update.getKey();
+            final JGitPathImpl attributesPath = (JGitPathImpl) attributesFile( path );
+
+            Properties attributes = attributesFiles.get( attributesPath.getPath() );
+            if ( attributes == null ) {
+                attributes = loadBlob( attributesPath );
+                attributesFiles.put( attributesPath.getPath(), attributes );
+            }
+
+            if ( update.getValue() == null || update.getValue().isEmpty() ) {
+                attributes.remove( entryName( path ) );
+            } else {
+                attributes.put( entryName( path ), new HashMap<String, Object>( update.getValue() ) );
+            }
+
+            if ( path.getFileName() != null ) {
+                content.put( ( (JGitPathImpl) dot( path ) ).getPath(), null );
+            }
+        }
+
+        for ( final Map.Entry<String, Properties> attributesFile : attributesFiles.entrySet() ) {
+            if ( attributesFile.getValue().isEmpty() ) {
+                content.put( attributesFile.getKey(), null );
+            } else {
+                final File temp = File.createTempFile( "meta", "attrs" );
+                attributesFile.getValue().store( new FileOutputStream( temp ) );
+                content.put( attributesFile.getKey(), temp );
+            }
+        }
+
+        return content;
+    }
+
+    /**
+     * @return attributes of the given path, from its consolidated attributes file or else from its legacy dot file;
+     * null if there are none
+     */
+    static Properties readAttributes( final JGitPathImpl path ) {
+        final Properties entry = getEntry( loadBlob( (JGitPathImpl) attributesFile( path ) ), entryName( path ) );
+        if ( entry != null ) {
+            return entry;
+        }
+        final Properties legacy = loadBlob( (JGitPathImpl) dot( path ) );
+        if ( legacy.isEmpty() ) {
+            return null;
+        }
+        return legacy;
+    }
+
+    static Properties loadBlob( final JGitPathImpl path ) {
+        final Properties properties = new Properties();
+        final Git git = path.getFileSystem().gitRepo();
+        final Pair<JGitUtil.PathType, ObjectId> result = JGitUtil.checkPath( git, path.getRefTree(), path.getPath() );
+        if ( result.getK1() == JGitUtil.PathType.FILE ) {
+            try {
+                properties.load( new ByteArrayInputStream( git.getRepository().open( result.getK2(), OBJ_BLOB ).getBytes() ) );
+            } catch ( final java.io.IOException e ) {
+                throw new IOException( e );
+            }
+        }
+        return properties;
+    }
+}
@@ -16,6 +16,7 @@
 
 package org.uberfire.java.nio.fs.jgit;
 
+import org.eclipse.jgit.internal.storage.dfs.DfsRepository;
 import org.eclipse.jgit.lib.Repository;
 import org.uberfire.java.nio.IOException;
 import org.uberfire.java.nio.file.FileStore;
@@ -35,11 +36,17 @@ public class JGitFileStore implements FileStore {
 
     @Override
     public String name() {
+        if ( repository instanceof DfsRepository ) {
+            return ( (DfsRepository) repository ).getDescription().getRepositoryName();
+        }
         return repository.getDirectory().getName();
     }
 
     @Override
     public String type() {
+        if ( repository instanceof DfsRepository ) {
+            return "memory";
+        }
         return "file";
     }
 
@@ -50,11 +57,17 @@ public class JGitFileStore implements FileStore {
 
     @Override
     public long getTotalSpace() throws IOException {
+        if ( repository instanceof DfsRepository ) {
+            return Runtime.getRuntime().maxMemory();
+        }
         return repository.getDirectory().getTotalSpace();
     }
 
     @Override
     public long getUsableSpace() throws IOException {
+        if ( repository instanceof DfsRepository ) {
+            return Runtime.getRuntime().freeMemory();
+        }
         return repository.getDirectory().getUsableSpace();
     }
 
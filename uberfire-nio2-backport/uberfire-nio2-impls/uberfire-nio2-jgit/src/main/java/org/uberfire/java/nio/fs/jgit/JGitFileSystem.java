@@ -19,6 +19,7 @@ package org.uberfire.java.nio.fs.jgit;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -35,12 +36,14 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.ListBranchCommand;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.transport.CredentialsProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.uberfire.java.nio.IOException;
 import org.uberfire.java.nio.base.FileSystemId;
+import org.uberfire.java.nio.base.FileSystemRefs;
 import org.uberfire.java.nio.base.FileSystemState;
 import org.uberfire.java.nio.base.FileSystemStateAware;
 import org.uberfire.java.nio.base.options.CommentedOption;
@@ -58,6 +61,8 @@ import org.uberfire.java.nio.file.WatchService;
 import org.uberfire.java.nio.file.Watchable;
 import org.uberfire.java.nio.file.attribute.UserPrincipalLookupService;
 import org.uberfire.java.nio.file.spi.FileSystemProvider;
+import org.uberfire.java.nio.fs.jgit.util.JGitUtil;
+import org.uberfire.java.nio.fs.jgit.util.ReaderContext;
 
 import static java.util.Arrays.*;
 import static java.util.Collections.*;
@@ -67,7 +72,8 @@ import static org.uberfire.java.nio.fs.jgit.util.JGitUtil.*;
 
 public class JGitFileSystem implements FileSystem,
                                        FileSystemId,
-                                       FileSystemStateAware {
+                                       FileSystemStateAware,
+                                       FileSystemRefs {
 
     private static final Logger LOGGER = LoggerFactory.getLogger( JGitFileSystem.class );
 
@@ -91,6 +97,10 @@ public class JGitFileSystem implements FileSystem,
 
     private final Lock lock = new Lock();
 
+    private JGitPushQueue pushQueue = null;
+    private JGitAttributeIndex attributeIndex = null;
+    private final JGitPathIndex pathIndex;
+
     JGitFileSystem( final JGitFileSystemProvider provider,
                     final Map<String, String> fullHostNames,
                     final Git git,
@@ -107,6 +117,7 @@ public class JGitFileSystem implements FileSystem,
                     final CredentialsProvider credential ) {
         this.provider = checkNotNull( "provider", provider );
         this.gitRepo = checkNotNull( "git", git );
+        this.pathIndex = new JGitPathIndex( git.getRepository() );
         this.name = checkNotEmpty( "name", name );
         this.credential = checkNotNull( "credential", credential );
         this.listMode = listMode;
@@ -144,6 +155,32 @@ public class JGitFileSystem implements FileSystem,
         return credential;
     }
 
+    /**
+     * @return the outbound replication queue, or null when this file system doesn't push to an upstream remote
+     */
+    public JGitPushQueue getPushQueue() {
+        return pushQueue;
+    }
+
+    void setPushQueue( final JGitPushQueue pushQueue ) {
+        this.pushQueue = pushQueue;
+    }
+
+    public JGitPathIndex getPathIndex() {
+        return pathIndex;
+    }
+
+    public synchronized JGitAttributeIndex getAttributeIndex() {
+        if ( attributeIndex == null ) {
+            attributeIndex = new JGitAttributeIndex( gitRepo.getRepository() );
+        }
+        return attributeIndex;
+    }
+
+    public boolean isInMemory() {
+        return JGitUtil.isInMemory( gitRepo );
+    }
+
     @Override
     public FileSystemProvider provider() {
         return provider;
@@ -359,7 +396,16 @@ public class JGitFileSystem implements FileSystem,
         if ( isClosed ) {
             return;
         }
+        if ( pushQueue != null ) {
+            pushQueue.close();
+        }
+        synchronized ( this ) {
+            if ( attributeIndex != null ) {
+                attributeIndex.persist();
+            }
+        }
         gitRepo.getRepository().close();
+        ReaderContext.clear( gitRepo.getRepository() );
         isClosed = true;
         try {
 
@@ -562,6 +608,21 @@ public class JGitFileSystem implements FileSystem,
         return state;
     }
 
+    @Override
+    public Map<String, String> refs() {
+        try {
+            final Map<String, String> result = new HashMap<String, String>();
+            for ( final Ref ref : gitRepo.getRepository().getRefDatabase().getRefs( Constants.R_HEADS ).values() ) {
+                if ( ref.getObjectId() != null ) {
+                    result.put( ref.getName(), ref.getObjectId().name() );
+                }
+            }
+            return result;
+        } catch ( final java.io.IOException e ) {
+            throw new IOException( e );
+        }
+    }
+
     public void lock() {
         try {
             lock.lock();
@@ -17,7 +17,6 @@
 package org.uberfire.java.nio.fs.jgit;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.FilterOutputStream;
@@ -27,6 +26,7 @@ import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
@@ -37,14 +37,21 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import com.jcraft.jsch.Session;
 import com.jcraft.jsch.UserInfo;
@@ -58,6 +65,7 @@ import org.eclipse.jgit.internal.storage.file.WindowCache;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.storage.file.WindowCacheConfig;
@@ -83,6 +91,8 @@ import org.eclipse.jgit.util.FileUtils;
 import org.eclipse.jgit.util.Hook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.uberfire.commons.async.DescriptiveRunnable;
+import org.uberfire.commons.async.DescriptiveThreadFactory;
 import org.uberfire.commons.async.DisposableExecutor;
 import org.uberfire.commons.async.SimpleAsyncExecutorService;
 import org.uberfire.commons.cluster.ClusterService;
@@ -94,14 +104,23 @@ import org.uberfire.commons.message.MessageType;
 import org.uberfire.java.nio.EncodingUtil;
 import org.uberfire.java.nio.IOException;
 import org.uberfire.java.nio.base.AbstractPath;
+import org.uberfire.java.nio.base.AttrHolder;
 import org.uberfire.java.nio.base.BasicFileAttributesImpl;
 import org.uberfire.java.nio.base.ExtendedAttributeView;
 import org.uberfire.java.nio.base.FileSystemState;
+import org.uberfire.java.nio.base.PathTypeProvider;
+import org.uberfire.java.nio.base.Properties;
 import org.uberfire.java.nio.base.SeekableByteChannelFileBasedImpl;
+import org.uberfire.java.nio.base.SnapshotProvider;
 import org.uberfire.java.nio.base.WatchContext;
+import org.uberfire.java.nio.base.dotfiles.AttributesFileOption;
+import org.uberfire.java.nio.base.dotfiles.AttributesFileUtils;
 import org.uberfire.java.nio.base.dotfiles.DotFileOption;
 import org.uberfire.java.nio.base.options.CherryPickCopyOption;
 import org.uberfire.java.nio.base.options.CommentedOption;
+import org.uberfire.java.nio.base.query.AttributeQueryProvider;
+import org.uberfire.java.nio.base.query.PathQueryProvider;
+import org.uberfire.java.nio.base.query.ResultPage;
 import org.uberfire.java.nio.base.version.VersionAttributeView;
 import org.uberfire.java.nio.base.version.VersionAttributes;
 import org.uberfire.java.nio.channels.AsynchronousFileChannel;
@@ -125,6 +144,7 @@ import org.uberfire.java.nio.file.NotLinkException;
 import org.uberfire.java.nio.file.OpenOption;
 import org.uberfire.java.nio.file.Option;
 import org.uberfire.java.nio.file.Path;
+import org.uberfire.java.nio.file.ReadOnlyFileSystemException;
 import org.uberfire.java.nio.file.StandardCopyOption;
 import org.uberfire.java.nio.file.StandardDeleteOption;
 import org.uberfire.java.nio.file.StandardOpenOption;
@@ -134,17 +154,21 @@ import org.uberfire.java.nio.file.attribute.BasicFileAttributeView;
 import org.uberfire.java.nio.file.attribute.BasicFileAttributes;
 import org.uberfire.java.nio.file.attribute.FileAttribute;
 import org.uberfire.java.nio.file.attribute.FileAttributeView;
+import org.uberfire.java.nio.fs.jgit.daemon.UploadStatistics;
 import org.uberfire.java.nio.fs.jgit.daemon.git.Daemon;
 import org.uberfire.java.nio.fs.jgit.daemon.git.DaemonClient;
 import org.uberfire.java.nio.fs.jgit.daemon.ssh.BaseGitCommand;
 import org.uberfire.java.nio.fs.jgit.daemon.ssh.GitSSHService;
+import org.uberfire.java.nio.fs.jgit.util.BlobByteChannelFactory;
 import org.uberfire.java.nio.fs.jgit.util.CommitContent;
 import org.uberfire.java.nio.fs.jgit.util.CopyCommitContent;
 import org.uberfire.java.nio.fs.jgit.util.DefaultCommitContent;
+import org.uberfire.java.nio.fs.jgit.util.ExtendedCommitContent;
 import org.uberfire.java.nio.fs.jgit.util.JGitUtil;
 import org.uberfire.java.nio.fs.jgit.util.JGitUtil.*;
 import org.uberfire.java.nio.fs.jgit.util.MoveCommitContent;
 import org.uberfire.java.nio.fs.jgit.util.RevertCommitContent;
+import org.uberfire.java.nio.fs.jgit.util.SyncResult;
 import org.uberfire.java.nio.security.FileSystemAuthenticator;
 import org.uberfire.java.nio.security.FileSystemAuthorizer;
 import org.uberfire.java.nio.security.SecuredFileSystemProvider;
@@ -157,6 +181,10 @@ import static org.uberfire.java.nio.fs.jgit.util.JGitUtil.PathType.*;
 import static org.uberfire.java.nio.fs.jgit.util.JGitUtil.*;
 
 public class JGitFileSystemProvider implements SecuredFileSystemProvider,
+                                               AttributeQueryProvider,
+                                               PathQueryProvider,
+                                               SnapshotProvider,
+                                               PathTypeProvider,
                                                Disposable {
 
     private static final Logger LOG = LoggerFactory.getLogger( JGitFileSystemProvider.class );
@@ -176,6 +204,22 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
     public static final String GIT_ENV_KEY_PASSWORD = "password";
     public static final String GIT_ENV_KEY_INIT = "init";
 
+    /**
+     * When set to <code>true</code> the repository is kept in memory only (JGit DFS storage), nothing is written under
+     * the repositories parent directory. Content can be persisted later with {@link #exportFileSystem(FileSystem, File)}.
+     */
+    public static final String GIT_ENV_KEY_IN_MEMORY = "in-memory";
+
+    /**
+     * Remote uri that every change of the file system is replicated to, asynchronously, through a
+     * {@link JGitPushQueue}. Kept in the repository config, so the queue is set up again when the repository is
+     * rescanned.
+     */
+    public static final String GIT_ENV_KEY_PUSH_UPSTREAM = "push-upstream";
+
+    static final String PUSH_UPSTREAM_CONFIG_SECTION = "uberfire";
+    static final String PUSH_UPSTREAM_CONFIG_NAME = "pushupstream";
+
     private static final String SCHEME = "git";
     private static final int SCHEME_SIZE = ( SCHEME + "://" ).length();
     private static final int DEFAULT_SCHEME_SIZE = ( "default://" ).length();
@@ -193,12 +237,39 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
     public static final String SSH_ALGORITHM = "DSA";
     public static final String SSH_CERT_PASSPHRASE = "";
     public static final String DEFAULT_COMMIT_LIMIT_TO_GC = "20";
-
-    private File gitReposParentDir;
+    public static final String DEFAULT_SYNC_THREADS = "4";
+    public static final String DEFAULT_SYNC_ON_RESCAN = "false";
+    public static final String DEFAULT_PUSH_THREADS = "2";
+    public static final String DEFAULT_PUSH_RETRY_INITIAL = "1000";
+    public static final String DEFAULT_PUSH_RETRY_MAX = "60000";
+    public static final String DEFAULT_BLOB_CHANNEL_THRESHOLD = "1048576";
+    public static final String DEFAULT_HOOK_THREADS = "2";
+    public static final String DEFAULT_HOOK_QUEUE_SIZE = "1000";
+    public static final String DEFAULT_HOOK_TIMEOUT = "30000";
+    public static final String DEFAULT_HOOK_ORDERED = "true";
+    public static final String DEFAULT_PLACEMENT_POLICY = "hash";
+    public static final String DEFAULT_COMPACTION_RETENTION = "604800000";
+    public static final String DEFAULT_COMPACTION_INTERVAL = "86400000";
+
+    private JGitRepositoryPlacement placement;
 
     private File hookDir;
 
     private int commitLimit;
+    private int syncThreads;
+    private boolean syncOnRescan;
+    private int pushThreads;
+    private long pushRetryInitial;
+    private long pushRetryMax;
+    private BlobByteChannelFactory blobChannels;
+    private int hookThreads;
+    private int hookQueueSize;
+    private long hookTimeout;
+    private boolean hookOrdered;
+    private Set<String> compactionRepos;
+    private long compactionRetention;
+    private long compactionInterval;
+    private ScheduledExecutorService compactionExecutor = null;
     private boolean daemonEnabled;
     private int daemonPort;
     private String daemonHostAddr;
@@ -230,6 +301,10 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
     private Daemon daemonService = null;
 
     private GitSSHService gitSSHService = null;
+    private ExecutorService syncExecutor = null;
+    private ScheduledExecutorService pushExecutor = null;
+    private JGitHookExecutor hookExecutor = null;
+    private final UploadStatistics uploadStatistics = new UploadStatistics();
     private FS detectedFS = FS.DETECTED;
 
     private void loadConfig( final ConfigProperties config ) {
@@ -239,6 +314,9 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
 
         final ConfigProperty hookDirProp = config.get( "org.uberfire.nio.git.hooks", null );
         final ConfigProperty bareReposDirProp = config.get( "org.uberfire.nio.git.dir", currentDirectory );
+        final ConfigProperty bareReposDirsProp = config.get( "org.uberfire.nio.git.dirs", "" );
+        final ConfigProperty placementPolicyProp = config.get( "org.uberfire.nio.git.dirs.policy", DEFAULT_PLACEMENT_POLICY );
+        final ConfigProperty placementMappingProp = config.get( "org.uberfire.nio.git.dirs.mapping", "" );
         final ConfigProperty enabledProp = config.get( "org.uberfire.nio.git.daemon.enabled", DAEMON_DEFAULT_ENABLED );
         final ConfigProperty hostProp = config.get( "org.uberfire.nio.git.daemon.host", DEFAULT_HOST_ADDR );
         final ConfigProperty hostNameProp = config.get( "org.uberfire.nio.git.daemon.hostname", hostProp.isDefault() ? DEFAULT_HOST_NAME : hostProp.getValue() );
@@ -254,6 +332,19 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
         final ConfigProperty sshAlgorithmProp = config.get( "org.uberfire.nio.git.ssh.algorithm", SSH_ALGORITHM );
         final ConfigProperty sshPassphraseProp = config.get( "org.uberfire.nio.git.ssh.passphrase", SSH_CERT_PASSPHRASE );
         final ConfigProperty commitLimitProp = config.get( "org.uberfire.nio.git.gc.limit", DEFAULT_COMMIT_LIMIT_TO_GC );
+        final ConfigProperty syncThreadsProp = config.get( "org.uberfire.nio.git.sync.threads", DEFAULT_SYNC_THREADS );
+        final ConfigProperty syncOnRescanProp = config.get( "org.uberfire.nio.git.sync.rescan", DEFAULT_SYNC_ON_RESCAN );
+        final ConfigProperty pushThreadsProp = config.get( "org.uberfire.nio.git.push.threads", DEFAULT_PUSH_THREADS );
+        final ConfigProperty pushRetryInitialProp = config.get( "org.uberfire.nio.git.push.retry.initial", DEFAULT_PUSH_RETRY_INITIAL );
+        final ConfigProperty pushRetryMaxProp = config.get( "org.uberfire.nio.git.push.retry.max", DEFAULT_PUSH_RETRY_MAX );
+        final ConfigProperty hookThreadsProp = config.get( "org.uberfire.nio.git.hooks.threads", DEFAULT_HOOK_THREADS );
+        final ConfigProperty hookQueueSizeProp = config.get( "org.uberfire.nio.git.hooks.queue", DEFAULT_HOOK_QUEUE_SIZE );
+        final ConfigProperty hookTimeoutProp = config.get( "org.uberfire.nio.git.hooks.timeout", DEFAULT_HOOK_TIMEOUT );
+        final ConfigProperty hookOrderedProp = config.get( "org.uberfire.nio.git.hooks.ordered", DEFAULT_HOOK_ORDERED );
+        final ConfigProperty compactionReposProp = config.get( "org.uberfire.nio.git.compaction.repos", "" );
+        final ConfigProperty compactionRetentionProp = config.get( "org.uberfire.nio.git.compaction.retention", DEFAULT_COMPACTION_RETENTION );
+        final ConfigProperty compactionIntervalProp = config.get( "org.uberfire.nio.git.compaction.interval", DEFAULT_COMPACTION_INTERVAL );
+        final ConfigProperty blobChannelThresholdProp = config.get( "org.uberfire.nio.git.channel.blob.threshold", DEFAULT_BLOB_CHANNEL_THRESHOLD );
 
         if ( LOG.isDebugEnabled() ) {
             LOG.debug( config.getConfigurationSummary( "Summary of JGit configuration:" ) );
@@ -266,8 +357,38 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
             }
         }
 
-        gitReposParentDir = new File( bareReposDirProp.getValue(), REPOSITORIES_CONTAINER_DIR );
+        final List<File> reposParentDirs = new ArrayList<File>();
+        for ( final String dir : bareReposDirsProp.getValue().split( "," ) ) {
+            if ( !dir.trim().isEmpty() ) {
+                reposParentDirs.add( new File( dir.trim(), REPOSITORIES_CONTAINER_DIR ) );
+            }
+        }
+        if ( reposParentDirs.isEmpty() ) {
+            //a single root, taken as is: org.uberfire.nio.git.dir may contain a comma
+            reposParentDirs.add( new File( bareReposDirProp.getValue(), REPOSITORIES_CONTAINER_DIR ) );
+        }
+        placement = new JGitRepositoryPlacement( reposParentDirs,
+                                                 JGitRepositoryPlacement.Policy.parse( placementPolicyProp.getValue() ),
+                                                 JGitRepositoryPlacement.parseMapping( placementMappingProp.getValue() ) );
         commitLimit = commitLimitProp.getIntValue();
+        syncThreads = Math.max( 1, syncThreadsProp.getIntValue() );
+        syncOnRescan = syncOnRescanProp.getBooleanValue();
+        pushThreads = Math.max( 1, pushThreadsProp.getIntValue() );
+        pushRetryInitial = Math.max( 1, Long.valueOf( pushRetryInitialProp.getValue() ) );
+        pushRetryMax = Math.max( pushRetryInitial, Long.valueOf( pushRetryMaxProp.getValue() ) );
+        hookThreads = Math.max( 1, hookThreadsProp.getIntValue() );
+        hookQueueSize = Math.max( 1, hookQueueSizeProp.getIntValue() );
+        hookTimeout = Math.max( 1, Long.valueOf( hookTimeoutProp.getValue() ) );
+        hookOrdered = hookOrderedProp.getBooleanValue();
+        compactionRepos = new HashSet<String>();
+        for ( final String repo : compactionReposProp.getValue().split( "," ) ) {
+            if ( !repo.trim().isEmpty() ) {
+                compactionRepos.add( repo.trim() );
+            }
+        }
+        compactionRetention = Math.max( 0, Long.valueOf( compactionRetentionProp.getValue() ) );
+        compactionInterval = Math.max( 1, Long.valueOf( compactionIntervalProp.getValue() ) );
+        blobChannels = new BlobByteChannelFactory( Long.valueOf( blobChannelThresholdProp.getValue() ) );
 
         daemonEnabled = enabledProp.getBooleanValue();
         if ( daemonEnabled ) {
@@ -449,17 +570,57 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
         } else {
             gitSSHService = null;
         }
+
+        if ( !compactionRepos.isEmpty() ) {
+            scheduleCompaction();
+        }
     }
 
     /**
-     * Forgets all existing registered filesystems and scans for existing git repositories under
-     * {@link #gitReposParentDir}. Call this method any time you add or remove git repositories without using this
-     * class. If you only ever add or remove git repositories using the methods of this class, there is no need to call
-     * this method.
+     * Forgets all existing registered filesystems and scans for existing git repositories under every storage root
+     * (see {@link #getGitRepoContainerDirs()}). Call this method any time you add or remove git repositories without
+     * using this class. If you only ever add or remove git repositories using the methods of this class, there is no
+     * need to call this method.
+     * <p/>
+     * With <code>org.uberfire.nio.git.sync.rescan</code> the cloned repositories found are then synced with their
+     * origin, in parallel (see {@link #syncFileSystems(Collection)}).
      */
     public final void rescanForExistingRepositories() {
+        for ( final JGitFileSystem fs : fileSystems.values() ) {
+            if ( fs.getPushQueue() != null ) {
+                fs.getPushQueue().close();
+            }
+        }
         fileSystems.clear();
-        final String[] repos = gitReposParentDir.list( new FilenameFilter() {
+        for ( final File reposParentDir : placement.getRoots() ) {
+            rescanForExistingRepositories( reposParentDir );
+        }
+        if ( syncOnRescan ) {
+            syncClonedFileSystems();
+        }
+    }
+
+    private void syncClonedFileSystems() {
+        final List<URI> uris = new ArrayList<URI>();
+        for ( final JGitFileSystem fs : fileSystems.values() ) {
+            final String origin = fs.gitRepo().getRepository().getConfig().getString( "remote", DEFAULT_REMOTE_NAME, "url" );
+            if ( origin != null ) {
+                uris.add( URI.create( "git://" + fs.getName() + "?sync=" + origin ) );
+            }
+        }
+        if ( uris.isEmpty() ) {
+            return;
+        }
+        try {
+            syncFileSystems( uris );
+        } catch ( final Exception ex ) {
+            //failures are logged per repository, the ones that could be synced are
+            LOG.warn( "Some repositories couldn't be synced with their origin." );
+        }
+    }
+
+    private void rescanForExistingRepositories( final File reposParentDir ) {
+        final String[] repos = reposParentDir.list( new FilenameFilter() {
             @Override
             public boolean accept( final File dir,
                                    String name ) {
@@ -468,10 +629,14 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
         } );
         if ( repos != null ) {
             for ( final String repo : repos ) {
-                final File repoDir = new File( gitReposParentDir, repo );
+                final File repoDir = new File( reposParentDir, repo );
                 try {
                     if ( repoDir.isDirectory() ) {
                         final String name = repoDir.getName().substring( 0, repoDir.getName().indexOf( DOT_GIT_EXT ) );
+                        if ( fileSystems.containsKey( name ) ) {
+                            LOG.warn( "Not registering " + repoDir + " as a GIT filesystem because '" + name + "' already exists in another storage root" );
+                            continue;
+                        }
                         //Default to ListMode of null to avoid indexing scanning remote branches. Ideally the ListMode should
                         //be identical to that used when the original JGitFileSystem was created however that information is not
                         //persisted. Using a default of null rather than ALL is a safer default as *all* GIT repositories created
@@ -482,6 +647,7 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
                         LOG.debug( "Registering existing GIT filesystem '" + name + "' at " + repoDir );
                         fileSystems.put( name, fs );
                         repoIndex.put( fs.gitRepo().getRepository(), fs );
+                        restorePushQueue( fs );
                     } else {
                         LOG.debug( "Not registering " + repoDir + " as a GIT filesystem because it is not a directory" );
                     }
@@ -509,7 +675,7 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
                                                   final Collection<ReceiveCommand> commands ) {
                             fs.lock();
                             if ( clusterService != null ) {
-                                clusterService.lock();
+                                clusterService.lock( fs.id() );
                             }
 
                             for ( final ReceiveCommand command : commands ) {
@@ -558,10 +724,15 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
                                                               put( "fs_scheme", "git" );
                                                               put( "fs_id", fs.id() );
                                                               put( "fs_uri", fs.toString() );
+                                                              final StringBuilder refs = new StringBuilder();
+                                                              for ( final Map.Entry<String, String> ref : fs.refs().entrySet() ) {
+                                                                  refs.append( refs.length() > 0 ? " " : "" ).append( ref.getKey() ).append( ':' ).append( ref.getValue() );
+                                                              }
+                                                              put( "fs_refs", refs.toString() );
                                                           }}
                                                         );
 
-                                clusterService.unlock();
+                                clusterService.unlock( fs.id() );
                             }
                         }
                     } );
@@ -570,6 +741,7 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
         };
 
         gitSSHService = new GitSSHService();
+        gitSSHService.setUploadStatistics( uploadStatistics );
 
         gitSSHService.setup( sshFileCertDir,
                              InetSocketAddress.createUnresolved( sshHostAddr, sshPort ),
@@ -586,6 +758,7 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
             daemonService = new Daemon( new InetSocketAddress( daemonHostAddr, daemonPort ),
                                         new ExecutorWrapper( SimpleAsyncExecutorService.getUnmanagedInstance() ) );
             daemonService.setRepositoryResolver( new RepositoryResolverImpl<DaemonClient>() );
+            daemonService.setUploadStatistics( uploadStatistics );
             try {
                 daemonService.start();
             } catch ( java.io.IOException e ) {
@@ -617,13 +790,26 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
         }
         shutdownSSH();
         forceStopDaemon();
+        shutdownSyncExecutor();
+        shutdownPushExecutor();
+        shutdownHookExecutor();
+        shutdownCompactionExecutor();
+        blobChannels.dispose();
     }
 
     /**
-     * Returns the directory that contains all the git repositories managed by this file system provider.
+     * Returns the directory that contains the git repositories managed by this file system provider; when several
+     * storage roots are configured, the first one.
      */
     public File getGitRepoContainerDir() {
-        return gitReposParentDir;
+        return placement.getPrimaryRoot();
+    }
+
+    /**
+     * Returns every storage root repositories are spread over, as configured by <code>org.uberfire.nio.git.dirs</code>.
+     */
+    public List<File> getGitRepoContainerDirs() {
+        return placement.getRoots();
     }
 
     @Override
@@ -678,28 +864,53 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
         final CredentialsProvider credential;
 
         boolean bare = true;
-        final String outPath = (String) env.get( GIT_ENV_KEY_DEST_PATH );
+        final boolean inMemory = env.containsKey( GIT_ENV_KEY_IN_MEMORY ) && Boolean.valueOf( env.get( GIT_ENV_KEY_IN_MEMORY ).toString() );
 
-        final File repoDest;
-        if ( outPath != null ) {
-            repoDest = new File( outPath, name + DOT_GIT_EXT );
+        if ( inMemory ) {
+            if ( env.containsKey( GIT_ENV_KEY_DEFAULT_REMOTE_NAME ) ) {
+                final String originURI = env.get( GIT_ENV_KEY_DEFAULT_REMOTE_NAME ).toString();
+                credential = buildCredential( env );
+                git = cloneInMemoryRepository( name, originURI, credential );
+            } else {
+                credential = buildCredential( null );
+                git = newInMemoryRepository( name );
+            }
         } else {
-            repoDest = new File( gitReposParentDir, name + DOT_GIT_EXT );
-        }
+            final String outPath = (String) env.get( GIT_ENV_KEY_DEST_PATH );
 
-        if ( env.containsKey( GIT_ENV_KEY_DEFAULT_REMOTE_NAME ) ) {
-            final String originURI = env.get( GIT_ENV_KEY_DEFAULT_REMOTE_NAME ).toString();
-            credential = buildCredential( env );
-            git = cloneRepository( repoDest, originURI, bare, credential );
-        } else {
-            credential = buildCredential( null );
-            git = newRepository( repoDest, bare, hookDir );
+            final File repoDest;
+            if ( outPath != null ) {
+                repoDest = new File( outPath, name + DOT_GIT_EXT );
+            } else {
+                repoDest = placement.locate( name );
+            }
+
+            if ( env.containsKey( GIT_ENV_KEY_DEFAULT_REMOTE_NAME ) ) {
+                final String originURI = env.get( GIT_ENV_KEY_DEFAULT_REMOTE_NAME ).toString();
+                credential = buildCredential( env );
+                git = cloneRepository( repoDest, originURI, bare, credential );
+            } else {
+                credential = buildCredential( null );
+                git = newRepository( repoDest, bare, hookDir );
+            }
         }
 
         final JGitFileSystem fs = new JGitFileSystem( this, fullHostNames, git, name, listMode, credential );
         fileSystems.put( name, fs );
         repoIndex.put( fs.gitRepo().getRepository(), fs );
 
+        if ( env.containsKey( GIT_ENV_KEY_PUSH_UPSTREAM ) ) {
+            final String upstream = env.get( GIT_ENV_KEY_PUSH_UPSTREAM ).toString();
+            final StoredConfig config = git.getRepository().getConfig();
+            config.setString( PUSH_UPSTREAM_CONFIG_SECTION, null, PUSH_UPSTREAM_CONFIG_NAME, upstream );
+            try {
+                config.save();
+            } catch ( final java.io.IOException ex ) {
+                LOG.warn( "Failed to persist the push upstream of '" + name + "', it has to be set again after a restart.", ex );
+            }
+            setupPushQueue( fs, upstream, buildCredential( env ) );
+        }
+
         boolean init = false;
 
         if ( env.containsKey( GIT_ENV_KEY_INIT ) && Boolean.valueOf( env.get( GIT_ENV_KEY_INIT ).toString() ) ) {
@@ -754,21 +965,7 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
         }
 
         if ( hasSyncFlag( uri ) ) {
-            try {
-                final String treeRef = "master";
-                final ObjectId oldHead = JGitUtil.getTreeRefObjectId( fileSystem.gitRepo().getRepository(), treeRef );
-                final Map<String, String> params = getQueryParams( uri );
-                try {
-                    fileSystem.lock();
-                    syncRepository( fileSystem.gitRepo(), fileSystem.getCredential(), params.get( "sync" ), hasForceFlag( uri ) );
-                } finally {
-                    fileSystem.unlock();
-                }
-                final ObjectId newHead = JGitUtil.getTreeRefObjectId( fileSystem.gitRepo().getRepository(), treeRef );
-                notifyDiffs( fileSystem, treeRef, "<system>", "<system>", "", oldHead, newHead );
-            } catch ( final Exception ex ) {
-                throw new IOException( "Failed to sync repository.", ex );
-            }
+            syncFileSystem( fileSystem, uri );
         }
         if ( hasPushFlag( uri ) ) {
             try {
@@ -782,6 +979,246 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
         return fileSystem;
     }
 
+    private SyncResult syncFileSystem( final JGitFileSystem fileSystem,
+                                       final URI uri ) {
+        try {
+            final String treeRef = "master";
+            final ObjectId oldHead = JGitUtil.getTreeRefObjectId( fileSystem.gitRepo().getRepository(), treeRef );
+            final Map<String, String> params = getQueryParams( uri );
+            final SyncResult result;
+            try {
+                fileSystem.lock();
+                result = syncRepository( fileSystem.gitRepo(), fileSystem.getCredential(), params.get( "sync" ), hasForceFlag( uri ), getRefsParam( uri ) );
+            } finally {
+                fileSystem.unlock();
+            }
+            LOG.info( "Repository '{}' synced in {}ms, {} bytes received, {} refs updated.",
+                      fileSystem.getName(), result.getDuration(), result.getBytesReceived(), result.getUpdatedRefs().size() );
+            if ( !result.isUpToDate() ) {
+                final ObjectId newHead = JGitUtil.getTreeRefObjectId( fileSystem.gitRepo().getRepository(), treeRef );
+                notifyDiffs( fileSystem, treeRef, "<system>", "<system>", "", oldHead, newHead );
+            }
+            return result;
+        } catch ( final Exception ex ) {
+            throw new IOException( "Failed to sync repository.", ex );
+        }
+    }
+
+    /**
+     * Syncs several file systems at once on a bounded pool (<code>org.uberfire.nio.git.sync.threads</code>). Each uri
+     * must carry the same <code>sync</code> query parameter accepted by {@link #getFileSystem(URI)}. Waits for all of
+     * them and fails, after every sync has finished, if any of them failed.
+     * @return sync results indexed by file system name
+     */
+    public Map<String, SyncResult> syncFileSystems( final Collection<URI> uris ) {
+        checkNotNull( "uris", uris );
+
+        final Map<String, Future<SyncResult>> futures = new LinkedHashMap<String, Future<SyncResult>>();
+        for ( final URI uri : uris ) {
+            checkURI( "uri", uri );
+            checkCondition( "uri must have sync flag", hasSyncFlag( uri ) );
+            final JGitFileSystem fileSystem = fileSystems.get( extractRepoName( uri ) );
+            if ( fileSystem == null ) {
+                throw new FileSystemNotFoundException( "No filesystem for uri (" + uri + ") found." );
+            }
+            futures.put( fileSystem.getName(), getSyncExecutor().submit( new Callable<SyncResult>() {
+                @Override
+                public SyncResult call() throws Exception {
+                    return syncFileSystem( fileSystem, uri );
+                }
+            } ) );
+        }
+
+        final Map<String, SyncResult> results = new LinkedHashMap<String, SyncResult>();
+        Exception failure = null;
+        for ( final Map.Entry<String, Future<SyncResult>> entry : futures.entrySet() ) {
+            try {
+                results.put( entry.getKey(), entry.getValue().get() );
+            } catch ( final java.lang.InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new IOException( "Interrupted while syncing repositories.", e );
+            } catch ( final ExecutionException e ) {
+                LOG.error( "Failed to sync repository '" + entry.getKey() + "'.", e.getCause() );
+                if ( failure == null ) {
+                    failure = e;
+                }
+            }
+        }
+
+        if ( failure != null ) {
+            throw new IOException( "Failed to sync repositories.", failure.getCause() );
+        }
+
+        return results;
+    }
+
+    private synchronized ExecutorService getSyncExecutor() {
+        if ( syncExecutor == null ) {
+            syncExecutor = Executors.newFixedThreadPool( syncThreads, new DescriptiveThreadFactory() );
+        }
+        return syncExecutor;
+    }
+
+    /**
+     * Returns the executor that runs repository hooks, mostly to expose its metrics.
+     */
+    public synchronized JGitHookExecutor getHookExecutor() {
+        if ( hookExecutor == null ) {
+            hookExecutor = new JGitHookExecutor( hookThreads, hookQueueSize, hookTimeout, hookOrdered );
+        }
+        return hookExecutor;
+    }
+
+    /**
+     * Returns what clones and fetches served by the git daemon and the ssh service cost, in bytes and time.
+     */
+    public UploadStatistics getUploadStatistics() {
+        return uploadStatistics;
+    }
+
+    private synchronized void shutdownHookExecutor() {
+        if ( hookExecutor != null ) {
+            hookExecutor.shutdown();
+            hookExecutor = null;
+        }
+    }
+
+    private synchronized void scheduleCompaction() {
+        if ( compactionExecutor != null ) {
+            return;
+        }
+        compactionExecutor = Executors.newSingleThreadScheduledExecutor( new DescriptiveThreadFactory() );
+        compactionExecutor.scheduleWithFixedDelay( new DescriptiveRunnable() {
+            @Override
+            public String getDescription() {
+                return "History compaction of " + compactionRepos;
+            }
+
+            @Override
+            public void run() {
+                final Date cutoff = new Date( System.currentTimeMillis() - compactionRetention );
+                for ( final String name : compactionRepos ) {
+                    final JGitFileSystem fs = fileSystems.get( name );
+                    if ( fs == null || closedFileSystems.contains( fs ) ) {
+                        continue;
+                    }
+                    try {
+                        compactHistory( fs, cutoff );
+                    } catch ( final Exception ex ) {
+                        LOG.error( "History compaction of '" + name + "' failed, it'll be retried on the next run.", ex );
+                    }
+                }
+            }
+        }, compactionInterval, compactionInterval, TimeUnit.MILLISECONDS );
+    }
+
+    private synchronized void shutdownCompactionExecutor() {
+        if ( compactionExecutor != null ) {
+            compactionExecutor.shutdownNow();
+            compactionExecutor = null;
+        }
+    }
+
+    /**
+     * Squashes the history older than <code>cutoff</code> of every branch of the file system into a base commit (see
+     * {@link JGitUtil#compactHistory(Git, String, Date)}) and runs GC so the dropped commits are released. Writes to
+     * the file system wait while branches are rewritten, not during GC. Repositories listed in <code>org.uberfire.nio.git.compaction.repos</code>
+     * are compacted periodically, keeping <code>org.uberfire.nio.git.compaction.retention</code> milliseconds of
+     * history. Clustered file systems are skipped, as every node would produce different commit ids.
+     * @return the number of branches compacted
+     */
+    public int compactHistory( final FileSystem fileSystem,
+                               final Date cutoff ) {
+        checkNotNull( "fileSystem", fileSystem );
+        checkNotNull( "cutoff", cutoff );
+
+        final JGitFileSystem fs = (JGitFileSystem) fileSystem;
+        if ( clusterMap.containsKey( fs.gitRepo().getRepository() ) ) {
+            LOG.warn( "Skipping history compaction of clustered file system '" + fs.getName() + "'." );
+            return 0;
+        }
+
+        int compacted = 0;
+        final long start = System.currentTimeMillis();
+        fs.lock();
+        try {
+            for ( final Ref ref : JGitUtil.branchList( fs.gitRepo() ) ) {
+                if ( JGitUtil.compactHistory( fs.gitRepo(), Repository.shortenRefName( ref.getName() ), cutoff ) ) {
+                    compacted++;
+                }
+            }
+        } finally {
+            fs.unlock();
+        }
+        //refs are already moved, GC doesn't need to hold writers back
+        if ( compacted > 0 ) {
+            JGitUtil.gc( fs.gitRepo() );
+            fs.resetCommitCount();
+        }
+        LOG.info( "History compaction of '" + fs.getName() + "' rewrote " + compacted + " branch(es) in " + ( System.currentTimeMillis() - start ) + "ms." );
+
+        return compacted;
+    }
+
+    /**
+     * Sets up the push queue of a file system whose push upstream was persisted in its repository config, when it was
+     * created. Credentials aren't persisted: the queue of a rescanned file system pushes with the default ones.
+     */
+    private void restorePushQueue( final JGitFileSystem fs ) {
+        final String upstream = fs.gitRepo().getRepository().getConfig().getString( PUSH_UPSTREAM_CONFIG_SECTION, null, PUSH_UPSTREAM_CONFIG_NAME );
+        if ( upstream == null || upstream.isEmpty() ) {
+            return;
+        }
+        setupPushQueue( fs, upstream, fs.getCredential() );
+        //commits left unpushed when the queue went away go out now, up to date branches cost a ref comparison
+        try {
+            for ( final String branch : fs.gitRepo().getRepository().getRefDatabase().getRefs( R_HEADS ).keySet() ) {
+                fs.getPushQueue().enqueue( R_HEADS + branch );
+            }
+        } catch ( final java.io.IOException ex ) {
+            LOG.warn( "Failed to list the branches of '" + fs.getName() + "' to push.", ex );
+        }
+    }
+
+    private void setupPushQueue( final JGitFileSystem fs,
+                                 final String upstream,
+                                 final CredentialsProvider credential ) {
+        fs.setPushQueue( new JGitPushQueue( fs.gitRepo(),
+                                            upstream,
+                                            credential,
+                                            getPushExecutor(),
+                                            pushRetryInitial,
+                                            pushRetryMax ) );
+    }
+
+    private synchronized ScheduledExecutorService getPushExecutor() {
+        if ( pushExecutor == null ) {
+            pushExecutor = Executors.newScheduledThreadPool( pushThreads, new DescriptiveThreadFactory() );
+        }
+        return pushExecutor;
+    }
+
+    private synchronized void shutdownPushExecutor() {
+        if ( pushExecutor != null ) {
+            pushExecutor.shutdownNow();
+            pushExecutor = null;
+        }
+    }
+
+    private void enqueuePush( final JGitFileSystem fileSystem,
+                              final String branchName ) {
+        if ( fileSystem.getPushQueue() != null ) {
+            fileSystem.getPushQueue().enqueue( R_HEADS + branchName );
+        }
+    }
+
+    private synchronized void shutdownSyncExecutor() {
+        if ( syncExecutor != null ) {
+            syncExecutor.shutdownNow();
+            syncExecutor = null;
+        }
+    }
+
     @Override
     public Path getPath( final URI uri )
             throws IllegalArgumentException, FileSystemNotFoundException, SecurityException {
@@ -816,6 +1253,7 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
         checkNotNull( "path", path );
 
         final JGitPathImpl gPath = toPathImpl( path );
+        checkWritable( gPath );
 
         final Pair<PathType, ObjectId> result = checkPath( gPath.getFileSystem().gitRepo(), gPath.getRefTree(), gPath.getPath() );
 
@@ -913,8 +1351,12 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
 
         try {
             if ( options != null && options.contains( READ ) ) {
-                return openAByteChannel( path );
+                if ( !result.getK1().equals( PathType.FILE ) ) {
+                    throw new NoSuchFileException( path.toString() );
+                }
+                return blobChannels.open( gPath.getFileSystem().gitRepo().getRepository(), result.getK2() );
             } else {
+                checkWritable( gPath );
                 return createANewByteChannel( path, options, gPath, attrs );
             }
         } catch ( java.io.IOException e ) {
@@ -935,6 +1377,17 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
             public void close() throws java.io.IOException {
                 super.close();
 
+                if ( options != null && options.contains( new AttributesFileOption() ) && !isHidden( gPath ) ) {
+                    final Properties attributes = AttributesFileUtils.toProperties( attrs );
+                    if ( path instanceof AttrHolder ) {
+                        ( (AttrHolder) path ).getAttrStorage().loadContent( attributes );
+                    }
+                    commit( gPath, buildCommitInfo( "{" + gPath.getPath() + "}", options ), new DefaultCommitContent( new HashMap<String, File>() {{
+                        put( gPath.getPath(), file );
+                    }} ), new JGitAttributesUpdate().put( gPath, attributes ) );
+                    return;
+                }
+
                 File tempDot = null;
                 final boolean hasDotContent;
                 if ( options != null && options.contains( new DotFileOption() ) ) {
@@ -958,22 +1411,47 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
         };
     }
 
-    private SeekableByteChannelFileBasedImpl openAByteChannel( Path path ) throws FileNotFoundException {
-        return new SeekableByteChannelFileBasedImpl( new RandomAccessFile( path.toFile(), "r" ).getChannel() );
-    }
-
     private boolean shouldCreateOrOpenAByteChannel( Set<? extends OpenOption> options ) {
         return ( options != null && ( options.contains( TRUNCATE_EXISTING ) || options.contains( READ ) ) );
     }
 
-    protected boolean exists( final Path path ) {
-        try {
-            readAttributes( path, BasicFileAttributes.class );
-            return true;
-        } catch ( final Exception ignored ) {
-            // this means the file does not exist
+    @Override
+    public boolean exists( final Path path ) {
+        return pathType( path ) != NOT_FOUND;
+    }
+
+    @Override
+    public boolean isDirectory( final Path path ) {
+        return pathType( path ) == DIRECTORY;
+    }
+
+    @Override
+    public boolean isRegularFile( final Path path ) {
+        return pathType( path ) == FILE;
+    }
+
+    /**
+     * Path lookup without attributes: served by the branch path index when it's at the head, otherwise by a walk to
+     * the path. Nothing is thrown for a missing path.
+     */
+    private PathType pathType( final Path path ) {
+        if ( !( path instanceof JGitPathImpl ) ) {
+            return NOT_FOUND;
         }
-        return false;
+        final JGitPathImpl gPath = (JGitPathImpl) path;
+        final JGitFileSystem fs = gPath.getFileSystem();
+
+        //the ref is resolved once, for the index and for the walk on a miss
+        final ObjectId tree = JGitUtil.getTreeRefObjectId( fs.gitRepo().getRepository(), gPath.getRefTree() );
+        if ( tree == null ) {
+            return checkPath( fs.gitRepo(), gPath.getRefTree(), gPath.getPath() ).getK1();
+        }
+
+        final PathType indexed = fs.getPathIndex().lookup( gPath.getRefTree(), tree, fixPath( gPath.getPath() ) );
+        if ( indexed != null ) {
+            return indexed;
+        }
+        return checkPath( fs.gitRepo(), tree.name(), gPath.getPath() ).getK1();
     }
 
     @Override
@@ -1130,6 +1608,7 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
         }
 
         final JGitPathImpl gPath = toPathImpl( path );
+        checkWritable( gPath );
 
         if ( isBranch( gPath ) ) {
             deleteBranch( gPath );
@@ -1139,11 +1618,153 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
         deleteAsset( gPath, options );
     }
 
+    @Override
+    public ResultPage<Path> queryByAttribute( final Path root,
+                                              final String attribute,
+                                              final String value,
+                                              final int offset,
+                                              final int pageSize ) {
+        checkNotNull( "root", root );
+        checkNotEmpty( "attribute", attribute );
+        checkCondition( "offset must be positive", offset >= 0 );
+        checkCondition( "pageSize must be greater than zero", pageSize > 0 );
+
+        final JGitPathImpl gPath = toPathImpl( root );
+        final JGitFileSystem fs = gPath.getFileSystem();
+
+        final Pair<List<String>, Integer> result = fs.getAttributeIndex().query( gPath.getRefTree(), attribute, value, offset, pageSize );
+
+        final List<Path> paths = new ArrayList<Path>( result.getK1().size() );
+        for ( final String path : result.getK1() ) {
+            paths.add( JGitPathImpl.create( fs, "/" + path, gPath.getHost(), false ) );
+        }
+
+        return new ResultPage<Path>( paths, offset, result.getK2() );
+    }
+
+    @Override
+    public void rebuildAttributeIndex( final Path root ) {
+        checkNotNull( "root", root );
+
+        final JGitPathImpl gPath = toPathImpl( root );
+        gPath.getFileSystem().getAttributeIndex().rebuild( gPath.getRefTree() );
+    }
+
+    @Override
+    public ResultPage<Path> queryByGlob( final Path root,
+                                         final String glob,
+                                         final int offset,
+                                         final int pageSize ) {
+        checkNotNull( "root", root );
+        checkNotEmpty( "glob", glob );
+        checkCondition( "offset must be positive", offset >= 0 );
+        checkCondition( "pageSize must be greater than zero", pageSize > 0 );
+
+        final JGitPathImpl gPath = toPathImpl( root );
+        final JGitFileSystem fs = gPath.getFileSystem();
+        final String base = gPath.getPath().replaceAll( "^/+|/+$", "" );
+
+        final ResultPage<Pair<String, ObjectId>> result = fs.getPathIndex().query( gPath.getRefTree(), base, glob, offset, pageSize );
+
+        final List<Path> paths = new ArrayList<Path>( result.getContent().size() );
+        for ( final Pair<String, ObjectId> entry : result.getContent() ) {
+            paths.add( JGitPathImpl.create( fs, "/" + entry.getK1(), gPath.getHost(), entry.getK2(), false ) );
+        }
+
+        return new ResultPage<Path>( paths, offset, result.getTotal() );
+    }
+
+    @Override
+    public Path snapshot( final FileSystem fileSystem,
+                          final String branchName ) {
+        checkNotNull( "fileSystem", fileSystem );
+        checkNotEmpty( "branchName", branchName );
+        checkCondition( "fileSystem must be a git file system", fileSystem instanceof JGitFileSystem );
+
+        final JGitFileSystem fs = (JGitFileSystem) fileSystem;
+        final Ref branch = getBranch( fs.gitRepo(), branchName );
+        if ( branch == null || branch.getObjectId() == null ) {
+            throw new NoSuchFileException( "Branch '" + branchName + "' not found in '" + fs.getName() + "'." );
+        }
+
+        return JGitPathImpl.createRoot( fs, "/", branch.getObjectId().name() + "@" + fs.getName(), false );
+    }
+
+    private void checkWritable( final JGitPathImpl path ) {
+        if ( path.isSnapshot() ) {
+            throw new ReadOnlyFileSystemException( "Snapshot '" + path.getRefTree() + "' of '" + path.getFileSystem().getName() + "' is read-only." );
+        }
+    }
+
+    /**
+     * Moves the attributes of every file of the given path's branch from legacy dot files into the consolidated
+     * attribute files, in a single commit. Dot files of directories are kept, directory attributes still live there.
+     * @return number of migrated files
+     */
+    public int migrateDotFiles( final Path path ) {
+        checkNotNull( "path", path );
+
+        final JGitPathImpl gPath = toPathImpl( path );
+        final JGitFileSystem fs = gPath.getFileSystem();
+        final Set<String> files = new HashSet<String>( JGitUtil.listFiles( fs.gitRepo(), gPath.getRefTree() ) );
+
+        final JGitAttributesUpdate update = new JGitAttributesUpdate();
+        int count = 0;
+        for ( final String file : files ) {
+            final String name = file.substring( file.lastIndexOf( '/' ) + 1 );
+            if ( name.length() < 2 || name.charAt( 0 ) != '.' || name.equals( AttributesFileUtils.ATTRIBUTES_FILE ) || file.equals( ".root" ) ) {
+                continue;
+            }
+            final String assetPath = file.substring( 0, file.length() - name.length() ) + name.substring( 1 );
+            if ( !files.contains( assetPath ) ) {
+                continue;
+            }
+            final Properties attributes = JGitAttributesUpdate.loadBlob( JGitPathImpl.create( fs, "/" + file, gPath.getHost(), false ) );
+            update.put( JGitPathImpl.create( fs, "/" + assetPath, gPath.getHost(), false ), attributes );
+            count++;
+        }
+
+        if ( count > 0 ) {
+            commit( gPath, buildCommitInfo( "migrating attributes of {" + gPath.getRefTree() + "}", null ),
+                    new DefaultCommitContent( new HashMap<String, File>() ), update );
+        }
+
+        return count;
+    }
+
+    /**
+     * Persists the whole content of the given filesystem (branches, tags and notes) into a bare repository under
+     * <code>destination</code>, named after the filesystem. Mostly useful for filesystems created in memory.
+     * @return the bare repository folder
+     */
+    public File exportFileSystem( final FileSystem fileSystem,
+                                  final File destination ) {
+        checkNotNull( "fileSystem", fileSystem );
+        checkNotNull( "destination", destination );
+
+        final JGitFileSystem fs = (JGitFileSystem) fileSystem;
+        final File repoDest = new File( destination, fs.getName() + DOT_GIT_EXT );
+
+        fs.lock();
+        try {
+            exportRepository( fs.gitRepo(), repoDest ).getRepository().close();
+        } finally {
+            fs.unlock();
+        }
+
+        return repoDest;
+    }
+
     private boolean deleteRepo( final FileSystem fileSystem ) {
         final File gitDir = ( (JGitFileSystem) fileSystem ).gitRepo().getRepository().getDirectory();
         fileSystem.close();
         fileSystem.dispose();
 
+        if ( gitDir == null ) {
+            //in memory repository, nothing left on disk
+            return true;
+        }
+
         try {
             if ( System.getProperty( "os.name" ).toLowerCase().contains( "windows" ) ) {
                 //this operation forces a cache clean freeing any lock -> windows only issue!
@@ -1183,7 +1804,14 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
 
     void deleteResource( final JGitPathImpl path,
                          final DeleteOption... options ) {
-        delete( path, buildCommitInfo( "delete {" + path.getPath() + "}", Arrays.asList( options ) ) );
+        final CommitInfo commitInfo = buildCommitInfo( "delete {" + path.getPath() + "}", Arrays.asList( options ) );
+        if ( hasAttributesFileOption( options ) && !isHidden( path ) ) {
+            commit( path, commitInfo, new DefaultCommitContent( new HashMap<String, File>() {{
+                put( path.getPath(), null );
+            }} ), new JGitAttributesUpdate().remove( path ) );
+            return;
+        }
+        delete( path, commitInfo );
     }
 
     private boolean deleteNonEmptyDirectory( final DeleteOption... options ) {
@@ -1207,6 +1835,7 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
         try {
             path.getFileSystem().lock();
             JGitUtil.deleteBranch( path.getFileSystem().gitRepo(), branch );
+            enqueuePush( path.getFileSystem(), path.getRefTree() );
         } finally {
             path.getFileSystem().unlock();
         }
@@ -1223,6 +1852,7 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
         }
 
         final JGitPathImpl gPath = toPathImpl( path );
+        checkWritable( gPath );
 
         if ( isBranch( gPath ) ) {
             return deleteBranchIfExists( gPath );
@@ -1241,6 +1871,7 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
         try {
             path.getFileSystem().lock();
             JGitUtil.deleteBranch( path.getFileSystem().gitRepo(), branch );
+            enqueuePush( path.getFileSystem(), path.getRefTree() );
         } finally {
             path.getFileSystem().unlock();
         }
@@ -1290,6 +1921,7 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
 
         final JGitPathImpl gSource = toPathImpl( source );
         final JGitPathImpl gTarget = toPathImpl( target );
+        checkWritable( gTarget );
         final boolean isBranch = isBranch( gSource ) && isBranch( gTarget );
 
         if ( options.length == 1 && options[ 0 ] instanceof CherryPickCopyOption ) {
@@ -1440,6 +2072,14 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
                            final JGitPathImpl target,
                            final CopyOption... options ) {
 
+        final FileAttribute<?>[] attrs;
+        if ( hasAttributesFileOption( options ) && !isHidden( source ) ) {
+            final Properties attributes = JGitAttributesUpdate.readAttributes( source );
+            attrs = consolidate( attributes == null ? new Properties() : attributes );
+        } else {
+            attrs = new FileAttribute<?>[ 0 ];
+        }
+
         final InputStream in = newInputStream( source, convert( options ) );
         final SeekableByteChannel out = newByteChannel( target, new HashSet<OpenOption>() {{
             add( StandardOpenOption.TRUNCATE_EXISTING );
@@ -1448,7 +2088,7 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
                     add( (OpenOption) _option );
                 }
             }
-        }} );
+        }}, attrs );
 
         try {
             int count;
@@ -1492,6 +2132,7 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
         try {
             target.getFileSystem().lock();
             JGitUtil.createBranch( source.getFileSystem().gitRepo(), source.getRefTree(), target.getRefTree() );
+            enqueuePush( target.getFileSystem(), target.getRefTree() );
         } finally {
             target.getFileSystem().unlock();
         }
@@ -1524,6 +2165,8 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
 
         final JGitPathImpl gSource = toPathImpl( source );
         final JGitPathImpl gTarget = toPathImpl( target );
+        checkWritable( gSource );
+        checkWritable( gTarget );
 
         final boolean isSourceBranch = isBranch( gSource );
         final boolean isTargetBranch = isBranch( gTarget );
@@ -1575,7 +2218,11 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
 
         if ( !source.getRefTree().equals( target.getRefTree() ) ) {
             copy( source, target, options );
-            delete( source );
+            if ( hasAttributesFileOption( options ) ) {
+                delete( source, new AttributesFileOption() );
+            } else {
+                delete( source );
+            }
         } else {
             final Map<JGitPathImpl, JGitPathImpl> fromTo = new HashMap<JGitPathImpl, JGitPathImpl>();
             if ( sourceResult.getK1() == DIRECTORY ) {
@@ -1614,7 +2261,12 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
         for ( final Map.Entry<JGitPathImpl, JGitPathImpl> fromToEntry : fromTo.entrySet() ) {
             result.put( fixPath( fromToEntry.getKey().getPath() ), fixPath( fromToEntry.getValue().getPath() ) );
         }
-        commit( source, buildCommitInfo( "moving from {" + source.getPath() + "} to {" + target.getPath() + "}", Arrays.asList( options ) ), new MoveCommitContent( result ) );
+        final CommitInfo commitInfo = buildCommitInfo( "moving from {" + source.getPath() + "} to {" + target.getPath() + "}", Arrays.asList( options ) );
+        if ( hasAttributesFileOption( options ) && fromTo.containsKey( source ) && !isHidden( source ) ) {
+            commit( source, commitInfo, new MoveCommitContent( result ), new JGitAttributesUpdate().copy( source, target ).remove( source ) );
+            return;
+        }
+        commit( source, commitInfo, new MoveCommitContent( result ) );
     }
 
     private void copyFiles( final JGitPathImpl source,
@@ -1625,7 +2277,12 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
         for ( final Map.Entry<JGitPathImpl, JGitPathImpl> sourceDestEntry : sourceDest.entrySet() ) {
             result.put( fixPath( sourceDestEntry.getKey().getPath() ), fixPath( sourceDestEntry.getValue().getPath() ) );
         }
-        commit( source, buildCommitInfo( "copy from {" + source.getPath() + "} to {" + target.getPath() + "}", Arrays.asList( options ) ), new CopyCommitContent( result ) );
+        final CommitInfo commitInfo = buildCommitInfo( "copy from {" + source.getPath() + "} to {" + target.getPath() + "}", Arrays.asList( options ) );
+        if ( hasAttributesFileOption( options ) && sourceDest.containsKey( source ) && !isHidden( source ) ) {
+            commit( source, commitInfo, new CopyCommitContent( result ), new JGitAttributesUpdate().copy( source, target ) );
+            return;
+        }
+        commit( source, commitInfo, new CopyCommitContent( result ) );
     }
 
     @Override
@@ -1819,6 +2476,7 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
         if ( s[ 0 ].length() == 0 ) {
             throw new IllegalArgumentException( attribute );
         }
+        checkWritable( toPathImpl( path ) );
         final ExtendedAttributeView view = getFileAttributeView( toPathImpl( path ), s[ 0 ], options );
         if ( view == null ) {
             throw new UnsupportedOperationException( "View '" + s[ 0 ] + "' not available" );
@@ -1887,6 +2545,37 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
         return uri.getQuery() != null && uri.getQuery().contains( "push" );
     }
 
+    /**
+     * Tips notified with a sync, as the url encoded <code>refs</code> parameter holding <code>ref:id</code> entries
+     * separated by spaces. Read from the raw query as ref names may hold <code>&amp;</code> or <code>=</code>.
+     * @return null if there's no such parameter
+     */
+    private static Map<String, ObjectId> getRefsParam( final URI uri ) {
+        if ( uri.getRawQuery() == null ) {
+            return null;
+        }
+        for ( final String param : uri.getRawQuery().split( "&" ) ) {
+            if ( !param.startsWith( "refs=" ) ) {
+                continue;
+            }
+            final String value;
+            try {
+                value = URLDecoder.decode( param.substring( "refs=".length() ), "UTF-8" );
+            } catch ( final UnsupportedEncodingException e ) {
+                return null;
+            }
+            final Map<String, ObjectId> result = new HashMap<String, ObjectId>();
+            for ( final String ref : value.split( " " ) ) {
+                final int index = ref.lastIndexOf( ':' );
+                if ( index > 0 && ObjectId.isId( ref.substring( index + 1 ) ) ) {
+                    result.put( ref.substring( 0, index ), ObjectId.fromString( ref.substring( index + 1 ) ) );
+                }
+            }
+            return result.isEmpty() ? null : result;
+        }
+        return null;
+    }
+
     //by spec, it should be a list of pairs, but here we're just uisng a map.
     private static Map<String, String> getQueryParams( final URI uri ) {
         final String[] params = uri.getQuery().split( "&" );
@@ -1969,9 +2658,48 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
     private void commit( final JGitPathImpl path,
                          final CommitInfo commitInfo,
                          final CommitContent commitContent ) {
+        final JGitFileSystem fileSystem = path.getFileSystem();
+        fileSystem.lock();
+        try {
+            commitLocked( path, commitInfo, commitContent );
+        } finally {
+            fileSystem.unlock();
+        }
+    }
 
+    /**
+     * Commits the content together with the attribute changes; the attribute files are read and rewritten while the
+     * file system lock is held.
+     */
+    private void commit( final JGitPathImpl path,
+                         final CommitInfo commitInfo,
+                         final CommitContent commitContent,
+                         final JGitAttributesUpdate attributesUpdate ) {
         final JGitFileSystem fileSystem = path.getFileSystem();
         fileSystem.lock();
+        Map<String, File> attributesContent = null;
+        try {
+            attributesContent = attributesUpdate.build();
+            commitLocked( path, commitInfo, new ExtendedCommitContent( commitContent, attributesContent ) );
+        } catch ( java.io.IOException e ) {
+            throw new IOException( "Failed to update attributes.", e );
+        } finally {
+            fileSystem.unlock();
+            if ( attributesContent != null ) {
+                for ( final File file : attributesContent.values() ) {
+                    if ( file != null ) {
+                        file.delete();
+                    }
+                }
+            }
+        }
+    }
+
+    private void commitLocked( final JGitPathImpl path,
+                               final CommitInfo commitInfo,
+                               final CommitContent commitContent ) {
+        checkWritable( path );
+        final JGitFileSystem fileSystem = path.getFileSystem();
 
         final Git git = fileSystem.gitRepo();
         final String branchName = path.getRefTree();
@@ -1987,6 +2715,10 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
             hasCommit = JGitUtil.commit( git, branchName, commitInfo, amend, commitContent );
         }
 
+        if ( hasCommit ) {
+            enqueuePush( fileSystem, branchName );
+        }
+
         if ( !batchState ) {
             if ( hasCommit ) {
                 int value = fileSystem.incrementAndGetCommitCount();
@@ -2023,12 +2755,26 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
         if ( path.getFileSystem().isOnBatch() && !fileSystem.isHadCommitOnBatchState( path.getRoot() ) ) {
             fileSystem.setHadCommitOnBatchState( path.getRoot(), hasCommit );
         }
+    }
 
-        fileSystem.unlock();
+    private boolean hasAttributesFileOption( final Option... options ) {
+        if ( options == null ) {
+            return false;
+        }
+        for ( final Option option : options ) {
+            if ( option instanceof AttributesFileOption ) {
+                return true;
+            }
+        }
+        return false;
     }
 
     private void postCommitHook( final Repository repository ) {
-        detectedFS.runIfPresent( repository, Hook.POST_COMMIT, new String[ 0 ] );
+        if ( repository.getDirectory() == null ) {
+            //hooks are read from the repository directory, in memory repositories have none
+            return;
+        }
+        getHookExecutor().submit( detectedFS, repository, Hook.POST_COMMIT, new String[ 0 ] );
     }
 
     private void notifyAllDiffs() {
@@ -2081,6 +2827,8 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
         final Path root = JGitPathImpl.createRoot( fs, "/", host, false );
 
         final List<DiffEntry> diff = JGitUtil.getDiff( fs.gitRepo().getRepository(), oldHead, newHead );
+        fs.getPathIndex().apply( tree, oldHead, newHead, diff );
+
         final List<WatchEvent<?>> events = new ArrayList<WatchEvent<?>>( diff.size() );
 
         for ( final DiffEntry diffEntry : diff ) {
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.Hook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.uberfire.commons.async.DescriptiveThreadFactory;
+
+import static org.uberfire.commons.validation.PortablePreconditions.*;
+
+/**
+ * Runs git hooks off the commit path, on a bounded pool. Each hook process is destroyed once it exceeds the configured
+ * timeout, its output is captured and logged, and executions, failures, timeouts and rejections are counted.
+ * When <code>ordered</code> is set hooks of the same repository run one at a time, in submission order.
+ * <p/>
+ * At most <code>threads + queueSize</code> hooks are pending, running or waiting, including the ones waiting for an
+ * earlier hook of their repository; further ones are rejected.
+ */
+public class JGitHookExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger( JGitHookExecutor.class );
+
+    private static final int MAX_OUTPUT = 64 * 1024;
+
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService watchdog;
+    private final long timeout;
+    private final boolean ordered;
+    private final int capacity;
+
+    private final Map<Repository, LinkedList<Runnable>> repositoryQueues = new HashMap<Repository, LinkedList<Runnable>>();
+    private int pending = 0;
+
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public JGitHookExecutor( final int threads,
+                             final int queueSize,
+                             final long timeout,
+                             final boolean ordered ) {
+        this.executor = new ThreadPoolExecutor( threads, threads,
+                                                0L, TimeUnit.MILLISECONDS,
+                                                new ArrayBlockingQueue<Runnable>( queueSize ),
+                                                new DescriptiveThreadFactory() );
+        this.watchdog = Executors.newSingleThreadScheduledExecutor( new DescriptiveThreadFactory() );
+        this.timeout = timeout;
+        this.ordered = ordered;
+        this.capacity = threads + queueSize;
+    }
+
+    /**
+     * Enqueues the hook and returns immediately; if the queue is full the run is dropped and counted as rejected.
+     */
+    public void submit( final FS fs,
+                        final Repository repository,
+                        final Hook hook,
+                        final String[] args ) {
+        checkNotNull( "fs", fs );
+        checkNotNull( "repository", repository );
+        checkNotNull( "hook", hook );
+
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                runHook( fs, repository, hook, args );
+            }
+        };
+
+        synchronized ( this ) {
+            if ( pending >= capacity ) {
+                rejected.incrementAndGet();
+                LOG.warn( "Hook queue is full, dropping hook execution for repository '" + repository + "'." );
+                return;
+            }
+            pending++;
+            if ( ordered ) {
+                LinkedList<Runnable> queue = repositoryQueues.get( repository );
+                if ( queue != null ) {
+                    //a hook of this repository is running, it'll pick this one up when done
+                    queue.add( task );
+                    return;
+                }
+                queue = new LinkedList<Runnable>();
+                repositoryQueues.put( repository, queue );
+            }
+        }
+
+        dispatch( repository, task );
+    }
+
+    private void dispatch( final Repository repository,
+                           final Runnable task ) {
+        try {
+            executor.execute( new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        done( repository );
+                    }
+                }
+            } );
+        } catch ( final RejectedExecutionException ex ) {
+            rejected.incrementAndGet();
+            LOG.warn( "Hook queue is full, dropping hook execution for repository '" + repository + "'." );
+            done( repository );
+        }
+    }
+
+    private void done( final Repository repository ) {
+        final Runnable next;
+        synchronized ( this ) {
+            pending--;
+            notifyAll();
+            if ( !ordered ) {
+                return;
+            }
+            final LinkedList<Runnable> queue = repositoryQueues.get( repository );
+            if ( queue == null || queue.isEmpty() ) {
+                repositoryQueues.remove( repository );
+                return;
+            }
+            next = queue.removeFirst();
+        }
+        dispatch( repository, next );
+    }
+
+    private void runHook( final FS fs,
+                          final Repository repository,
+                          final Hook hook,
+                          final String[] args ) {
+        final File hookFile = fs.findHook( repository, hook );
+        if ( hookFile == null ) {
+            return;
+        }
+
+        final AtomicBoolean expired = new AtomicBoolean( false );
+        final long start = System.currentTimeMillis();
+        executed.incrementAndGet();
+        ScheduledFuture<?> timer = null;
+        File output = null;
+        Process process = null;
+        try {
+            //the output goes to a file: a pipe could be kept open by processes the hook left behind
+            output = File.createTempFile( "hook-" + hook.getName(), ".log" );
+            final ProcessBuilder builder = buildProcess( fs, repository, hookFile, args );
+            builder.redirectOutput( output );
+            process = builder.start();
+            final Process running = process;
+            timer = watchdog.schedule( new Runnable() {
+                @Override
+                public void run() {
+                    expired.set( true );
+                    running.destroy();
+                }
+            }, timeout, TimeUnit.MILLISECONDS );
+            process.getOutputStream().close();
+            final int exitCode = process.waitFor();
+            final String out = read( output );
+            if ( expired.get() ) {
+                failed.incrementAndGet();
+                timedOut.incrementAndGet();
+                LOG.warn( "Hook '" + hook.getName() + "' of repository '" + repository + "' timed out after " + timeout + "ms and was destroyed: " + out );
+            } else if ( exitCode != 0 ) {
+                failed.incrementAndGet();
+                LOG.warn( "Hook '" + hook.getName() + "' of repository '" + repository + "' exited with code " + exitCode + ": " + out );
+            } else if ( LOG.isDebugEnabled() ) {
+                LOG.debug( "Hook '" + hook.getName() + "' of repository '" + repository + "' finished in " + ( System.currentTimeMillis() - start ) + "ms: " + out );
+            }
+        } catch ( final InterruptedException ex ) {
+            //shutting down
+            failed.incrementAndGet();
+            process.destroy();
+            Thread.currentThread().interrupt();
+        } catch ( final Exception ex ) {
+            failed.incrementAndGet();
+            LOG.error( "Hook '" + hook.getName() + "' of repository '" + repository + "' failed.", ex );
+        } finally {
+            if ( timer != null ) {
+                timer.cancel( false );
+            }
+            if ( output != null && !output.delete() ) {
+                output.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Hooks are executed directly, as git does; through the shell where files can't be flagged executable.
+     */
+    private ProcessBuilder buildProcess( final FS fs,
+                                         final Repository repository,
+                                         final File hookFile,
+                                         final String[] args ) {
+        final ProcessBuilder builder;
+        if ( fs.supportsExecute() ) {
+            final List<String> command = new ArrayList<String>( args.length + 1 );
+            command.add( hookFile.getAbsolutePath() );
+            command.addAll( Arrays.asList( args ) );
+            builder = new ProcessBuilder( command );
+        } else {
+            builder = fs.runInShell( hookFile.getAbsolutePath(), args );
+        }
+        builder.directory( repository.isBare() ? repository.getDirectory() : repository.getWorkTree() );
+        builder.environment().put( Constants.GIT_DIR_KEY, repository.getDirectory().getAbsolutePath() );
+        builder.redirectErrorStream( true );
+        return builder;
+    }
+
+    /**
+     * @return the first {@link #MAX_OUTPUT} bytes of the hook output
+     */
+    private String read( final File output ) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final InputStream in = new FileInputStream( output );
+        try {
+            final byte[] buffer = new byte[ 4096 ];
+            int read;
+            while ( out.size() < MAX_OUTPUT && ( read = in.read( buffer ) ) != -1 ) {
+                out.write( buffer, 0, Math.min( read, MAX_OUTPUT - out.size() ) );
+            }
+        } finally {
+            in.close();
+        }
+        return out.toString();
+    }
+
+    public long getExecutedCount() {
+        return executed.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public long getTimedOutCount() {
+        return timedOut.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public synchronized int getPendingCount() {
+        return pending;
+    }
+
+    /**
+     * Waits until every submitted hook has run.
+     * @return true if all hooks completed before the timeout
+     */
+    public synchronized boolean awaitIdle( final long timeout,
+                                           final TimeUnit unit ) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + unit.toMillis( timeout );
+        while ( pending > 0 ) {
+            final long wait = deadline - System.currentTimeMillis();
+            if ( wait <= 0 ) {
+                return false;
+            }
+            wait( wait );
+        }
+        return true;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        watchdog.shutdownNow();
+    }
+}
@@ -170,6 +170,14 @@ public class JGitPathImpl extends AbstractPath<JGitFileSystem>
         return new String( path );
     }
 
+    /**
+     * @return true if this path is pinned to a commit id instead of a branch, see
+     * {@link JGitFileSystemProvider#snapshot(org.uberfire.java.nio.file.FileSystem, String)}
+     */
+    public boolean isSnapshot() {
+        return host != null && host.indexOf( "@" ) > 0 && ObjectId.isId( getRefTree() );
+    }
+
     public boolean isRegularFile()
             throws IllegalAccessError, SecurityException {
         try {
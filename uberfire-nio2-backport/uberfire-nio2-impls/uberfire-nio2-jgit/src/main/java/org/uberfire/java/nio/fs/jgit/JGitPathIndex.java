@@ -0,0 +1,420 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.uberfire.commons.data.Pair;
+import org.uberfire.java.nio.base.query.ResultPage;
+import org.uberfire.java.nio.fs.jgit.util.JGitUtil;
+import org.uberfire.java.nio.fs.jgit.util.JGitUtil.PathType;
+
+/**
+ * Index of the file paths of a repository, kept per branch as a sorted array of paths and their blob ids. Hidden
+ * (dot) files are left out. Each branch index is an immutable snapshot of a tree: commits replace it with a new
+ * snapshot built by merging the commit diff (see {@link #apply(String, ObjectId, ObjectId, List)}), and queries
+ * catch up with the branch head if a commit didn't go through the provider.
+ */
+public class JGitPathIndex {
+
+    private static final Pattern EXTENSION_GLOB = Pattern.compile( "\\*\\*/\\*\\.([^/*?\\[\\]{}\\\\]+)" );
+
+    private final Repository repository;
+    private final Map<String, Snapshot> branches = new ConcurrentHashMap<String, Snapshot>();
+
+    public JGitPathIndex( final Repository repository ) {
+        this.repository = repository;
+    }
+
+    /**
+     * @param base directory (git path, without leading slash; empty for root) the glob is relative to
+     * @param glob glob pattern; <code>*</code> and <code>?</code> don't cross directories, <code>**</code> does
+     * @return the requested page of matching paths, with their blob ids
+     */
+    public ResultPage<Pair<String, ObjectId>> query( final String branchName,
+                                                     final String base,
+                                                     final String glob,
+                                                     final int offset,
+                                                     final int pageSize ) {
+        final Snapshot snapshot = update( branchName );
+        final String prefix = base.isEmpty() ? "" : base + "/";
+
+        final List<Pair<String, ObjectId>> page = new ArrayList<Pair<String, ObjectId>>();
+        int total = 0;
+
+        final Matcher extension = EXTENSION_GLOB.matcher( glob );
+        if ( extension.matches() ) {
+            final int[] range = snapshot.range( prefix );
+            for ( final int i : snapshot.withExtension( extension.group( 1 ) ) ) {
+                if ( i < range[ 0 ] || i >= range[ 1 ] ) {
+                    continue;
+                }
+                if ( total++ >= offset && page.size() < pageSize ) {
+                    page.add( Pair.newPair( snapshot.paths[ i ], snapshot.ids[ i ] ) );
+                }
+            }
+            return new ResultPage<Pair<String, ObjectId>>( page, offset, total );
+        }
+
+        final Pattern pattern = compile( glob );
+        final int[] range = snapshot.range( prefix + literalPrefix( glob ) );
+        for ( int i = range[ 0 ]; i < range[ 1 ]; i++ ) {
+            if ( !pattern.matcher( snapshot.paths[ i ].substring( prefix.length() ) ).matches() ) {
+                continue;
+            }
+            if ( total++ >= offset && page.size() < pageSize ) {
+                page.add( Pair.newPair( snapshot.paths[ i ], snapshot.ids[ i ] ) );
+            }
+        }
+
+        return new ResultPage<Pair<String, ObjectId>>( page, offset, total );
+    }
+
+    /**
+     * Answers from the branch index, only if it's already built and at the branch head; it's never built or caught up
+     * for a lookup.
+     * @param headTreeId tree of the branch head, resolved by the caller so it can reuse it on a miss
+     * @param path git path, without leading slash
+     * @return the path type, or null if the index can't tell (not built, behind the head, or a miss, as directories
+     * holding only hidden files aren't in the index)
+     */
+    public PathType lookup( final String branchName,
+                            final ObjectId headTreeId,
+                            final String path ) {
+        final Snapshot snapshot = branches.get( branchName );
+        if ( snapshot == null || path.isEmpty() || !isIndexed( path ) ) {
+            return null;
+        }
+        if ( !snapshot.treeId.equals( headTreeId ) ) {
+            return null;
+        }
+        if ( Arrays.binarySearch( snapshot.paths, path ) >= 0 ) {
+            return PathType.FILE;
+        }
+        final int[] range = snapshot.range( path + "/" );
+        if ( range[ 0 ] < range[ 1 ] ) {
+            return PathType.DIRECTORY;
+        }
+        return null;
+    }
+
+    /**
+     * Moves the branch index from <code>oldTreeId</code> to <code>newTreeId</code> using a diff already computed
+     * between them. If the index isn't at <code>oldTreeId</code> it's dropped, to be rebuilt on next query.
+     */
+    public synchronized void apply( final String branchName,
+                                    final ObjectId oldTreeId,
+                                    final ObjectId newTreeId,
+                                    final List<DiffEntry> diff ) {
+        final Snapshot current = branches.get( branchName );
+        if ( current == null ) {
+            return;
+        }
+        if ( newTreeId == null || oldTreeId == null || !oldTreeId.equals( current.treeId ) ) {
+            branches.remove( branchName );
+            return;
+        }
+        branches.put( branchName, current.apply( newTreeId, diff ) );
+    }
+
+    public void clear() {
+        branches.clear();
+    }
+
+    int getBranchCount() {
+        return branches.size();
+    }
+
+    private Snapshot update( final String branchName ) {
+        final ObjectId head = JGitUtil.getTreeRefObjectId( repository, branchName );
+        final Snapshot current = branches.get( branchName );
+        if ( head == null ) {
+            return Snapshot.EMPTY;
+        }
+        if ( current != null && head.equals( current.treeId ) ) {
+            return current;
+        }
+        if ( ObjectId.isId( branchName ) ) {
+            //a commit pinned view (snapshot) never moves, and caching each commit would grow the index unbounded
+            try {
+                return build( head );
+            } catch ( final java.io.IOException ex ) {
+                throw new RuntimeException( ex );
+            }
+        }
+
+        synchronized ( this ) {
+            Snapshot snapshot = branches.get( branchName );
+            if ( snapshot != null && head.equals( snapshot.treeId ) ) {
+                return snapshot;
+            }
+            try {
+                if ( snapshot == null || !repository.hasObject( snapshot.treeId ) ) {
+                    snapshot = build( head );
+                } else {
+                    snapshot = snapshot.apply( head, JGitUtil.getDiff( repository, snapshot.treeId, head ) );
+                }
+            } catch ( final java.io.IOException ex ) {
+                throw new RuntimeException( ex );
+            }
+            branches.put( branchName, snapshot );
+            return snapshot;
+        }
+    }
+
+    private Snapshot build( final ObjectId treeId ) throws java.io.IOException {
+        final TreeMap<String, ObjectId> content = new TreeMap<String, ObjectId>();
+        final TreeWalk tw = new TreeWalk( repository );
+        try {
+            tw.reset( treeId );
+            tw.setRecursive( true );
+            while ( tw.next() ) {
+                final String path = tw.getPathString();
+                if ( isIndexed( path ) ) {
+                    content.put( path, tw.getObjectId( 0 ) );
+                }
+            }
+        } finally {
+            tw.release();
+        }
+        return new Snapshot( treeId, content );
+    }
+
+    private static boolean isIndexed( final String path ) {
+        return path != null && !path.equals( DiffEntry.DEV_NULL ) && path.charAt( path.lastIndexOf( '/' ) + 1 ) != '.';
+    }
+
+    /**
+     * Directories at the start of the glob without any wildcard, used to narrow the scanned range.
+     */
+    static String literalPrefix( final String glob ) {
+        int end = 0;
+        for ( int i = 0; i < glob.length(); i++ ) {
+            final char c = glob.charAt( i );
+            if ( "*?[{\\".indexOf( c ) >= 0 ) {
+                break;
+            }
+            if ( c == '/' ) {
+                end = i + 1;
+            }
+        }
+        return glob.substring( 0, end );
+    }
+
+    static Pattern compile( final String glob ) {
+        final StringBuilder regex = new StringBuilder( glob.length() * 2 );
+        boolean inGroup = false;
+        for ( int i = 0; i < glob.length(); i++ ) {
+            final char c = glob.charAt( i );
+            switch ( c ) {
+                case '*':
+                    if ( i + 1 < glob.length() && glob.charAt( i + 1 ) == '*' ) {
+                        i++;
+                        if ( i + 1 < glob.length() && glob.charAt( i + 1 ) == '/' ) {
+                            i++;
+                            regex.append( "(?:.*/)?" );
+                        } else {
+                            regex.append( ".*" );
+                        }
+                    } else {
+                        regex.append( "[^/]*" );
+                    }
+                    break;
+                case '?':
+                    regex.append( "[^/]" );
+                    break;
+                case '{':
+                    if ( inGroup ) {
+                        throw new PatternSyntaxException( "Nested groups are not supported", glob, i );
+                    }
+                    inGroup = true;
+                    regex.append( "(?:" );
+                    break;
+                case '}':
+                    if ( !inGroup ) {
+                        throw new PatternSyntaxException( "Unmatched '}'", glob, i );
+                    }
+                    inGroup = false;
+                    regex.append( ')' );
+                    break;
+                case ',':
+                    regex.append( inGroup ? "|" : "," );
+                    break;
+                case '[':
+                    final int close = glob.indexOf( ']', i + 1 );
+                    if ( close == -1 ) {
+                        throw new PatternSyntaxException( "Unmatched '['", glob, i );
+                    }
+                    String set = glob.substring( i + 1, close );
+                    if ( set.startsWith( "!" ) ) {
+                        set = "^" + set.substring( 1 );
+                    }
+                    regex.append( '[' ).append( set.replace( "\\", "\\\\" ).replace( "[", "\\[" ) ).append( ']' );
+                    i = close;
+                    break;
+                case '\\':
+                    if ( i + 1 == glob.length() ) {
+                        throw new PatternSyntaxException( "Trailing escape", glob, i );
+                    }
+                    regex.append( Pattern.quote( String.valueOf( glob.charAt( ++i ) ) ) );
+                    break;
+                default:
+                    if ( "().+^$|".indexOf( c ) >= 0 ) {
+                        regex.append( '\\' );
+                    }
+                    regex.append( c );
+            }
+        }
+        if ( inGroup ) {
+            throw new PatternSyntaxException( "Unmatched '{'", glob, glob.length() );
+        }
+        return Pattern.compile( regex.toString() );
+    }
+
+    private static class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot( null, new TreeMap<String, ObjectId>() );
+
+        private final ObjectId treeId;
+        private final String[] paths;
+        private final ObjectId[] ids;
+        private volatile Map<String, int[]> byExtension = null;
+
+        private Snapshot( final ObjectId treeId,
+                          final String[] paths,
+                          final ObjectId[] ids ) {
+            this.treeId = treeId;
+            this.paths = paths;
+            this.ids = ids;
+        }
+
+        Snapshot( final ObjectId treeId,
+                  final TreeMap<String, ObjectId> content ) {
+            this( treeId, content.keySet().toArray( new String[ content.size() ] ), content.values().toArray( new ObjectId[ content.size() ] ) );
+        }
+
+        /**
+         * Merges the changes into a new sorted snapshot, in a single pass over the current one.
+         */
+        Snapshot apply( final ObjectId newTreeId,
+                        final List<DiffEntry> diff ) {
+            final Set<String> removed = new HashSet<String>();
+            final TreeMap<String, ObjectId> added = new TreeMap<String, ObjectId>();
+            for ( final DiffEntry entry : diff ) {
+                if ( entry.getChangeType() == DiffEntry.ChangeType.DELETE || entry.getChangeType() == DiffEntry.ChangeType.RENAME ) {
+                    removed.add( entry.getOldPath() );
+                }
+                if ( entry.getChangeType() != DiffEntry.ChangeType.DELETE && isIndexed( entry.getNewPath() ) ) {
+                    added.put( entry.getNewPath(), entry.getNewId().toObjectId() );
+                }
+            }
+
+            final List<String> newPaths = new ArrayList<String>( paths.length + added.size() );
+            final List<ObjectId> newIds = new ArrayList<ObjectId>( paths.length + added.size() );
+            final Iterator<Map.Entry<String, ObjectId>> additions = added.entrySet().iterator();
+            Map.Entry<String, ObjectId> next = additions.hasNext() ? additions.next() : null;
+            for ( int i = 0; i < paths.length; i++ ) {
+                while ( next != null && next.getKey().compareTo( paths[ i ] ) < 0 ) {
+                    newPaths.add( next.getKey() );
+                    newIds.add( next.getValue() );
+                    next = additions.hasNext() ? additions.next() : null;
+                }
+                if ( next != null && next.getKey().equals( paths[ i ] ) ) {
+                    continue;
+                }
+                if ( !removed.contains( paths[ i ] ) ) {
+                    newPaths.add( paths[ i ] );
+                    newIds.add( ids[ i ] );
+                }
+            }
+            while ( next != null ) {
+                newPaths.add( next.getKey() );
+                newIds.add( next.getValue() );
+                next = additions.hasNext() ? additions.next() : null;
+            }
+
+            return new Snapshot( newTreeId, newPaths.toArray( new String[ newPaths.size() ] ), newIds.toArray( new ObjectId[ newIds.size() ] ) );
+        }
+
+        /**
+         * @return [from, to) range of the paths starting with the given prefix
+         */
+        int[] range( final String prefix ) {
+            if ( prefix.isEmpty() ) {
+                return new int[]{ 0, paths.length };
+            }
+            final int from = insertionPoint( prefix );
+            //'\uffff' sorts after any char a path can have
+            final int to = insertionPoint( prefix + '\uffff' );
+            return new int[]{ from, to };
+        }
+
+        private int insertionPoint( final String key ) {
+            final int index = Arrays.binarySearch( paths, key );
+            return index >= 0 ? index : -( index + 1 );
+        }
+
+        int[] withExtension( final String extension ) {
+            Map<String, int[]> result = byExtension;
+            if ( result == null ) {
+                final Map<String, List<Integer>> positions = new HashMap<String, List<Integer>>();
+                for ( int i = 0; i < paths.length; i++ ) {
+                    final String name = paths[ i ].substring( paths[ i ].lastIndexOf( '/' ) + 1 );
+                    int dot = name.indexOf( '.' );
+                    //every suffix after a dot, so both "*.gz" and "*.tar.gz" are served
+                    while ( dot != -1 ) {
+                        final String ext = name.substring( dot + 1 );
+                        List<Integer> list = positions.get( ext );
+                        if ( list == null ) {
+                            list = new ArrayList<Integer>();
+                            positions.put( ext, list );
+                        }
+                        list.add( i );
+                        dot = name.indexOf( '.', dot + 1 );
+                    }
+                }
+                result = new HashMap<String, int[]>( positions.size() );
+                for ( final Map.Entry<String, List<Integer>> entry : positions.entrySet() ) {
+                    final int[] array = new int[ entry.getValue().size() ];
+                    for ( int i = 0; i < array.length; i++ ) {
+                        array[ i ] = entry.getValue().get( i );
+                    }
+                    result.put( entry.getKey(), array );
+                }
+                byExtension = result;
+            }
+            final int[] positions = result.get( extension );
+            return positions == null ? new int[ 0 ] : positions;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.PushResult;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.uberfire.commons.validation.PortablePreconditions.*;
+
+/**
+ * Outbound replication queue of a single {@link JGitFileSystem}. Callers only record which refs changed; a background
+ * task pushes the current tip of every pending ref to the upstream remote, so several commits on the same branch are
+ * coalesced into one push. Failed pushes are retried with exponential backoff.
+ * <p/>
+ * Before its first push the queue reads the tips the upstream advertises, so {@link #getCommitsBehind()} counts from
+ * what the remote already has, even for a queue set up again after a restart.
+ */
+public class JGitPushQueue {
+
+    private static final Logger LOG = LoggerFactory.getLogger( JGitPushQueue.class );
+
+    private final Git git;
+    private final String remote;
+    private final CredentialsProvider credential;
+    private final ScheduledExecutorService executor;
+    private final long initialBackoff;
+    private final long maxBackoff;
+
+    //ref name -> time (ms) it was first enqueued without being pushed
+    private final Map<String, Long> pending = new LinkedHashMap<String, Long>();
+    //refs being pushed, with the same enqueue times
+    private final Map<String, Long> inFlight = new LinkedHashMap<String, Long>();
+    private final Map<String, ObjectId> lastPushed = new HashMap<String, ObjectId>();
+    //whether lastPushed holds the upstream tips yet
+    private boolean seeded = false;
+
+    private boolean scheduled = false;
+    private ScheduledFuture<?> scheduledDrain = null;
+    private boolean closed = false;
+    private int consecutiveFailures = 0;
+    private long failureCount = 0;
+    private long pushCount = 0;
+    private Exception lastError = null;
+
+    JGitPushQueue( final Git git,
+                   final String remote,
+                   final CredentialsProvider credential,
+                   final ScheduledExecutorService executor,
+                   final long initialBackoff,
+                   final long maxBackoff ) {
+        this.git = checkNotNull( "git", git );
+        this.remote = checkNotEmpty( "remote", remote );
+        this.credential = checkNotNull( "credential", credential );
+        this.executor = checkNotNull( "executor", executor );
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    public String getRemote() {
+        return remote;
+    }
+
+    /**
+     * Marks a ref as changed. Never blocks on the remote: the push happens later, on the queue executor.
+     */
+    public synchronized void enqueue( final String refName ) {
+        checkNotEmpty( "refName", refName );
+        if ( closed ) {
+            return;
+        }
+        if ( !pending.containsKey( refName ) ) {
+            pending.put( refName, System.currentTimeMillis() );
+        }
+        schedule( 0 );
+    }
+
+    private void schedule( final long delay ) {
+        if ( scheduled || closed ) {
+            return;
+        }
+        try {
+            scheduledDrain = executor.schedule( new Runnable() {
+                @Override
+                public void run() {
+                    drain();
+                }
+            }, delay, TimeUnit.MILLISECONDS );
+            scheduled = true;
+        } catch ( final RejectedExecutionException ex ) {
+            LOG.warn( "Push queue executor for '" + remote + "' is not accepting tasks.", ex );
+        }
+    }
+
+    private void drain() {
+        final Map<String, Long> batch;
+        synchronized ( this ) {
+            if ( closed ) {
+                scheduled = false;
+                notifyAll();
+                return;
+            }
+            batch = new LinkedHashMap<String, Long>( pending );
+            pending.clear();
+            inFlight.putAll( batch );
+        }
+
+        boolean success = false;
+        try {
+            if ( !batch.isEmpty() ) {
+                if ( !isSeeded() ) {
+                    seed();
+                }
+                push( batch.keySet() );
+            }
+            success = true;
+        } catch ( final Exception ex ) {
+            LOG.warn( "Failed to push " + batch.keySet() + " to '" + remote + "', will retry.", ex );
+            synchronized ( this ) {
+                lastError = ex;
+            }
+        }
+
+        synchronized ( this ) {
+            scheduled = false;
+            scheduledDrain = null;
+            inFlight.clear();
+            if ( success ) {
+                consecutiveFailures = 0;
+                pushCount++;
+            } else {
+                failureCount++;
+                consecutiveFailures++;
+                //keep the original enqueue time, so lag keeps growing while remote is unreachable
+                for ( final Map.Entry<String, Long> entry : batch.entrySet() ) {
+                    final Long newer = pending.get( entry.getKey() );
+                    if ( newer == null || newer > entry.getValue() ) {
+                        pending.put( entry.getKey(), entry.getValue() );
+                    }
+                }
+            }
+            if ( !pending.isEmpty() ) {
+                schedule( success ? 0 : backoff() );
+            }
+            notifyAll();
+        }
+    }
+
+    private long backoff() {
+        final int shift = Math.min( consecutiveFailures - 1, 20 );
+        return Math.min( maxBackoff, initialBackoff << shift );
+    }
+
+    private synchronized boolean isSeeded() {
+        return seeded;
+    }
+
+    /**
+     * Reads the tips the upstream advertises into the pushed ones, keeping those pushed by this queue meanwhile.
+     */
+    void seed() throws Exception {
+        final Map<String, ObjectId> advertised = new HashMap<String, ObjectId>();
+        for ( final Ref ref : git.lsRemote()
+                .setCredentialsProvider( credential )
+                .setRemote( remote )
+                .call() ) {
+            if ( ref.getName().startsWith( "refs/" ) && ref.getObjectId() != null ) {
+                advertised.put( ref.getName(), ref.getObjectId() );
+            }
+        }
+
+        synchronized ( this ) {
+            if ( seeded ) {
+                return;
+            }
+            advertised.putAll( lastPushed );
+            lastPushed.putAll( advertised );
+            seeded = true;
+        }
+    }
+
+    private void push( final Iterable<String> refNames ) throws Exception {
+        final List<RefSpec> specs = new ArrayList<RefSpec>();
+        final Map<String, ObjectId> tips = new HashMap<String, ObjectId>();
+        for ( final String refName : refNames ) {
+            final Ref ref = git.getRepository().getRef( refName );
+            if ( ref == null || ref.getObjectId() == null ) {
+                specs.add( new RefSpec( ":" + refName ) );
+            } else {
+                tips.put( refName, ref.getObjectId() );
+                specs.add( new RefSpec( "+" + ref.getObjectId().name() + ":" + refName ) );
+            }
+        }
+
+        final Iterable<PushResult> results = git.push()
+                .setCredentialsProvider( credential )
+                .setRemote( remote )
+                .setRefSpecs( specs )
+                .setForce( true )
+                .call();
+
+        for ( final PushResult result : results ) {
+            for ( final RemoteRefUpdate update : result.getRemoteUpdates() ) {
+                //deleting a ref the remote doesn't have leaves it as wanted
+                if ( update.getStatus() != RemoteRefUpdate.Status.OK &&
+                        update.getStatus() != RemoteRefUpdate.Status.UP_TO_DATE &&
+                        !( update.isDelete() && update.getStatus() == RemoteRefUpdate.Status.NON_EXISTING ) ) {
+                    throw new RuntimeException( "Push of '" + update.getRemoteName() + "' rejected: " + update.getStatus() + " " + update.getMessage() );
+                }
+            }
+        }
+
+        synchronized ( this ) {
+            for ( final String refName : refNames ) {
+                if ( tips.containsKey( refName ) ) {
+                    lastPushed.put( refName, tips.get( refName ) );
+                } else {
+                    lastPushed.remove( refName );
+                }
+            }
+        }
+    }
+
+    /**
+     * @return how long (ms) the oldest unpushed change has been waiting, including the ones being pushed; zero when
+     * fully replicated
+     */
+    public synchronized long getLag() {
+        long oldest = Long.MAX_VALUE;
+        for ( final Long since : unpushed().values() ) {
+            oldest = Math.min( oldest, since );
+        }
+        if ( oldest == Long.MAX_VALUE ) {
+            return 0;
+        }
+        return System.currentTimeMillis() - oldest;
+    }
+
+    /**
+     * @return number of local commits not yet pushed, over all pending refs and the ones being pushed; -1 when unknown,
+     * as the upstream tips weren't read yet
+     */
+    public long getCommitsBehind() {
+        final Map<String, ObjectId> pushed;
+        final List<String> refs;
+        synchronized ( this ) {
+            pushed = new HashMap<String, ObjectId>( lastPushed );
+            refs = new ArrayList<String>( unpushed().keySet() );
+            if ( !refs.isEmpty() && !seeded ) {
+                return -1;
+            }
+        }
+        if ( refs.isEmpty() ) {
+            return 0;
+        }
+
+        final RevWalk walk = new RevWalk( git.getRepository() );
+        try {
+            for ( final String refName : refs ) {
+                final Ref ref = git.getRepository().getRef( refName );
+                if ( ref != null && ref.getObjectId() != null ) {
+                    walk.markStart( walk.parseCommit( ref.getObjectId() ) );
+                }
+            }
+            for ( final ObjectId id : pushed.values() ) {
+                //upstream tips may be commits this repository never had, or tags of trees
+                if ( !git.getRepository().hasObject( id ) ) {
+                    continue;
+                }
+                final RevObject tip = walk.peel( walk.parseAny( id ) );
+                if ( tip instanceof RevCommit ) {
+                    walk.markUninteresting( (RevCommit) tip );
+                }
+            }
+            long count = 0;
+            for ( final RevCommit commit : walk ) {
+                count++;
+            }
+            return count;
+        } catch ( final java.io.IOException e ) {
+            throw new RuntimeException( e );
+        } finally {
+            walk.release();
+        }
+    }
+
+    public synchronized int getPendingRefs() {
+        return unpushed().size();
+    }
+
+    private Map<String, Long> unpushed() {
+        if ( inFlight.isEmpty() ) {
+            return pending;
+        }
+        final Map<String, Long> result = new LinkedHashMap<String, Long>( inFlight );
+        for ( final Map.Entry<String, Long> entry : pending.entrySet() ) {
+            final Long since = result.get( entry.getKey() );
+            if ( since == null || since > entry.getValue() ) {
+                result.put( entry.getKey(), entry.getValue() );
+            }
+        }
+        return result;
+    }
+
+    public synchronized long getPushCount() {
+        return pushCount;
+    }
+
+    public synchronized long getFailureCount() {
+        return failureCount;
+    }
+
+    public synchronized Exception getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Waits until every enqueued ref has been pushed.
+     * @return true if the queue drained before the timeout
+     */
+    public synchronized boolean awaitIdle( final long timeout,
+                                           final TimeUnit unit ) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + unit.toMillis( timeout );
+        while ( !pending.isEmpty() || scheduled ) {
+            final long wait = deadline - System.currentTimeMillis();
+            if ( wait <= 0 ) {
+                return false;
+            }
+            wait( wait );
+        }
+        return true;
+    }
+
+    public synchronized void close() {
+        closed = true;
+        if ( scheduledDrain != null ) {
+            scheduledDrain.cancel( false );
+            scheduledDrain = null;
+            scheduled = false;
+        }
+        if ( !pending.isEmpty() ) {
+            LOG.warn( "Push queue for '" + remote + "' closed with " + pending.size() + " pending ref(s)." );
+        }
+        notifyAll();
+    }
+}
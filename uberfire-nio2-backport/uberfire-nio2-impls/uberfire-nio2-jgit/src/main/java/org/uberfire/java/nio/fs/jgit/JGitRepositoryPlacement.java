@@ -0,0 +1,166 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.uberfire.commons.validation.PortablePreconditions.*;
+
+/**
+ * Decides under which of the configured storage roots a new repository is created, so repositories (and their I/O)
+ * can be spread over several volumes. A repository that already exists under some root is always found there,
+ * whatever the policy says; the policy only applies to repositories that don't exist yet.
+ * <ul>
+ * <li>{@link Policy#HASH}: the root is picked by a hash of the repository name, stable across restarts</li>
+ * <li>{@link Policy#LEAST_USED}: the root holding fewer repositories, the first one on a tie</li>
+ * <li>{@link Policy#EXPLICIT}: the root given for the repository name by the mapping, hash for unmapped names</li>
+ * </ul>
+ */
+public class JGitRepositoryPlacement {
+
+    public enum Policy {
+        HASH, LEAST_USED, EXPLICIT;
+
+        public static Policy parse( final String value ) {
+            return valueOf( value.trim().toUpperCase().replace( '-', '_' ) );
+        }
+    }
+
+    private static final String DOT_GIT_EXT = ".git";
+
+    private final List<File> roots;
+    private final Policy policy;
+    private final Map<String, Integer> mapping;
+
+    /**
+     * @param mapping repository name to root index, only used by {@link Policy#EXPLICIT}
+     */
+    public JGitRepositoryPlacement( final List<File> roots,
+                                    final Policy policy,
+                                    final Map<String, Integer> mapping ) {
+        checkNotEmpty( "roots", roots );
+        checkNotNull( "policy", policy );
+        checkNotNull( "mapping", mapping );
+        for ( final Map.Entry<String, Integer> entry : mapping.entrySet() ) {
+            checkCondition( "mapping of '" + entry.getKey() + "' must be a root index", entry.getValue() >= 0 && entry.getValue() < roots.size() );
+        }
+        this.roots = Collections.unmodifiableList( new ArrayList<File>( roots ) );
+        this.policy = policy;
+        this.mapping = new HashMap<String, Integer>( mapping );
+    }
+
+    /**
+     * Parses an explicit mapping in the form <code>name=index,name=index</code>.
+     */
+    public static Map<String, Integer> parseMapping( final String value ) {
+        final Map<String, Integer> result = new HashMap<String, Integer>();
+        if ( value == null || value.trim().isEmpty() ) {
+            return result;
+        }
+        for ( final String entry : value.split( "," ) ) {
+            final int index = entry.indexOf( '=' );
+            checkCondition( "mapping entry '" + entry + "' must be name=index", index > 0 );
+            result.put( entry.substring( 0, index ).trim(), Integer.valueOf( entry.substring( index + 1 ).trim() ) );
+        }
+        return result;
+    }
+
+    public List<File> getRoots() {
+        return roots;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return the root new repositories are created under when there's a single one, and the root returned by
+     * {@link JGitFileSystemProvider#getGitRepoContainerDir()}
+     */
+    public File getPrimaryRoot() {
+        return roots.get( 0 );
+    }
+
+    /**
+     * @return the directory of the repository: the existing one if any root already holds it, otherwise the one the
+     * policy picks
+     */
+    public synchronized File locate( final String name ) {
+        checkNotEmpty( "name", name );
+
+        final String dirName = name + DOT_GIT_EXT;
+        for ( final File root : roots ) {
+            final File repoDir = new File( root, dirName );
+            if ( repoDir.exists() ) {
+                return repoDir;
+            }
+        }
+        return new File( place( name ), dirName );
+    }
+
+    private File place( final String name ) {
+        if ( roots.size() == 1 ) {
+            return roots.get( 0 );
+        }
+        switch ( policy ) {
+            case EXPLICIT:
+                final Integer index = mapping.get( name );
+                if ( index != null ) {
+                    return roots.get( index );
+                }
+                return hash( name );
+            case LEAST_USED:
+                return leastUsed();
+            default:
+                return hash( name );
+        }
+    }
+
+    private File hash( final String name ) {
+        return roots.get( ( name.hashCode() & Integer.MAX_VALUE ) % roots.size() );
+    }
+
+    private File leastUsed() {
+        File result = null;
+        int resultCount = Integer.MAX_VALUE;
+        for ( final File root : roots ) {
+            final int count = countRepositories( root );
+            if ( count < resultCount ) {
+                result = root;
+                resultCount = count;
+            }
+        }
+        return result;
+    }
+
+    private int countRepositories( final File root ) {
+        final String[] repos = root.list( new FilenameFilter() {
+            @Override
+            public boolean accept( final File dir,
+                                   final String name ) {
+                return name.endsWith( DOT_GIT_EXT );
+            }
+        } );
+        return repos == null ? 0 : repos.length;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit.daemon;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+import org.eclipse.jgit.internal.storage.pack.PackWriter;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.pack.PackConfig;
+import org.eclipse.jgit.transport.UploadPack;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.uberfire.java.nio.fs.jgit.util.JGitUtil;
+
+/**
+ * Builds the {@link UploadPack} used by the git daemon and the ssh service, and accounts for what each upload cost:
+ * bytes and objects sent, how many objects were reused as-is from existing packs, and the wall and CPU time of the
+ * serving thread. Every upload is logged at debug level; totals are kept for monitoring.
+ */
+public class UploadStatistics {
+
+    private static final Logger LOG = LoggerFactory.getLogger( UploadStatistics.class );
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private final AtomicLong uploads = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong objects = new AtomicLong();
+    private final AtomicLong reusedObjects = new AtomicLong();
+    private final AtomicLong time = new AtomicLong();
+    private final AtomicLong cpuTime = new AtomicLong();
+
+    /**
+     * Objects already in a pack are copied verbatim (no inflate, delta search or deflate), and the bitmap index
+     * written by {@link JGitUtil#gc(org.eclipse.jgit.api.Git)} replaces the object graph walk for full clones.
+     */
+    public UploadPack newUploadPack( final Repository repository ) {
+        final UploadPack up = new UploadPack( repository );
+
+        final PackConfig config = JGitUtil.newPackConfig( repository );
+        config.setCompressionLevel( Deflater.BEST_COMPRESSION );
+        up.setPackConfig( config );
+
+        return up;
+    }
+
+    public void upload( final Repository repository,
+                        final UploadPack up,
+                        final InputStream in,
+                        final OutputStream out,
+                        final OutputStream err ) throws IOException {
+        final long start = System.currentTimeMillis();
+        final long cpuStart = currentThreadCpuTime();
+        try {
+            up.upload( in, out, err );
+        } finally {
+            record( repository, up.getPackStatistics(), System.currentTimeMillis() - start, currentThreadCpuTime() - cpuStart );
+        }
+    }
+
+    private void record( final Repository repository,
+                         final PackWriter.Statistics stats,
+                         final long elapsed,
+                         final long cpu ) {
+        if ( stats == null ) {
+            //negotiation only, nothing was sent
+            return;
+        }
+        uploads.incrementAndGet();
+        bytes.addAndGet( stats.getTotalBytes() );
+        objects.addAndGet( stats.getTotalObjects() );
+        reusedObjects.addAndGet( stats.getReusedObjects() );
+        time.addAndGet( elapsed );
+        cpuTime.addAndGet( cpu );
+
+        if ( LOG.isDebugEnabled() ) {
+            LOG.debug( "Served " + stats.getTotalBytes() + " bytes (" + stats.getTotalObjects() + " objects, " + stats.getReusedObjects() + " reused) of repository '" + repository + "' in " + elapsed + "ms, " + ( cpu / 1000000 ) + "ms CPU." );
+        }
+    }
+
+    private long currentThreadCpuTime() {
+        if ( !threadMXBean.isCurrentThreadCpuTimeSupported() ) {
+            return 0;
+        }
+        return threadMXBean.getCurrentThreadCpuTime();
+    }
+
+    public long getUploadCount() {
+        return uploads.get();
+    }
+
+    public long getBytesServed() {
+        return bytes.get();
+    }
+
+    public long getObjectsServed() {
+        return objects.get();
+    }
+
+    public long getReusedObjects() {
+        return reusedObjects.get();
+    }
+
+    /**
+     * @return wall time spent serving uploads, in milliseconds
+     */
+    public long getTime() {
+        return time.get();
+    }
+
+    /**
+     * @return CPU time spent serving uploads, in nanoseconds; zero if the JVM doesn't measure thread CPU time
+     */
+    public long getCpuTime() {
+        return cpuTime.get();
+    }
+}
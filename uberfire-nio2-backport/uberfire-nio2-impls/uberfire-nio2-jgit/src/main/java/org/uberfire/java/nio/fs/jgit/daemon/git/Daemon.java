@@ -29,12 +29,10 @@ import java.net.Socket;
 import java.net.SocketAddress;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.zip.Deflater;
 
 import org.eclipse.jgit.errors.RepositoryNotFoundException;
 import org.eclipse.jgit.internal.JGitText;
 import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.storage.pack.PackConfig;
 import org.eclipse.jgit.transport.ServiceMayNotContinueException;
 import org.eclipse.jgit.transport.UploadPack;
 import org.eclipse.jgit.transport.resolver.RepositoryResolver;
@@ -43,6 +41,7 @@ import org.eclipse.jgit.transport.resolver.ServiceNotEnabledException;
 import org.eclipse.jgit.transport.resolver.UploadPackFactory;
 import org.uberfire.commons.async.DescriptiveRunnable;
 import org.uberfire.commons.async.SimpleAsyncExecutorService;
+import org.uberfire.java.nio.fs.jgit.daemon.UploadStatistics;
 
 /**
  * Basic daemon for the anonymous <code>git://</code> transport protocol.
@@ -68,6 +67,8 @@ public class Daemon {
 
     private volatile UploadPackFactory<DaemonClient> uploadPackFactory;
 
+    private volatile UploadStatistics uploadStatistics = new UploadStatistics();
+
     private ServerSocket listenSock = null;
 
     private final Executor acceptThreadPool;
@@ -95,13 +96,9 @@ public class Daemon {
                                       Repository db )
                                               throws ServiceNotEnabledException,
                                               ServiceNotAuthorizedException {
-                final UploadPack up = new UploadPack( db );
+                final UploadPack up = uploadStatistics.newUploadPack( db );
                 up.setTimeout( getTimeout() );
 
-                final PackConfig config = new PackConfig( db );
-                config.setCompressionLevel( Deflater.BEST_COMPRESSION );
-                up.setPackConfig( config );
-
                 return up;
             }
         };
@@ -119,7 +116,7 @@ public class Daemon {
                 UploadPack up = uploadPackFactory.create( dc, db );
                 InputStream in = dc.getInputStream();
                 OutputStream out = dc.getOutputStream();
-                up.upload( in, out, null );
+                uploadStatistics.upload( db, up, in, out, null );
             }
         } };
     }
@@ -190,6 +187,17 @@ public class Daemon {
         }
     }
 
+    /**
+     * Sets where bytes and time spent serving upload-pack requests are accounted.
+     */
+    public void setUploadStatistics( final UploadStatistics uploadStatistics ) {
+        this.uploadStatistics = checkNotNull( "uploadStatistics", uploadStatistics );
+    }
+
+    public UploadStatistics getUploadStatistics() {
+        return uploadStatistics;
+    }
+
     /**
      * Starts this daemon listening for connections on a thread supplied by the executor service given to the
      * constructor. The daemon can be stopped by a call to {@link #stop()} or by shutting down the ExecutorService.
@@ -33,6 +33,7 @@ import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
 import org.apache.sshd.server.session.ServerSession;
 import org.eclipse.jgit.transport.resolver.ReceivePackFactory;
 import org.uberfire.java.nio.fs.jgit.JGitFileSystemProvider;
+import org.uberfire.java.nio.fs.jgit.daemon.UploadStatistics;
 import org.uberfire.java.nio.security.FileSystemAuthenticator;
 import org.uberfire.java.nio.security.FileSystemAuthorizer;
 import org.uberfire.java.nio.security.FileSystemUser;
@@ -44,6 +45,7 @@ public class GitSSHService {
     private final SshServer sshd = SshServer.setUpDefaultServer();
     private FileSystemAuthenticator fileSystemAuthenticator;
     private FileSystemAuthorizer fileSystemAuthorizer;
+    private UploadStatistics uploadStatistics = new UploadStatistics();
 
     public void setup( final File certDir,
                        final InetSocketAddress inetSocketAddress,
@@ -82,7 +84,7 @@ public class GitSSHService {
             @Override
             public Command createCommand( String command ) {
                 if ( command.startsWith( "git-upload-pack" ) ) {
-                    return new GitUploadCommand( command, repositoryResolver, getAuthorizationManager() );
+                    return new GitUploadCommand( command, repositoryResolver, getAuthorizationManager(), getUploadStatistics() );
                 } else if ( command.startsWith( "git-receive-pack" ) ) {
                     return new GitReceiveCommand( command, repositoryResolver, getAuthorizationManager(), receivePackFactory );
                 } else {
@@ -147,4 +149,12 @@ public class GitSSHService {
     public void setAuthorizationManager( FileSystemAuthorizer fileSystemAuthorizer ) {
         this.fileSystemAuthorizer = fileSystemAuthorizer;
     }
+
+    public UploadStatistics getUploadStatistics() {
+        return uploadStatistics;
+    }
+
+    public void setUploadStatistics( final UploadStatistics uploadStatistics ) {
+        this.uploadStatistics = checkNotNull( "uploadStatistics", uploadStatistics );
+    }
 }
@@ -19,24 +19,25 @@ package org.uberfire.java.nio.fs.jgit.daemon.ssh;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.zip.Deflater;
 
-import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.storage.pack.PackConfig;
 import org.eclipse.jgit.transport.UploadPack;
 import org.uberfire.java.nio.fs.jgit.JGitFileSystem;
 import org.uberfire.java.nio.fs.jgit.JGitFileSystemProvider;
-import org.uberfire.java.nio.fs.jgit.util.JGitUtil;
+import org.uberfire.java.nio.fs.jgit.daemon.UploadStatistics;
 import org.uberfire.java.nio.security.FileSystemAuthorizer;
 import org.uberfire.java.nio.security.FileSystemUser;
 
 public class GitUploadCommand extends BaseGitCommand {
 
+    private final UploadStatistics uploadStatistics;
+
     public GitUploadCommand( final String command,
                              final JGitFileSystemProvider.RepositoryResolverImpl<BaseGitCommand> repositoryResolver,
-                             final FileSystemAuthorizer fileSystemAuthorizer ) {
+                             final FileSystemAuthorizer fileSystemAuthorizer,
+                             final UploadStatistics uploadStatistics ) {
         super( command, fileSystemAuthorizer, repositoryResolver );
+        this.uploadStatistics = uploadStatistics;
     }
 
     @Override
@@ -51,14 +52,10 @@ public class GitUploadCommand extends BaseGitCommand {
                             final OutputStream out,
                             final OutputStream err,
                             final JGitFileSystem fileSystem ) {
-        final UploadPack up = new UploadPack( repository );
-
-        final PackConfig config = new PackConfig( repository );
-        config.setCompressionLevel( Deflater.BEST_COMPRESSION );
-        up.setPackConfig( config );
+        final UploadPack up = uploadStatistics.newUploadPack( repository );
 
         try {
-            up.upload( in, out, err );
+            uploadStatistics.upload( repository, up, in, out, err );
         } catch ( IOException e ) {
         }
     }
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit.util;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+
+import org.uberfire.java.nio.IOException;
+import org.uberfire.java.nio.channels.SeekableByteChannel;
+
+import static org.uberfire.commons.validation.Preconditions.*;
+
+/**
+ * Read only {@link SeekableByteChannel} over the content of a git blob. Content is either held in memory (small blobs)
+ * or read from a temp file shared by all channels opened for the same blob, see {@link BlobByteChannelFactory}.
+ */
+public class BlobByteChannel implements SeekableByteChannel {
+
+    private final byte[] content;
+    private final FileChannel fileChannel;
+    private final Runnable onClose;
+    private long position = 0;
+    private boolean open = true;
+
+    BlobByteChannel( final byte[] content ) {
+        this.content = checkNotNull( "content", content );
+        this.fileChannel = null;
+        this.onClose = null;
+    }
+
+    BlobByteChannel( final FileChannel fileChannel,
+                     final Runnable onClose ) {
+        this.content = null;
+        this.fileChannel = checkNotNull( "fileChannel", fileChannel );
+        this.onClose = onClose;
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position( final long newPosition ) throws IOException {
+        ensureOpen();
+        if ( newPosition < 0 ) {
+            throw new IllegalArgumentException( "Position can't be negative." );
+        }
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        if ( content != null ) {
+            return content.length;
+        }
+        try {
+            return fileChannel.size();
+        } catch ( java.io.IOException e ) {
+            throw new IOException( e );
+        }
+    }
+
+    @Override
+    public SeekableByteChannel truncate( final long size ) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized int read( final ByteBuffer dst ) throws java.io.IOException {
+        ensureOpen();
+        if ( position >= size() ) {
+            return -1;
+        }
+        if ( content != null ) {
+            final int length = (int) Math.min( dst.remaining(), content.length - position );
+            dst.put( content, (int) position, length );
+            position += length;
+            return length;
+        }
+        final int read = fileChannel.read( dst, position );
+        if ( read > 0 ) {
+            position += read;
+        }
+        return read;
+    }
+
+    @Override
+    public int write( final ByteBuffer src ) throws java.io.IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized void close() throws java.io.IOException {
+        if ( !open ) {
+            return;
+        }
+        open = false;
+        if ( fileChannel != null ) {
+            try {
+                fileChannel.close();
+            } finally {
+                if ( onClose != null ) {
+                    onClose.run();
+                }
+            }
+        }
+    }
+
+    private void ensureOpen() {
+        if ( !open ) {
+            throw new IOException( new ClosedChannelException() );
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.uberfire.java.nio.IOException;
+import org.uberfire.java.nio.channels.SeekableByteChannel;
+
+import static org.uberfire.commons.validation.Preconditions.*;
+
+/**
+ * Opens {@link BlobByteChannel}s. Blobs up to <code>threshold</code> bytes are served from the loader cached bytes;
+ * bigger ones are streamed once into a temp file that is shared by every open channel of the same object id and
+ * removed when the last of them is closed.
+ */
+public class BlobByteChannelFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger( BlobByteChannelFactory.class );
+
+    private final long threshold;
+    private final Map<ObjectId, SharedBlobFile> sharedFiles = new HashMap<ObjectId, SharedBlobFile>();
+
+    public BlobByteChannelFactory( final long threshold ) {
+        this.threshold = threshold;
+    }
+
+    public SeekableByteChannel open( final Repository repository,
+                                     final ObjectId blobId ) throws IOException {
+        checkNotNull( "repository", repository );
+        checkNotNull( "blobId", blobId );
+
+        try {
+            final ObjectLoader loader = repository.open( blobId, Constants.OBJ_BLOB );
+            if ( !loader.isLarge() && loader.getSize() <= threshold ) {
+                return new BlobByteChannel( loader.getCachedBytes() );
+            }
+
+            final SharedBlobFile sharedFile = acquire( blobId );
+            try {
+                final File file = sharedFile.materialize( loader );
+                return new BlobByteChannel( new RandomAccessFile( file, "r" ).getChannel(), new Runnable() {
+                    @Override
+                    public void run() {
+                        release( blobId );
+                    }
+                } );
+            } catch ( final java.io.IOException e ) {
+                release( blobId );
+                throw e;
+            }
+        } catch ( final java.io.IOException e ) {
+            throw new IOException( e );
+        }
+    }
+
+    /**
+     * @return number of blobs currently backed by a temp file
+     */
+    public synchronized int getSharedFileCount() {
+        return sharedFiles.size();
+    }
+
+    public synchronized void dispose() {
+        for ( final SharedBlobFile sharedFile : sharedFiles.values() ) {
+            sharedFile.delete();
+        }
+        sharedFiles.clear();
+    }
+
+    private synchronized SharedBlobFile acquire( final ObjectId blobId ) {
+        SharedBlobFile sharedFile = sharedFiles.get( blobId );
+        if ( sharedFile == null ) {
+            sharedFile = new SharedBlobFile( blobId );
+            sharedFiles.put( blobId.copy(), sharedFile );
+        }
+        sharedFile.references++;
+        return sharedFile;
+    }
+
+    private synchronized void release( final ObjectId blobId ) {
+        final SharedBlobFile sharedFile = sharedFiles.get( blobId );
+        if ( sharedFile == null ) {
+            return;
+        }
+        sharedFile.references--;
+        if ( sharedFile.references <= 0 ) {
+            sharedFiles.remove( blobId );
+            sharedFile.delete();
+        }
+    }
+
+    private static class SharedBlobFile {
+
+        private final ObjectId blobId;
+        private int references = 0;
+        private File file = null;
+
+        SharedBlobFile( final ObjectId blobId ) {
+            this.blobId = blobId.copy();
+        }
+
+        //first caller writes the content, the others wait for it
+        synchronized File materialize( final ObjectLoader loader ) throws java.io.IOException {
+            if ( file == null ) {
+                final File temp = File.createTempFile( "blob", blobId.name() );
+                final OutputStream out = new FileOutputStream( temp );
+                try {
+                    loader.copyTo( out );
+                } catch ( final java.io.IOException e ) {
+                    out.close();
+                    temp.delete();
+                    throw e;
+                }
+                out.close();
+                file = temp;
+            }
+            return file;
+        }
+
+        synchronized void delete() {
+            if ( file != null && !file.delete() ) {
+                LOG.warn( "Unable to remove blob temp file '" + file + "'." );
+                file.deleteOnExit();
+            }
+            file = null;
+        }
+    }
+}
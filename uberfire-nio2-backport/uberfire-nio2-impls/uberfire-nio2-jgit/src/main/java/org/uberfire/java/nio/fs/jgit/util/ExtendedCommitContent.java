@@ -0,0 +1,44 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit.util;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * Wraps another commit content adding extra files (or deletions, when the file is null) to the same commit, so
+ * metadata kept next to the content (e.g. consolidated attribute files) is updated atomically with it.
+ */
+public class ExtendedCommitContent implements CommitContent {
+
+    private final CommitContent content;
+    private final Map<String, File> extraContent;
+
+    public ExtendedCommitContent( final CommitContent content,
+                                  final Map<String, File> extraContent ) {
+        this.content = content;
+        this.extraContent = extraContent;
+    }
+
+    public CommitContent getContent() {
+        return content;
+    }
+
+    public Map<String, File> getExtraContent() {
+        return extraContent;
+    }
+}
@@ -28,6 +28,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -35,7 +36,6 @@ import java.util.Set;
 import java.util.TimeZone;
 
 import org.apache.commons.io.FileUtils;
-import org.eclipse.jgit.api.CreateBranchCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.ListBranchCommand;
 import org.eclipse.jgit.api.LogCommand;
@@ -46,13 +46,23 @@ import org.eclipse.jgit.api.errors.JGitInternalException;
 import org.eclipse.jgit.api.errors.MultipleParentsNotAllowedException;
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
 import org.eclipse.jgit.dircache.DirCacheEditor;
 import org.eclipse.jgit.dircache.DirCacheEntry;
 import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.dfs.DfsGarbageCollector;
+import org.eclipse.jgit.internal.storage.dfs.DfsPackFile;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepository;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
 import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.PackFile;
+import org.eclipse.jgit.internal.storage.pack.PackExt;
+import org.eclipse.jgit.lib.BatchRefUpdate;
 import org.eclipse.jgit.lib.CommitBuilder;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.NullProgressMonitor;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectInserter;
 import org.eclipse.jgit.lib.ObjectReader;
@@ -64,12 +74,17 @@ import org.eclipse.jgit.lib.RepositoryCache;
 import org.eclipse.jgit.lib.StoredConfig;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.pack.PackConfig;
 import org.eclipse.jgit.transport.CredentialsProvider;
 import org.eclipse.jgit.transport.FetchResult;
+import org.eclipse.jgit.transport.ReceiveCommand;
 import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.TrackingRefUpdate;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
 import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
 import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 import org.uberfire.commons.data.Pair;
 import org.uberfire.java.nio.IOException;
 import org.uberfire.java.nio.base.FileTimeImpl;
@@ -137,6 +152,90 @@ public final class JGitUtil {
         return git;
     }
 
+    /**
+     * Creates a repository backed by JGit's DFS in-memory storage. Nothing is written to disk, so the content lives
+     * only as long as the returned instance; use {@link #exportRepository(Git, File)} to persist it.
+     */
+    public static Git newInMemoryRepository( final String name ) throws IOException {
+        checkNotEmpty( "name", name );
+
+        final InMemoryRepository repository = new InMemoryRepository( new DfsRepositoryDescription( name ) );
+        try {
+            repository.create( true );
+        } catch ( final java.io.IOException e ) {
+            throw new IOException( e );
+        }
+
+        return new Git( repository );
+    }
+
+    public static Git cloneInMemoryRepository( final String name,
+                                               final String fromURI,
+                                               final CredentialsProvider credentialsProvider ) {
+        final Git git = newInMemoryRepository( name );
+
+        try {
+            final StoredConfig config = git.getRepository().getConfig();
+            config.setString( "remote", DEFAULT_REMOTE_NAME, "url", fromURI );
+            config.save();
+
+            git.fetch()
+                    .setCredentialsProvider( credentialsProvider )
+                    .setRemote( DEFAULT_REMOTE_NAME )
+                    .setRefSpecs( new RefSpec( "+refs/heads/*:refs/heads/*" ),
+                                  new RefSpec( "+refs/heads/*:refs/remotes/origin/*" ),
+                                  new RefSpec( "+refs/tags/*:refs/tags/*" ),
+                                  new RefSpec( "+refs/notes/*:refs/notes/*" ) )
+                    .call();
+        } catch ( final Exception ex ) {
+            git.getRepository().close();
+            throw new RuntimeException( ex );
+        }
+
+        return git;
+    }
+
+    public static boolean isInMemory( final Git git ) {
+        return git.getRepository() instanceof DfsRepository;
+    }
+
+    /**
+     * Copies all branches, tags and notes of the given repository into a bare repository at the given folder,
+     * creating it if needed. Existing refs on the destination are overwritten.
+     */
+    public static Git exportRepository( final Git git,
+                                        final File repoFolder ) {
+        checkNotNull( "git", git );
+        checkNotNull( "repoFolder", repoFolder );
+
+        final Git target;
+        final File gitDir = RepositoryCache.FileKey.resolve( repoFolder, DETECTED );
+        try {
+            if ( gitDir != null && gitDir.exists() ) {
+                target = new Git( new FileRepository( gitDir ) );
+            } else {
+                target = newRepository( repoFolder, true );
+            }
+        } catch ( final java.io.IOException e ) {
+            throw new IOException( e );
+        }
+
+        try {
+            git.push()
+                    .setRemote( repoFolder.getAbsolutePath() )
+                    .setRefSpecs( new RefSpec( "+refs/heads/*:refs/heads/*" ),
+                                  new RefSpec( "+refs/tags/*:refs/tags/*" ),
+                                  new RefSpec( "+refs/notes/*:refs/notes/*" ) )
+                    .setForce( true )
+                    .call();
+        } catch ( final Exception ex ) {
+            target.getRepository().close();
+            throw new IOException( ex );
+        }
+
+        return target;
+    }
+
     public static List<Ref> branchList( final Git git ) {
         checkNotNull( "git", git );
         return branchList( git, null );
@@ -161,12 +260,10 @@ public final class JGitUtil {
 
         final String gitPath = fixPath( path );
 
-        RevWalk rw = null;
-        TreeWalk tw = null;
+        final ReaderContext context = ReaderContext.acquire( git.getRepository() );
         try {
-            final ObjectId tree = git.getRepository().resolve( treeRef + "^{tree}" );
-            rw = new RevWalk( git.getRepository() );
-            tw = new TreeWalk( git.getRepository() );
+            final ObjectId tree = context.resolveTree( treeRef );
+            final TreeWalk tw = context.treeWalk();
             tw.setFilter( createFromStrings( singleton( gitPath ) ) );
             tw.reset( tree );
             while ( tw.next() ) {
@@ -174,17 +271,12 @@ public final class JGitUtil {
                     tw.enterSubtree();
                     continue;
                 }
-                return new ByteArrayInputStream( git.getRepository().open( tw.getObjectId( 0 ), Constants.OBJ_BLOB ).getBytes() );
+                return new ByteArrayInputStream( context.reader().open( tw.getObjectId( 0 ), Constants.OBJ_BLOB ).getBytes() );
             }
         } catch ( final Throwable t ) {
             throw new NoSuchFileException( "Can't find '" + gitPath + "' in tree '" + treeRef + "'" );
         } finally {
-            if ( rw != null ) {
-                rw.dispose();
-            }
-            if ( tw != null ) {
-                tw.release();
-            }
+            context.release();
         }
         throw new NoSuchFileException( "Can't find '" + gitPath + "' in tree '" + treeRef + "'" );
     }
@@ -251,9 +343,9 @@ public final class JGitUtil {
         }
     }
 
-    public static void fetchRepository( final Git git,
-                                        final CredentialsProvider credentialsProvider,
-                                        final RefSpec... refSpecs )
+    public static FetchResult fetchRepository( final Git git,
+                                               final CredentialsProvider credentialsProvider,
+                                               final RefSpec... refSpecs )
             throws InvalidRemoteException {
         final List<RefSpec> specs = new ArrayList<RefSpec>();
         if ( refSpecs == null || refSpecs.length == 0 ) {
@@ -265,11 +357,10 @@ public final class JGitUtil {
         }
 
         try {
-            final FetchResult result = git.fetch()
+            return git.fetch()
                     .setCredentialsProvider( credentialsProvider )
                     .setRefSpecs( specs )
                     .call();
-
         } catch ( final InvalidRemoteException e ) {
             throw e;
         } catch ( final Exception ex ) {
@@ -277,77 +368,199 @@ public final class JGitUtil {
         }
     }
 
-    public static void syncRepository( final Git git,
-                                       final CredentialsProvider credentialsProvider,
-                                       final String origin,
-                                       boolean force )
+    /**
+     * Brings the local branches, tags and notes in line with <code>origin</code>. Only refs whose advertised tip
+     * differs from the local one are fetched, and local branches are moved in a single batched ref update; when
+     * nothing moved on the remote side no fetch happens at all.
+     */
+    public static SyncResult syncRepository( final Git git,
+                                             final CredentialsProvider credentialsProvider,
+                                             final String origin,
+                                             boolean force )
             throws InvalidRemoteException {
+        return syncRepository( git, credentialsProvider, origin, force, null );
+    }
+
+    /**
+     * Same as {@link #syncRepository(Git, CredentialsProvider, String, boolean)}, but when the tips of the refs that
+     * moved on <code>origin</code> are already known (e.g. notified by the node that moved them) only those refs are
+     * checked and fetched, without listing the remote ones; nothing is fetched if the local tips already match.
+     * @param knownTips ref name to tip on <code>origin</code>, null to list the remote refs
+     */
+    public static SyncResult syncRepository( final Git git,
+                                             final CredentialsProvider credentialsProvider,
+                                             final String origin,
+                                             boolean force,
+                                             final Map<String, ObjectId> knownTips )
+            throws InvalidRemoteException {
+        final long start = System.currentTimeMillis();
+        final Repository repository = git.getRepository();
 
         if ( origin == null || origin.isEmpty() ) {
-            fetchRepository( git, credentialsProvider );
-        } else {
-            try {
-                final StoredConfig config = git.getRepository().getConfig();
+            final long packSizeBefore = packSize( repository );
+            final FetchResult fetchResult = fetchRepository( git, credentialsProvider );
+            final List<String> updatedRefs = new ArrayList<String>();
+            for ( final TrackingRefUpdate update : fetchResult.getTrackingRefUpdates() ) {
+                updatedRefs.add( update.getLocalName() );
+            }
+            return new SyncResult( System.currentTimeMillis() - start,
+                                   Math.max( 0, packSize( repository ) - packSizeBefore ),
+                                   updatedRefs );
+        }
+
+        try {
+            final StoredConfig config = repository.getConfig();
+            if ( !origin.equals( config.getString( "remote", "upstream", "url" ) ) ) {
                 config.setString( "remote", "upstream", "url", origin );
                 config.save();
-            } catch ( final Exception ex ) {
-                throw new RuntimeException( ex );
+            }
+        } catch ( final Exception ex ) {
+            throw new RuntimeException( ex );
+        }
+
+        try {
+            final Map<String, ObjectId> remoteTips;
+            if ( knownTips != null ) {
+                remoteTips = knownTips;
+            } else {
+                remoteTips = new HashMap<String, ObjectId>();
+                for ( final Ref advertised : git.lsRemote()
+                        .setCredentialsProvider( credentialsProvider )
+                        .setRemote( origin )
+                        .call() ) {
+                    remoteTips.put( advertised.getName(), advertised.getObjectId() );
+                }
             }
 
             final List<RefSpec> specs = new ArrayList<RefSpec>();
-            specs.add( new RefSpec( "+refs/heads/*:refs/remotes/upstream/*" ) );
-            specs.add( new RefSpec( "+refs/tags/*:refs/tags/*" ) );
-            specs.add( new RefSpec( "+refs/notes/*:refs/notes/*" ) );
+            final Map<String, ObjectId> movedBranches = new HashMap<String, ObjectId>();
+            final List<String> updatedRefs = new ArrayList<String>();
 
-            try {
+            for ( final Map.Entry<String, ObjectId> advertised : remoteTips.entrySet() ) {
+                final String refName = advertised.getKey();
+                final ObjectId remoteTip = advertised.getValue();
+                if ( remoteTip == null ) {
+                    continue;
+                }
+                if ( refName.startsWith( R_HEADS ) ) {
+                    final String trackingRefName = R_REMOTES + "upstream/" + refName.substring( R_HEADS.length() );
+                    if ( !remoteTip.equals( resolveRefId( repository, trackingRefName ) ) ) {
+                        specs.add( new RefSpec( "+" + refName + ":" + trackingRefName ) );
+                        updatedRefs.add( trackingRefName );
+                    }
+                    if ( !remoteTip.equals( resolveRefId( repository, refName ) ) ) {
+                        movedBranches.put( refName, remoteTip );
+                    }
+                } else if ( refName.startsWith( R_TAGS ) || refName.startsWith( R_NOTES ) ) {
+                    if ( !remoteTip.equals( resolveRefId( repository, refName ) ) ) {
+                        specs.add( new RefSpec( "+" + refName + ":" + refName ) );
+                        updatedRefs.add( refName );
+                    }
+                }
+            }
+
+            long bytesReceived = 0;
+            if ( !specs.isEmpty() ) {
+                final long packSizeBefore = packSize( repository );
                 git.fetch()
                         .setCredentialsProvider( credentialsProvider )
                         .setRefSpecs( specs )
                         .setRemote( origin )
                         .call();
+                bytesReceived = Math.max( 0, packSize( repository ) - packSizeBefore );
+            }
 
-                final List<Ref> branches = git.branchList().setListMode( ListBranchCommand.ListMode.ALL ).call();
-
-                final Set<String> remoteBranches = new HashSet<String>();
-                final Set<String> localBranches = new HashSet<String>();
-
-                for ( final Ref branch : branches ) {
-                    final String branchName = branch.getName().substring( branch.getName().lastIndexOf( "/" ) + 1 );
-                    if ( branch.getName().startsWith( "refs/remotes" ) ) {
-                        remoteBranches.add( branchName );
-                    } else {
-                        localBranches.add( branchName );
+            if ( !movedBranches.isEmpty() ) {
+                //the branch may have moved again on origin since it was listed or notified, follow what was fetched
+                for ( final Iterator<Map.Entry<String, ObjectId>> iterator = movedBranches.entrySet().iterator(); iterator.hasNext(); ) {
+                    final Map.Entry<String, ObjectId> entry = iterator.next();
+                    final ObjectId fetchedTip = resolveRefId( repository, R_REMOTES + "upstream/" + entry.getKey().substring( R_HEADS.length() ) );
+                    if ( fetchedTip != null && fetchedTip.equals( resolveRefId( repository, entry.getKey() ) ) ) {
+                        iterator.remove();
+                    } else if ( fetchedTip != null ) {
+                        entry.setValue( fetchedTip );
                     }
                 }
+            }
 
-                for ( final String localBranch : localBranches ) {
-                    if ( remoteBranches.contains( localBranch ) ) {
-                        git.branchCreate()
-                                .setName( localBranch )
-                                .setUpstreamMode( CreateBranchCommand.SetupUpstreamMode.SET_UPSTREAM )
-                                .setStartPoint( "upstream/" + localBranch )
-                                .setForce( true )
-                                .call();
-                    }
-                }
+            if ( !movedBranches.isEmpty() ) {
+                updateBranches( repository, movedBranches );
+                updatedRefs.addAll( movedBranches.keySet() );
+            }
 
-                remoteBranches.removeAll( localBranches );
+            return new SyncResult( System.currentTimeMillis() - start, bytesReceived, updatedRefs );
+        } catch ( final InvalidRemoteException e ) {
+            throw e;
+        } catch ( final Exception ex ) {
+            throw new RuntimeException( ex );
+        }
+    }
 
-                for ( final String branch : remoteBranches ) {
-                    git.branchCreate()
-                            .setName( branch )
-                            .setUpstreamMode( CreateBranchCommand.SetupUpstreamMode.SET_UPSTREAM )
-                            .setStartPoint( "upstream/" + branch )
-                            .setForce( true )
-                            .call();
-                }
+    private static ObjectId resolveRefId( final Repository repository,
+                                          final String refName ) throws java.io.IOException {
+        final Ref ref = repository.getRef( refName );
+        if ( ref == null ) {
+            return null;
+        }
+        return ref.getObjectId();
+    }
 
-            } catch ( final InvalidRemoteException e ) {
-                throw e;
-            } catch ( final Exception ex ) {
-                throw new RuntimeException( ex );
+    private static void updateBranches( final Repository repository,
+                                        final Map<String, ObjectId> branches ) throws java.io.IOException {
+        final BatchRefUpdate batch = repository.getRefDatabase().newBatchUpdate();
+        batch.setAllowNonFastForwards( true );
+        batch.setRefLogMessage( "sync: upstream", false );
+
+        final List<String> newBranches = new ArrayList<String>();
+        for ( final Map.Entry<String, ObjectId> entry : branches.entrySet() ) {
+            final ObjectId currentTip = resolveRefId( repository, entry.getKey() );
+            if ( currentTip == null ) {
+                newBranches.add( entry.getKey() );
+            }
+            batch.addCommand( new ReceiveCommand( currentTip == null ? ObjectId.zeroId() : currentTip,
+                                                  entry.getValue(),
+                                                  entry.getKey() ) );
+        }
+
+        final RevWalk revWalk = new RevWalk( repository );
+        try {
+            batch.execute( revWalk, NullProgressMonitor.INSTANCE );
+        } finally {
+            revWalk.release();
+        }
+
+        for ( final ReceiveCommand command : batch.getCommands() ) {
+            if ( command.getResult() != ReceiveCommand.Result.OK ) {
+                throw new IOException( "Failed to update '" + command.getRefName() + "': " + command.getResult() );
+            }
+        }
+
+        if ( !newBranches.isEmpty() ) {
+            final StoredConfig config = repository.getConfig();
+            for ( final String branch : newBranches ) {
+                final String shortName = branch.substring( R_HEADS.length() );
+                config.setString( "branch", shortName, "remote", "upstream" );
+                config.setString( "branch", shortName, "merge", branch );
+            }
+            config.save();
+        }
+    }
+
+    private static long packSize( final Repository repository ) {
+        long size = 0;
+        try {
+            if ( repository instanceof FileRepository ) {
+                for ( final PackFile pack : ( (FileRepository) repository ).getObjectDatabase().getPacks() ) {
+                    size += pack.getPackFile().length();
+                }
+            } else if ( repository instanceof DfsRepository ) {
+                for ( final DfsPackFile pack : ( (DfsRepository) repository ).getObjectDatabase().getPacks() ) {
+                    size += pack.getPackDescription().getFileSize( PackExt.PACK );
+                }
             }
+        } catch ( final java.io.IOException ignored ) {
         }
+        return size;
     }
 
     public static void pushRepository( final Git git,
@@ -462,10 +675,13 @@ public final class JGitUtil {
 
     public static ObjectId getTreeRefObjectId( final Repository repo,
                                                final String treeRef ) {
+        final ReaderContext context = ReaderContext.acquire( repo );
         try {
-            return repo.resolve( treeRef + "^{tree}" );
+            return context.resolveTree( treeRef );
         } catch ( java.io.IOException ex ) {
             throw new RuntimeException( ex );
+        } finally {
+            context.release();
         }
     }
 
@@ -561,21 +777,39 @@ public final class JGitUtil {
                     originId = _originId;
                 }
 
+                final CommitContent baseContent;
+                if ( content instanceof ExtendedCommitContent ) {
+                    baseContent = ( (ExtendedCommitContent) content ).getContent();
+                } else {
+                    baseContent = content;
+                }
+
+                final DirCache baseIndex;
+                if ( baseContent instanceof DefaultCommitContent ) {
+                    baseIndex = createTemporaryIndex( git, originId, (DefaultCommitContent) baseContent );
+                } else if ( baseContent instanceof MoveCommitContent ) {
+                    baseIndex = createTemporaryIndex( git, originId, (MoveCommitContent) baseContent );
+                } else if ( baseContent instanceof CopyCommitContent ) {
+                    baseIndex = createTemporaryIndex( git, originId, (CopyCommitContent) baseContent );
+                } else if ( baseContent instanceof RevertCommitContent ) {
+                    baseIndex = createTemporaryIndex( git, originId );
+                } else {
+                    baseIndex = null;
+                }
+
                 final DirCache index;
-                if ( content instanceof DefaultCommitContent ) {
-                    index = createTemporaryIndex( git, originId, (DefaultCommitContent) content );
-                } else if ( content instanceof MoveCommitContent ) {
-                    index = createTemporaryIndex( git, originId, (MoveCommitContent) content );
-                } else if ( content instanceof CopyCommitContent ) {
-                    index = createTemporaryIndex( git, originId, (CopyCommitContent) content );
-                } else if ( content instanceof RevertCommitContent ) {
-                    index = createTemporaryIndex( git, originId );
+                if ( content instanceof ExtendedCommitContent ) {
+                    index = applyExtraContent( git, originId, baseIndex, ( (ExtendedCommitContent) content ).getExtraContent() );
                 } else {
-                    index = null;
+                    index = baseIndex;
                 }
 
-                if ( index != null ) {
-                    final ObjectId indexTreeId = index.writeTree( odi );
+                final ObjectId indexTreeId = index != null ? index.writeTree( odi ) : null;
+
+                if ( indexTreeId != null && content instanceof ExtendedCommitContent && !amend && isSameTree( git, headId, indexTreeId ) ) {
+                    //extra content may not change anything, e.g. deleting a file that isn't there
+                    hadEffecitiveCommit = false;
+                } else if ( indexTreeId != null ) {
 
                     // Create a commit object
                     final CommitBuilder commit = new CommitBuilder();
@@ -750,6 +984,8 @@ public final class JGitUtil {
             }
 
             editor.finish();
+            //DFS based repositories only keep inserted objects once flushed
+            inserter.flush();
         } catch ( Exception e ) {
             throw new RuntimeException( e );
         } finally {
@@ -764,6 +1000,85 @@ public final class JGitUtil {
         return inCoreIndex;
     }
 
+    /**
+     * Copies the given index replacing (or removing, for null files) the extra paths.
+     */
+    private static DirCache applyExtraContent( final Git git,
+                                               final ObjectId headId,
+                                               final DirCache baseIndex,
+                                               final Map<String, File> extraContent ) {
+        final DirCache index = baseIndex != null ? baseIndex : createTemporaryIndex( git, headId );
+
+        final Map<String, File> extra = new HashMap<String, File>( extraContent.size() );
+        for ( final Map.Entry<String, File> entry : extraContent.entrySet() ) {
+            extra.put( fixPath( entry.getKey() ), entry.getValue() );
+        }
+
+        final DirCache inCoreIndex = DirCache.newInCore();
+        final DirCacheBuilder builder = inCoreIndex.builder();
+        final ObjectInserter inserter = git.getRepository().newObjectInserter();
+
+        try {
+            for ( int i = 0; i < index.getEntryCount(); i++ ) {
+                final DirCacheEntry entry = index.getEntry( i );
+                if ( !extra.containsKey( entry.getPathString() ) ) {
+                    builder.add( entry );
+                }
+            }
+
+            for ( final Map.Entry<String, File> pathAndContent : extra.entrySet() ) {
+                final File file = pathAndContent.getValue();
+                if ( file == null ) {
+                    continue;
+                }
+                final InputStream inputStream = new FileInputStream( file );
+                try {
+                    final ObjectId objectId = inserter.insert( Constants.OBJ_BLOB, file.length(), inputStream );
+                    final DirCacheEntry entry = new DirCacheEntry( pathAndContent.getKey() );
+                    entry.setLength( file.length() );
+                    entry.setLastModified( file.lastModified() );
+                    entry.setFileMode( REGULAR_FILE );
+                    entry.setObjectId( objectId );
+                    builder.add( entry );
+                } finally {
+                    inputStream.close();
+                }
+            }
+
+            builder.finish();
+            inserter.flush();
+        } catch ( final Exception e ) {
+            throw new RuntimeException( e );
+        } finally {
+            inserter.release();
+        }
+
+        return inCoreIndex;
+    }
+
+    private static boolean isSameTree( final Git git,
+                                       final ObjectId headId,
+                                       final ObjectId treeId ) throws java.io.IOException {
+        if ( headId == null ) {
+            return treeId.equals( emptyTreeId() );
+        }
+        final RevWalk revWalk = new RevWalk( git.getRepository() );
+        try {
+            return revWalk.parseCommit( headId ).getTree().getId().equals( treeId );
+        } finally {
+            revWalk.release();
+        }
+    }
+
+    private static ObjectId emptyTreeId() {
+        final ObjectInserter.Formatter formatter = new ObjectInserter.Formatter();
+        try {
+            return formatter.idFor( Constants.OBJ_TREE, new byte[ 0 ] );
+        } finally {
+            formatter.release();
+        }
+    }
+
     private static DirCache createTemporaryIndex( final Git git,
                                                   final ObjectId headId,
                                                   final MoveCommitContent commitContent ) {
@@ -1123,21 +1438,7 @@ public final class JGitUtil {
             @Override
             public FileTime lastModifiedTime() {
                 if ( lastModifiedDate == -1L ) {
-                    RevWalk revWalk = null;
-                    try {
-                        final LogCommand logCommand = fs.gitRepo().log().add( id ).setMaxCount( 1 );
-                        if ( !gPath.isEmpty() ) {
-                            logCommand.addPath( gPath );
-                        }
-                        revWalk = (RevWalk) logCommand.call();
-                        lastModifiedDate = revWalk.iterator().next().getCommitterIdent().getWhen().getTime();
-                    } catch ( Exception ex ) {
-                        lastModifiedDate = 0;
-                    } finally {
-                        if ( revWalk != null ) {
-                            revWalk.dispose();
-                        }
-                    }
+                    lastModifiedDate = lastCommitTime( fs.gitRepo(), id, gPath );
                 }
                 return new FileTimeImpl( lastModifiedDate );
             }
@@ -1150,21 +1451,7 @@ public final class JGitUtil {
             @Override
             public FileTime creationTime() {
                 if ( creationDate == -1L ) {
-                    RevWalk revWalk = null;
-                    try {
-                        final LogCommand logCommand = fs.gitRepo().log().add( id ).setMaxCount( 1 );
-                        if ( !gPath.isEmpty() ) {
-                            logCommand.addPath( gPath );
-                        }
-                        revWalk = (RevWalk) logCommand.call();
-                        creationDate = revWalk.iterator().next().getCommitterIdent().getWhen().getTime();
-                    } catch ( Exception ex ) {
-                        creationDate = 0;
-                    } finally {
-                        if ( revWalk != null ) {
-                            revWalk.dispose();
-                        }
-                    }
+                    creationDate = lastCommitTime( fs.gitRepo(), id, gPath );
                 }
                 return new FileTimeImpl( creationDate );
             }
@@ -1201,6 +1488,24 @@ public final class JGitUtil {
         };
     }
 
+    private static long lastCommitTime( final Git git,
+                                        final ObjectId id,
+                                        final String gPath ) {
+        final ReaderContext context = ReaderContext.acquire( git.getRepository() );
+        try {
+            final RevWalk revWalk = context.revWalk();
+            if ( !gPath.isEmpty() ) {
+                revWalk.setTreeFilter( AndTreeFilter.create( createFromStrings( singleton( gPath ) ), TreeFilter.ANY_DIFF ) );
+            }
+            revWalk.markStart( revWalk.parseCommit( id ) );
+            return revWalk.next().getCommitterIdent().getWhen().getTime();
+        } catch ( Exception ex ) {
+            return 0;
+        } finally {
+            context.release();
+        }
+    }
+
     public static void createBranch( final Git git,
                                      final String source,
                                      final String target ) {
@@ -1211,14 +1516,113 @@ public final class JGitUtil {
         }
     }
 
+    /**
+     * Pack settings shared by gc and clone/fetch serving: gc writes a bitmap index next to the pack, and uploads copy
+     * packed objects and deltas as they are instead of recompressing them.
+     */
+    public static PackConfig newPackConfig( final Repository repository ) {
+        final PackConfig config = new PackConfig( repository );
+        config.setBuildBitmaps( true );
+        return config;
+    }
+
     public static void gc( final Git git ) {
+        final PackConfig config = newPackConfig( git.getRepository() );
+        if ( isInMemory( git ) ) {
+            try {
+                new DfsGarbageCollector( (DfsRepository) git.getRepository() ).setPackConfig( config ).pack( NullProgressMonitor.INSTANCE );
+            } catch ( final java.io.IOException e ) {
+                throw new RuntimeException( e );
+            }
+            return;
+        }
         try {
-            git.gc().call();
+            git.gc().setPackConfig( config ).call();
         } catch ( GitAPIException e ) {
             throw new RuntimeException( e );
         }
     }
 
+    /**
+     * Squashes the history of a branch older than <code>cutoff</code> into a single root commit holding the tree of
+     * the newest commit before the cutoff; later commits are rewritten on top of it with their own tree, author,
+     * committer and message, so every retained snapshot (and the current content) is identical. History is followed
+     * by first parent. The ref is moved with a compare-and-set on the head the rewrite started from.
+     * @return false if there was nothing older than the cutoff to squash
+     */
+    public static boolean compactHistory( final Git git,
+                                          final String branchName,
+                                          final Date cutoff ) {
+        checkNotNull( "git", git );
+        checkNotEmpty( "branchName", branchName );
+        checkNotNull( "cutoff", cutoff );
+
+        final Repository repository = git.getRepository();
+        final RevWalk revWalk = new RevWalk( repository );
+        final ObjectInserter inserter = repository.newObjectInserter();
+        try {
+            final Ref branch = getBranch( git, branchName );
+            if ( branch == null ) {
+                return false;
+            }
+            final ObjectId headId = branch.getObjectId();
+            final int cutoffTime = (int) ( cutoff.getTime() / 1000 );
+
+            final LinkedList<RevCommit> retained = new LinkedList<RevCommit>();
+            RevCommit base = revWalk.parseCommit( headId );
+            while ( base != null && base.getCommitTime() >= cutoffTime ) {
+                retained.addFirst( base );
+                base = base.getParentCount() > 0 ? revWalk.parseCommit( base.getParent( 0 ) ) : null;
+            }
+            if ( base == null || base.getParentCount() == 0 ) {
+                return false;
+            }
+
+            final CommitBuilder root = new CommitBuilder();
+            root.setTreeId( base.getTree() );
+            root.setAuthor( base.getAuthorIdent() );
+            root.setCommitter( base.getCommitterIdent() );
+            root.setEncoding( Constants.CHARACTER_ENCODING );
+            root.setMessage( "history squashed up to " + base.getName() );
+            ObjectId newHead = inserter.insert( root );
+
+            for ( final RevCommit commit : retained ) {
+                final CommitBuilder rewritten = new CommitBuilder();
+                rewritten.setTreeId( commit.getTree() );
+                rewritten.setParentId( newHead );
+                rewritten.setAuthor( commit.getAuthorIdent() );
+                rewritten.setCommitter( commit.getCommitterIdent() );
+                rewritten.setEncoding( commit.getEncoding() );
+                rewritten.setMessage( commit.getFullMessage() );
+                newHead = inserter.insert( rewritten );
+            }
+            inserter.flush();
+
+            final RefUpdate ru = repository.updateRef( branch.getName() );
+            ru.setExpectedOldObjectId( headId );
+            ru.setNewObjectId( newHead );
+            ru.setRefLogMessage( "compact: history squashed up to " + base.getName(), false );
+            final RefUpdate.Result rc = ru.forceUpdate();
+            switch ( rc ) {
+                case FORCED:
+                case FAST_FORWARD:
+                    break;
+                case REJECTED:
+                case LOCK_FAILURE:
+                    throw new ConcurrentRefUpdateException( JGitText.get().couldNotLockHEAD, ru.getRef(), rc );
+                default:
+                    throw new JGitInternalException( MessageFormat.format( JGitText.get().updatingRefFailed, branch.getName(), newHead.toString(), rc ) );
+            }
+
+            return true;
+        } catch ( final Exception e ) {
+            throw new IOException( e );
+        } finally {
+            inserter.release();
+            revWalk.dispose();
+        }
+    }
+
     public static boolean hasBranch( final Git git,
                                      final String branchName ) {
         checkNotNull( "git", git );
@@ -1230,18 +1634,16 @@ public final class JGitUtil {
     public static RevCommit getLastCommit( final Git git,
                                            final String branchName ) {
 
-        RevWalk walk = null;
         RevCommit lastCommit = null;
+        final ReaderContext context = ReaderContext.acquire( git.getRepository() );
         try {
-            walk = new RevWalk( git.getRepository() );
+            final RevWalk walk = context.revWalk();
             final RevCommit head = walk.parseCommit( git.getRepository().resolve( branchName ) );
             walk.markStart( head );
             lastCommit = walk.next();
         } catch ( final Exception ignored ) {
         } finally {
-            if ( walk != null ) {
-                walk.dispose();
-            }
+            context.release();
         }
         return lastCommit;
     }
@@ -1263,10 +1665,10 @@ public final class JGitUtil {
             return newPair( PathType.DIRECTORY, null );
         }
 
-        TreeWalk tw = null;
+        final ReaderContext context = ReaderContext.acquire( git.getRepository() );
         try {
-            final ObjectId tree = git.getRepository().resolve( branchName + "^{tree}" );
-            tw = new TreeWalk( git.getRepository() );
+            final ObjectId tree = context.resolveTree( branchName );
+            final TreeWalk tw = context.treeWalk();
             tw.setFilter( PathFilter.create( gitPath ) );
             tw.reset( tree );
             while ( tw.next() ) {
@@ -1285,9 +1687,7 @@ public final class JGitUtil {
             }
         } catch ( final Throwable ignored ) {
         } finally {
-            if ( tw != null ) {
-                tw.release();
-            }
+            context.release();
         }
         return newPair( PathType.NOT_FOUND, null );
     }
@@ -1305,10 +1705,10 @@ public final class JGitUtil {
             return new JGitPathInfo( null, "/", TREE );
         }
 
-        TreeWalk tw = null;
+        final ReaderContext context = ReaderContext.acquire( git.getRepository() );
         try {
-            final ObjectId tree = git.getRepository().resolve( branchName + "^{tree}" );
-            tw = new TreeWalk( git.getRepository() );
+            final ObjectId tree = context.resolveTree( branchName );
+            final TreeWalk tw = context.treeWalk();
             tw.setFilter( PathFilter.create( gitPath ) );
             tw.reset( tree );
             while ( tw.next() ) {
@@ -1326,14 +1726,37 @@ public final class JGitUtil {
             }
         } catch ( final Throwable ignored ) {
         } finally {
-            if ( tw != null ) {
-                tw.release();
-            }
+            context.release();
         }
 
         return null;
     }
 
+    /**
+     * Lists the path of every file of the given branch, recursively.
+     */
+    public static List<String> listFiles( final Git git,
+                                          final String branchName ) {
+        final List<String> result = new ArrayList<String>();
+        final TreeWalk tw = new TreeWalk( git.getRepository() );
+        try {
+            final ObjectId tree = git.getRepository().resolve( branchName + "^{tree}" );
+            if ( tree == null ) {
+                return result;
+            }
+            tw.reset( tree );
+            tw.setRecursive( true );
+            while ( tw.next() ) {
+                result.add( tw.getPathString() );
+            }
+        } catch ( final java.io.IOException e ) {
+            throw new IOException( e );
+        } finally {
+            tw.release();
+        }
+        return result;
+    }
+
     public static List<JGitPathInfo> listPathContent( final Git git,
                                                       final String branchName,
                                                       final String path ) {
@@ -1343,11 +1766,11 @@ public final class JGitUtil {
 
         final String gitPath = fixPath( path );
 
-        TreeWalk tw = null;
         final List<JGitPathInfo> result = new ArrayList<JGitPathInfo>();
+        final ReaderContext context = ReaderContext.acquire( git.getRepository() );
         try {
-            final ObjectId tree = git.getRepository().resolve( branchName + "^{tree}" );
-            tw = new TreeWalk( git.getRepository() );
+            final ObjectId tree = context.resolveTree( branchName );
+            final TreeWalk tw = context.treeWalk();
             boolean found = false;
             if ( gitPath.isEmpty() ) {
                 found = true;
@@ -1369,9 +1792,7 @@ public final class JGitUtil {
             }
         } catch ( final Throwable ignored ) {
         } finally {
-            if ( tw != null ) {
-                tw.release();
-            }
+            context.release();
         }
 
         return result;
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevTag;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Pooled {@link ObjectReader}, {@link RevWalk} and {@link TreeWalk} shared by the {@link JGitUtil} read helpers, so
+ * a sequence of reads on the same repository doesn't build a new reader (and window cursor) for every call.
+ * <p/>
+ * A context is obtained with {@link #acquire(Repository)} and must be handed back with {@link #release()}, which
+ * resets the walks, releases the reader's inflater and pack window and returns the context to its repository's pool.
+ * Each acquisition gets a context no one else is using, so nested calls (a helper calling another helper) are safe.
+ * Pools are bounded and keyed by repository rather than by thread, so idle pool threads don't pin repositories;
+ * {@link #clear(Repository)} drops a repository's pool once its file system is closed, contexts released afterwards
+ * aren't pooled.
+ */
+public final class ReaderContext {
+
+    private static final int POOL_SIZE = 8;
+
+    private static final ConcurrentMap<Repository, BlockingQueue<ReaderContext>> POOLS = new ConcurrentHashMap<Repository, BlockingQueue<ReaderContext>>();
+
+    private static final AtomicLong created = new AtomicLong();
+    private static final AtomicLong reused = new AtomicLong();
+
+    private final Repository repository;
+    private final ObjectReader reader;
+    private final RevWalk revWalk;
+    private final TreeWalk treeWalk;
+
+    private ReaderContext( final Repository repository ) {
+        this.repository = repository;
+        this.reader = repository.newObjectReader();
+        this.revWalk = new RevWalk( reader );
+        this.treeWalk = new TreeWalk( reader );
+        created.incrementAndGet();
+    }
+
+    public static ReaderContext acquire( final Repository repository ) {
+        BlockingQueue<ReaderContext> pool = POOLS.get( repository );
+        if ( pool == null ) {
+            final BlockingQueue<ReaderContext> newPool = new ArrayBlockingQueue<ReaderContext>( POOL_SIZE );
+            pool = POOLS.putIfAbsent( repository, newPool );
+            if ( pool == null ) {
+                pool = newPool;
+            }
+        }
+        final ReaderContext pooled = pool.poll();
+        if ( pooled != null ) {
+            reused.incrementAndGet();
+            return pooled;
+        }
+        return new ReaderContext( repository );
+    }
+
+    /**
+     * Drops the contexts pooled for the given repository; e.g. when its file system is closed or deleted.
+     */
+    public static void clear( final Repository repository ) {
+        POOLS.remove( repository );
+    }
+
+    public ObjectReader reader() {
+        return reader;
+    }
+
+    public RevWalk revWalk() {
+        return revWalk;
+    }
+
+    /**
+     * @return the shared tree walk, with no trees, no filter and not recursive
+     */
+    public TreeWalk treeWalk() {
+        return treeWalk;
+    }
+
+    /**
+     * Resolves a branch name, ref name or commit id to its tree, using this context's reader. Other revision
+     * expressions fall back to {@link Repository#resolve(String)}.
+     * @return null if it can't be resolved
+     */
+    public ObjectId resolveTree( final String treeRef ) throws java.io.IOException {
+        final ObjectId id;
+        if ( ObjectId.isId( treeRef ) ) {
+            id = ObjectId.fromString( treeRef );
+        } else {
+            final Ref ref = repository.getRef( treeRef );
+            if ( ref == null ) {
+                return repository.resolve( treeRef + "^{tree}" );
+            }
+            id = ref.getObjectId();
+        }
+        if ( id == null || !reader.has( id ) ) {
+            return null;
+        }
+        RevObject object = revWalk.parseAny( id );
+        while ( object instanceof RevTag ) {
+            object = revWalk.parseAny( ( (RevTag) object ).getObject() );
+        }
+        if ( object instanceof RevCommit ) {
+            return ( (RevCommit) object ).getTree().copy();
+        }
+        if ( object instanceof RevTree ) {
+            return object.copy();
+        }
+        return null;
+    }
+
+    public void release() {
+        //dispose drops parsed objects, so the walk doesn't grow across uses, and releases the reader
+        revWalk.dispose();
+        revWalk.setTreeFilter( TreeFilter.ALL );
+        revWalk.setRevFilter( RevFilter.ALL );
+        treeWalk.reset();
+        treeWalk.setFilter( TreeFilter.ALL );
+        treeWalk.setRecursive( false );
+        treeWalk.setPostOrderTraversal( false );
+        reader.release();
+
+        //a full pool just lets the context go, and a cleared one isn't created again: its repository may be closed
+        final BlockingQueue<ReaderContext> pool = POOLS.get( repository );
+        if ( pool != null ) {
+            pool.offer( this );
+        }
+    }
+
+    public static long getCreatedCount() {
+        return created.get();
+    }
+
+    public static long getReusedCount() {
+        return reused.get();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit.util;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a {@link JGitUtil#syncRepository} call: how long it took, how many bytes of pack data were received and
+ * which refs actually moved.
+ */
+public class SyncResult {
+
+    private final long duration;
+    private final long bytesReceived;
+    private final List<String> updatedRefs;
+
+    public SyncResult( final long duration,
+                       final long bytesReceived,
+                       final List<String> updatedRefs ) {
+        this.duration = duration;
+        this.bytesReceived = bytesReceived;
+        this.updatedRefs = Collections.unmodifiableList( updatedRefs );
+    }
+
+    /**
+     * @return sync duration in milliseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public List<String> getUpdatedRefs() {
+        return updatedRefs;
+    }
+
+    public boolean isUpToDate() {
+        return updatedRefs.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "SyncResult{" +
+                "duration=" + duration +
+                "ms, bytesReceived=" + bytesReceived +
+                ", updatedRefs=" + updatedRefs +
+                '}';
+    }
+}
@@ -76,8 +76,10 @@ public abstract class AbstractTestInfra {
 
         provider.shutdown();
 
-        if ( provider.getGitRepoContainerDir() != null && provider.getGitRepoContainerDir().exists() ) {
-            FileUtils.delete( provider.getGitRepoContainerDir(), FileUtils.RECURSIVE );
+        for ( final File repoContainerDir : provider.getGitRepoContainerDirs() ) {
+            if ( repoContainerDir.exists() ) {
+                FileUtils.delete( repoContainerDir, FileUtils.RECURSIVE );
+            }
         }
     }
 
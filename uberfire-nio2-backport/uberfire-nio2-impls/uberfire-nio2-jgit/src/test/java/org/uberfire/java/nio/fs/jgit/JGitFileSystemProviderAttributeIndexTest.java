@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+
+import org.junit.Test;
+import org.uberfire.java.nio.base.Properties;
+import org.uberfire.java.nio.base.dotfiles.AttributesFileOption;
+import org.uberfire.java.nio.base.query.ResultPage;
+import org.uberfire.java.nio.file.Path;
+
+import static org.fest.assertions.api.Assertions.*;
+import static org.uberfire.java.nio.fs.jgit.ProviderTestUtils.*;
+
+public class JGitFileSystemProviderAttributeIndexTest extends AbstractTestInfra {
+
+    @Test
+    public void testQueryByAttribute() throws Exception {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://index-repo" ), EMPTY_ENV );
+        final Path root = fs.getRootDirectories().iterator().next();
+
+        for ( int i = 0; i < 5; i++ ) {
+            writeWithAttributes( provider, provider.getPath( URI.create( "git://index-repo/dir/file" + i + ".txt" ) ), "content" + i,
+                                 attr( "dcore.creator[0]", i % 2 == 0 ? "even" : "odd" ) );
+        }
+
+        //legacy dot file
+        writeWithAttributes( provider, provider.getPath( URI.create( "git://index-repo/legacy.txt" ) ), "legacy" );
+        final Properties legacy = new Properties();
+        legacy.put( "dcore.creator[0]", "even" );
+        final OutputStream out = provider.newOutputStream( provider.getPath( URI.create( "git://index-repo/.legacy.txt" ) ) );
+        legacy.store( out );
+
+        final ResultPage<Path> firstPage = provider.queryByAttribute( root, "dcore.creator", "even", 0, 2 );
+        assertThat( firstPage.getTotal() ).isEqualTo( 4 );
+        assertThat( firstPage.getContent() ).hasSize( 2 );
+        assertThat( firstPage.hasMore() ).isTrue();
+        assertThat( firstPage.getContent().get( 0 ).toString() ).isEqualTo( "/dir/file0.txt" );
+
+        final ResultPage<Path> lastPage = provider.queryByAttribute( root, "dcore.creator", "even", 2, 2 );
+        assertThat( lastPage.getContent() ).hasSize( 2 );
+        assertThat( lastPage.hasMore() ).isFalse();
+        assertThat( lastPage.getContent().get( 1 ).toString() ).isEqualTo( "/legacy.txt" );
+
+        assertThat( provider.queryByAttribute( root, "dcore.creator", null, 0, 10 ).getTotal() ).isEqualTo( 6 );
+        assertThat( provider.queryByAttribute( root, "missing", null, 0, 10 ).getTotal() ).isEqualTo( 0 );
+
+        //index catches up with later commits
+        provider.delete( provider.getPath( URI.create( "git://index-repo/dir/file0.txt" ) ), new AttributesFileOption() );
+        provider.delete( provider.getPath( URI.create( "git://index-repo/.legacy.txt" ) ) );
+        writeWithAttributes( provider, provider.getPath( URI.create( "git://index-repo/dir/file1.txt" ) ), "changed", attr( "dcore.creator[0]", "even" ) );
+
+        final ResultPage<Path> updated = provider.queryByAttribute( root, "dcore.creator", "even", 0, 10 );
+        assertThat( updated.getTotal() ).isEqualTo( 3 );
+        assertThat( updated.getContent().get( 0 ).toString() ).isEqualTo( "/dir/file1.txt" );
+        assertThat( provider.queryByAttribute( root, "dcore.creator", "odd", 0, 10 ).getTotal() ).isEqualTo( 1 );
+    }
+
+    @Test
+    public void testIndexIsPersisted() throws Exception {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://index-persist-repo" ), EMPTY_ENV );
+        final Path root = fs.getRootDirectories().iterator().next();
+
+        writeWithAttributes( provider, provider.getPath( URI.create( "git://index-persist-repo/file.txt" ) ), "content", attr( "custom", "value" ) );
+
+        provider.rebuildAttributeIndex( root );
+
+        final File indexFile = new File( fs.gitRepo().getRepository().getDirectory(), JGitAttributeIndex.INDEX_FILE );
+        assertThat( indexFile ).exists();
+
+        final JGitAttributeIndex reloaded = new JGitAttributeIndex( fs.gitRepo().getRepository() );
+        assertThat( reloaded.query( "master", "custom", "value", 0, 10 ).getK1() ).containsExactly( "file.txt" );
+    }
+
+    @Test
+    public void testUnreadableIndexIsRebuilt() throws Exception {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://index-corrupted-repo" ), EMPTY_ENV );
+
+        writeWithAttributes( provider, provider.getPath( URI.create( "git://index-corrupted-repo/file.txt" ) ), "content", attr( "custom", "value" ) );
+
+        //right version, then a branch name claiming more bytes than the file has
+        final File indexFile = new File( fs.gitRepo().getRepository().getDirectory(), JGitAttributeIndex.INDEX_FILE );
+        final DataOutputStream out = new DataOutputStream( new FileOutputStream( indexFile ) );
+        out.writeInt( 2 );
+        out.writeInt( 1 );
+        out.writeInt( Integer.MAX_VALUE );
+        out.close();
+
+        final JGitAttributeIndex reloaded = new JGitAttributeIndex( fs.gitRepo().getRepository() );
+        assertThat( reloaded.query( "master", "custom", "value", 0, 10 ).getK1() ).containsExactly( "file.txt" );
+
+        reloaded.persist();
+        assertThat( new JGitAttributeIndex( fs.gitRepo().getRepository() ).query( "master", "custom", "value", 0, 10 ).getK1() ).containsExactly( "file.txt" );
+    }
+}
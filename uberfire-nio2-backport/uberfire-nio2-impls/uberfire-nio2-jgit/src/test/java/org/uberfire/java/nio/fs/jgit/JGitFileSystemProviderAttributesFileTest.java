@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit;
+
+import java.io.OutputStream;
+import java.net.URI;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Test;
+import org.uberfire.java.nio.base.Properties;
+import org.uberfire.java.nio.base.dotfiles.AttributesFileOption;
+import org.uberfire.java.nio.file.Path;
+import org.uberfire.java.nio.fs.jgit.util.JGitUtil;
+
+import static org.fest.assertions.api.Assertions.*;
+import static org.uberfire.java.nio.base.dotfiles.AttributesFileUtils.*;
+import static org.uberfire.java.nio.fs.jgit.ProviderTestUtils.*;
+
+public class JGitFileSystemProviderAttributesFileTest extends AbstractTestInfra {
+
+    @Test
+    public void testAttributesAreCommittedWithContent() throws Exception {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://attrs-repo" ), EMPTY_ENV );
+
+        final Path file1 = provider.getPath( URI.create( "git://attrs-repo/dir/file1.txt" ) );
+        final Path file2 = provider.getPath( URI.create( "git://attrs-repo/dir/file2.txt" ) );
+
+        writeWithAttributes( provider, file1, "content1", attr( "dcore.creator", "someone" ) );
+        writeWithAttributes( provider, file2, "content2", attr( "custom", "value" ) );
+
+        assertThat( commitCount( fs.gitRepo() ) ).isEqualTo( 2 );
+        assertThat( provider.exists( provider.getPath( URI.create( "git://attrs-repo/dir/.file1.txt" ) ) ) ).isFalse();
+
+        final Properties attributes = readAttributesFile( "git://attrs-repo/dir/.uf-attributes" );
+        assertThat( attributes ).hasSize( 2 );
+        assertThat( getEntry( attributes, "file1.txt" ).get( "dcore.creator" ) ).isEqualTo( "someone" );
+        assertThat( getEntry( attributes, "file2.txt" ).get( "custom" ) ).isEqualTo( "value" );
+
+        provider.move( file1, provider.getPath( URI.create( "git://attrs-repo/other/moved.txt" ) ), new AttributesFileOption() );
+
+        assertThat( commitCount( fs.gitRepo() ) ).isEqualTo( 3 );
+        assertThat( getEntry( readAttributesFile( "git://attrs-repo/dir/.uf-attributes" ), "file1.txt" ) ).isNull();
+        assertThat( getEntry( readAttributesFile( "git://attrs-repo/other/.uf-attributes" ), "moved.txt" ).get( "dcore.creator" ) ).isEqualTo( "someone" );
+
+        provider.delete( file2, new AttributesFileOption() );
+
+        assertThat( commitCount( fs.gitRepo() ) ).isEqualTo( 4 );
+        assertThat( JGitUtil.checkPath( fs.gitRepo(), "master", "dir/.uf-attributes" ).getK1() ).isEqualTo( JGitUtil.PathType.NOT_FOUND );
+    }
+
+    @Test
+    public void testMigrateDotFiles() throws Exception {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://attrs-migrate-repo" ), EMPTY_ENV );
+
+        final Path file = provider.getPath( URI.create( "git://attrs-migrate-repo/dir/file.txt" ) );
+        writeWithAttributes( provider, file, "content" );
+
+        final Properties legacy = new Properties();
+        legacy.put( "dcore.creator", "someone" );
+        final OutputStream out = provider.newOutputStream( provider.getPath( URI.create( "git://attrs-migrate-repo/dir/.file.txt" ) ) );
+        legacy.store( out );
+
+        //directory dot files are not migrated
+        writeWithAttributes( provider, provider.getPath( URI.create( "git://attrs-migrate-repo/.dir" ) ), "<properties/>" );
+
+        final int commits = commitCount( fs.gitRepo() );
+
+        assertThat( provider.migrateDotFiles( fs.getRootDirectories().iterator().next() ) ).isEqualTo( 1 );
+
+        assertThat( commitCount( fs.gitRepo() ) ).isEqualTo( commits + 1 );
+        assertThat( provider.exists( provider.getPath( URI.create( "git://attrs-migrate-repo/dir/.file.txt" ) ) ) ).isFalse();
+        assertThat( provider.exists( provider.getPath( URI.create( "git://attrs-migrate-repo/.dir" ) ) ) ).isTrue();
+        assertThat( getEntry( readAttributesFile( "git://attrs-migrate-repo/dir/.uf-attributes" ), "file.txt" ).get( "dcore.creator" ) ).isEqualTo( "someone" );
+
+        assertThat( provider.migrateDotFiles( fs.getRootDirectories().iterator().next() ) ).isEqualTo( 0 );
+        assertThat( commitCount( fs.gitRepo() ) ).isEqualTo( commits + 1 );
+    }
+
+    private Properties readAttributesFile( final String uri ) {
+        final Properties properties = new Properties();
+        properties.load( provider.newInputStream( provider.getPath( URI.create( uri ) ) ) );
+        return properties;
+    }
+
+    private int commitCount( final Git git ) throws Exception {
+        int count = 0;
+        for ( final RevCommit commit : git.log().call() ) {
+            count++;
+        }
+        return count;
+    }
+}
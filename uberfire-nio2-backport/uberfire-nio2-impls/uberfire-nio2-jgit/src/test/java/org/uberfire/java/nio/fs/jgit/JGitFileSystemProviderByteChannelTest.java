@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit;
+
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.NonWritableChannelException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+import org.uberfire.java.nio.channels.SeekableByteChannel;
+import org.uberfire.java.nio.file.NoSuchFileException;
+import org.uberfire.java.nio.file.Path;
+import org.uberfire.java.nio.file.StandardOpenOption;
+
+import static org.fest.assertions.api.Assertions.*;
+
+public class JGitFileSystemProviderByteChannelTest extends AbstractTestInfra {
+
+    @Override
+    public Map<String, String> getGitPreferences() {
+        final Map<String, String> gitPrefs = super.getGitPreferences();
+        gitPrefs.put( "org.uberfire.nio.git.channel.blob.threshold", "16" );
+        return gitPrefs;
+    }
+
+    @Test
+    public void testSmallBlobRandomAccess() throws Exception {
+        provider.newFileSystem( URI.create( "git://channel-repo" ), EMPTY_ENV );
+
+        final Path path = provider.getPath( URI.create( "git://channel-repo/small.txt" ) );
+        write( path, "0123456789" );
+
+        final SeekableByteChannel channel = provider.newByteChannel( path, Collections.singleton( StandardOpenOption.READ ) );
+        assertThat( channel.size() ).isEqualTo( 10 );
+
+        final ByteBuffer buffer = ByteBuffer.allocate( 3 );
+        channel.position( 5 );
+        assertThat( channel.read( buffer ) ).isEqualTo( 3 );
+        assertThat( new String( buffer.array() ) ).isEqualTo( "567" );
+        assertThat( channel.position() ).isEqualTo( 8 );
+
+        buffer.clear();
+        assertThat( channel.read( buffer ) ).isEqualTo( 2 );
+        buffer.clear();
+        assertThat( channel.read( buffer ) ).isEqualTo( -1 );
+
+        try {
+            channel.write( ByteBuffer.wrap( "x".getBytes() ) );
+            failBecauseExceptionWasNotThrown( NonWritableChannelException.class );
+        } catch ( final NonWritableChannelException ex ) {
+        }
+
+        channel.close();
+        assertThat( channel.isOpen() ).isFalse();
+    }
+
+    @Test
+    public void testLargeBlobsShareTempFile() throws Exception {
+        provider.newFileSystem( URI.create( "git://channel-large-repo" ), EMPTY_ENV );
+
+        final Path path = provider.getPath( URI.create( "git://channel-large-repo/large.txt" ) );
+        write( path, "abcdefghijklmnopqrstuvwxyz" );
+
+        final SeekableByteChannel channel1 = provider.newByteChannel( path, Collections.singleton( StandardOpenOption.READ ) );
+        final SeekableByteChannel channel2 = provider.newByteChannel( path, Collections.singleton( StandardOpenOption.READ ) );
+
+        final ByteBuffer buffer = ByteBuffer.allocate( 4 );
+        channel1.position( 22 );
+        channel1.read( buffer );
+        assertThat( new String( buffer.array() ) ).isEqualTo( "wxyz" );
+
+        buffer.clear();
+        channel2.read( buffer );
+        assertThat( new String( buffer.array() ) ).isEqualTo( "abcd" );
+        assertThat( channel2.size() ).isEqualTo( 26 );
+
+        channel1.close();
+        buffer.clear();
+        channel2.read( buffer );
+        assertThat( new String( buffer.array() ) ).isEqualTo( "efgh" );
+        channel2.close();
+    }
+
+    @Test(expected = NoSuchFileException.class)
+    public void testMissingFile() throws Exception {
+        provider.newFileSystem( URI.create( "git://channel-missing-repo" ), EMPTY_ENV );
+        write( provider.getPath( URI.create( "git://channel-missing-repo/some.txt" ) ), "content" );
+
+        provider.newByteChannel( provider.getPath( URI.create( "git://channel-missing-repo/missing.txt" ) ),
+                                 Collections.singleton( StandardOpenOption.READ ) );
+    }
+
+    private void write( final Path path,
+                        final String content ) throws Exception {
+        final OutputStream outStream = provider.newOutputStream( path );
+        outStream.write( content.getBytes() );
+        outStream.close();
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Test;
+import org.uberfire.java.nio.fs.jgit.util.JGitUtil;
+
+import static org.fest.assertions.api.Assertions.*;
+
+public class JGitFileSystemProviderCompactionTest extends AbstractTestInfra {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    @Test
+    public void testCompactHistory() throws Exception {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://compaction-repo" ), EMPTY_ENV );
+
+        final long now = System.currentTimeMillis();
+        for ( int i = 0; i < 3; i++ ) {
+            commit( fs, "old" + i + ".txt", "old content " + i, new Date( now - ( 30 - i ) * DAY ) );
+        }
+        commit( fs, "recent0.txt", "recent content 0", new Date( now - DAY ) );
+        commit( fs, "recent1.txt", "recent content 1", new Date( now ) );
+
+        final ObjectId treeBefore = JGitUtil.getTreeRefObjectId( fs.gitRepo().getRepository(), "master" );
+        assertThat( history( fs ) ).hasSize( 5 );
+
+        assertThat( provider.compactHistory( fs, new Date( now - 7 * DAY ) ) ).isEqualTo( 1 );
+
+        final List<RevCommit> history = history( fs );
+        assertThat( history ).hasSize( 3 );
+        assertThat( history.get( 0 ).getFullMessage() ).isEqualTo( "recent1.txt" );
+        assertThat( history.get( 1 ).getFullMessage() ).isEqualTo( "recent0.txt" );
+        assertThat( history.get( 2 ).getParentCount() ).isEqualTo( 0 );
+
+        assertThat( JGitUtil.getTreeRefObjectId( fs.gitRepo().getRepository(), "master" ) ).isEqualTo( treeBefore );
+        assertThat( IOUtils.toString( provider.newInputStream( provider.getPath( URI.create( "git://compaction-repo/old1.txt" ) ) ) ) ).isEqualTo( "old content 1" );
+        assertThat( IOUtils.toString( provider.newInputStream( provider.getPath( URI.create( "git://compaction-repo/recent1.txt" ) ) ) ) ).isEqualTo( "recent content 1" );
+
+        //nothing left to squash
+        assertThat( provider.compactHistory( fs, new Date( now - 7 * DAY ) ) ).isEqualTo( 0 );
+        assertThat( history( fs ) ).hasSize( 3 );
+    }
+
+    private void commit( final JGitFileSystem fs,
+                         final String path,
+                         final String content,
+                         final Date when ) throws Exception {
+        final File file = tempFile( content );
+        JGitUtil.commit( fs.gitRepo(), "master", "user", "user@example.com", path, null, when, false, new HashMap<String, File>() {{
+            put( path, file );
+        }} );
+    }
+
+    private List<RevCommit> history( final JGitFileSystem fs ) throws Exception {
+        final List<RevCommit> result = new ArrayList<RevCommit>();
+        for ( final RevCommit commit : fs.gitRepo().log().call() ) {
+            result.add( commit );
+        }
+        return result;
+    }
+
+}
@@ -16,6 +16,8 @@
 
 package org.uberfire.java.nio.fs.jgit;
 
+import java.io.File;
+import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
@@ -24,6 +26,7 @@ import org.junit.Test;
 import org.uberfire.java.nio.file.DirectoryStream;
 import org.uberfire.java.nio.file.FileSystemAlreadyExistsException;
 import org.uberfire.java.nio.file.Path;
+import org.uberfire.java.nio.fs.jgit.util.JGitUtil;
 
 import static org.fest.assertions.api.Assertions.*;
 
@@ -72,4 +75,29 @@ public class JGitFileSystemProviderGCTest extends AbstractTestInfra {
         assertThat( fs.getNumberOfCommitsSinceLastGC() ).isEqualTo( 1 );
     }
 
+    @Test
+    public void testGCWritesBitmapIndex() throws IOException {
+        final URI newRepo = URI.create( "git://gc-bitmap-repo" );
+
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( newRepo, EMPTY_ENV );
+
+        for ( int i = 0; i < 5; i++ ) {
+            final OutputStream outStream = provider.newOutputStream( provider.getPath( URI.create( "git://gc-bitmap-repo/path/to/file" + i + ".txt" ) ) );
+            outStream.write( ( "content " + i ).getBytes() );
+            outStream.close();
+        }
+
+        JGitUtil.gc( fs.gitRepo() );
+
+        final File packDir = new File( fs.gitRepo().getRepository().getDirectory(), "objects/pack" );
+        final String[] bitmaps = packDir.list( new FilenameFilter() {
+            @Override
+            public boolean accept( final File dir,
+                                   final String name ) {
+                return name.endsWith( ".bitmap" );
+            }
+        } );
+        assertThat( bitmaps ).isNotNull().hasSize( 1 );
+    }
+
 }
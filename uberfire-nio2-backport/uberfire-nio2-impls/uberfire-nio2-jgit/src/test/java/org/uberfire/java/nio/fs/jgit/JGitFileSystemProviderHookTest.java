@@ -26,13 +26,15 @@ import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.eclipse.jgit.api.errors.JGitInternalException;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.util.FS;
 import org.eclipse.jgit.util.FS_POSIX_Java6;
 import org.eclipse.jgit.util.Hook;
-import org.eclipse.jgit.util.ProcessResult;
 import org.junit.Test;
 import org.uberfire.java.nio.file.FileSystem;
 import org.uberfire.java.nio.file.Path;
@@ -45,6 +47,7 @@ public class JGitFileSystemProviderHookTest extends AbstractTestInfra {
     public Map<String, String> getGitPreferences() {
         Map<String, String> gitPrefs = super.getGitPreferences();
         gitPrefs.put( "org.uberfire.nio.git.daemon.enabled", "true" );
+        gitPrefs.put( "org.uberfire.nio.git.hooks.timeout", "200" );
         int gitDaemonPort = findFreePort();
         gitPrefs.put("org.uberfire.nio.git.daemon.port", String.valueOf(gitDaemonPort));
 
@@ -98,6 +101,81 @@ public class JGitFileSystemProviderHookTest extends AbstractTestInfra {
         testHook("hook-repo-name-executed-pre-commit", Hook.PRE_COMMIT, false);
     }
 
+    @Test
+    public void testHungPostCommitHookIsDestroyed() throws Exception {
+        final URI newRepo = URI.create( "git://hook-repo-name-hung" );
+        final FileSystem fs = provider.newFileSystem( newRepo, EMPTY_ENV );
+
+        //the hook touches the marker unless it's destroyed while sleeping
+        final File marker = new File( createTempDirectory(), "hook-finished" );
+        final File hook = new File( new File( ( (JGitFileSystem) fs ).gitRepo().getRepository().getDirectory(), "hooks" ), Hook.POST_COMMIT.getName() );
+        final PrintWriter writer = new PrintWriter( hook, "UTF-8" );
+        writer.println( "#!/bin/sh" );
+        writer.println( "sleep 1" );
+        writer.println( "touch \"" + marker.getAbsolutePath() + "\"" );
+        writer.close();
+        assertThat( hook.setExecutable( true ) ).isTrue();
+
+        final long start = System.currentTimeMillis();
+        for ( int i = 0; i < 3; i++ ) {
+            final OutputStream outStream = provider.newOutputStream( fs.getPath( "file" + i + ".txt" ) );
+            outStream.write( "content".getBytes() );
+            outStream.close();
+        }
+        assertThat( System.currentTimeMillis() - start ).isLessThan( 5000 );
+
+        assertThat( provider.getHookExecutor().awaitIdle( 10, TimeUnit.SECONDS ) ).isTrue();
+        assertThat( provider.getHookExecutor().getTimedOutCount() ).isEqualTo( 3 );
+        assertThat( provider.getHookExecutor().getFailedCount() ).isEqualTo( 3 );
+
+        Thread.sleep( 1500 );
+        assertThat( marker ).doesNotExist();
+    }
+
+    @Test
+    public void testHooksWaitingForTheirRepositoryAreBounded() throws Exception {
+        final FileSystem fs = provider.newFileSystem( URI.create( "git://hook-repo-name-bounded" ), EMPTY_ENV );
+        final Repository repository = ( (JGitFileSystem) fs ).gitRepo().getRepository();
+
+        final CountDownLatch running = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final AtomicInteger runs = new AtomicInteger();
+        final FS blocking = new FS_POSIX_Java6() {
+            @Override
+            public File findHook( final Repository repository,
+                                  final Hook hook ) {
+                runs.incrementAndGet();
+                running.countDown();
+                try {
+                    release.await();
+                } catch ( final InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }
+        };
+
+        final JGitHookExecutor executor = new JGitHookExecutor( 1, 2, 1000, true );
+        try {
+            executor.submit( blocking, repository, Hook.POST_COMMIT, new String[ 0 ] );
+            assertThat( running.await( 10, TimeUnit.SECONDS ) ).isTrue();
+            //the rest wait for the running one of the same repository
+            for ( int i = 0; i < 9; i++ ) {
+                executor.submit( blocking, repository, Hook.POST_COMMIT, new String[ 0 ] );
+            }
+
+            assertThat( executor.getPendingCount() ).isEqualTo( 3 );
+            assertThat( executor.getRejectedCount() ).isEqualTo( 7 );
+
+            release.countDown();
+            assertThat( executor.awaitIdle( 10, TimeUnit.SECONDS ) ).isTrue();
+            assertThat( runs.get() ).isEqualTo( 3 );
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
     /**
      * Tests if defined hook was executed or not.
      * @param gitRepoName Name of test git repository that is created for commiting changes.
@@ -114,9 +192,8 @@ public class JGitFileSystemProviderHookTest extends AbstractTestInfra {
 
         provider.setDetectedFS( new FS_POSIX_Java6() {
             @Override
-            public ProcessResult runIfPresent( Repository repox,
-                                               Hook hook,
-                                               String[] args ) throws JGitInternalException {
+            public File findHook( Repository repository,
+                                  Hook hook ) {
                 if ( hook.equals( testedHook ) ) {
                     hookExecuted.set( true );
                 }
@@ -141,6 +218,12 @@ public class JGitFileSystemProviderHookTest extends AbstractTestInfra {
 
         assertThat( content ).isNotNull().isEqualTo( "my cool content" );
 
+        try {
+            assertThat( provider.getHookExecutor().awaitIdle( 10, TimeUnit.SECONDS ) ).isTrue();
+        } catch ( InterruptedException e ) {
+            fail( "Interrupted while waiting for hooks", e );
+        }
+
         if (wasExecuted) {
             assertThat( hookExecuted.get() ).isTrue();
         } else {
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jgit.api.Git;
+import org.junit.Test;
+import org.uberfire.java.nio.base.FileSystemState;
+import org.uberfire.java.nio.file.FileSystem;
+import org.uberfire.java.nio.file.Path;
+import org.uberfire.java.nio.file.StandardWatchEventKind;
+import org.uberfire.java.nio.file.WatchEvent;
+import org.uberfire.java.nio.file.WatchKey;
+import org.uberfire.java.nio.file.WatchService;
+import org.uberfire.java.nio.fs.jgit.util.JGitUtil;
+
+import static org.fest.assertions.api.Assertions.*;
+
+public class JGitFileSystemProviderInMemoryTest extends AbstractTestInfra {
+
+    private static final Map<String, Object> IN_MEMORY_ENV = new HashMap<String, Object>() {{
+        put( JGitFileSystemProvider.GIT_ENV_KEY_IN_MEMORY, Boolean.TRUE );
+    }};
+
+    @Test
+    public void testNewInMemoryFileSystem() throws IOException {
+        final URI newRepo = URI.create( "git://mem-repo-name" );
+
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( newRepo, IN_MEMORY_ENV );
+
+        assertThat( fs ).isNotNull();
+        assertThat( fs.isInMemory() ).isTrue();
+        assertThat( fs.getFileStores().iterator().next().name() ).isEqualTo( "mem-repo-name" );
+        assertThat( new File( provider.getGitRepoContainerDir(), "mem-repo-name.git" ) ).doesNotExist();
+
+        final Path path = provider.getPath( URI.create( "git://mem-repo-name/some/path/myfile.txt" ) );
+
+        final OutputStream outStream = provider.newOutputStream( path );
+        outStream.write( "my cool content".getBytes() );
+        outStream.close();
+
+        final InputStream inStream = provider.newInputStream( path );
+        assertThat( IOUtils.toString( inStream ) ).isEqualTo( "my cool content" );
+        inStream.close();
+
+        assertThat( JGitUtil.branchList( fs.gitRepo() ) ).hasSize( 1 );
+        assertThat( provider.getFileSystem( newRepo ) ).isEqualTo( fs );
+    }
+
+    @Test
+    public void testInMemoryWatchAndBatch() throws IOException {
+        final URI newRepo = URI.create( "git://mem-watch-repo" );
+
+        final FileSystem fs = provider.newFileSystem( newRepo, IN_MEMORY_ENV );
+
+        final WatchService ws = fs.newWatchService();
+
+        final Path path = provider.getPath( URI.create( "git://mem-watch-repo/myfile.txt" ) );
+        provider.setAttribute( path, FileSystemState.FILE_SYSTEM_STATE_ATTR, FileSystemState.BATCH );
+
+        final OutputStream outStream = provider.newOutputStream( path );
+        outStream.write( "content".getBytes() );
+        outStream.close();
+
+        final OutputStream outStream2 = provider.newOutputStream( provider.getPath( URI.create( "git://mem-watch-repo/myfile2.txt" ) ) );
+        outStream2.write( "content2".getBytes() );
+        outStream2.close();
+
+        assertThat( ws.poll() ).isNull();
+
+        provider.setAttribute( path, FileSystemState.FILE_SYSTEM_STATE_ATTR, FileSystemState.NORMAL );
+
+        final WatchKey key = ws.poll();
+        assertThat( key ).isNotNull();
+
+        final List<WatchEvent<?>> events = key.pollEvents();
+        assertThat( events ).hasSize( 2 );
+        assertThat( events.get( 0 ).kind() ).isEqualTo( StandardWatchEventKind.ENTRY_CREATE );
+    }
+
+    @Test
+    public void testExportInMemoryFileSystem() throws IOException {
+        final URI newRepo = URI.create( "git://mem-export-repo" );
+
+        final FileSystem fs = provider.newFileSystem( newRepo, IN_MEMORY_ENV );
+
+        final OutputStream outStream = provider.newOutputStream( provider.getPath( URI.create( "git://user_branch@mem-export-repo/myfile.txt" ) ) );
+        outStream.write( "content".getBytes() );
+        outStream.close();
+
+        final File destination = createTempDirectory();
+        final File exported = provider.exportFileSystem( fs, destination );
+
+        assertThat( exported ).exists();
+
+        final Git git = Git.open( exported );
+        try {
+            assertThat( JGitUtil.hasBranch( git, "user_branch" ) ).isTrue();
+            assertThat( JGitUtil.checkPath( git, "user_branch", "myfile.txt" ).getK1() ).isEqualTo( JGitUtil.PathType.FILE );
+        } finally {
+            git.getRepository().close();
+        }
+
+        //exported content can be opened as a regular file based file system
+        final Map<String, Object> env = new HashMap<String, Object>() {{
+            put( JGitFileSystemProvider.GIT_ENV_KEY_DEST_PATH, destination.getAbsolutePath() );
+        }};
+        provider.delete( fs.getPath( null ) );
+        final JGitFileSystem reopened = (JGitFileSystem) provider.newFileSystem( newRepo, env );
+        assertThat( reopened.isInMemory() ).isFalse();
+        assertThat( JGitUtil.hasBranch( reopened.gitRepo(), "user_branch" ) ).isTrue();
+    }
+
+}
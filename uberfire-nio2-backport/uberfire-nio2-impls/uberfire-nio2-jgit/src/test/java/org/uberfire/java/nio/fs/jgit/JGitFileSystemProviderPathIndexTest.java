@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit;
+
+import java.net.URI;
+
+import org.junit.Test;
+import org.uberfire.java.nio.base.query.ResultPage;
+import org.uberfire.java.nio.file.Path;
+
+import static org.fest.assertions.api.Assertions.*;
+import static org.uberfire.java.nio.fs.jgit.ProviderTestUtils.*;
+
+public class JGitFileSystemProviderPathIndexTest extends AbstractTestInfra {
+
+    @Test
+    public void testQueryByGlob() throws Exception {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://glob-repo" ), EMPTY_ENV );
+        final Path root = fs.getRootDirectories().iterator().next();
+
+        write( provider, provider.getPath( URI.create( "git://glob-repo/rules/a.drl" ) ), "content" );
+        write( provider, provider.getPath( URI.create( "git://glob-repo/rules/sub/b.drl" ) ), "content" );
+        write( provider, provider.getPath( URI.create( "git://glob-repo/rules/.hidden.drl" ) ), "content" );
+        write( provider, provider.getPath( URI.create( "git://glob-repo/c.drl" ) ), "content" );
+        write( provider, provider.getPath( URI.create( "git://glob-repo/perspectives/home.perspective" ) ), "content" );
+
+        final ResultPage<Path> all = provider.queryByGlob( root, "**/*.drl", 0, 10 );
+        assertThat( all.getTotal() ).isEqualTo( 3 );
+        assertThat( all.getContent().get( 0 ).toString() ).isEqualTo( "/c.drl" );
+        assertThat( all.getContent().get( 1 ).toString() ).isEqualTo( "/rules/a.drl" );
+
+        assertThat( provider.queryByGlob( root, "*.drl", 0, 10 ).getTotal() ).isEqualTo( 1 );
+        assertThat( provider.queryByGlob( root, "rules/*.drl", 0, 10 ).getTotal() ).isEqualTo( 1 );
+        assertThat( provider.queryByGlob( root, "rules/**", 0, 10 ).getTotal() ).isEqualTo( 2 );
+        assertThat( provider.queryByGlob( root, "**/*.{drl,perspective}", 0, 10 ).getTotal() ).isEqualTo( 4 );
+        assertThat( provider.queryByGlob( root, "**/?.drl", 0, 10 ).getTotal() ).isEqualTo( 3 );
+
+        final Path rules = provider.getPath( URI.create( "git://glob-repo/rules" ) );
+        final ResultPage<Path> underRules = provider.queryByGlob( rules, "**/*.drl", 1, 1 );
+        assertThat( underRules.getTotal() ).isEqualTo( 2 );
+        assertThat( underRules.getContent() ).hasSize( 1 );
+        assertThat( underRules.getContent().get( 0 ).toString() ).isEqualTo( "/rules/sub/b.drl" );
+        assertThat( underRules.hasMore() ).isFalse();
+
+        //index follows commits
+        provider.delete( provider.getPath( URI.create( "git://glob-repo/rules/a.drl" ) ) );
+        write( provider, provider.getPath( URI.create( "git://glob-repo/rules/sub/d.drl" ) ), "content" );
+
+        final ResultPage<Path> updated = provider.queryByGlob( root, "rules/**/*.drl", 0, 10 );
+        assertThat( updated.getTotal() ).isEqualTo( 2 );
+        assertThat( updated.getContent().get( 0 ).toString() ).isEqualTo( "/rules/sub/b.drl" );
+        assertThat( updated.getContent().get( 1 ).toString() ).isEqualTo( "/rules/sub/d.drl" );
+    }
+
+    @Test
+    public void testQueryOtherBranch() throws Exception {
+        provider.newFileSystem( URI.create( "git://glob-branch-repo" ), EMPTY_ENV );
+
+        write( provider, provider.getPath( URI.create( "git://glob-branch-repo/a.drl" ) ), "content" );
+        write( provider, provider.getPath( URI.create( "git://user_branch@glob-branch-repo/b.drl" ) ), "content" );
+
+        final Path master = provider.getPath( URI.create( "git://glob-branch-repo/" ) );
+        final Path branch = provider.getPath( URI.create( "git://user_branch@glob-branch-repo/" ) );
+
+        assertThat( provider.queryByGlob( master, "b.drl", 0, 10 ).getTotal() ).isEqualTo( 0 );
+        assertThat( provider.queryByGlob( branch, "b.drl", 0, 10 ).getTotal() ).isEqualTo( 1 );
+        assertThat( provider.queryByGlob( branch, "b.drl", 0, 10 ).getContent().get( 0 ).toUri().toString() ).isEqualTo( "git://user_branch@glob-branch-repo/b.drl" );
+    }
+
+    @Test
+    public void testPathTypeLookup() throws Exception {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://lookup-repo" ), EMPTY_ENV );
+        final Path root = fs.getRootDirectories().iterator().next();
+
+        write( provider, provider.getPath( URI.create( "git://lookup-repo/rules/a.drl" ) ), "content" );
+        write( provider, provider.getPath( URI.create( "git://lookup-repo/hidden-only/.gitignore" ) ), "content" );
+
+        for ( int i = 0; i < 2; i++ ) {
+            //first without the index, then served from it
+            assertThat( provider.exists( provider.getPath( URI.create( "git://lookup-repo/rules/a.drl" ) ) ) ).isTrue();
+            assertThat( provider.isRegularFile( provider.getPath( URI.create( "git://lookup-repo/rules/a.drl" ) ) ) ).isTrue();
+            assertThat( provider.isDirectory( provider.getPath( URI.create( "git://lookup-repo/rules/a.drl" ) ) ) ).isFalse();
+            assertThat( provider.isDirectory( provider.getPath( URI.create( "git://lookup-repo/rules" ) ) ) ).isTrue();
+            assertThat( provider.isDirectory( provider.getPath( URI.create( "git://lookup-repo/hidden-only" ) ) ) ).isTrue();
+            assertThat( provider.exists( provider.getPath( URI.create( "git://lookup-repo/hidden-only/.gitignore" ) ) ) ).isTrue();
+            assertThat( provider.exists( provider.getPath( URI.create( "git://lookup-repo/rules/missing.drl" ) ) ) ).isFalse();
+            assertThat( provider.exists( provider.getPath( URI.create( "git://lookup-repo/rule" ) ) ) ).isFalse();
+            assertThat( provider.exists( root ) ).isTrue();
+
+            provider.queryByGlob( root, "**", 0, 1 );
+        }
+
+        //the index follows commits
+        write( provider, provider.getPath( URI.create( "git://lookup-repo/rules/b.drl" ) ), "content" );
+        assertThat( provider.isRegularFile( provider.getPath( URI.create( "git://lookup-repo/rules/b.drl" ) ) ) ).isTrue();
+    }
+
+    @Test
+    public void testSnapshotQueriesAreNotCached() throws Exception {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://glob-snapshot-repo" ), EMPTY_ENV );
+
+        write( provider, provider.getPath( URI.create( "git://glob-snapshot-repo/a.drl" ) ), "content" );
+        final Path snapshot = provider.snapshot( fs, "master" );
+        write( provider, provider.getPath( URI.create( "git://glob-snapshot-repo/b.drl" ) ), "content" );
+
+        for ( int i = 0; i < 2; i++ ) {
+            assertThat( provider.queryByGlob( snapshot, "*.drl", 0, 10 ).getTotal() ).isEqualTo( 1 );
+            assertThat( provider.exists( snapshot.resolve( "a.drl" ) ) ).isTrue();
+        }
+        assertThat( fs.getPathIndex().getBranchCount() ).isEqualTo( 0 );
+
+        assertThat( provider.queryByGlob( fs.getRootDirectories().iterator().next(), "*.drl", 0, 10 ).getTotal() ).isEqualTo( 2 );
+        assertThat( fs.getPathIndex().getBranchCount() ).isEqualTo( 1 );
+    }
+
+    @Test
+    public void testGlobToRegex() {
+        assertThat( JGitPathIndex.compile( "**/*.drl" ).matcher( "a.drl" ).matches() ).isTrue();
+        assertThat( JGitPathIndex.compile( "**/*.drl" ).matcher( "x/y/a.drl" ).matches() ).isTrue();
+        assertThat( JGitPathIndex.compile( "*.drl" ).matcher( "x/a.drl" ).matches() ).isFalse();
+        assertThat( JGitPathIndex.compile( "[!b]*.txt" ).matcher( "a.txt" ).matches() ).isTrue();
+        assertThat( JGitPathIndex.compile( "[!b]*.txt" ).matcher( "b.txt" ).matches() ).isFalse();
+        assertThat( JGitPathIndex.literalPrefix( "src/main/**/*.java" ) ).isEqualTo( "src/main/" );
+        assertThat( JGitPathIndex.literalPrefix( "*.java" ) ).isEqualTo( "" );
+    }
+
+}
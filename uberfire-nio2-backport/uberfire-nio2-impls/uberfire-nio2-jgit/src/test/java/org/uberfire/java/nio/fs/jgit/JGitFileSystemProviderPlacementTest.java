@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.*;
+
+public class JGitFileSystemProviderPlacementTest extends AbstractTestInfra {
+
+    private File root1;
+    private File root2;
+
+    @Override
+    public Map<String, String> getGitPreferences() {
+        final Map<String, String> gitPrefs = super.getGitPreferences();
+        try {
+            root1 = createTempDirectory();
+            root2 = createTempDirectory();
+        } catch ( final IOException e ) {
+            throw new RuntimeException( e );
+        }
+        gitPrefs.put( "org.uberfire.nio.git.dirs", root1.getAbsolutePath() + "," + root2.getAbsolutePath() );
+        gitPrefs.put( "org.uberfire.nio.git.dirs.policy", "least-used" );
+        return gitPrefs;
+    }
+
+    @Test
+    public void testRepositoriesSpreadAcrossRoots() throws IOException {
+        assertThat( provider.getGitRepoContainerDirs() ).hasSize( 2 );
+        assertThat( provider.getGitRepoContainerDir() ).isEqualTo( new File( root1, JGitFileSystemProvider.REPOSITORIES_CONTAINER_DIR ) );
+
+        for ( int i = 0; i < 4; i++ ) {
+            final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://placed-repo" + i ), EMPTY_ENV );
+            final OutputStream out = provider.newOutputStream( provider.getPath( URI.create( "git://placed-repo" + i + "/file.txt" ) ) );
+            out.write( ( "content" + i ).getBytes() );
+            out.close();
+            assertThat( fs.gitRepo().getRepository().getDirectory().getParentFile() ).isEqualTo( provider.getGitRepoContainerDirs().get( i % 2 ) );
+        }
+
+        //a new provider finds repositories of every root
+        provider.shutdown();
+        provider = new JGitFileSystemProvider( getGitPreferencesFor( root1, root2 ) );
+        for ( int i = 0; i < 4; i++ ) {
+            assertThat( provider.getFileSystem( URI.create( "git://placed-repo" + i ) ) ).isNotNull();
+            assertThat( provider.exists( provider.getPath( URI.create( "git://placed-repo" + i + "/file.txt" ) ) ) ).isTrue();
+        }
+    }
+
+    @Test
+    public void testExplicitMapping() {
+        final Map<String, String> gitPrefs = getGitPreferencesFor( root1, root2 );
+        gitPrefs.put( "org.uberfire.nio.git.dirs.policy", "explicit" );
+        gitPrefs.put( "org.uberfire.nio.git.dirs.mapping", "mapped-repo-a=1, mapped-repo-b=0" );
+        provider.shutdown();
+        provider = new JGitFileSystemProvider( gitPrefs );
+
+        final JGitFileSystem fsA = (JGitFileSystem) provider.newFileSystem( URI.create( "git://mapped-repo-a" ), EMPTY_ENV );
+        final JGitFileSystem fsB = (JGitFileSystem) provider.newFileSystem( URI.create( "git://mapped-repo-b" ), EMPTY_ENV );
+
+        assertThat( fsA.gitRepo().getRepository().getDirectory().getParentFile() ).isEqualTo( new File( root2, JGitFileSystemProvider.REPOSITORIES_CONTAINER_DIR ) );
+        assertThat( fsB.gitRepo().getRepository().getDirectory().getParentFile() ).isEqualTo( new File( root1, JGitFileSystemProvider.REPOSITORIES_CONTAINER_DIR ) );
+    }
+
+    @Test
+    public void testSingleDirIsNotSplit() throws IOException {
+        final File dir = new File( createTempDirectory(), "with,comma" );
+        final Map<String, String> gitPrefs = super.getGitPreferences();
+        gitPrefs.put( "org.uberfire.nio.git.dir", dir.getAbsolutePath() );
+        provider.shutdown();
+        provider = new JGitFileSystemProvider( gitPrefs );
+
+        assertThat( provider.getGitRepoContainerDirs() ).containsOnly( new File( dir, JGitFileSystemProvider.REPOSITORIES_CONTAINER_DIR ) );
+    }
+
+    private Map<String, String> getGitPreferencesFor( final File first,
+                                                      final File second ) {
+        final Map<String, String> gitPrefs = super.getGitPreferences();
+        gitPrefs.put( "org.uberfire.nio.git.dirs", first.getAbsolutePath() + "," + second.getAbsolutePath() );
+        gitPrefs.put( "org.uberfire.nio.git.dirs.policy", "least-used" );
+        return gitPrefs;
+    }
+
+}
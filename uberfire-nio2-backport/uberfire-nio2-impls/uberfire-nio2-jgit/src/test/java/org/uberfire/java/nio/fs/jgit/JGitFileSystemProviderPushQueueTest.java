@@ -0,0 +1,246 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.transport.RefSpec;
+import org.junit.Test;
+import org.uberfire.java.nio.file.Path;
+import org.uberfire.java.nio.fs.jgit.util.JGitUtil;
+
+import static org.fest.assertions.api.Assertions.*;
+
+public class JGitFileSystemProviderPushQueueTest extends AbstractTestInfra {
+
+    @Override
+    public Map<String, String> getGitPreferences() {
+        final Map<String, String> gitPrefs = super.getGitPreferences();
+        gitPrefs.put( "org.uberfire.nio.git.push.retry.initial", "10" );
+        gitPrefs.put( "org.uberfire.nio.git.push.retry.max", "50" );
+        return gitPrefs;
+    }
+
+    @Test
+    public void testCommitsArePushedAsync() throws Exception {
+        final File upstreamDir = new File( createTempDirectory(), "upstream.git" );
+        final Git upstream = JGitUtil.newRepository( upstreamDir, true );
+
+        final Map<String, Object> env = new HashMap<String, Object>() {{
+            put( JGitFileSystemProvider.GIT_ENV_KEY_PUSH_UPSTREAM, upstreamDir.getAbsolutePath() );
+        }};
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://push-repo" ), env );
+
+        assertThat( fs.getPushQueue() ).isNotNull();
+
+        for ( int i = 0; i < 5; i++ ) {
+            final Path path = provider.getPath( URI.create( "git://push-repo/myfile" + i + ".txt" ) );
+            final OutputStream outStream = provider.newOutputStream( path );
+            outStream.write( ( "content " + i ).getBytes() );
+            outStream.close();
+        }
+
+        assertThat( fs.getPushQueue().awaitIdle( 10, TimeUnit.SECONDS ) ).isTrue();
+
+        assertThat( fs.getPushQueue().getLag() ).isEqualTo( 0 );
+        assertThat( fs.getPushQueue().getCommitsBehind() ).isEqualTo( 0 );
+        assertThat( fs.getPushQueue().getPushCount() ).isLessThanOrEqualTo( 5 );
+        assertThat( JGitUtil.getTreeRefObjectId( upstream.getRepository(), "master" ) )
+                .isEqualTo( JGitUtil.getTreeRefObjectId( fs.gitRepo().getRepository(), "master" ) );
+    }
+
+    @Test
+    public void testUnreachableRemoteIsRetried() throws Exception {
+        final File missingDir = new File( createTempDirectory(), "missing.git" );
+
+        final Map<String, Object> env = new HashMap<String, Object>() {{
+            put( JGitFileSystemProvider.GIT_ENV_KEY_PUSH_UPSTREAM, missingDir.getAbsolutePath() );
+        }};
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://push-fail-repo" ), env );
+
+        final Path path = provider.getPath( URI.create( "git://push-fail-repo/myfile.txt" ) );
+        final OutputStream outStream = provider.newOutputStream( path );
+        outStream.write( "content".getBytes() );
+        outStream.close();
+
+        assertThat( fs.getPushQueue().awaitIdle( 300, TimeUnit.MILLISECONDS ) ).isFalse();
+        assertThat( fs.getPushQueue().getFailureCount() ).isGreaterThan( 1 );
+        assertThat( fs.getPushQueue().getLastError() ).isNotNull();
+        assertThat( fs.getPushQueue().getPendingRefs() ).isEqualTo( 1 );
+        //what the remote has is unknown
+        assertThat( fs.getPushQueue().getCommitsBehind() ).isEqualTo( -1 );
+        assertThat( fs.getPushQueue().getLag() ).isGreaterThan( 0 );
+
+        //once the remote shows up the queue catches up
+        final Git upstream = JGitUtil.newRepository( missingDir, true );
+        assertThat( fs.getPushQueue().awaitIdle( 10, TimeUnit.SECONDS ) ).isTrue();
+        assertThat( fs.getPushQueue().getCommitsBehind() ).isEqualTo( 0 );
+        assertThat( JGitUtil.getTreeRefObjectId( upstream.getRepository(), "master" ) )
+                .isEqualTo( JGitUtil.getTreeRefObjectId( fs.gitRepo().getRepository(), "master" ) );
+    }
+
+    @Test
+    public void testInFlightPushCountsAsLag() throws Exception {
+        //accepts the push connection and never answers, so the push stays in flight
+        final ServerSocket server = new ServerSocket( 0 );
+        server.setSoTimeout( 10000 );
+        try {
+            final Map<String, Object> env = new HashMap<String, Object>() {{
+                put( JGitFileSystemProvider.GIT_ENV_KEY_PUSH_UPSTREAM, "http://127.0.0.1:" + server.getLocalPort() + "/upstream.git" );
+            }};
+            final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://push-inflight-repo" ), env );
+
+            writeFile( "git://push-inflight-repo/myfile.txt" );
+
+            final Socket connection = server.accept();
+            Thread.sleep( 10 );
+
+            assertThat( fs.getPushQueue().getPendingRefs() ).isEqualTo( 1 );
+            //still reading the upstream tips
+            assertThat( fs.getPushQueue().getCommitsBehind() ).isEqualTo( -1 );
+            assertThat( fs.getPushQueue().getLag() ).isGreaterThan( 0 );
+
+            connection.close();
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testCloseCancelsScheduledPush() throws Exception {
+        final File missingDir = new File( createTempDirectory(), "missing.git" );
+
+        final Map<String, Object> env = new HashMap<String, Object>() {{
+            put( JGitFileSystemProvider.GIT_ENV_KEY_PUSH_UPSTREAM, missingDir.getAbsolutePath() );
+        }};
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://push-close-repo" ), env );
+
+        writeFile( "git://push-close-repo/myfile.txt" );
+        assertThat( fs.getPushQueue().awaitIdle( 100, TimeUnit.MILLISECONDS ) ).isFalse();
+
+        fs.getPushQueue().close();
+        //a push running while closing may still complete
+        Thread.sleep( 100 );
+        final long failures = fs.getPushQueue().getFailureCount();
+        Thread.sleep( 200 );
+
+        assertThat( fs.getPushQueue().getFailureCount() ).isEqualTo( failures );
+    }
+
+    @Test
+    public void testPushUpstreamSurvivesRescan() throws Exception {
+        final File upstreamDir = new File( createTempDirectory(), "upstream.git" );
+        final Git upstream = JGitUtil.newRepository( upstreamDir, true );
+
+        final Map<String, Object> env = new HashMap<String, Object>() {{
+            put( JGitFileSystemProvider.GIT_ENV_KEY_PUSH_UPSTREAM, upstreamDir.getAbsolutePath() );
+        }};
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://push-rescan-repo" ), env );
+        assertThat( fs.gitRepo().getRepository().getConfig().getString( JGitFileSystemProvider.PUSH_UPSTREAM_CONFIG_SECTION, null, JGitFileSystemProvider.PUSH_UPSTREAM_CONFIG_NAME ) )
+                .isEqualTo( upstreamDir.getAbsolutePath() );
+
+        provider.rescanForExistingRepositories();
+
+        final JGitFileSystem rescanned = (JGitFileSystem) provider.getFileSystem( URI.create( "git://push-rescan-repo" ) );
+        assertThat( rescanned.getPushQueue() ).isNotNull();
+        assertThat( rescanned.getPushQueue().getRemote() ).isEqualTo( upstreamDir.getAbsolutePath() );
+
+        writeFile( "git://push-rescan-repo/myfile.txt" );
+
+        assertThat( rescanned.getPushQueue().awaitIdle( 10, TimeUnit.SECONDS ) ).isTrue();
+        assertThat( JGitUtil.getTreeRefObjectId( upstream.getRepository(), "master" ) )
+                .isEqualTo( JGitUtil.getTreeRefObjectId( rescanned.gitRepo().getRepository(), "master" ) );
+    }
+
+    @Test
+    public void testCommitsBehindCountFromTheUpstreamTips() throws Exception {
+        final File upstreamDir = new File( createTempDirectory(), "upstream.git" );
+        JGitUtil.newRepository( upstreamDir, true );
+
+        //no queue yet: the history goes upstream out of band
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://push-seed-repo" ), new HashMap<String, Object>() );
+        for ( int i = 0; i < 3; i++ ) {
+            writeFile( "git://push-seed-repo/myfile" + i + ".txt" );
+        }
+        fs.gitRepo().push().setRemote( upstreamDir.getAbsolutePath() ).setRefSpecs( new RefSpec( "refs/heads/master:refs/heads/master" ) ).call();
+        writeFile( "git://push-seed-repo/unpushed.txt" );
+
+        //a queue set up again after a restart, whose executor is busy
+        final CountDownLatch busy = new CountDownLatch( 1 );
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            executor.submit( new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    busy.await();
+                    return null;
+                }
+            } );
+            final JGitPushQueue queue = new JGitPushQueue( fs.gitRepo(), upstreamDir.getAbsolutePath(), fs.getCredential(), executor, 10, 50 );
+            queue.enqueue( "refs/heads/master" );
+
+            assertThat( queue.getCommitsBehind() ).isEqualTo( -1 );
+
+            queue.seed();
+            assertThat( queue.getCommitsBehind() ).isEqualTo( 1 );
+
+            busy.countDown();
+            assertThat( queue.awaitIdle( 10, TimeUnit.SECONDS ) ).isTrue();
+            assertThat( queue.getCommitsBehind() ).isEqualTo( 0 );
+        } finally {
+            busy.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDeletingARefTheRemoteDoesNotHaveSucceeds() throws Exception {
+        final File upstreamDir = new File( createTempDirectory(), "upstream.git" );
+        JGitUtil.newRepository( upstreamDir, true );
+
+        final Map<String, Object> env = new HashMap<String, Object>() {{
+            put( JGitFileSystemProvider.GIT_ENV_KEY_PUSH_UPSTREAM, upstreamDir.getAbsolutePath() );
+        }};
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://push-delete-repo" ), env );
+
+        fs.getPushQueue().enqueue( "refs/heads/never-pushed" );
+
+        assertThat( fs.getPushQueue().awaitIdle( 10, TimeUnit.SECONDS ) ).isTrue();
+        assertThat( fs.getPushQueue().getFailureCount() ).isEqualTo( 0 );
+        assertThat( fs.getPushQueue().getPendingRefs() ).isEqualTo( 0 );
+    }
+
+    private void writeFile( final String uri ) throws Exception {
+        final Path path = provider.getPath( URI.create( uri ) );
+        final OutputStream outStream = provider.newOutputStream( path );
+        outStream.write( "content".getBytes() );
+        outStream.close();
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit;
+
+import java.io.InputStream;
+import java.net.URI;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.uberfire.java.nio.file.DirectoryStream;
+import org.uberfire.java.nio.file.NoSuchFileException;
+import org.uberfire.java.nio.file.Path;
+import org.uberfire.java.nio.file.ReadOnlyFileSystemException;
+
+import static org.fest.assertions.api.Assertions.*;
+import static org.uberfire.java.nio.fs.jgit.ProviderTestUtils.*;
+
+public class JGitFileSystemProviderSnapshotTest extends AbstractTestInfra {
+
+    @Test
+    public void testSnapshotIsPinned() throws Exception {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://snapshot-repo" ), EMPTY_ENV );
+
+        write( provider, provider.getPath( URI.create( "git://snapshot-repo/dir/file.txt" ) ), "v1" );
+
+        final Path snapshot = provider.snapshot( fs, "master" );
+        assertThat( ( (JGitPathImpl) snapshot ).isSnapshot() ).isTrue();
+        assertThat( ( (JGitPathImpl) provider.getPath( URI.create( "git://snapshot-repo/dir/file.txt" ) ) ).isSnapshot() ).isFalse();
+
+        write( provider, provider.getPath( URI.create( "git://snapshot-repo/dir/file.txt" ) ), "v2" );
+        write( provider, provider.getPath( URI.create( "git://snapshot-repo/dir/other.txt" ) ), "other" );
+
+        final Path file = snapshot.resolve( "dir/file.txt" );
+        assertThat( read( file ) ).isEqualTo( "v1" );
+        assertThat( read( provider.getPath( URI.create( "git://snapshot-repo/dir/file.txt" ) ) ) ).isEqualTo( "v2" );
+        assertThat( provider.exists( snapshot.resolve( "dir/other.txt" ) ) ).isFalse();
+
+        final DirectoryStream<Path> stream = provider.newDirectoryStream( snapshot.resolve( "dir" ), null );
+        assertThat( stream ).hasSize( 1 );
+
+        //paths listed from a snapshot stay in the snapshot
+        final Path listed = stream.iterator().next();
+        assertThat( read( listed ) ).isEqualTo( "v1" );
+    }
+
+    @Test
+    public void testSnapshotIsReadOnly() throws Exception {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://snapshot-ro-repo" ), EMPTY_ENV );
+
+        write( provider, provider.getPath( URI.create( "git://snapshot-ro-repo/file.txt" ) ), "content" );
+
+        final Path snapshot = provider.snapshot( fs, "master" );
+
+        try {
+            write( provider, snapshot.resolve( "file.txt" ), "changed" );
+            failBecauseExceptionWasNotThrown( ReadOnlyFileSystemException.class );
+        } catch ( ReadOnlyFileSystemException ex ) {
+        }
+
+        try {
+            provider.delete( snapshot.resolve( "file.txt" ) );
+            failBecauseExceptionWasNotThrown( ReadOnlyFileSystemException.class );
+        } catch ( ReadOnlyFileSystemException ex ) {
+        }
+
+        try {
+            provider.copy( provider.getPath( URI.create( "git://snapshot-ro-repo/file.txt" ) ), snapshot.resolve( "copy.txt" ) );
+            failBecauseExceptionWasNotThrown( ReadOnlyFileSystemException.class );
+        } catch ( ReadOnlyFileSystemException ex ) {
+        }
+
+        assertThat( read( provider.getPath( URI.create( "git://snapshot-ro-repo/file.txt" ) ) ) ).isEqualTo( "content" );
+    }
+
+    @Test(expected = NoSuchFileException.class)
+    public void testSnapshotOfMissingBranch() throws Exception {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://snapshot-missing-repo" ), EMPTY_ENV );
+
+        provider.snapshot( fs, "missing_branch" );
+    }
+
+    private String read( final Path path ) throws Exception {
+        final InputStream inStream = provider.newInputStream( path );
+        try {
+            return IOUtils.toString( inStream );
+        } finally {
+            inStream.close();
+        }
+    }
+}
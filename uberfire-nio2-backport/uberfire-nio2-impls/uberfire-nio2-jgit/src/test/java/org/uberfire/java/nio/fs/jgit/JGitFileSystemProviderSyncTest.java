@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.api.Git;
+import org.junit.Test;
+import org.uberfire.java.nio.file.FileSystemNotFoundException;
+import org.uberfire.java.nio.fs.jgit.util.SyncResult;
+
+import static org.fest.assertions.api.Assertions.*;
+import static org.uberfire.java.nio.fs.jgit.util.JGitUtil.*;
+
+public class JGitFileSystemProviderSyncTest extends AbstractTestInfra {
+
+    @Override
+    public Map<String, String> getGitPreferences() {
+        final Map<String, String> gitPrefs = super.getGitPreferences();
+        gitPrefs.put( "org.uberfire.nio.git.sync.rescan", "true" );
+        return gitPrefs;
+    }
+
+    @Test
+    public void testSyncFileSystems() throws Exception {
+        final File originA = createTempDirectory();
+        final File originB = createTempDirectory();
+        final Git gitA = setupGit( originA );
+        final Git gitB = setupGit( originB );
+        final JGitFileSystem cloneA = cloneOf( "clone-a", originA );
+        final JGitFileSystem cloneB = cloneOf( "clone-b", originB );
+
+        commitNewFile( gitA );
+        commitNewFile( gitB );
+
+        final Map<String, SyncResult> results = provider.syncFileSystems( Arrays.asList( URI.create( "git://clone-a?sync=" + originA.getAbsolutePath() ),
+                                                                                         URI.create( "git://clone-b?sync=" + originB.getAbsolutePath() ) ) );
+
+        assertThat( results ).hasSize( 2 );
+        assertThat( results.get( "clone-a" ).isUpToDate() ).isFalse();
+        assertThat( results.get( "clone-b" ).isUpToDate() ).isFalse();
+        assertSynced( gitA, cloneA );
+        assertSynced( gitB, cloneB );
+
+        //nothing moved since
+        assertThat( provider.syncFileSystems( Arrays.asList( URI.create( "git://clone-a?sync=" + originA.getAbsolutePath() ) ) ).get( "clone-a" ).isUpToDate() ).isTrue();
+    }
+
+    @Test(expected = FileSystemNotFoundException.class)
+    public void testSyncUnknownFileSystem() {
+        provider.syncFileSystems( Arrays.asList( URI.create( "git://not-there?sync=/tmp/not-there" ) ) );
+    }
+
+    @Test
+    public void testRescanSyncsClonedFileSystems() throws Exception {
+        final File origin = createTempDirectory();
+        final Git git = setupGit( origin );
+        cloneOf( "clone-rescan", origin );
+        provider.newFileSystem( URI.create( "git://not-a-clone" ), EMPTY_ENV );
+
+        commitNewFile( git );
+
+        provider.rescanForExistingRepositories();
+
+        assertSynced( git, (JGitFileSystem) provider.getFileSystem( URI.create( "git://clone-rescan" ) ) );
+        assertThat( provider.getFileSystem( URI.create( "git://not-a-clone" ) ) ).isNotNull();
+    }
+
+    private JGitFileSystem cloneOf( final String name,
+                                    final File origin ) {
+        final Map<String, Object> env = new HashMap<String, Object>() {{
+            put( JGitFileSystemProvider.GIT_ENV_KEY_DEFAULT_REMOTE_NAME, origin.getAbsolutePath() );
+        }};
+        return (JGitFileSystem) provider.newFileSystem( URI.create( "git://" + name ), env );
+    }
+
+    private void commitNewFile( final Git git ) throws Exception {
+        commit( git, "master", "user", "user@example.com", "new file", null, null, false, new HashMap<String, File>() {{
+            put( "new.txt", tempFile( "new content" ) );
+        }} );
+    }
+
+    private void assertSynced( final Git origin,
+                               final JGitFileSystem clone ) {
+        assertThat( getTreeRefObjectId( clone.gitRepo().getRepository(), "master" ) )
+                .isEqualTo( getTreeRefObjectId( origin.getRepository(), "master" ) );
+    }
+}
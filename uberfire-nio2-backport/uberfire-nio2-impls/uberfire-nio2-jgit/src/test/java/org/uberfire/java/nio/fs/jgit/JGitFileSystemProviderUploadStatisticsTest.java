@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.uberfire.java.nio.file.FileSystem;
+
+import static org.fest.assertions.api.Assertions.*;
+import static org.uberfire.java.nio.fs.jgit.util.JGitUtil.*;
+
+public class JGitFileSystemProviderUploadStatisticsTest extends AbstractTestInfra {
+
+    private int gitDaemonPort;
+
+    @Override
+    public Map<String, String> getGitPreferences() {
+        final Map<String, String> gitPrefs = super.getGitPreferences();
+        gitPrefs.put( "org.uberfire.nio.git.daemon.enabled", "true" );
+        gitDaemonPort = findFreePort();
+        gitPrefs.put( "org.uberfire.nio.git.daemon.port", String.valueOf( gitDaemonPort ) );
+        return gitPrefs;
+    }
+
+    @Test
+    public void testCloneIsAccounted() throws IOException {
+        final JGitFileSystem origin = (JGitFileSystem) provider.newFileSystem( URI.create( "git://upload-stats-origin" ), EMPTY_ENV );
+
+        commit( origin.gitRepo(), "master", "user1", "user1@example.com", "commitx", null, null, false, new HashMap<String, File>() {{
+            put( "file.txt", tempFile( "temp" ) );
+        }} );
+
+        assertThat( provider.getUploadStatistics().getUploadCount() ).isEqualTo( 0 );
+
+        final FileSystem fs = provider.newFileSystem( URI.create( "git://upload-stats-clone" ), new HashMap<String, Object>() {{
+            put( JGitFileSystemProvider.GIT_ENV_KEY_DEFAULT_REMOTE_NAME, "git://localhost:" + gitDaemonPort + "/upload-stats-origin" );
+        }} );
+
+        assertThat( fs.getPath( "file.txt" ).toFile() ).isNotNull().exists();
+
+        assertThat( provider.getUploadStatistics().getUploadCount() ).isGreaterThan( 0 );
+        assertThat( provider.getUploadStatistics().getBytesServed() ).isGreaterThan( 0 );
+        assertThat( provider.getUploadStatistics().getObjectsServed() ).isGreaterThan( 0 );
+    }
+
+}
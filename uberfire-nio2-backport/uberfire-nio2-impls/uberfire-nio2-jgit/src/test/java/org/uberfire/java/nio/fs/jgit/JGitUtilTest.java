@@ -20,6 +20,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.diff.DiffEntry;
@@ -30,6 +31,8 @@ import org.junit.Test;
 import org.uberfire.java.nio.base.version.VersionAttributes;
 import org.uberfire.java.nio.base.version.VersionRecord;
 import org.uberfire.java.nio.fs.jgit.util.JGitUtil;
+import org.uberfire.java.nio.fs.jgit.util.ReaderContext;
+import org.uberfire.java.nio.fs.jgit.util.SyncResult;
 
 import static org.eclipse.jgit.api.ListBranchCommand.ListMode.*;
 import static org.fest.assertions.api.Assertions.assertThat;
@@ -192,4 +195,124 @@ public class JGitUtilTest extends AbstractTestInfra {
         assertEquals( ChangeType.ADD, diff.get( 0 ).getChangeType());
         assertEquals( "path/to/file.txt", diff.get( 0 ).getNewPath());
     }
+
+    @Test
+    public void testIncrementalSync() throws Exception {
+        final File parentFolder = createTempDirectory();
+
+        final Git origin = JGitUtil.newRepository( new File( parentFolder, "origin.git" ), true );
+        commit( origin, "master", "name", "name@example.com", "commit", null, null, false, new HashMap<String, File>() {{
+            put( "file.txt", tempFile( "temp" ) );
+        }} );
+        commit( origin, "user_branch", "name", "name@example.com", "commit", null, null, false, new HashMap<String, File>() {{
+            put( "file2.txt", tempFile( "temp2" ) );
+        }} );
+
+        final String originURI = origin.getRepository().getDirectory().toString();
+        final Git git = cloneRepository( new File( parentFolder, "clone.git" ), originURI, true, CredentialsProvider.getDefault() );
+
+        final SyncResult first = syncRepository( git, CredentialsProvider.getDefault(), originURI, true );
+        assertThat( first.getUpdatedRefs() ).contains( "refs/remotes/upstream/master", "refs/remotes/upstream/user_branch" );
+
+        final SyncResult upToDate = syncRepository( git, CredentialsProvider.getDefault(), originURI, true );
+        assertTrue( upToDate.isUpToDate() );
+        assertEquals( 0, upToDate.getBytesReceived() );
+
+        commit( origin, "user_branch", "name", "name@example.com", "commit", null, null, false, new HashMap<String, File>() {{
+            put( "file3.txt", tempFile( "temp3" ) );
+        }} );
+
+        final SyncResult moved = syncRepository( git, CredentialsProvider.getDefault(), originURI, true );
+        assertThat( moved.getUpdatedRefs() ).containsOnly( "refs/remotes/upstream/user_branch", "refs/heads/user_branch" );
+        assertTrue( moved.getBytesReceived() > 0 );
+        assertEquals( getTreeRefObjectId( origin.getRepository(), "user_branch" ),
+                      getTreeRefObjectId( git.getRepository(), "user_branch" ) );
+        assertEquals( getTreeRefObjectId( origin.getRepository(), "master" ),
+                      getTreeRefObjectId( git.getRepository(), "master" ) );
+    }
+
+    @Test
+    public void testSyncKnownTips() throws Exception {
+        final File parentFolder = createTempDirectory();
+
+        final Git origin = JGitUtil.newRepository( new File( parentFolder, "origin.git" ), true );
+        commit( origin, "master", "name", "name@example.com", "commit", null, null, false, new HashMap<String, File>() {{
+            put( "file.txt", tempFile( "temp" ) );
+        }} );
+        commit( origin, "user_branch", "name", "name@example.com", "commit", null, null, false, new HashMap<String, File>() {{
+            put( "file2.txt", tempFile( "temp2" ) );
+        }} );
+
+        final String originURI = origin.getRepository().getDirectory().toString();
+        final Git git = cloneRepository( new File( parentFolder, "clone.git" ), originURI, true, CredentialsProvider.getDefault() );
+        syncRepository( git, CredentialsProvider.getDefault(), originURI, true );
+
+        final Map<String, ObjectId> tips = new HashMap<String, ObjectId>();
+        tips.put( "refs/heads/master", origin.getRepository().getRef( "refs/heads/master" ).getObjectId() );
+        final SyncResult upToDate = syncRepository( git, CredentialsProvider.getDefault(), originURI, true, tips );
+        assertTrue( upToDate.isUpToDate() );
+        assertEquals( 0, upToDate.getBytesReceived() );
+
+        commit( origin, "master", "name", "name@example.com", "commit", null, null, false, new HashMap<String, File>() {{
+            put( "file3.txt", tempFile( "temp3" ) );
+        }} );
+        commit( origin, "user_branch", "name", "name@example.com", "commit", null, null, false, new HashMap<String, File>() {{
+            put( "file4.txt", tempFile( "temp4" ) );
+        }} );
+
+        //only the notified branch is synced
+        tips.put( "refs/heads/master", origin.getRepository().getRef( "refs/heads/master" ).getObjectId() );
+        final SyncResult moved = syncRepository( git, CredentialsProvider.getDefault(), originURI, true, tips );
+        assertThat( moved.getUpdatedRefs() ).containsOnly( "refs/remotes/upstream/master", "refs/heads/master" );
+        assertEquals( getTreeRefObjectId( origin.getRepository(), "master" ),
+                      getTreeRefObjectId( git.getRepository(), "master" ) );
+        assertFalse( getTreeRefObjectId( origin.getRepository(), "user_branch" ).equals( getTreeRefObjectId( git.getRepository(), "user_branch" ) ) );
+    }
+
+    @Test
+    public void testReaderContextIsReused() throws IOException {
+        final File parentFolder = createTempDirectory();
+        final Git git = JGitUtil.newRepository( new File( parentFolder, "reader.git" ), true );
+
+        commit( git, "master", "name", "name@example.com", "commit", null, null, false, new HashMap<String, File>() {{
+            put( "dir/file.txt", tempFile( "temp" ) );
+        }} );
+        final ObjectId commitId = git.getRepository().resolve( "master" );
+
+        //warm up, the repository pool now holds a context
+        checkPath( git, "master", "dir/file.txt" );
+
+        final long created = ReaderContext.getCreatedCount();
+        for ( int i = 0; i < 10; i++ ) {
+            assertEquals( FILE, checkPath( git, "master", "dir/file.txt" ).getK1() );
+            assertEquals( DIRECTORY, resolvePath( git, "master", "dir" ).getPathType() );
+            assertThat( listPathContent( git, "master", "dir" ) ).hasSize( 1 );
+            assertEquals( FILE, checkPath( git, commitId.name(), "dir/file.txt" ).getK1() );
+            assertEquals( NOT_FOUND, checkPath( git, "master", "missing.txt" ).getK1() );
+        }
+        assertEquals( created, ReaderContext.getCreatedCount() );
+
+        //nested use gets its own context, both are pooled afterwards
+        final ReaderContext outer = ReaderContext.acquire( git.getRepository() );
+        try {
+            assertEquals( getTreeRefObjectId( git.getRepository(), "master" ), outer.resolveTree( "master" ) );
+            assertEquals( created + 1, ReaderContext.getCreatedCount() );
+        } finally {
+            outer.release();
+        }
+        assertEquals( FILE, checkPath( git, "master", "dir/file.txt" ).getK1() );
+        assertEquals( created + 1, ReaderContext.getCreatedCount() );
+
+        //once cleared, nothing is kept for the repository
+        ReaderContext.clear( git.getRepository() );
+        assertEquals( FILE, checkPath( git, "master", "dir/file.txt" ).getK1() );
+        assertEquals( created + 2, ReaderContext.getCreatedCount() );
+
+        //a context released after the clear doesn't bring the pool back
+        final ReaderContext late = ReaderContext.acquire( git.getRepository() );
+        ReaderContext.clear( git.getRepository() );
+        late.release();
+        assertEquals( FILE, checkPath( git, "master", "dir/file.txt" ).getK1() );
+        assertEquals( created + 3, ReaderContext.getCreatedCount() );
+    }
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.uberfire.java.nio.base.dotfiles.AttributesFileOption;
+import org.uberfire.java.nio.channels.SeekableByteChannel;
+import org.uberfire.java.nio.file.OpenOption;
+import org.uberfire.java.nio.file.Path;
+import org.uberfire.java.nio.file.StandardOpenOption;
+import org.uberfire.java.nio.file.attribute.FileAttribute;
+
+/**
+ * Fixture helpers shared by the provider tests.
+ */
+public final class ProviderTestUtils {
+
+    private ProviderTestUtils() {
+    }
+
+    public static void write( final JGitFileSystemProvider provider,
+                              final Path path,
+                              final String content ) throws Exception {
+        final OutputStream outStream = provider.newOutputStream( path );
+        outStream.write( content.getBytes() );
+        outStream.close();
+    }
+
+    /**
+     * Writes the content committing the given attributes to the directory's attributes file.
+     */
+    public static void writeWithAttributes( final JGitFileSystemProvider provider,
+                                            final Path path,
+                                            final String content,
+                                            final FileAttribute<?>... attrs ) throws Exception {
+        final Set<OpenOption> options = new HashSet<OpenOption>();
+        options.add( StandardOpenOption.TRUNCATE_EXISTING );
+        options.add( new AttributesFileOption() );
+        final SeekableByteChannel channel = provider.newByteChannel( path, options, attrs );
+        channel.write( ByteBuffer.wrap( content.getBytes() ) );
+        channel.close();
+    }
+
+    public static FileAttribute<String> attr( final String name,
+                                              final String value ) {
+        return new FileAttribute<String>() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public String value() {
+                return value;
+            }
+        };
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Typical read sequence of a file system client (check, resolve, read and list a few paths) done through the
+ * {@link JGitUtil} helpers, which share the thread's {@link ReaderContext}, against the same sequence building fresh
+ * walks and readers for every call. Run {@link #main(String[])}; the GC profiler reports allocation per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class JGitUtilReadBenchmark {
+
+    @Param({ "200" })
+    public int files;
+
+    private File parentFolder;
+    private Git git;
+    private final List<String> paths = new ArrayList<String>();
+
+    @Setup
+    public void setup() throws Exception {
+        parentFolder = File.createTempFile( "benchmark", "" );
+        parentFolder.delete();
+        parentFolder.mkdirs();
+
+        git = JGitUtil.newRepository( new File( parentFolder, "benchmark.git" ), true );
+
+        final Map<String, File> content = new HashMap<String, File>();
+        for ( int i = 0; i < files; i++ ) {
+            final String path = "src/main/resources/pkg" + ( i % 10 ) + "/file" + i + ".drl";
+            final File file = new File( parentFolder, "file" + i );
+            FileUtils.write( file, "rule \"" + i + "\" when then end" );
+            content.put( path, file );
+            paths.add( path );
+        }
+        JGitUtil.commit( git, "master", "name", "name@example.com", "initial", null, null, false, content );
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        git.getRepository().close();
+        ReaderContext.clear( git.getRepository() );
+        FileUtils.deleteDirectory( parentFolder );
+    }
+
+    @Benchmark
+    public void sharedReader( final Blackhole blackhole ) throws Exception {
+        for ( int i = 0; i < 10; i++ ) {
+            final String path = paths.get( i * 7 % paths.size() );
+            blackhole.consume( JGitUtil.checkPath( git, "master", path ) );
+            blackhole.consume( JGitUtil.resolvePath( git, "master", path ) );
+            blackhole.consume( JGitUtil.resolveInputStream( git, "master", path ) );
+        }
+        blackhole.consume( JGitUtil.listPathContent( git, "master", "src/main/resources/pkg1" ) );
+    }
+
+    @Benchmark
+    public void freshWalks( final Blackhole blackhole ) throws Exception {
+        final Repository repository = git.getRepository();
+        for ( int i = 0; i < 10; i++ ) {
+            final String path = paths.get( i * 7 % paths.size() );
+            blackhole.consume( find( repository, path ) );
+            blackhole.consume( repository.open( find( repository, path ), Constants.OBJ_BLOB ).getSize() );
+            blackhole.consume( repository.open( find( repository, path ), Constants.OBJ_BLOB ).getBytes() );
+        }
+        final TreeWalk tw = new TreeWalk( repository );
+        try {
+            tw.reset( repository.resolve( "master^{tree}" ) );
+            tw.setFilter( PathFilter.create( "src/main/resources/pkg1" ) );
+            tw.setRecursive( true );
+            while ( tw.next() ) {
+                blackhole.consume( tw.getObjectId( 0 ) );
+            }
+        } finally {
+            tw.release();
+        }
+    }
+
+    /**
+     * What the helpers used to do: resolve the branch and walk to the path with a new walk (and reader) each time.
+     */
+    private ObjectId find( final Repository repository,
+                           final String path ) throws Exception {
+        final TreeWalk tw = new TreeWalk( repository );
+        try {
+            tw.setFilter( PathFilter.create( path ) );
+            tw.setRecursive( true );
+            tw.reset( repository.resolve( "master^{tree}" ) );
+            return tw.next() ? tw.getObjectId( 0 ) : null;
+        } finally {
+            tw.release();
+        }
+    }
+
+    public static void main( final String[] args ) throws RunnerException {
+        new Runner( new OptionsBuilder()
+                            .include( JGitUtilReadBenchmark.class.getSimpleName() )
+                            .addProfiler( GCProfiler.class )
+                            .build() ).run();
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.uberfire.java.nio.base;
+
+import java.util.Map;
+
+/**
+ * Implemented by versioned file systems able to tell the current version of each of their branches, so peers holding
+ * a copy can tell whether they're up to date without fetching.
+ */
+public interface FileSystemRefs {
+
+    /**
+     * @return branch ref name (e.g. <code>refs/heads/master</code>) to the id of its tip
+     */
+    Map<String, String> refs();
+}
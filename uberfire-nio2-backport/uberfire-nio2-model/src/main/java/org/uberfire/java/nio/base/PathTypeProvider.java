@@ -0,0 +1,33 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.base;
+
+import org.uberfire.java.nio.file.Path;
+
+/**
+ * Implemented by file system providers that can tell whether a path exists, and its type, without building its
+ * attributes. {@link org.uberfire.java.nio.file.Files} uses it, when available, for the existence and type checks;
+ * a missing path is answered with <code>false</code>, never with an exception.
+ */
+public interface PathTypeProvider {
+
+    boolean exists( final Path path );
+
+    boolean isDirectory( final Path path );
+
+    boolean isRegularFile( final Path path );
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.base;
+
+import org.uberfire.java.nio.file.FileSystem;
+import org.uberfire.java.nio.file.Path;
+
+/**
+ * Implemented by versioned file system providers able to pin a read-only view of a branch to its current version.
+ */
+public interface SnapshotProvider {
+
+    /**
+     * @return the root of a read-only view of the branch as it is now; later commits to the branch are not visible
+     * through it and writes fail with {@link org.uberfire.java.nio.file.ReadOnlyFileSystemException}
+     */
+    Path snapshot( final FileSystem fileSystem,
+                   final String branchName );
+}
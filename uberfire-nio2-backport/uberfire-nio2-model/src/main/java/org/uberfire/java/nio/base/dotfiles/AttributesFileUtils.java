@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.base.dotfiles;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import org.uberfire.java.nio.base.Properties;
+import org.uberfire.java.nio.file.Path;
+import org.uberfire.java.nio.file.attribute.FileAttribute;
+
+/**
+ * Helpers for the consolidated attribute storage: instead of one dot file per asset, every directory holds a single
+ * {@link #ATTRIBUTES_FILE} blob mapping the names of its children to their attributes. The attributes of the root
+ * directory are kept in its own attributes file under {@link #ROOT_ENTRY}.
+ */
+public final class AttributesFileUtils {
+
+    public static final String ATTRIBUTES_FILE = ".uf-attributes";
+    public static final String ROOT_ENTRY = ".";
+
+    private AttributesFileUtils() {
+
+    }
+
+    public static Path attributesFile( final Path path ) {
+        if ( path.getFileName() == null ) {
+            return path.resolve( ATTRIBUTES_FILE );
+        }
+        return path.resolveSibling( ATTRIBUTES_FILE );
+    }
+
+    public static String entryName( final Path path ) {
+        if ( path.getFileName() == null ) {
+            return ROOT_ENTRY;
+        }
+        return path.getFileName().toString();
+    }
+
+    public static boolean isAttributesFile( final Path path ) {
+        return path.getFileName() != null && path.getFileName().toString().equals( ATTRIBUTES_FILE );
+    }
+
+    public static Properties toProperties( final FileAttribute<?>... attrs ) {
+        final Properties properties = new Properties();
+        if ( attrs != null ) {
+            for ( final FileAttribute<?> attr : attrs ) {
+                if ( attr.value() instanceof Serializable ) {
+                    properties.put( attr.name(), attr.value() );
+                }
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * @return attributes of the given entry, or null if the attributes file has no entry for it
+     */
+    public static Properties getEntry( final Properties attributesFile,
+                                       final String entryName ) {
+        final Object value = attributesFile.get( entryName );
+        if ( value instanceof Map ) {
+            return new Properties( (Map<String, Object>) value );
+        }
+        return null;
+    }
+}
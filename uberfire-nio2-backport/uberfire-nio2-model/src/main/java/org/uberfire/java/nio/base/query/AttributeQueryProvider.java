@@ -0,0 +1,42 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.base.query;
+
+import org.uberfire.java.nio.file.Path;
+
+/**
+ * Implemented by file system providers that keep a secondary index of file attributes.
+ */
+public interface AttributeQueryProvider {
+
+    /**
+     * Finds the paths, within the branch of the given root, having the attribute with the given value. Indexed
+     * attribute names drop their position suffix, so <code>dcore.creator</code> matches
+     * <code>dcore.creator[0]</code>, <code>dcore.creator[1]</code>, etc.
+     * @param value the value to match, or null to match any value
+     */
+    ResultPage<Path> queryByAttribute( final Path root,
+                                       final String attribute,
+                                       final String value,
+                                       final int offset,
+                                       final int pageSize );
+
+    /**
+     * Drops and rebuilds the attribute index of the branch of the given root.
+     */
+    void rebuildAttributeIndex( final Path root );
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.base.query;
+
+import org.uberfire.java.nio.file.Path;
+
+/**
+ * Implemented by file system providers that keep an index of file paths.
+ */
+public interface PathQueryProvider {
+
+    /**
+     * Finds the files under the given root whose path, relative to the root, matches the glob. <code>*</code> and
+     * <code>?</code> match within a single directory, <code>**</code> matches across directories, so
+     * <code>**&#47;*.drl</code> finds every drl file. Hidden files are not returned.
+     */
+    ResultPage<Path> queryByGlob( final Path root,
+                                  final String glob,
+                                  final int offset,
+                                  final int pageSize );
+}
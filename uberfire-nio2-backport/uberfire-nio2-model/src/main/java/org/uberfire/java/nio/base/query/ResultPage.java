@@ -0,0 +1,59 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.base.query;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of query results, in a stable order, plus the total number of matches.
+ */
+public class ResultPage<T> {
+
+    private final List<T> content;
+    private final int offset;
+    private final int total;
+
+    public ResultPage( final List<T> content,
+                       final int offset,
+                       final int total ) {
+        this.content = Collections.unmodifiableList( content );
+        this.offset = offset;
+        this.total = total;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public boolean hasMore() {
+        return offset + content.size() < total;
+    }
+
+    @Override
+    public String toString() {
+        return "ResultPage{offset=" + offset + ", size=" + content.size() + ", total=" + total + "}";
+    }
+}
@@ -61,7 +61,9 @@ public class FileSystemTestingUtils {
         System.setProperty( "org.uberfire.nio.git.dir", path.getAbsolutePath() );
         final URI newRepo = URI.create( "git://amend-repo-test" );
 
-        fileSystem = ioService.newFileSystem( newRepo, new HashMap<String, Object>() );
+        fileSystem = ioService.newFileSystem( newRepo, new HashMap<String, Object>() {{
+            put( JGitFileSystemProvider.GIT_ENV_KEY_IN_MEMORY, Boolean.TRUE );
+        }} );
         Path init = ioService.get( URI.create( "git://amend-repo-test/init.file" ) );
         ioService.write( init, "setupFS!" );
     }
@@ -70,7 +72,9 @@ public class FileSystemTestingUtils {
         FileUtils.deleteQuietly( path );
         JGitFileSystemProvider gitFsProvider = (JGitFileSystemProvider) FileSystemProviders.resolveProvider( URI.create( "git://whatever" ) );
         gitFsProvider.shutdown();
-        FileUtils.deleteQuietly( gitFsProvider.getGitRepoContainerDir() );
+        for ( final File repoContainerDir : gitFsProvider.getGitRepoContainerDirs() ) {
+            FileUtils.deleteQuietly( repoContainerDir );
+        }
         gitFsProvider.rescanForExistingRepositories();
     }
 